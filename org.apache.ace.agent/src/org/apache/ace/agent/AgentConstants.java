@@ -81,6 +81,16 @@ public interface AgentConstants {
      */
     String CONFIG_DISCOVERY_CHECKING = CONFIG_KEY_NAMESPACE + ".discovery.checking";
 
+    /**
+     * Configuration option for the policy the default discovery handler uses to select a server when checking is
+     * enabled. Should be one of <code>{ordered,latency,roundrobin}</code>, default is <code>ordered</code>. The
+     * <code>ordered</code> policy selects the first available server URL, <code>latency</code> selects the available
+     * server that responds the fastest and <code>roundrobin</code> spreads the load over all available servers, taking
+     * their response times into account. With the latter two policies, the agent sticks to the selected server for a
+     * while, unless it becomes unavailable.
+     */
+    String CONFIG_DISCOVERY_POLICY = CONFIG_KEY_NAMESPACE + ".discovery.policy";
+
     /**
      * Configuration option to override the default controller with another implementation. This custom implementation
      * is expected to be in the same bundle as the agent. Should be a fully qualified class name, and if omitted, the
@@ -121,6 +131,13 @@ public interface AgentConstants {
      */
     String CONFIG_CONTROLLER_SYNCINTERVAL = CONFIG_KEY_NAMESPACE + ".controller.syncinterval";
 
+    /**
+     * Configuration option to let the default controller wait for change notifications of the server instead of
+     * polling it every sync interval. When enabled, the sync interval is used as the maximum time to wait for a
+     * notification. Should be <code>{true,false}</code>, default is <code>false</code>.
+     */
+    String CONFIG_CONTROLLER_NOTIFICATIONS = CONFIG_KEY_NAMESPACE + ".controller.notifications";
+
     /**
      * Configuration option to disable the default {@link ConnectionHandler}. When set to true some other bundle must
      * provide it as a service. Should be <code>{true,false}</code>, default is <code>false</code>.
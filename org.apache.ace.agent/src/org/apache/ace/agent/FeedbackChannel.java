@@ -31,6 +31,15 @@ import org.osgi.annotation.versioning.ProviderType;
 @ProviderType
 public interface FeedbackChannel {
 
+    /**
+     * Returns whether this channel has feedback that is not yet synchronized with the server. Callers can use this to
+     * avoid contacting the server when there is nothing to report.
+     * 
+     * @return <code>true</code> if there might be feedback that still needs to be sent, <code>false</code> if all
+     *         feedback has been sent successfully.
+     */
+    boolean hasPendingFeedback();
+
     /**
      * Synchronizes the current feedback with the server(s), ensuring that those servers have the same (snapshot of)
      * feedback data as the agent currently has.
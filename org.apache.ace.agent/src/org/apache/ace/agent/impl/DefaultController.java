@@ -19,22 +19,35 @@
 package org.apache.ace.agent.impl;
 
 import static org.apache.ace.agent.AgentConstants.CONFIG_CONTROLLER_FIXPACKAGES;
+import static org.apache.ace.agent.AgentConstants.CONFIG_CONTROLLER_NOTIFICATIONS;
 import static org.apache.ace.agent.AgentConstants.CONFIG_CONTROLLER_RETRIES;
 import static org.apache.ace.agent.AgentConstants.CONFIG_CONTROLLER_STREAMING;
 import static org.apache.ace.agent.AgentConstants.CONFIG_CONTROLLER_SYNCDELAY;
 import static org.apache.ace.agent.AgentConstants.CONFIG_CONTROLLER_SYNCINTERVAL;
 import static org.apache.ace.agent.AgentConstants.EVENT_AGENT_CONFIG_CHANGED;
+import static org.apache.ace.agent.impl.ConnectionUtil.checkConnectionResponse;
+import static org.apache.ace.agent.impl.ConnectionUtil.close;
 import static org.apache.ace.agent.impl.ConnectionUtil.closeSilently;
+import static org.apache.ace.agent.impl.ConnectionUtil.handleIOException;
 import static org.apache.ace.agent.impl.InternalConstants.AGENT_INSTALLATION_COMPLETE;
 import static org.apache.ace.agent.impl.InternalConstants.AGENT_INSTALLATION_START;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -50,6 +63,8 @@ import org.apache.ace.agent.FeedbackChannel;
 import org.apache.ace.agent.InstallationFailedException;
 import org.apache.ace.agent.RetryAfterException;
 import org.apache.ace.agent.UpdateHandler;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.Version;
 
 /**
@@ -138,6 +153,35 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
         }
     }
 
+    /**
+     * Reads the generation from a notification request, which can block for as long as the server has no changes to
+     * report.
+     */
+    static class NotificationReader implements Callable<Long> {
+        private final URLConnection m_connection;
+
+        public NotificationReader(URLConnection connection) {
+            m_connection = connection;
+        }
+
+        @Override
+        public Long call() throws Exception {
+            checkConnectionResponse(m_connection);
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(m_connection.getInputStream(), "UTF-8"));
+            try {
+                String line = reader.readLine();
+                return Long.valueOf((line == null) ? "" : line.trim());
+            }
+            catch (NumberFormatException exception) {
+                throw new IOException("Invalid notification response from server!", exception);
+            }
+            finally {
+                closeSilently(reader);
+            }
+        }
+    }
+
     /**
      * UpdateInstaller that provides streaming deployment package install. The install is blocking.
      */
@@ -377,10 +421,18 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
         }
     }
 
+    /** Additional time, in seconds, to wait for a notification response beyond the requested timeout. */
+    private static final long NOTIFICATION_GRACE_TIME = 30;
+
     private volatile UpdateInstaller m_updateInstaller;
+    /** Used to wait for notifications without blocking the (interruptible) controller thread. */
+    private volatile ExecutorService m_notificationExecutor;
+    /** The last generation reported by the server, or <code>-1</code> if unknown. Only accessed by the controller thread. */
+    private long m_generation;
 
     private final AtomicBoolean m_updateStreaming;
     private final AtomicBoolean m_fixPackage;
+    private final AtomicBoolean m_notifications;
     private final AtomicLong m_maxRetries;
     private final AtomicLong m_interval;
     private final AtomicLong m_syncDelay;
@@ -394,6 +446,8 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
         m_updateStreaming = new AtomicBoolean(true);
         m_fixPackage = new AtomicBoolean(true);
         m_maxRetries = new AtomicLong(1);
+        m_notifications = new AtomicBoolean(false);
+        m_generation = -1L;
     }
 
     @Override
@@ -409,6 +463,11 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
                 m_fixPackage.set(Boolean.parseBoolean(value));
             }
 
+            value = payload.get(CONFIG_CONTROLLER_NOTIFICATIONS);
+            if (value != null && !"".equals(value)) {
+                m_notifications.set(Boolean.parseBoolean(value));
+            }
+
             value = payload.get(CONFIG_CONTROLLER_SYNCDELAY);
             if (value != null && !"".equals(value)) {
                 try {
@@ -439,34 +498,53 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
                 }
             }
 
-            logDebug("Config changed: update: %s, fixPkg: %s, syncDelay: %d, syncInterval: %d, maxRetries: %d", m_updateStreaming.get(), m_fixPackage.get(), m_syncDelay.get(), m_interval.get(), m_maxRetries.get());
+            logDebug("Config changed: update: %s, fixPkg: %s, notifications: %s, syncDelay: %d, syncInterval: %d, maxRetries: %d", m_updateStreaming.get(), m_fixPackage.get(), m_notifications.get(), m_syncDelay.get(), m_interval.get(), m_maxRetries.get());
         }
     }
 
     @Override
     public void run() {
         long interval = m_syncDelay.get();
+        // The initial sync is always done after the sync delay...
+        boolean notify = false;
 
         while (!isInterrupted()) {
             try {
-                logDebug("Scheduling controller to run in %d seconds...", interval);
+                if (notify && awaitNotification(interval)) {
+                    // Nothing changed on the server, so only our own feedback could need to be synchronized...
+                    runFeedback(true /* pendingOnly */);
+                }
+                else {
+                    if (!notify) {
+                        logDebug("Scheduling controller to run in %d seconds...", interval);
 
-                TimeUnit.SECONDS.sleep(interval);
+                        TimeUnit.SECONDS.sleep(interval);
+                    }
 
-                logDebug("Controller syncing...");
+                    logDebug("Controller syncing...");
 
-                runFeedback();
-                runAgentUpdate();
-                runDeploymentUpdate();
+                    runFeedback(false /* pendingOnly */);
+                    boolean agentUpdated = runAgentUpdate();
+                    boolean deploymentUpdated = runDeploymentUpdate();
 
-                interval = m_interval.get();
+                    if (!agentUpdated || !deploymentUpdated) {
+                        // Forget the generation we're syncing for, so the next notification causes us to retry...
+                        m_generation = -1L;
+                    }
 
-                logDebug("Sync completed...");
+                    logDebug("Sync completed...");
+                }
+
+                interval = m_interval.get();
+                notify = m_notifications.get();
             }
             catch (RetryAfterException e) {
                 // any method may throw this causing the sync to abort. The server is busy so no sense in trying
                 // anything else until the retry window has passed.
                 interval = e.getBackoffTime();
+                // Ensure we do a complete sync after the retry window...
+                notify = false;
+                m_generation = -1L;
                 logWarning("Sync received retry exception from server. Rescheduled in %d seconds...", interval);
             }
             catch (InterruptedException exception) {
@@ -490,8 +568,9 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
         m_interval.set(config.getLong(CONFIG_CONTROLLER_SYNCINTERVAL, m_interval.get()));
         m_syncDelay.set(config.getLong(CONFIG_CONTROLLER_SYNCDELAY, m_syncDelay.get()));
         m_maxRetries.set(config.getLong(CONFIG_CONTROLLER_RETRIES, m_maxRetries.get()));
+        m_notifications.set(config.getBoolean(CONFIG_CONTROLLER_NOTIFICATIONS, m_notifications.get()));
 
-        logDebug("Config initialized: update: %s, fixPkg: %s, syncDelay: %d, syncInterval: %d, maxRetries: %d", m_updateStreaming.get(), m_fixPackage.get(), m_syncDelay.get(), m_interval.get(), m_maxRetries.get());
+        logDebug("Config initialized: update: %s, fixPkg: %s, notifications: %s, syncDelay: %d, syncInterval: %d, maxRetries: %d", m_updateStreaming.get(), m_fixPackage.get(), m_notifications.get(), m_syncDelay.get(), m_interval.get(), m_maxRetries.get());
     }
 
     @Override
@@ -504,6 +583,10 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
             m_updateInstaller.reset();
             m_updateInstaller = null;
         }
+        if (m_notificationExecutor != null) {
+            m_notificationExecutor.shutdownNow();
+            m_notificationExecutor = null;
+        }
     }
 
     protected void sendDeploymentCompletedEvent(UpdateInfo updateInfo, boolean success, Throwable throwable) {
@@ -532,6 +615,62 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
         getEventsHandler().postEvent(AGENT_INSTALLATION_START, eventProps);
     }
 
+    /**
+     * Waits until the server notifies us that our target has changed, or the given timeout has passed.
+     * 
+     * @param timeout
+     *            the maximum time, in seconds, to wait for a notification;
+     * @return <code>true</code> if the server reported no changes since the last notification, <code>false</code> if
+     *         the target has changed, or no notification could be obtained from the server.
+     * @throws RetryAfterException
+     *             in case the server is too busy and we should defer our sync to a later moment in time;
+     * @throws InterruptedException
+     *             in case the controller was interrupted while waiting.
+     */
+    private boolean awaitNotification(long timeout) throws RetryAfterException, InterruptedException {
+        URL notificationURL = getNotificationURL(timeout);
+        if (notificationURL == null) {
+            logDebug("Unable to determine notification endpoint, scheduling controller to run in %d seconds...", timeout);
+            TimeUnit.SECONDS.sleep(timeout);
+            return false;
+        }
+
+        logDebug("Waiting at most %d seconds for notification of changes...", timeout);
+
+        long generation;
+        URLConnection connection = null;
+        try {
+            connection = getConnectionHandler().getConnection(notificationURL);
+            connection.setReadTimeout((int) TimeUnit.SECONDS.toMillis(timeout + NOTIFICATION_GRACE_TIME));
+
+            generation = getNotificationExecutor().submit(new NotificationReader(connection)).get();
+        }
+        catch (InterruptedException exception) {
+            // Abort the pending request, causing the notification reader to terminate as well...
+            close(connection);
+            throw exception;
+        }
+        catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof RetryAfterException) {
+                throw (RetryAfterException) cause;
+            }
+            handleNotificationFailure(connection, cause, timeout);
+            return false;
+        }
+        catch (IOException exception) {
+            handleNotificationFailure(connection, exception, timeout);
+            return false;
+        }
+        finally {
+            close(connection);
+        }
+
+        boolean unchanged = (m_generation == generation);
+        m_generation = generation;
+        return unchanged;
+    }
+
     private FeedbackChannel getFeedbackChannel(String name) {
         try {
             return getFeedbackHandler().getChannel(name);
@@ -556,6 +695,37 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
         return Collections.emptySet();
     }
 
+    private ExecutorService getNotificationExecutor() {
+        if (m_notificationExecutor == null) {
+            m_notificationExecutor = Executors.newSingleThreadExecutor(new Activator.InternalThreadFactory());
+        }
+        return m_notificationExecutor;
+    }
+
+    private URL getNotificationURL(long timeout) {
+        URL serverURL = getDiscoveryHandler().getServerUrl();
+        String identification = getIdentificationHandler().getAgentId();
+        if (serverURL == null || identification == null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder("notification/").append(identification);
+        // Let the server notify us about agent updates as well...
+        Bundle bundle = FrameworkUtil.getBundle(getClass());
+        if (bundle != null) {
+            sb.append('/').append(bundle.getSymbolicName());
+        }
+        sb.append("?generation=").append(m_generation).append("&timeout=").append(timeout);
+
+        try {
+            return new URL(serverURL, sb.toString());
+        }
+        catch (MalformedURLException exception) {
+            logWarning("Invalid notification endpoint!", exception);
+            return null;
+        }
+    }
+
     private UpdateInstaller getUpdateInstaller() {
         boolean updateUsingStreams = m_updateStreaming.get();
         if (updateUsingStreams) {
@@ -579,7 +749,28 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
         return m_updateInstaller;
     }
 
-    private void runAgentUpdate() throws RetryAfterException, InterruptedException {
+    /**
+     * Falls back to polling after a notification could not be obtained, disabling notifications altogether if the
+     * server does not support them.
+     */
+    private void handleNotificationFailure(URLConnection connection, Throwable cause, long timeout) throws InterruptedException {
+        m_generation = -1L;
+
+        if (handleIOException(connection) == HttpURLConnection.HTTP_NOT_FOUND) {
+            logWarning("Server does not support notifications, falling back to polling...");
+            m_notifications.set(false);
+        }
+        else {
+            logWarning("Unable to obtain notification from server, scheduling controller to run in %d seconds...", cause, timeout);
+        }
+
+        TimeUnit.SECONDS.sleep(timeout);
+    }
+
+    /**
+     * @return <code>true</code> if the check for agent updates succeeded, <code>false</code> if it failed.
+     */
+    private boolean runAgentUpdate() throws RetryAfterException, InterruptedException {
         if (isInterrupted()) {
             throw new InterruptedException("Controller was interrupted, not running agent updates check...");
         }
@@ -592,13 +783,18 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
         UpdateInstaller updateInstaller = getUpdateInstaller();
         try {
             updateInstaller.installUpdate(getAgentUpdateHandler(), fixPackage, maxRetries);
+            return true;
         }
         catch (IOException e) {
             logError("Agent update aborted due to Exception.", e);
+            return false;
         }
     }
 
-    private void runDeploymentUpdate() throws RetryAfterException, InterruptedException {
+    /**
+     * @return <code>true</code> if the check for deployment updates succeeded, <code>false</code> if it failed.
+     */
+    private boolean runDeploymentUpdate() throws RetryAfterException, InterruptedException {
         if (isInterrupted()) {
             throw new InterruptedException("Controller was interrupted, not running deployment updates check...");
         }
@@ -611,13 +807,15 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
         UpdateInstaller updateInstaller = getUpdateInstaller();
         try {
             updateInstaller.installUpdate(getDeploymentHandler(), fixPackage, maxRetries);
+            return true;
         }
         catch (IOException e) {
             logError("Deployment update aborted due to Exception.", e);
+            return false;
         }
     }
 
-    private void runFeedback() throws RetryAfterException, InterruptedException {
+    private void runFeedback(boolean pendingOnly) throws RetryAfterException, InterruptedException {
         if (isInterrupted()) {
             throw new InterruptedException("Controller was interrupted, not running feedback synchronization...");
         }
@@ -628,7 +826,10 @@ public class DefaultController extends ComponentBase implements Runnable, EventL
 
         for (String name : names) {
             FeedbackChannel channel = getFeedbackChannel(name);
-            if (channel != null) {
+            if (channel != null && pendingOnly && !channel.hasPendingFeedback()) {
+                logDebug("No pending feedback for channel: %s", name);
+            }
+            else if (channel != null) {
                 try {
                     channel.sendFeedback();
                     logDebug("Feedback send succesfully for channel: %s", name);
@@ -19,6 +19,7 @@
 package org.apache.ace.agent.impl;
 
 import static org.apache.ace.agent.AgentConstants.CONFIG_DISCOVERY_CHECKING;
+import static org.apache.ace.agent.AgentConstants.CONFIG_DISCOVERY_POLICY;
 import static org.apache.ace.agent.AgentConstants.CONFIG_DISCOVERY_SERVERURLS;
 import static org.apache.ace.agent.AgentConstants.EVENT_AGENT_CONFIG_CHANGED;
 
@@ -27,10 +28,18 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.ace.agent.DiscoveryHandler;
 import org.apache.ace.agent.EventListener;
@@ -38,56 +47,108 @@ import org.apache.ace.agent.EventListener;
 /**
  * Default {@link DiscoveryHandler} implementation that reads the serverURL(s) from the configuration using key
  * {@link CONFIG_DISCOVERY_SERVERURLS}.
+ * <p>
+ * When checking is enabled, the availability and response time of each server is determined by opening a test
+ * connection to it. Servers that were never checked are checked concurrently before one is selected; the results of
+ * later checks are refreshed in the background, so an unavailable server does not delay the agent once it is known to
+ * be unavailable. Which of the available servers is selected is determined by the {@link CONFIG_DISCOVERY_POLICY}.
+ * </p>
  */
 public class DiscoveryHandlerImpl extends ComponentBase implements DiscoveryHandler, EventListener {
 
-    /*
-     * The caching logic in this code is not strictly thread-safe. It does not need to be considering the use-case and
-     * the fact that it is eventually correct. Therefore the implementation is optimized for simplicity, performance and
-     * garbage reduction in the performance critical path.
+    /**
+     * Keeps the results of checking a single server URL. Instances are shared between the agent and the threads that
+     * check the servers in the background, hence all fields, except for the round-robin weight, are final or volatile.
      */
-
-    private static class CheckedURL {
+    private static class ServerState {
 
         private final URL m_url;
         private final long m_cacheTime;
+        private final AtomicBoolean m_checking = new AtomicBoolean();
         private volatile long m_timestamp = 0l;
         private volatile boolean m_available = false;
+        private volatile long m_latency = 0l;
+        /** Guarded by the selection lock of the discovery handler. */
+        private int m_currentWeight = 0;
 
-        public CheckedURL(URL url, long cacheTime) {
+        public ServerState(URL url, long cacheTime) {
             m_url = url;
             m_cacheTime = cacheTime;
         }
 
-        public void setAvailable(boolean value) {
-            m_available = value;
-            m_timestamp = System.currentTimeMillis();
+        /**
+         * @return the (smoothed) time it took to connect to the server, in nanoseconds.
+         */
+        public long getLatency() {
+            return m_latency;
+        }
+
+        public URL getURL() {
+            return m_url;
         }
 
         public boolean isAvailable() {
             return m_available;
         }
 
+        public boolean isChecked() {
+            return m_timestamp > 0l;
+        }
+
         public boolean isRecentlyChecked() {
             return m_timestamp > (System.currentTimeMillis() - m_cacheTime);
         }
 
-        public URL getURL() {
-            return m_url;
+        public void setAvailable(long latency) {
+            // smooth the latency a bit to prevent a single slow connect from changing the selection...
+            m_latency = m_available ? (3 * m_latency + latency) / 4 : latency;
+            m_available = true;
+            m_timestamp = System.currentTimeMillis();
+        }
+
+        public void setUnavailable() {
+            m_available = false;
+            m_timestamp = System.currentTimeMillis();
+        }
+
+        boolean startChecking() {
+            return m_checking.compareAndSet(false, true);
+        }
+
+        void stopChecking() {
+            m_checking.set(false);
         }
     }
 
     static final String DEFAULT_SERVER_URL = "http://localhost:8080";
 
+    static final String POLICY_ORDERED = "ordered";
+    static final String POLICY_LATENCY = "latency";
+    static final String POLICY_ROUNDROBIN = "roundrobin";
+
     private static final boolean DEFAULT_CHECK_SERVER_URLS = true;
+    private static final String DEFAULT_POLICY = POLICY_ORDERED;
     private static final long DEFAULT_CACHE_MILLISECONDS = 30000;
-    private final Map<String, CheckedURL> m_checkedURLs = new HashMap<>();
+    /** The weight of the fastest server when selecting servers in a round-robin fashion. */
+    private static final int MAX_WEIGHT = 10;
+
+    private final ConcurrentMap<String, ServerState> m_serverStates = new ConcurrentHashMap<>();
+    private final Object m_selectionLock = new Object();
+    private final long m_cacheTime;
 
     private List<String> m_defaultServerURLs;
     private boolean m_defaultCheckURLs;
+    private String m_defaultPolicy;
 
     private volatile List<String> m_serverURLs;
     private volatile boolean m_checkURLs;
+    private volatile String m_policy;
+    /** The policy used to select servers, which is the configured policy when it is known. */
+    private volatile String m_selectionPolicy;
+    private volatile ExecutorService m_checkExecutor;
+    // Guarded by m_selectionLock...
+    private ServerState m_selected;
+    private long m_selectedUntil;
 
     public DiscoveryHandlerImpl() {
         this(DEFAULT_SERVER_URL, DEFAULT_CHECK_SERVER_URLS);
@@ -98,10 +159,16 @@ public class DiscoveryHandlerImpl extends ComponentBase implements DiscoveryHand
     }
 
     DiscoveryHandlerImpl(String[] serverURLs, boolean checkServerURLs) {
+        this(serverURLs, checkServerURLs, DEFAULT_CACHE_MILLISECONDS);
+    }
+
+    DiscoveryHandlerImpl(String[] serverURLs, boolean checkServerURLs, long cacheTime) {
         super("discovery");
         m_defaultServerURLs = m_serverURLs = Arrays.asList(serverURLs);
         // ACE-520 - checking URLs only makes sense if there is more than one URL available...
         m_defaultCheckURLs = m_checkURLs = checkServerURLs && m_defaultServerURLs.size() > 1;
+        m_defaultPolicy = m_policy = m_selectionPolicy = DEFAULT_POLICY;
+        m_cacheTime = cacheTime;
     }
 
     @Override
@@ -111,13 +178,21 @@ public class DiscoveryHandlerImpl extends ComponentBase implements DiscoveryHand
         m_defaultServerURLs = m_serverURLs = splitUrls(urls);
         // ACE-520 - checking URLs only makes sense if there is more than one URL available...
         m_defaultCheckURLs = m_checkURLs = checkServerURLs && m_defaultServerURLs.size() > 1;
+        m_defaultPolicy = m_policy = getConfigurationHandler().get(CONFIG_DISCOVERY_POLICY, DEFAULT_POLICY).trim();
+        m_selectionPolicy = getSelectionPolicy(m_policy);
         getEventsHandler().addListener(this);
     }
 
     @Override
     protected void onStop() throws Exception {
         getEventsHandler().removeListener(this);
-        m_checkedURLs.clear();
+
+        ExecutorService executor = m_checkExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+            m_checkExecutor = null;
+        }
+        clearServerStates();
     }
 
     @Override
@@ -146,17 +221,31 @@ public class DiscoveryHandlerImpl extends ComponentBase implements DiscoveryHand
         // ACE-520 - checking URLs only makes sense if there is more than one URL available...
         checkURLs &= serverURLs.size() > 1;
 
+        String policyValue = payload.get(CONFIG_DISCOVERY_POLICY);
+        String policy;
+        if (policyValue != null && !"".equals(policyValue.trim())) {
+            policy = policyValue.trim();
+        }
+        else {
+            policy = m_defaultPolicy;
+        }
+
         List<String> oldServerURLs = m_serverURLs;
         boolean oldCheckURLs = m_checkURLs;
+        String oldPolicy = m_policy;
 
-        if (!oldServerURLs.equals(serverURLs) || oldCheckURLs != checkURLs) {
+        if (!oldServerURLs.equals(serverURLs) || oldCheckURLs != checkURLs || !oldPolicy.equals(policy)) {
             m_serverURLs = serverURLs;
             m_checkURLs = checkURLs;
-            logDebug("Discovery configuration changed: urls: %s, checking: %s", m_serverURLs, m_checkURLs);
-            m_checkedURLs.clear();
+            if (!oldPolicy.equals(policy)) {
+                m_selectionPolicy = getSelectionPolicy(policy);
+            }
+            m_policy = policy;
+            logDebug("Discovery configuration changed: urls: %s, checking: %s, policy: %s", m_serverURLs, m_checkURLs, m_policy);
+            clearServerStates();
         }
     }
-    
+
     List<String> splitUrls(String urlsValue) {
         return Arrays.asList(urlsValue.trim().split("\\s*,\\s*"));
     }
@@ -173,9 +262,9 @@ public class DiscoveryHandlerImpl extends ComponentBase implements DiscoveryHand
     }
 
     /**
-     * Returns the first available URL from a the ordered list of the configured server URLs. If the
-     * {@link CONFIG_DISCOVERY_CHECKING} flag is set a connection is opened to test whether a serverURL is available
-     * before it is returned.
+     * Returns an available URL from the configured server URLs. If the {@link CONFIG_DISCOVERY_CHECKING} flag is set,
+     * the server is selected from the available servers according to the {@link CONFIG_DISCOVERY_POLICY}, otherwise
+     * the first valid server URL is returned.
      * 
      * @return a (valid) server URL, or <code>null</code> in case no server URL was valid.
      */
@@ -184,12 +273,12 @@ public class DiscoveryHandlerImpl extends ComponentBase implements DiscoveryHand
         List<String> serverURLs = m_serverURLs; // local reference
         boolean checkURLs = m_checkURLs; // local value
 
-        URL url = null;
-        for (String urlValue : serverURLs) {
-            url = getURL(urlValue, checkURLs);
-            if (url != null) {
-                break;
-            }
+        URL url;
+        if (checkURLs) {
+            url = selectServerURL(serverURLs);
+        }
+        else {
+            url = getFirstServerURL(serverURLs);
         }
         if (url == null) {
             logWarning("No valid server URL discovered?!");
@@ -197,46 +286,259 @@ public class DiscoveryHandlerImpl extends ComponentBase implements DiscoveryHand
         return url;
     }
 
-    private URL getURL(String serverURL, boolean checkURL) {
+    /**
+     * Checks the given server by opening a test connection to it, and records its availability and latency.
+     */
+    private void check(ServerState state) {
+        long start = System.nanoTime();
         try {
-            if (!checkURL) {
-                return new URL(serverURL);
+            tryConnect(state.getURL());
+            state.setAvailable(System.nanoTime() - start);
+            logDebug("Succesfully connected to serverURL: %s", state.getURL());
+        }
+        catch (IOException e) {
+            if (state.isAvailable() || !state.isChecked()) {
+                logWarning("Blacklisting unavailable serverURL: %s", state.getURL());
             }
+            state.setUnavailable();
+        }
+    }
 
-            CheckedURL checkedURL = m_checkedURLs.get(serverURL);
-            if (checkedURL == null) {
-                checkedURL = new CheckedURL(new URL(serverURL), DEFAULT_CACHE_MILLISECONDS);
-                m_checkedURLs.put(serverURL, checkedURL);
+    /**
+     * Checks the given servers concurrently, and waits until all of them are checked.
+     */
+    private void checkAndWait(List<ServerState> states) {
+        List<Future<?>> futures = new ArrayList<>(states.size());
+        for (final ServerState state : states) {
+            try {
+                futures.add(getCheckExecutor().submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        check(state);
+                    }
+                }));
             }
-            else {
-                if (checkedURL.isRecentlyChecked()) {
-                    if (checkedURL.isAvailable()) {
-                        logDebug("Returning cached serverURL: %s", serverURL);
-                        return checkedURL.getURL();
+            catch (RejectedExecutionException e) {
+                // we're being stopped, check the server ourselves...
+                check(state);
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e) {
+                // Will not happen, check does not throw any exceptions...
+            }
+        }
+    }
+
+    /**
+     * Checks the given server in the background, unless it is already being checked.
+     */
+    private void checkInBackground(final ServerState state) {
+        if (!state.startChecking()) {
+            return;
+        }
+        try {
+            getCheckExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        check(state);
                     }
-                    else {
-                        logDebug("Ignoring blacklisted serverURL: %s", serverURL);
-                        return null;
+                    finally {
+                        state.stopChecking();
                     }
                 }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            state.stopChecking();
+        }
+    }
+
+    private void clearServerStates() {
+        synchronized (m_selectionLock) {
+            m_serverStates.clear();
+            m_selected = null;
+        }
+    }
+
+    private ExecutorService getCheckExecutor() {
+        ExecutorService executor = m_checkExecutor;
+        if (executor == null) {
+            synchronized (m_selectionLock) {
+                executor = m_checkExecutor;
+                if (executor == null) {
+                    m_checkExecutor = executor = Executors.newCachedThreadPool(new Activator.InternalThreadFactory());
+                }
             }
+        }
+        return executor;
+    }
+
+    private URL getFirstServerURL(List<String> serverURLs) {
+        for (String serverURL : serverURLs) {
             try {
-                tryConnect(checkedURL.m_url);
-                logDebug("Succesfully connected to serverURL: %s", serverURL);
-                checkedURL.setAvailable(true);
-                return checkedURL.getURL();
+                return new URL(serverURL);
+            }
+            catch (MalformedURLException e) {
+                logWarning("Ignoring invalid/malformed serverURL: %s", serverURL);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the policy to use for the given configured policy, which falls back to the default policy in case the
+     * configured policy is unknown.
+     */
+    private String getSelectionPolicy(String policy) {
+        if (POLICY_ORDERED.equals(policy) || POLICY_LATENCY.equals(policy) || POLICY_ROUNDROBIN.equals(policy)) {
+            return policy;
+        }
+        logWarning("Unknown discovery policy: %s, using %s instead!", policy, DEFAULT_POLICY);
+        return DEFAULT_POLICY;
+    }
+
+    /**
+     * Returns the states of all valid server URLs, in the configured order.
+     */
+    private List<ServerState> getServerStates(List<String> serverURLs) {
+        List<ServerState> result = new ArrayList<>(serverURLs.size());
+        for (String serverURL : serverURLs) {
+            ServerState state = m_serverStates.get(serverURL);
+            if (state == null) {
+                try {
+                    state = new ServerState(new URL(serverURL), m_cacheTime);
+                }
+                catch (MalformedURLException e) {
+                    logWarning("Ignoring invalid/malformed serverURL: %s", serverURL);
+                    continue;
+                }
+                ServerState existing = m_serverStates.putIfAbsent(serverURL, state);
+                if (existing != null) {
+                    state = existing;
+                }
+            }
+            result.add(state);
+        }
+        return result;
+    }
+
+    /**
+     * Selects one of the available servers according to the configured policy. For all policies other than the
+     * ordered policy, the selected server is kept until it is no longer available or the selection expires.
+     */
+    private ServerState select(List<ServerState> available) {
+        String policy = m_selectionPolicy;
+        if (available.size() == 1 || POLICY_ORDERED.equals(policy)) {
+            return available.get(0);
+        }
+
+        synchronized (m_selectionLock) {
+            long now = System.currentTimeMillis();
+            if (m_selected != null && now < m_selectedUntil && available.contains(m_selected)) {
+                return m_selected;
+            }
+
+            ServerState result;
+            if (POLICY_LATENCY.equals(policy)) {
+                result = selectFastest(available);
             }
-            catch (IOException e) {
-                logWarning("Blacklisting unavailable serverURL: %s", serverURL);
-                checkedURL.setAvailable(false);
-                return null;
+            else {
+                result = selectWeighted(available);
+            }
+            if (result != m_selected) {
+                logDebug("Selected serverURL: %s", result.getURL());
+            }
+            m_selected = result;
+            m_selectedUntil = now + m_cacheTime;
+            return result;
+        }
+    }
+
+    private ServerState selectFastest(List<ServerState> available) {
+        ServerState result = null;
+        for (ServerState state : available) {
+            if (result == null || state.getLatency() < result.getLatency()) {
+                result = state;
             }
+        }
+        return result;
+    }
 
+    private URL selectServerURL(List<String> serverURLs) {
+        List<ServerState> states = getServerStates(serverURLs);
+
+        // servers that were never checked are checked right away, others are rechecked in the background so we can
+        // continue with their last known state...
+        List<ServerState> unchecked = new ArrayList<>();
+        for (ServerState state : states) {
+            if (!state.isChecked()) {
+                unchecked.add(state);
+            }
+            else if (!state.isRecentlyChecked()) {
+                checkInBackground(state);
+            }
+        }
+        if (!unchecked.isEmpty()) {
+            checkAndWait(unchecked);
         }
-        catch (MalformedURLException e) {
-            logWarning("Ignoring invalid/malformed serverURL: %s", serverURL);
+
+        List<ServerState> available = new ArrayList<>(states.size());
+        for (ServerState state : states) {
+            if (state.isAvailable()) {
+                available.add(state);
+            }
+        }
+        if (available.isEmpty()) {
+            // no server is known to be available, there is nothing better to do than to wait for a recheck...
+            List<ServerState> stale = new ArrayList<>();
+            for (ServerState state : states) {
+                if (!state.isRecentlyChecked()) {
+                    stale.add(state);
+                }
+            }
+            if (!stale.isEmpty()) {
+                checkAndWait(stale);
+                for (ServerState state : stale) {
+                    if (state.isAvailable()) {
+                        available.add(state);
+                    }
+                }
+            }
+        }
+        if (available.isEmpty()) {
             return null;
         }
+        return select(available).getURL();
+    }
+
+    /**
+     * Selects a server using a smooth weighted round-robin, in which the weight of each server is inversely
+     * proportional to its latency.
+     */
+    private ServerState selectWeighted(List<ServerState> available) {
+        long fastest = Math.max(1l, selectFastest(available).getLatency());
+
+        ServerState result = null;
+        int totalWeight = 0;
+        for (ServerState state : available) {
+            int weight = (int) Math.max(1l, (MAX_WEIGHT * fastest) / Math.max(1l, state.getLatency()));
+            state.m_currentWeight += weight;
+            totalWeight += weight;
+            if (result == null || state.m_currentWeight > result.m_currentWeight) {
+                result = state;
+            }
+        }
+        result.m_currentWeight -= totalWeight;
+        return result;
     }
 
     private void tryConnect(URL serverURL) throws IOException {
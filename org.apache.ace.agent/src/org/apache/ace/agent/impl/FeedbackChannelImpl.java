@@ -34,6 +34,7 @@ import java.net.URLConnection;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.ace.agent.AgentContext;
 import org.apache.ace.agent.ConnectionHandler;
@@ -62,6 +63,8 @@ public class FeedbackChannelImpl implements FeedbackChannel {
     private final AgentContext m_agentContext;
     private final String m_name;
     private final FeedbackStoreManager m_storeManager;
+    /** whether or not feedback is written since the last successful synchronization, initially unknown. */
+    private final AtomicBoolean m_pending = new AtomicBoolean(true);
 
     public FeedbackChannelImpl(AgentContext agentContext, String name) throws IOException {
         m_agentContext = agentContext;
@@ -73,13 +76,41 @@ public class FeedbackChannelImpl implements FeedbackChannel {
         m_storeManager.close();
     }
 
+    @Override
+    public boolean hasPendingFeedback() {
+        return m_pending.get();
+    }
+
     @Override
     public void sendFeedback() throws RetryAfterException, IOException {
+        // Clear the flag up front, so feedback written during the synchronization is picked up next time...
+        m_pending.set(false);
+
+        boolean success = false;
+        try {
+            doSendFeedback();
+            success = true;
+        }
+        finally {
+            if (!success) {
+                m_pending.set(true);
+            }
+        }
+    }
+
+    @Override
+    public void write(int type, Map<String, String> properties) throws IOException {
+        m_storeManager.write(type, properties);
+        m_pending.set(true);
+    }
+
+    private void doSendFeedback() throws RetryAfterException, IOException {
         String identification = getIdentification();
         URL serverURL = getServerURL();
 
         if (identification == null || serverURL == null) {
             logWarning("No identification or server URL present, cannot send feedback!");
+            m_pending.set(true);
             return;
         }
 
@@ -121,11 +152,6 @@ public class FeedbackChannelImpl implements FeedbackChannel {
         }
     }
 
-    @Override
-    public void write(int type, Map<String, String> properties) throws IOException {
-        m_storeManager.write(type, properties);
-    }
-
     private ConnectionHandler getConnectionHandler() {
         return m_agentContext.getHandler(ConnectionHandler.class);
     }
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.agent.impl;
+
+import static org.apache.ace.agent.AgentConstants.CONFIG_CONTROLLER_NOTIFICATIONS;
+import static org.easymock.EasyMock.anyBoolean;
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.notNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.ace.agent.AgentUpdateHandler;
+import org.apache.ace.agent.ConfigurationHandler;
+import org.apache.ace.agent.ConnectionHandler;
+import org.apache.ace.agent.DeploymentHandler;
+import org.apache.ace.agent.DiscoveryHandler;
+import org.apache.ace.agent.FeedbackHandler;
+import org.apache.ace.agent.IdentificationHandler;
+import org.apache.ace.agent.testutil.BaseAgentTest;
+import org.apache.ace.agent.testutil.TestWebServer;
+import org.easymock.IAnswer;
+import org.osgi.framework.Version;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Testing {@link DefaultController}.
+ */
+public class DefaultControllerTest extends BaseAgentTest {
+    private static final int PORT = 8885;
+    private static final String AGENT_ID = "agent";
+    private static final Version VERSION = Version.parseVersion("1.0.0");
+
+    /**
+     * Always reports the same generation, like a server on which nothing changes anymore.
+     */
+    static class TestNotificationServlet extends HttpServlet {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+            if ("1".equals(req.getParameter("generation"))) {
+                // Let the agent wait a little, as a real long-poll would...
+                try {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            PrintWriter writer = resp.getWriter();
+            writer.println("1");
+            writer.close();
+        }
+    }
+
+    private TestWebServer m_webServer;
+    private AgentContextImpl m_agentContext;
+    private CountDownLatch m_deploymentChecks;
+    private AtomicInteger m_deploymentCheckCount;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        m_webServer = new TestWebServer(PORT, "/", "generated");
+        m_webServer.addServlet(new TestNotificationServlet(), "/notification/*");
+        m_webServer.start();
+
+        m_deploymentChecks = new CountDownLatch(3);
+        m_deploymentCheckCount = new AtomicInteger();
+
+        IdentificationHandler identificationHandler = addTestMock(IdentificationHandler.class);
+        expect(identificationHandler.getAgentId()).andReturn(AGENT_ID).anyTimes();
+
+        DiscoveryHandler discoveryHandler = addTestMock(DiscoveryHandler.class);
+        expect(discoveryHandler.getServerUrl()).andReturn(new URL("http://localhost:" + PORT + "/")).anyTimes();
+
+        ConfigurationHandler configurationHandler = addTestMock(ConfigurationHandler.class);
+        expect(configurationHandler.getBoolean(eq(CONFIG_CONTROLLER_NOTIFICATIONS), anyBoolean())).andReturn(true).anyTimes();
+        expect(configurationHandler.getLong(notNull(String.class), anyLong())).andReturn(0L).anyTimes();
+
+        FeedbackHandler feedbackHandler = addTestMock(FeedbackHandler.class);
+        expect(feedbackHandler.getChannelNames()).andReturn(Collections.<String> emptySet()).anyTimes();
+
+        AgentUpdateHandler agentUpdateHandler = addTestMock(AgentUpdateHandler.class);
+        expect(agentUpdateHandler.getInstalledVersion()).andReturn(VERSION).anyTimes();
+        expect(agentUpdateHandler.getHighestAvailableVersion()).andReturn(VERSION).anyTimes();
+
+        DeploymentHandler deploymentHandler = addTestMock(DeploymentHandler.class);
+        expect(deploymentHandler.getInstalledVersion()).andReturn(VERSION).anyTimes();
+        expect(deploymentHandler.getHighestAvailableVersion()).andAnswer(new IAnswer<Version>() {
+            @Override
+            public Version answer() throws Throwable {
+                m_deploymentChecks.countDown();
+                // The first sync succeeds, the second one (triggered by the first notification) fails...
+                if (m_deploymentCheckCount.incrementAndGet() == 2) {
+                    throw new IOException("Server unreachable!");
+                }
+                return VERSION;
+            }
+        }).anyTimes();
+
+        m_agentContext = mockAgentContext();
+        m_agentContext.setHandler(IdentificationHandler.class, identificationHandler);
+        m_agentContext.setHandler(DiscoveryHandler.class, discoveryHandler);
+        m_agentContext.setHandler(ConfigurationHandler.class, configurationHandler);
+        m_agentContext.setHandler(ConnectionHandler.class, new ConnectionHandlerImpl());
+        m_agentContext.setHandler(FeedbackHandler.class, feedbackHandler);
+        m_agentContext.setHandler(AgentUpdateHandler.class, agentUpdateHandler);
+        m_agentContext.setHandler(DeploymentHandler.class, deploymentHandler);
+        replayTestMocks();
+        m_agentContext.start();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        m_agentContext.stop();
+        m_webServer.stop();
+        clearTestMocks();
+    }
+
+    @Test
+    public void testRetrySyncAfterFailedSyncForSameGeneration() throws Exception {
+        final DefaultController controller = new DefaultController();
+        controller.init(m_agentContext);
+        controller.start(m_agentContext);
+
+        Thread thread = new Thread(controller, "Test controller");
+        thread.start();
+        try {
+            // The generation did not change after the failed sync, but the controller should retry nonetheless...
+            assertTrue(m_deploymentChecks.await(10, TimeUnit.SECONDS), "Controller did not retry the failed sync!");
+        }
+        finally {
+            thread.interrupt();
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+            controller.stop();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.agent.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ace.agent.AgentConstants;
+import org.apache.ace.agent.ConfigurationHandler;
+import org.apache.ace.agent.ConnectionHandler;
+import org.apache.ace.agent.DiscoveryHandler;
+import org.apache.ace.agent.EventsHandler;
+import org.apache.ace.agent.LoggingHandler;
+import org.apache.ace.agent.testutil.BaseAgentTest;
+import org.osgi.framework.BundleContext;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Testing the selection policies of {@link DiscoveryHandlerImpl}.
+ */
+public class DiscoveryHandlerImplPolicyTest extends BaseAgentTest {
+
+    /**
+     * Provides connections to fake servers that take a fixed time to connect to, or cannot be connected to at all.
+     */
+    static class TestConnectionHandler implements ConnectionHandler {
+        private final Map<URL, Long> m_connectTimes = new HashMap<>();
+
+        public void setConnectTime(URL url, long connectTime) {
+            m_connectTimes.put(url, connectTime);
+        }
+
+        @Override
+        public URLConnection getConnection(URL url) throws IOException {
+            final Long connectTime = m_connectTimes.get(url);
+            return new URLConnection(url) {
+                @Override
+                public void connect() throws IOException {
+                    if (connectTime == null) {
+                        throw new ConnectException("Connection refused: " + getURL());
+                    }
+                    try {
+                        Thread.sleep(connectTime);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Keeps all logged warnings.
+     */
+    static class TestLoggingHandler implements LoggingHandler {
+        private final List<String> m_warnings = new ArrayList<>();
+
+        @Override
+        public void logDebug(String component, String message, Throwable exception, Object... args) {
+        }
+
+        @Override
+        public void logInfo(String component, String message, Throwable exception, Object... args) {
+        }
+
+        @Override
+        public synchronized void logWarning(String component, String message, Throwable exception, Object... args) {
+            m_warnings.add(String.format(message, args));
+        }
+
+        @Override
+        public void logError(String component, String message, Throwable exception, Object... args) {
+        }
+
+        public synchronized int getWarningCount(String prefix) {
+            int count = 0;
+            for (String warning : m_warnings) {
+                if (warning.startsWith(prefix)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private URL m_unavailableURL;
+    private URL m_slowURL;
+    private URL m_fastURL;
+
+    private TestLoggingHandler m_loggingHandler;
+    private AgentContextImpl m_agentContext;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        m_unavailableURL = new URL("http://unavailable:8080");
+        m_slowURL = new URL("http://slow:8080");
+        m_fastURL = new URL("http://fast:8080");
+
+        TestConnectionHandler connectionHandler = new TestConnectionHandler();
+        connectionHandler.setConnectTime(m_slowURL, 40);
+        connectionHandler.setConnectTime(m_fastURL, 10);
+
+        m_loggingHandler = new TestLoggingHandler();
+
+        BundleContext bc = mockBundleContext();
+
+        m_agentContext = mockAgentContext();
+        // Do not cache the results of checks and selections, so each call selects a server...
+        m_agentContext.setHandler(DiscoveryHandler.class, new DiscoveryHandlerImpl(new String[] { m_unavailableURL.toExternalForm(), m_slowURL.toExternalForm(), m_fastURL.toExternalForm() }, true, 0l));
+        m_agentContext.setHandler(EventsHandler.class, new EventsHandlerImpl(bc));
+        m_agentContext.setHandler(ConfigurationHandler.class, new ConfigurationHandlerImpl(bc));
+        m_agentContext.setHandler(ConnectionHandler.class, connectionHandler);
+        m_agentContext.setHandler(LoggingHandler.class, m_loggingHandler);
+        replayTestMocks();
+        m_agentContext.start();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        m_agentContext.stop();
+        verifyTestMocks();
+        clearTestMocks();
+    }
+
+    @Test
+    public void testOrderedPolicySelectsFirstAvailableServer() throws Exception {
+        configurePolicy(DiscoveryHandlerImpl.POLICY_ORDERED);
+
+        for (URL url : selectServers(10)) {
+            assertEquals(url, m_slowURL);
+        }
+    }
+
+    @Test
+    public void testLatencyPolicySelectsFastestServer() throws Exception {
+        configurePolicy(DiscoveryHandlerImpl.POLICY_LATENCY);
+
+        for (URL url : selectServers(10)) {
+            assertEquals(url, m_fastURL);
+        }
+    }
+
+    @Test
+    public void testRoundRobinPolicySelectsAvailableServersByWeight() throws Exception {
+        configurePolicy(DiscoveryHandlerImpl.POLICY_ROUNDROBIN);
+
+        List<URL> urls = selectServers(20);
+        // the fastest server has the highest weight, hence is selected first...
+        assertEquals(urls.get(0), m_fastURL);
+
+        int fast = 0;
+        int slow = 0;
+        for (URL url : urls) {
+            if (m_fastURL.equals(url)) {
+                fast++;
+            }
+            else if (m_slowURL.equals(url)) {
+                slow++;
+            }
+        }
+        assertEquals(fast + slow, urls.size(), "Unavailable server selected?!");
+        assertTrue(slow > 0, "Slow server never selected?!");
+        assertTrue(fast > slow, "Fast server not selected more often than the slow server?!");
+    }
+
+    @Test
+    public void testUnknownPolicyFallsBackToOrderedPolicy() throws Exception {
+        configurePolicy("unknown");
+
+        for (URL url : selectServers(10)) {
+            assertEquals(url, m_slowURL);
+        }
+
+        // changing other settings should not cause the policy to be reported again...
+        configureAgent(m_agentContext.getHandler(ConfigurationHandler.class),
+            AgentConstants.CONFIG_DISCOVERY_SERVERURLS, concat(m_unavailableURL, m_fastURL, m_slowURL));
+
+        for (URL url : selectServers(10)) {
+            assertEquals(url, m_fastURL);
+        }
+
+        assertEquals(m_loggingHandler.getWarningCount("Unknown discovery policy"), 1);
+    }
+
+    private String concat(URL... urls) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < urls.length; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(urls[i].toExternalForm());
+        }
+        return sb.toString();
+    }
+
+    private void configurePolicy(String policy) {
+        configureAgent(m_agentContext.getHandler(ConfigurationHandler.class),
+            AgentConstants.CONFIG_DISCOVERY_SERVERURLS, concat(m_unavailableURL, m_slowURL, m_fastURL),
+            AgentConstants.CONFIG_DISCOVERY_CHECKING, "true",
+            AgentConstants.CONFIG_DISCOVERY_POLICY, policy);
+    }
+
+    private List<URL> selectServers(int count) {
+        DiscoveryHandler discoveryHandler = m_agentContext.getHandler(DiscoveryHandler.class);
+
+        List<URL> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(discoveryHandler.getServerUrl());
+        }
+        return result;
+    }
+}
@@ -19,7 +19,9 @@
 package org.apache.ace.agent.impl;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 import java.net.URL;
 import java.util.List;
@@ -165,6 +167,50 @@ public class DiscoveryHandlerImplTest extends BaseAgentTest {
         assertEquals(discoveryHandler.getServerUrl(), m_availableURL1);
     }
 
+    @Test
+    public void testLatencyPolicy() throws Exception {
+        ConfigurationHandler configurationHandler = m_agentContext.getHandler(ConfigurationHandler.class);
+
+        configureAgent(configurationHandler,
+            AgentConstants.CONFIG_DISCOVERY_SERVERURLS, concat(m_unavailableURL1, m_availableURL1, m_unavailableURL2, m_availableURL2),
+            AgentConstants.CONFIG_DISCOVERY_CHECKING, "true",
+            AgentConstants.CONFIG_DISCOVERY_POLICY, DiscoveryHandlerImpl.POLICY_LATENCY);
+
+        try {
+            DiscoveryHandler discoveryHandler = m_agentContext.getHandler(DiscoveryHandler.class);
+            URL url = discoveryHandler.getServerUrl();
+            assertNotNull(url);
+            assertTrue(url.equals(m_availableURL1) || url.equals(m_availableURL2), "Unexpected URL: " + url);
+            // the selected server should be used until it becomes unavailable...
+            assertEquals(discoveryHandler.getServerUrl(), url);
+        }
+        finally {
+            configureAgent(configurationHandler, AgentConstants.CONFIG_DISCOVERY_POLICY, DiscoveryHandlerImpl.POLICY_ORDERED);
+        }
+    }
+
+    @Test
+    public void testRoundRobinPolicy() throws Exception {
+        ConfigurationHandler configurationHandler = m_agentContext.getHandler(ConfigurationHandler.class);
+
+        configureAgent(configurationHandler,
+            AgentConstants.CONFIG_DISCOVERY_SERVERURLS, concat(m_unavailableURL1, m_availableURL1, m_availableURL2),
+            AgentConstants.CONFIG_DISCOVERY_CHECKING, "true",
+            AgentConstants.CONFIG_DISCOVERY_POLICY, DiscoveryHandlerImpl.POLICY_ROUNDROBIN);
+
+        try {
+            DiscoveryHandler discoveryHandler = m_agentContext.getHandler(DiscoveryHandler.class);
+            URL url = discoveryHandler.getServerUrl();
+            assertNotNull(url);
+            assertTrue(url.equals(m_availableURL1) || url.equals(m_availableURL2), "Unexpected URL: " + url);
+            // the selected server should be used until it becomes unavailable...
+            assertEquals(discoveryHandler.getServerUrl(), url);
+        }
+        finally {
+            configureAgent(configurationHandler, AgentConstants.CONFIG_DISCOVERY_POLICY, DiscoveryHandlerImpl.POLICY_ORDERED);
+        }
+    }
+
     @Test
     public void testEmptyURLConfig() throws Exception {
         ConfigurationHandler configurationHandler = m_agentContext.getHandler(ConfigurationHandler.class);
@@ -45,6 +45,11 @@ public class EventLoggerImplTest extends BaseAgentTest {
 
         int m_lastType = 0;
 
+        @Override
+        public boolean hasPendingFeedback() {
+            return m_lastType != 0;
+        }
+
         @Override
         public void sendFeedback() throws RetryAfterException, IOException {
         }
@@ -20,6 +20,8 @@ package org.apache.ace.agent.impl;
 
 import static org.easymock.EasyMock.expect;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -43,7 +45,7 @@ import org.apache.ace.agent.testutil.TestWebServer;
 import org.apache.ace.feedback.Descriptor;
 import org.apache.ace.feedback.Event;
 import org.apache.ace.range.SortedRangeSet;
-import org.testng.annotations.AfterTest;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -112,7 +114,7 @@ public class FeedbackChannelImplTest extends BaseAgentTest {
         m_agentContext.start();
     }
 
-    @AfterTest
+    @AfterMethod
     public void tearDownAgain() throws Exception {
         m_webServer.stop();
         m_agentContext.stop();
@@ -132,4 +134,24 @@ public class FeedbackChannelImplTest extends BaseAgentTest {
 
         assertEquals(sendServlet.m_events.size(), 1);
     }
+
+    @Test
+    public void testPendingFeedback() throws Exception {
+        TestSendFeedbackServlet sendServlet = new TestSendFeedbackServlet();
+        m_webServer.addServlet(sendServlet, "/test/send");
+        TestQueryFeedbackServlet queryServlet = new TestQueryFeedbackServlet();
+        m_webServer.addServlet(queryServlet, "/test/query");
+
+        // initially, we do not know whether the server is up to date...
+        assertTrue(m_feedbackChannelImpl.hasPendingFeedback());
+
+        m_feedbackChannelImpl.sendFeedback();
+        assertFalse(m_feedbackChannelImpl.hasPendingFeedback());
+
+        m_feedbackChannelImpl.write(1, new HashMap<String, String>());
+        assertTrue(m_feedbackChannelImpl.hasPendingFeedback());
+
+        m_feedbackChannelImpl.sendFeedback();
+        assertFalse(m_feedbackChannelImpl.hasPendingFeedback());
+    }
 }
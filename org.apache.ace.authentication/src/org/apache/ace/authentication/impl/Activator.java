@@ -18,13 +18,18 @@
  */
 package org.apache.ace.authentication.impl;
 
+import java.util.Properties;
+
 import org.apache.ace.authentication.api.AuthenticationProcessor;
 import org.apache.ace.authentication.api.AuthenticationService;
 import org.apache.felix.dm.DependencyActivatorBase;
 import org.apache.felix.dm.DependencyManager;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.service.cm.ManagedService;
 import org.osgi.service.log.LogService;
 import org.osgi.service.useradmin.UserAdmin;
+import org.osgi.service.useradmin.UserAdminListener;
 
 /**
  * Provides a bundle activator for the {@link AuthenticationServiceImpl}.
@@ -36,9 +41,12 @@ public class Activator extends DependencyActivatorBase {
      */
     @Override
     public void init(BundleContext context, DependencyManager manager) throws Exception {
+        Properties props = new Properties();
+        props.put(Constants.SERVICE_PID, AuthenticationServiceImpl.PID);
+
 // @formatter:off
         manager.add(createComponent()
-            .setInterface(AuthenticationService.class.getName(), null)
+            .setInterface(new String[] { AuthenticationService.class.getName(), ManagedService.class.getName(), UserAdminListener.class.getName() }, props)
             .setImplementation(new AuthenticationServiceImpl())
             .add(createServiceDependency()
                 .setRequired(true)
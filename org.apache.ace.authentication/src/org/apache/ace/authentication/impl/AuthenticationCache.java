@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.authentication.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.osgi.service.useradmin.User;
+
+/**
+ * Bounded cache of successful authentications. Entries are keyed by a SHA-256 hash of the credentials found in the
+ * authentication context, so no credentials are kept in memory, and expire after a configurable time-to-live. Only
+ * contexts consisting of credentials we know how to hash can be cached, for all other contexts
+ * {@link #createKey(Object...)} returns <code>null</code>.
+ */
+class AuthenticationCache {
+    static final String ATTRIBUTE_X509_CERTIFICATE = "javax.servlet.request.X509Certificate";
+    static final String ATTRIBUTE_CIPHER_SUITE = "javax.servlet.request.cipher_suite";
+    static final String HEADER_AUTHORIZATION = "Authorization";
+
+    private static class CacheEntry {
+        final User m_user;
+        final long m_expiresAt;
+
+        CacheEntry(User user, long expiresAt) {
+            m_user = user;
+            m_expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<String, CacheEntry> m_entries;
+    private final int m_maxSize;
+    private final long m_ttl;
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    // Guarded by m_entries...
+    private long m_epoch;
+
+    /**
+     * Creates a new {@link AuthenticationCache} instance.
+     * 
+     * @param maxSize
+     *            the maximum number of entries to keep, when exceeded, the least recently used entry is evicted;
+     * @param ttl
+     *            the time (in milliseconds) an entry remains valid.
+     */
+    AuthenticationCache(final int maxSize, long ttl) {
+        m_maxSize = maxSize;
+        m_ttl = ttl;
+        m_entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true /* accessOrder */) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return <code>true</code> if this cache can hold any entries, <code>false</code> if caching is disabled.
+     */
+    boolean isEnabled() {
+        return m_maxSize > 0 && m_ttl > 0;
+    }
+
+    /**
+     * Returns the cached user for the given key.
+     * 
+     * @param key
+     *            the key as created by {@link #createKey(Object...)}, cannot be <code>null</code>.
+     * @return the cached user, or <code>null</code> if there is no (valid) entry for the given key.
+     */
+    User get(String key) {
+        synchronized (m_entries) {
+            CacheEntry entry = m_entries.get(key);
+            if (entry != null && entry.m_expiresAt <= System.currentTimeMillis()) {
+                m_entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                m_misses.incrementAndGet();
+                return null;
+            }
+            m_hits.incrementAndGet();
+            return entry.m_user;
+        }
+    }
+
+    /**
+     * Returns the current epoch of this cache, which changes each time this cache is cleared. An authentication should
+     * obtain the epoch before it consults any authentication processor, and pass it to {@link #put(String, long, User, Object...)}.
+     * 
+     * @return the current epoch.
+     */
+    long getEpoch() {
+        synchronized (m_entries) {
+            return m_epoch;
+        }
+    }
+
+    /**
+     * Caches a successful authentication, unless this cache is cleared after the authentication started.
+     * 
+     * @param key
+     *            the key as created by {@link #createKey(Object...)}, cannot be <code>null</code>;
+     * @param epoch
+     *            the epoch as returned by {@link #getEpoch()} before the authentication started;
+     * @param user
+     *            the authenticated user, cannot be <code>null</code>;
+     * @param context
+     *            the authentication context, used to limit the lifetime of the entry to that of any certificates in it.
+     */
+    void put(String key, long epoch, User user, Object... context) {
+        if (!isEnabled()) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + m_ttl;
+        for (Object obj : context) {
+            X509Certificate[] chain = getCertificateChain(obj);
+            if (chain != null) {
+                for (X509Certificate cert : chain) {
+                    expiresAt = Math.min(expiresAt, cert.getNotAfter().getTime());
+                }
+            }
+        }
+        synchronized (m_entries) {
+            if (epoch != m_epoch) {
+                // the users or their credentials have changed in the meantime, the authentication might be stale...
+                return;
+            }
+            m_entries.put(key, new CacheEntry(user, expiresAt));
+        }
+    }
+
+    /**
+     * Removes all entries from this cache, for example, because the users or their credentials have changed.
+     */
+    void clear() {
+        synchronized (m_entries) {
+            m_entries.clear();
+            m_epoch++;
+        }
+    }
+
+    /**
+     * @return the number of entries currently in this cache.
+     */
+    int size() {
+        synchronized (m_entries) {
+            return m_entries.size();
+        }
+    }
+
+    /**
+     * @return the number of lookups that were answered from this cache.
+     */
+    long getHits() {
+        return m_hits.get();
+    }
+
+    /**
+     * @return the number of lookups that could not be answered from this cache.
+     */
+    long getMisses() {
+        return m_misses.get();
+    }
+
+    /**
+     * Creates a cache key for the given authentication context.
+     * 
+     * @param context
+     *            the authentication context to create a key for.
+     * @return a hash of the credentials in the given context, or <code>null</code> if the context cannot be cached.
+     */
+    static String createKey(Object... context) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object obj : context) {
+                if (obj instanceof String) {
+                    update(digest, 'S', ((String) obj).getBytes(StandardCharsets.UTF_8));
+                }
+                else if (obj instanceof byte[]) {
+                    update(digest, 'B', (byte[]) obj);
+                }
+                else if (obj instanceof HttpServletRequest) {
+                    if (!updateWithRequest(digest, (HttpServletRequest) obj)) {
+                        return null;
+                    }
+                }
+                else {
+                    // unknown context, we cannot tell what a processor would use from it...
+                    return null;
+                }
+            }
+            return toHex(digest.digest());
+        }
+        catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            return null;
+        }
+    }
+
+    private static boolean updateWithRequest(MessageDigest digest, HttpServletRequest request) throws CertificateEncodingException {
+        boolean hasCredentials = false;
+
+        String authHeader = request.getHeader(HEADER_AUTHORIZATION);
+        if (authHeader != null) {
+            update(digest, 'H', authHeader.getBytes(StandardCharsets.UTF_8));
+            hasCredentials = true;
+        }
+
+        Object cipherSuite = request.getAttribute(ATTRIBUTE_CIPHER_SUITE);
+        X509Certificate[] chain = getCertificateChain(request);
+        if (cipherSuite != null && chain != null) {
+            update(digest, 'T', cipherSuite.toString().getBytes(StandardCharsets.UTF_8));
+            for (X509Certificate cert : chain) {
+                // the hash of the encoded certificate is its fingerprint...
+                update(digest, 'C', cert.getEncoded());
+            }
+            hasCredentials = true;
+        }
+
+        return hasCredentials;
+    }
+
+    private static X509Certificate[] getCertificateChain(Object obj) {
+        if (obj instanceof HttpServletRequest) {
+            Object chain = ((HttpServletRequest) obj).getAttribute(ATTRIBUTE_X509_CERTIFICATE);
+            if (chain instanceof X509Certificate[] && ((X509Certificate[]) chain).length > 0) {
+                return (X509Certificate[]) chain;
+            }
+        }
+        return null;
+    }
+
+    private static void update(MessageDigest digest, char type, byte[] value) {
+        // prefix each value with its type and length to make the resulting hash unambiguous...
+        int length = value.length;
+        digest.update((byte) type);
+        digest.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length });
+        digest.update(value);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -19,26 +19,47 @@
 package org.apache.ace.authentication.impl;
 
 import java.util.ArrayList;
+import java.util.Dictionary;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.ace.authentication.api.AuthenticationProcessor;
 import org.apache.ace.authentication.api.AuthenticationService;
 import org.apache.felix.dm.DependencyManager;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.osgi.service.log.LogService;
 import org.osgi.service.useradmin.Role;
 import org.osgi.service.useradmin.User;
 import org.osgi.service.useradmin.UserAdmin;
+import org.osgi.service.useradmin.UserAdminEvent;
+import org.osgi.service.useradmin.UserAdminListener;
 
 /**
  * Provides a basic implementation for {@link AuthenticationService} that returns the first matching user.
+ * <p>
+ * Successful authentications are cached for a limited time, keyed by a hash of the given credentials. The cache is
+ * cleared as soon as any role in the {@link UserAdmin} changes, or authentication processors come or go.
+ * </p>
  */
-public class AuthenticationServiceImpl implements AuthenticationService {
+public class AuthenticationServiceImpl implements AuthenticationService, ManagedService, UserAdminListener {
+    public static final String PID = "org.apache.ace.authentication";
+
+    /** The time (in seconds) a successful authentication is cached, use 0 to disable caching. */
+    static final String KEY_CACHE_TTL = "cache.ttl";
+    /** The maximum number of cached authentications. */
+    static final String KEY_CACHE_SIZE = "cache.size";
+
+    private static final int DEFAULT_CACHE_TTL = 60;
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+
     private volatile UserAdmin m_userAdmin;
     private volatile LogService m_log;
+    private volatile AuthenticationCache m_cache;
 
     private final CopyOnWriteArrayList<AuthenticationProcessor> m_processors;
 
@@ -47,14 +68,15 @@ public class AuthenticationServiceImpl implements AuthenticationService {
      */
     public AuthenticationServiceImpl() {
         m_processors = new CopyOnWriteArrayList<>();
+        m_cache = new AuthenticationCache(DEFAULT_CACHE_SIZE, TimeUnit.SECONDS.toMillis(DEFAULT_CACHE_TTL));
     }
 
     /**
      * Creates a new {@link AuthenticationServiceImpl} instance.
      */
     AuthenticationServiceImpl(LogService log) {
+        this();
         m_log = log;
-        m_processors = new CopyOnWriteArrayList<>();
     }
 
     /**
@@ -69,7 +91,20 @@ public class AuthenticationServiceImpl implements AuthenticationService {
             throw new IllegalArgumentException("Invalid context!");
         }
 
+        AuthenticationCache cache = m_cache;
+        String cacheKey = cache.isEnabled() ? AuthenticationCache.createKey(context) : null;
+        // obtained before consulting the processors, so any change to the users in the meantime is noticed...
+        long cacheEpoch = cache.getEpoch();
+
         User result = null;
+        if (cacheKey != null) {
+            result = cache.get(cacheKey);
+            if (result != null) {
+                m_log.log(LogService.LOG_DEBUG, String.format("Context (%s) authenticated as user %s (cached)", describeContext(context), result.getName()));
+                return result;
+            }
+        }
+
         for (AuthenticationProcessor processor : getProcessors(context)) {
             result = processor.authenticate(m_userAdmin, context);
             if (result != null) {
@@ -78,6 +113,9 @@ public class AuthenticationServiceImpl implements AuthenticationService {
         }
 
         if (result != null) {
+            if (cacheKey != null) {
+                cache.put(cacheKey, cacheEpoch, result, context);
+            }
             m_log.log(LogService.LOG_DEBUG, String.format("Context (%s) authenticated as user %s", describeContext(context), result.getName()));
         }
         else {
@@ -115,7 +153,9 @@ public class AuthenticationServiceImpl implements AuthenticationService {
      *            the authentication processor to add.
      */
     protected void addAuthenticationProcessor(AuthenticationProcessor processor) {
-        m_processors.addIfAbsent(processor);
+        if (m_processors.addIfAbsent(processor)) {
+            clearCache();
+        }
     }
 
     /**
@@ -125,7 +165,68 @@ public class AuthenticationServiceImpl implements AuthenticationService {
      *            the authentication processor to remove.
      */
     protected void removeAuthenticationProcessor(AuthenticationProcessor processor) {
-        m_processors.remove(processor);
+        if (m_processors.remove(processor)) {
+            clearCache();
+        }
+    }
+
+    /**
+     * Called by the {@link UserAdmin} service upon any change of a role, which might invalidate cached
+     * authentications.
+     */
+    public void roleChanged(UserAdminEvent event) {
+        clearCache();
+    }
+
+    public void updated(Dictionary<String, ?> properties) throws ConfigurationException {
+        int ttl = DEFAULT_CACHE_TTL;
+        int size = DEFAULT_CACHE_SIZE;
+        if (properties != null) {
+            ttl = getIntProperty(properties, KEY_CACHE_TTL, DEFAULT_CACHE_TTL);
+            size = getIntProperty(properties, KEY_CACHE_SIZE, DEFAULT_CACHE_SIZE);
+        }
+        m_cache = new AuthenticationCache(size, TimeUnit.SECONDS.toMillis(ttl));
+    }
+
+    /**
+     * @return the number of authentications that were answered from the cache.
+     */
+    final long getCacheHits() {
+        return m_cache.getHits();
+    }
+
+    /**
+     * @return the number of authentications that could not be answered from the cache.
+     */
+    final long getCacheMisses() {
+        return m_cache.getMisses();
+    }
+
+    private void clearCache() {
+        AuthenticationCache cache = m_cache;
+        if (cache != null) {
+            if (m_log != null && cache.size() > 0) {
+                m_log.log(LogService.LOG_DEBUG, String.format("Clearing authentication cache (%d entries, %d hits, %d misses)", cache.size(), cache.getHits(), cache.getMisses()));
+            }
+            cache.clear();
+        }
+    }
+
+    private static int getIntProperty(Dictionary<String, ?> properties, String key, int defaultValue) throws ConfigurationException {
+        Object value = properties.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int result = Integer.parseInt(value.toString().trim());
+            if (result < 0) {
+                throw new ConfigurationException(key, "Value cannot be negative!");
+            }
+            return result;
+        }
+        catch (NumberFormatException e) {
+            throw new ConfigurationException(key, "Invalid value!", e);
+        }
     }
 
     private String describeContext(Object... context) {
@@ -23,15 +23,23 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.util.Date;
+import java.util.Dictionary;
+import java.util.Hashtable;
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.apache.ace.authentication.api.AuthenticationProcessor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -39,6 +47,7 @@ import org.mockito.stubbing.Answer;
 import org.osgi.service.log.LogService;
 import org.osgi.service.useradmin.User;
 import org.osgi.service.useradmin.UserAdmin;
+import org.osgi.service.useradmin.UserAdminEvent;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -54,6 +63,133 @@ public class AuthenticationServiceImplTest {
         m_log = mock(LogService.class);
     }
 
+    /**
+     * Tests that successful authentications are cached and no longer reach the authentication processors.
+     */
+    @Test()
+    public void testAuthenticationIsCached() {
+        AuthenticationServiceImpl authService = createAuthenticationService();
+
+        User user = mock(User.class);
+
+        AuthenticationProcessor authProc = mock(AuthenticationProcessor.class);
+        when(authProc.canHandle(anyString(), anyString())).thenReturn(Boolean.TRUE);
+        when(authProc.authenticate(Mockito.<UserAdmin> any(), eq("foo"), eq("bar"))).thenReturn(user);
+
+        registerAuthProcessor(authService, authProc);
+
+        assertEquals(authService.authenticate("foo", "bar"), user);
+        assertEquals(authService.authenticate("foo", "bar"), user);
+        assertNull(authService.authenticate("foo", "qux"));
+
+        verify(authProc, times(1)).authenticate(Mockito.<UserAdmin> any(), eq("foo"), eq("bar"));
+        assertEquals(authService.getCacheHits(), 1);
+        assertEquals(authService.getCacheMisses(), 2);
+    }
+
+    /**
+     * Tests that cached authentications are dropped as soon as a role changes.
+     */
+    @Test()
+    public void testAuthenticationCacheIsClearedUponRoleChange() {
+        AuthenticationServiceImpl authService = createAuthenticationService();
+
+        User user = mock(User.class);
+
+        AuthenticationProcessor authProc = mock(AuthenticationProcessor.class);
+        when(authProc.canHandle(anyString())).thenReturn(Boolean.TRUE);
+        when(authProc.authenticate(Mockito.<UserAdmin> any(), eq("foo"))).thenReturn(user);
+
+        registerAuthProcessor(authService, authProc);
+
+        assertEquals(authService.authenticate("foo"), user);
+        authService.roleChanged(mock(UserAdminEvent.class));
+        assertEquals(authService.authenticate("foo"), user);
+
+        verify(authProc, times(2)).authenticate(Mockito.<UserAdmin> any(), eq("foo"));
+    }
+
+    /**
+     * Tests that an authentication is not cached when a role changes while the authentication processors are consulted.
+     */
+    @Test()
+    public void testAuthenticationIsNotCachedWhenRoleChangesDuringAuthentication() {
+        final AuthenticationServiceImpl authService = createAuthenticationService();
+
+        final User user = mock(User.class);
+
+        AuthenticationProcessor authProc = mock(AuthenticationProcessor.class);
+        when(authProc.canHandle(anyString())).thenReturn(Boolean.TRUE);
+        when(authProc.authenticate(Mockito.<UserAdmin> any(), eq("foo"))).thenAnswer(new Answer<User>() {
+            private boolean m_first = true;
+
+            public User answer(InvocationOnMock invocation) throws Throwable {
+                if (m_first) {
+                    // the credentials of the user are changed after the cache lookup, but before the result is cached...
+                    m_first = false;
+                    authService.roleChanged(mock(UserAdminEvent.class));
+                }
+                return user;
+            }
+        });
+
+        registerAuthProcessor(authService, authProc);
+
+        assertEquals(authService.authenticate("foo"), user);
+        assertEquals(authService.authenticate("foo"), user);
+        assertEquals(authService.authenticate("foo"), user);
+
+        verify(authProc, times(2)).authenticate(Mockito.<UserAdmin> any(), eq("foo"));
+        assertEquals(authService.getCacheHits(), 1);
+    }
+
+    /**
+     * Tests that the authentication cache can be disabled.
+     */
+    @Test()
+    public void testAuthenticationCacheCanBeDisabled() throws Exception {
+        AuthenticationServiceImpl authService = createAuthenticationService();
+
+        Dictionary<String, Object> props = new Hashtable<>();
+        props.put(AuthenticationServiceImpl.KEY_CACHE_TTL, "0");
+        authService.updated(props);
+
+        User user = mock(User.class);
+
+        AuthenticationProcessor authProc = mock(AuthenticationProcessor.class);
+        when(authProc.canHandle(anyString())).thenReturn(Boolean.TRUE);
+        when(authProc.authenticate(Mockito.<UserAdmin> any(), eq("foo"))).thenReturn(user);
+
+        registerAuthProcessor(authService, authProc);
+
+        assertEquals(authService.authenticate("foo"), user);
+        assertEquals(authService.authenticate("foo"), user);
+
+        verify(authProc, times(2)).authenticate(Mockito.<UserAdmin> any(), eq("foo"));
+        assertEquals(authService.getCacheHits(), 0);
+    }
+
+    /**
+     * Tests that only requests with credentials can be cached, and that their cache keys depend on these credentials.
+     */
+    @Test()
+    public void testAuthenticationCacheKeys() {
+        HttpServletRequest request1 = mock(HttpServletRequest.class);
+        when(request1.getHeader(AuthenticationCache.HEADER_AUTHORIZATION)).thenReturn("Basic Zm9vOmJhcg==");
+        HttpServletRequest request2 = mock(HttpServletRequest.class);
+        when(request2.getHeader(AuthenticationCache.HEADER_AUTHORIZATION)).thenReturn("Basic Zm9vOmJheg==");
+
+        String key = AuthenticationCache.createKey(request1);
+        assertNotNull(key);
+        assertFalse(key.contains("Zm9v"));
+        assertEquals(AuthenticationCache.createKey(request1), key);
+        assertNotEquals(AuthenticationCache.createKey(request2), key);
+
+        assertNull(AuthenticationCache.createKey(mock(HttpServletRequest.class)));
+        assertNull(AuthenticationCache.createKey(new Date()));
+        assertNotEquals(AuthenticationCache.createKey("ab", "c"), AuthenticationCache.createKey("a", "bc"));
+    }
+
     /**
      * Tests that an exception is thrown if a null context is given.
      */
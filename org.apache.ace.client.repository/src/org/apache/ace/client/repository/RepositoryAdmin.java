@@ -182,4 +182,25 @@ public interface RepositoryAdmin
      * you probably don't want to delete the cache.
      */
     public void deleteLocal();
+
+    /**
+     * Starts a batch of changes to the model. Until the batch is ended, all change events are buffered, after which
+     * they are delivered in a coalesced form: all changes to objects of the same type are combined into a single event
+     * that reports the net change of each object (see {@link RepositoryObject#TOPIC_BATCH_SUFFIX}). Note that this
+     * also means that derived state, such as the endpoints of associations or the state of stateful targets, is only
+     * updated when the batch ends. Batches can be nested, in which case the events are delivered when the outermost
+     * batch ends.
+     * <p>
+     * Each call to this method should be followed by a call to {@link #endBatch()}, preferably in a
+     * <code>finally</code> block.
+     * </p>
+     */
+    public void startBatch();
+
+    /**
+     * Ends a batch of changes to the model that was started by {@link #startBatch()}, delivering all buffered change
+     * events in case this ends the outermost batch.
+     * @throws IllegalStateException in case no batch was started.
+     */
+    public void endBatch();
 }
\ No newline at end of file
@@ -35,6 +35,18 @@ public interface RepositoryObject extends Associatable {
      * This key is used to store the RepositoryObject an event comes from, in the Event object.
      */
     public final static String EVENT_ENTITY = "entity";
+    /**
+     * This key is used to store the collection of RepositoryObjects that are added in a batch, in the Event object.
+     */
+    public final static String EVENT_ADDED_ENTITIES = "addedEntities";
+    /**
+     * This key is used to store the collection of RepositoryObjects that are changed in a batch, in the Event object.
+     */
+    public final static String EVENT_CHANGED_ENTITIES = "changedEntities";
+    /**
+     * This key is used to store the collection of RepositoryObjects that are removed in a batch, in the Event object.
+     */
+    public final static String EVENT_REMOVED_ENTITIES = "removedEntities";
 
     public static final String PUBLIC_TOPIC_ROOT = RepositoryObject.class.getPackage().getName().replace('.', '/') + "/public/";
     public static final String PRIVATE_TOPIC_ROOT = RepositoryObject.class.getPackage().getName().replace('.', '/') + "/private/";
@@ -42,6 +54,12 @@ public interface RepositoryObject extends Associatable {
     public static final String TOPIC_ADDED_SUFFIX = "ADDED";
     public static final String TOPIC_REMOVED_SUFFIX = "REMOVED";
     public static final String TOPIC_CHANGED_SUFFIX = "CHANGED";
+    /**
+     * Suffix of the topic of events that replace the individual added, changed and removed events of many objects of
+     * the same type at once. These events contain all three of the <code>EVENT_*_ENTITIES</code> properties, each of
+     * which can be empty.
+     */
+    public static final String TOPIC_BATCH_SUFFIX = "BATCH";
     public static final String TOPIC_ALL_SUFFIX = "*";
 
     /**
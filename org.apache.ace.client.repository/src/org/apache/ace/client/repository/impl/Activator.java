@@ -43,6 +43,7 @@ import org.apache.ace.client.repository.repository.DeploymentVersionRepository;
 import org.apache.ace.client.repository.repository.RepositoryConfiguration;
 import org.apache.ace.client.repository.repository.TargetRepository;
 import org.apache.ace.client.repository.stateful.StatefulTargetRepository;
+import org.apache.ace.client.repository.stateful.impl.AuditLogListener;
 import org.apache.ace.client.repository.stateful.impl.StatefulTargetRepositoryImpl;
 import org.apache.ace.log.server.store.LogStore;
 import org.apache.felix.dm.Component;
@@ -224,10 +225,19 @@ public class Activator extends DependencyActivatorBase implements SessionFactory
             .add(createServiceDependency().setService(EventAdmin.class).setRequired(true))
             .add(createServiceDependency().setService(LogService.class).setRequired(false));
 
+        // Let the stateful target repository know about new audit events as soon as they are stored...
+        Dictionary<String, Object> auditLogTopic = new Hashtable<>();
+        auditLogTopic.put(EventConstants.EVENT_TOPIC, new String[] { LogStore.EVENT_TOPIC });
+        auditLogTopic.put(EventConstants.EVENT_FILTER, "(" + LogStore.EVENT_PROP_LOGNAME + "=auditlog)");
+
+        Component auditLogListenerComponent = createComponent()
+            .setInterface(EventHandler.class.getName(), auditLogTopic)
+            .setImplementation(new AuditLogListener(statefulTargetRepositoryImpl));
+
         rai.addPreCommitMember(statefulTargetRepositoryImpl);
 
         // Publish our components to our session data for later use...
-        sd.addComponents(m_dependencyManager, repositoryAdminComponent, statefulTargetRepositoryComponent);
+        sd.addComponents(m_dependencyManager, repositoryAdminComponent, statefulTargetRepositoryComponent, auditLogListenerComponent);
     }
 
     /**
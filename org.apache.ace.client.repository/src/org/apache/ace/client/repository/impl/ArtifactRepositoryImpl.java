@@ -20,6 +20,7 @@ package org.apache.ace.client.repository.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -30,6 +31,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.ace.client.repository.RepositoryUtil;
 import org.apache.ace.client.repository.helper.ArtifactHelper;
@@ -62,6 +69,10 @@ import com.thoughtworks.xstream.io.HierarchicalStreamReader;
  */
 public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectImpl, ArtifactObject> implements ArtifactRepository {
     private final static String XML_NODE = "artifacts";
+    /** The maximum number of artifacts that are recognized and uploaded concurrently. */
+    private final static int MAX_IMPORT_THREADS = 4;
+    /** The time (in seconds) to wait for running imports to finish when a batch import fails. */
+    private final static long IMPORT_TERMINATION_TIMEOUT = 30;
 
     // Injected by Dependency Manager
     private volatile BundleContext m_context;
@@ -187,17 +198,28 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
      */
     protected Map<Class<?>, Object> findRecognizerAndHelper(Object input) throws IllegalArgumentException {
         // check input.
-        URL url = null;
-        String mimetype = null;
         if (input instanceof URL) {
-            url = (URL) input;
+            return findRecognizerAndHelper(null, convertToArtifactResource((URL) input));
         }
         else if (input instanceof String) {
-            mimetype = (String) input;
+            return findRecognizerAndHelper((String) input, null);
         }
         else {
             throw new IllegalArgumentException("findRecognizer received an unrecognized input.");
         }
+    }
+
+    /**
+     * Returns the <code>ArtifactHelper</code>, <code>ArtifactRecognizer</code> and, if not specified, the mimetype
+     * for either a given mimetype or a given artifact resource.
+     * 
+     * @param mimetype
+     *            the mimetype to find a recognizer for, or <code>null</code> to recognize the given resource;
+     * @param resource
+     *            the resource to recognize, only used when the given mimetype is <code>null</code>.
+     * @return a mapping from a class to an instance of that class, see {@link #findRecognizerAndHelper(Object)}.
+     */
+    private Map<Class<?>, Object> findRecognizerAndHelper(String mimetype, ArtifactResource resource) throws IllegalArgumentException {
 
         // Get all published ArtifactRecognizers.
         List<ServiceReference<ArtifactRecognizer>> refs = new ArrayList<>();
@@ -217,8 +239,6 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
         // Sort the references by service ranking.
         Collections.sort(refs, Collections.reverseOrder());
 
-        ArtifactResource resource = convertToArtifactResource(url);
-
         // Check all referenced services to find one that matches our input.
         ArtifactRecognizer recognizer = null;
         String foundMimetype = null;
@@ -246,7 +266,7 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
         }
 
         if (recognizer == null) {
-            throw new IllegalArgumentException("There is no artifact recognizer that recognizes artifact " + ((mimetype != null) ? mimetype : url));
+            throw new IllegalArgumentException("There is no artifact recognizer that recognizes artifact " + ((mimetype != null) ? mimetype : resource.getURL()));
         }
 
         // Package the results in the map.
@@ -287,13 +307,19 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
             throw new IllegalArgumentException("The URL to import cannot be null or empty.");
         }
         checkURL(artifact);
-        
-        Map<Class<?>, Object> fromArtifact = findRecognizerAndHelper(artifact);
-        ArtifactRecognizer recognizer = (ArtifactRecognizer) fromArtifact.get(ArtifactRecognizer.class);
-        ArtifactHelper helper = (ArtifactHelper) fromArtifact.get(ArtifactHelper.class);
-        String mimetype = (String) fromArtifact.get(String.class);
-        
-        return importArtifact(artifact, recognizer, helper, mimetype, false, upload);
+
+        SpooledArtifactResource resource = spool(artifact);
+        try {
+            Map<Class<?>, Object> fromArtifact = findRecognizerAndHelper(null, resource);
+            ArtifactRecognizer recognizer = (ArtifactRecognizer) fromArtifact.get(ArtifactRecognizer.class);
+            ArtifactHelper helper = (ArtifactHelper) fromArtifact.get(ArtifactHelper.class);
+            String mimetype = (String) fromArtifact.get(String.class);
+
+            return importArtifact(resource, recognizer, helper, mimetype, false, upload);
+        }
+        finally {
+            resource.close();
+        }
     }
 
     public ArtifactObject importArtifact(URL artifact, String mimetype, boolean upload) throws IllegalArgumentException, IOException {
@@ -305,20 +331,133 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
         }
         
         checkURL(artifact);
-        
-        Map<Class<?>, Object> fromMimetype = findRecognizerAndHelper(mimetype);
+
+        Map<Class<?>, Object> fromMimetype = findRecognizerAndHelper(mimetype, null);
         ArtifactRecognizer recognizer = (ArtifactRecognizer) fromMimetype.get(ArtifactRecognizer.class);
         ArtifactHelper helper = (ArtifactHelper) fromMimetype.get(ArtifactHelper.class);
-        
-        return importArtifact(artifact, recognizer, helper, mimetype, true, upload);
+
+        SpooledArtifactResource resource = spool(artifact);
+        try {
+            return importArtifact(resource, recognizer, helper, mimetype, true, upload);
+        }
+        finally {
+            resource.close();
+        }
     }
 
-    private ArtifactObject importArtifact(URL artifact, ArtifactRecognizer recognizer, ArtifactHelper helper, String mimetype, boolean overwrite, boolean upload) throws IOException {
-        ArtifactResource resource = convertToArtifactResource(artifact);
+    public List<ArtifactObject> importArtifacts(List<URL> artifacts, final boolean upload) throws IllegalArgumentException, IOException {
+        if (artifacts == null) {
+            throw new IllegalArgumentException("The URLs to import cannot be null.");
+        }
+        for (URL artifact : artifacts) {
+            if ((artifact == null) || (artifact.toString().length() == 0)) {
+                throw new IllegalArgumentException("The URL to import cannot be null or empty.");
+            }
+            checkURL(artifact);
+        }
+        if (artifacts.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-        Map<String, String> attributes = recognizer.extractMetaData(resource);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(artifacts.size(), MAX_IMPORT_THREADS));
+        List<Future<Map<String, String>>> futures = new ArrayList<>();
+        boolean success = false;
+        try {
+            for (final URL artifact : artifacts) {
+                futures.add(executor.submit(new Callable<Map<String, String>>() {
+                    @Override
+                    public Map<String, String> call() throws Exception {
+                        SpooledArtifactResource resource = spool(artifact);
+                        try {
+                            Map<Class<?>, Object> fromArtifact = findRecognizerAndHelper(null, resource);
+                            ArtifactRecognizer recognizer = (ArtifactRecognizer) fromArtifact.get(ArtifactRecognizer.class);
+                            ArtifactHelper helper = (ArtifactHelper) fromArtifact.get(ArtifactHelper.class);
+                            String mimetype = (String) fromArtifact.get(String.class);
+
+                            return getImportAttributes(resource, recognizer, helper, mimetype, false, upload);
+                        }
+                        finally {
+                            resource.close();
+                        }
+                    }
+                }));
+            }
+
+            List<Map<String, String>> attributes = new ArrayList<>();
+            List<Map<String, String>> tags = new ArrayList<>();
+            for (Future<Map<String, String>> future : futures) {
+                attributes.add(getImportResult(future));
+                tags.add(new HashMap<String, String>());
+            }
+
+            List<ArtifactObject> result = new ArrayList<ArtifactObject>(createAll(attributes, tags));
+            success = true;
+            return result;
+        }
+        finally {
+            // cancels any pending imports in case one of them failed...
+            executor.shutdownNow();
+            if (!success && upload) {
+                // none of the artifacts are created, so remove the ones that are already uploaded, allowing the same
+                // artifacts to be imported again...
+                removeUploads(executor, futures);
+            }
+        }
+    }
+
+    /**
+     * Removes all artifacts that are successfully uploaded by the given imports from the OBR. Waits for any running
+     * imports to finish first, as they might still complete their upload.
+     */
+    private void removeUploads(ExecutorService executor, List<Future<Map<String, String>>> futures) {
+        try {
+            if (!executor.awaitTermination(IMPORT_TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
+                m_log.log(LogService.LOG_WARNING, "Not all imports finished in time, some artifacts might remain in the OBR!");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Future<Map<String, String>> future : futures) {
+            if (!future.isDone() || future.isCancelled()) {
+                continue;
+            }
+            String location;
+            try {
+                location = future.get().get(ArtifactObject.KEY_URL);
+                if (location == null) {
+                    continue;
+                }
+            }
+            catch (Exception e) {
+                // this import failed, so there is nothing to remove...
+                continue;
+            }
+            try {
+                delete(new URL(location));
+            }
+            catch (IOException e) {
+                m_log.log(LogService.LOG_WARNING, "Failed to remove uploaded artifact " + location + " from the OBR!", e);
+            }
+        }
+    }
+
+    private ArtifactObject importArtifact(SpooledArtifactResource resource, ArtifactRecognizer recognizer, ArtifactHelper helper, String mimetype, boolean overwrite, boolean upload) throws IOException {
+        Map<String, String> attributes = getImportAttributes(resource, recognizer, helper, mimetype, overwrite, upload);
         Map<String, String> tags = new HashMap<>();
 
+        ArtifactObject result = create(attributes, tags);
+        return result;
+    }
+
+    /**
+     * Determines the attributes of an artifact to import, uploading it if needed.
+     */
+    private Map<String, String> getImportAttributes(SpooledArtifactResource resource, ArtifactRecognizer recognizer, ArtifactHelper helper, String mimetype, boolean overwrite, boolean upload) throws IOException {
+        URL artifact = resource.getURL();
+
+        Map<String, String> attributes = recognizer.extractMetaData(resource);
+
         helper.checkAttributes(attributes);
         attributes.put(ArtifactObject.KEY_ARTIFACT_DESCRIPTION, "");
         attributes.put(ArtifactObject.KEY_SIZE, Long.toString(resource.getSize()));
@@ -330,50 +469,48 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
         attributes.put(ArtifactObject.KEY_URL, artifactURL);
 
         if (upload) {
-            String location = upload(artifact, attributes.get("filename"), mimetype);
+            String location = upload(resource, attributes.get("filename"), mimetype);
             attributes.put(ArtifactObject.KEY_URL, location);
         }
 
-        ArtifactObject result = create(attributes, tags);
-        return result;
+        m_log.log(LogService.LOG_DEBUG, "Imported artifact " + artifactURL + " (" + resource.getSize() + " bytes, SHA-256 " + resource.getDigest() + ").");
+
+        return attributes;
     }
 
     /**
-     * Helper method which checks a given URL for 'validity', that is, does this URL point to something that can be
-     * read.
-     * 
-     * @param artifact
-     *            A URL pointing to an artifact.
-     * @throws IllegalArgumentException
-     *             when the URL does not point to a valid file.
+     * Waits for the result of an import, rethrowing any exception it caused.
      */
-
-    private void checkURL(URL artifact) throws IllegalArgumentException {
-        URLConnection connection = null;
-        // First, check whether we can actually reach something from this URL.
-        InputStream is = null;
+    private Map<String, String> getImportResult(Future<Map<String, String>> future) throws IOException {
         try {
-            connection = m_connectionFactory.createConnection(artifact);
-            is = connection.getInputStream();
+            return future.get();
         }
-        catch (IOException ioe) {
-            throw new IllegalArgumentException("Artifact " + artifact + " does not point to a valid file.");
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while importing artifacts!");
         }
-        finally {
-            if (is != null) {
-                try {
-                    is.close();
-                }
-                catch (IOException ioe) {
-                    // Too bad, nothing to do.
-                }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
-            if (connection instanceof HttpURLConnection) {
-                ((HttpURLConnection) connection).disconnect();
+            else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new IOException("Failed to import artifact!", cause);
         }
+    }
 
-        // Then, check whether the name is legal.
+    /**
+     * Helper method which checks whether the name of a given URL is legal for an artifact. Whether or not the URL can
+     * be read is checked while creating the local copy of the artifact, see {@link #spool(URL)}.
+     * 
+     * @param artifact
+     *            A URL pointing to an artifact.
+     * @throws IllegalArgumentException
+     *             when the URL has an illegal name.
+     */
+    private void checkURL(URL artifact) throws IllegalArgumentException {
         String artifactName = artifact.toString();
         for (byte b : artifactName.substring(artifactName.lastIndexOf('/') + 1).getBytes()) {
             if (!(((b >= 'A') && (b <= 'Z')) || ((b >= 'a') && (b <= 'z')) || ((b >= '0') && (b <= '9')) || (b == '.') || (b == '-') || (b == '_'))) {
@@ -382,11 +519,30 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
         }
     }
 
+    /**
+     * Creates a local copy of the given artifact, so it only needs to be read once for recognizing it, extracting its
+     * metadata and uploading it.
+     * 
+     * @param artifact
+     *            A URL pointing to an artifact.
+     * @return the local copy of the artifact, should be closed after use.
+     * @throws IllegalArgumentException
+     *             when the URL does not point to a valid file.
+     */
+    private SpooledArtifactResource spool(URL artifact) throws IllegalArgumentException {
+        try {
+            return SpooledArtifactResource.spool(artifact, m_connectionFactory);
+        }
+        catch (IOException ioe) {
+            throw new IllegalArgumentException("Artifact " + artifact + " does not point to a valid file.");
+        }
+    }
+
     /**
      * Uploads an artifact to the OBR.
      * 
      * @param artifact
-     *            URL pointing to the local artifact.
+     *            the (local copy of the) artifact to upload.
      * @param filename
      *            The filenmame parameter, may be <code>null</code>.
      * @param mimetype
@@ -395,13 +551,12 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
      * @throws IOException
      *             for any problem uploading the artifact.
      */
-    private String upload(URL artifact, String filename, String mimetype) throws IOException {
+    private String upload(ArtifactResource artifact, String filename, String mimetype) throws IOException {
         URL obrBase = getObrBase();
         if (obrBase == null) {
             throw new IOException("There is no storage available for this artifact.");
         }
 
-        URLConnection inputConn = null;
         URLConnection outputConn = null;
         InputStream input = null;
         OutputStream output = null;
@@ -411,8 +566,7 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
         int blockSize = 8192;
 
         try {
-            inputConn = m_connectionFactory.createConnection(artifact);
-            input = inputConn.getInputStream();
+            input = artifact.openStream();
 
             if (filename != null) {
                 url = new URL(obrBase, "?filename=" + filename);
@@ -427,7 +581,13 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
                 // ACE-294: enable streaming mode causing only small amounts of memory to be
                 // used for this commit. Otherwise, the entire input stream is cached into
                 // memory prior to sending it to the server...
-                ((HttpURLConnection) outputConn).setChunkedStreamingMode(blockSize);
+                long size = artifact.getSize();
+                if (size >= 0) {
+                    ((HttpURLConnection) outputConn).setFixedLengthStreamingMode(size);
+                }
+                else {
+                    ((HttpURLConnection) outputConn).setChunkedStreamingMode(blockSize);
+                }
             }
 
             output = outputConn.getOutputStream();
@@ -446,7 +606,7 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
                         location = outputConn.getHeaderField("Location");
                         break;
                     case HttpURLConnection.HTTP_CONFLICT:
-                        throw new ArtifactAlreadyExistsException(artifact, filename);
+                        throw new ArtifactAlreadyExistsException(artifact.getURL(), filename);
                     case HttpURLConnection.HTTP_INTERNAL_ERROR:
                         throw new IOException("The storage server returned an internal server error.");
                     default:
@@ -463,10 +623,6 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
                     // Not much we can do
                 }
             }
-            if (inputConn instanceof HttpURLConnection) {
-                ((HttpURLConnection) inputConn).disconnect();
-            }
-
             if (output != null) {
                 try {
                     output.close();
@@ -483,6 +639,32 @@ public class ArtifactRepositoryImpl extends ObjectRepositoryImpl<ArtifactObjectI
         return location;
     }
 
+    /**
+     * Removes a previously uploaded artifact from the OBR.
+     * 
+     * @param location
+     *            The persistent location of the artifact, as returned by {@link #upload(ArtifactResource, String, String)}.
+     * @throws IOException
+     *             for any problem removing the artifact.
+     */
+    private void delete(URL location) throws IOException {
+        URLConnection conn = m_connectionFactory.createConnection(location);
+        if (!(conn instanceof HttpURLConnection)) {
+            throw new IOException("Unable to remove " + location + " from the OBR!");
+        }
+        HttpURLConnection httpConn = (HttpURLConnection) conn;
+        try {
+            httpConn.setRequestMethod("DELETE");
+            int responseCode = httpConn.getResponseCode();
+            if ((responseCode != HttpURLConnection.HTTP_OK) && (responseCode != HttpURLConnection.HTTP_NOT_FOUND)) {
+                throw new IOException("The storage server returned code " + responseCode + " deleting " + location);
+            }
+        }
+        finally {
+            httpConn.disconnect();
+        }
+    }
+
     public String preprocessArtifact(ArtifactObject artifact, TargetObject target, String targetID, String version) throws IOException {
         ArtifactPreprocessor preprocessor = getHelper(artifact.getMimetype()).getPreprocessor();
         if (preprocessor == null) {
@@ -19,6 +19,7 @@
 package org.apache.ace.client.repository.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -247,6 +248,7 @@ public class AssociationImpl<L extends RepositoryObject, R extends RepositoryObj
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public void handleEvent(Event event) {
         // We get a topic which ends in '/*', but the event contains a specialized topic.
         // for now, we chop of the star, and check whether the topic starts with that.
@@ -259,5 +261,24 @@ public class AssociationImpl<L extends RepositoryObject, R extends RepositoryObj
                 locateRightEndpoint(true);
             }
         }
+        else if (event.getTopic().endsWith(RepositoryObject.TOPIC_BATCH_SUFFIX)) {
+            // Locate our endpoints at most once for all added and removed entities...
+            List<RepositoryObject> entities = new ArrayList<>();
+            entities.addAll((Collection<RepositoryObject>) event.getProperty(RepositoryObject.EVENT_ADDED_ENTITIES));
+            entities.addAll((Collection<RepositoryObject>) event.getProperty(RepositoryObject.EVENT_REMOVED_ENTITIES));
+
+            boolean left = false;
+            boolean right = false;
+            for (RepositoryObject e : entities) {
+                left |= m_leftClass.isInstance(e) && m_filterLeft.matchCase(e.getDictionary());
+                right |= m_rightClass.isInstance(e) && m_filterRight.matchCase(e.getDictionary());
+            }
+            if (left) {
+                locateLeftEndpoint(true);
+            }
+            if (right) {
+                locateRightEndpoint(true);
+            }
+        }
     }
 }
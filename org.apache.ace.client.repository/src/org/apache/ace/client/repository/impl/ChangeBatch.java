@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.client.repository.impl;
+
+import static org.apache.ace.client.repository.RepositoryObject.EVENT_ADDED_ENTITIES;
+import static org.apache.ace.client.repository.RepositoryObject.EVENT_CHANGED_ENTITIES;
+import static org.apache.ace.client.repository.RepositoryObject.EVENT_ENTITY;
+import static org.apache.ace.client.repository.RepositoryObject.EVENT_REMOVED_ENTITIES;
+import static org.apache.ace.client.repository.RepositoryObject.TOPIC_ADDED_SUFFIX;
+import static org.apache.ace.client.repository.RepositoryObject.TOPIC_BATCH_SUFFIX;
+import static org.apache.ace.client.repository.RepositoryObject.TOPIC_CHANGED_SUFFIX;
+import static org.apache.ace.client.repository.RepositoryObject.TOPIC_REMOVED_SUFFIX;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ace.client.repository.RepositoryObject;
+import org.apache.ace.client.repository.SessionFactory;
+import org.apache.ace.client.repository.stateful.StatefulTargetObject;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+/**
+ * Buffers the events of a batch of changes to the model, and delivers them in a coalesced form once the batch is
+ * done. All added, changed and removed events of a single topic root (that is, of a single type of repository object)
+ * are merged per entity into a single batch event, for example, an entity that is added and changed afterwards is
+ * only reported as added, and an entity that is added and removed again is not reported at all. Other events are
+ * delivered only once per topic and entity, at the position of the first one, but with the properties of the last one
+ * as those reflect the most recent state. The audit events of consecutive audit event notifications are combined, so
+ * none of them get lost. This class is not thread-safe.
+ */
+final class ChangeBatch {
+    private final List<Object> m_slots = new ArrayList<>();
+    private final Map<String, EntitySlot> m_entitySlots = new HashMap<>();
+    private final Map<String, Map<Object, Integer>> m_otherEvents = new HashMap<>();
+
+    /**
+     * Adds an event to this batch.
+     * 
+     * @param event
+     *            the event to add, cannot be <code>null</code>;
+     * @param async
+     *            <code>true</code> if the event should be posted, <code>false</code> if it should be sent.
+     */
+    @SuppressWarnings("unchecked")
+    void add(Event event, boolean async) {
+        String topic = event.getTopic();
+        int idx = topic.lastIndexOf('/');
+        String root = topic.substring(0, idx + 1);
+        String suffix = topic.substring(idx + 1);
+        Object entity = event.getProperty(EVENT_ENTITY);
+
+        if (TOPIC_BATCH_SUFFIX.equals(suffix)) {
+            EntitySlot slot = getEntitySlot(root, event, async);
+            slot.addAll(TOPIC_ADDED_SUFFIX, (Collection<RepositoryObject>) event.getProperty(EVENT_ADDED_ENTITIES));
+            slot.addAll(TOPIC_CHANGED_SUFFIX, (Collection<RepositoryObject>) event.getProperty(EVENT_CHANGED_ENTITIES));
+            slot.addAll(TOPIC_REMOVED_SUFFIX, (Collection<RepositoryObject>) event.getProperty(EVENT_REMOVED_ENTITIES));
+        }
+        else if ((entity instanceof RepositoryObject) && (TOPIC_ADDED_SUFFIX.equals(suffix) || TOPIC_CHANGED_SUFFIX.equals(suffix) || TOPIC_REMOVED_SUFFIX.equals(suffix))) {
+            getEntitySlot(root, event, async).add(suffix, (RepositoryObject) entity);
+        }
+        else {
+            Map<Object, Integer> positions = m_otherEvents.get(topic);
+            if (positions == null) {
+                positions = new IdentityHashMap<>();
+                m_otherEvents.put(topic, positions);
+            }
+            Object key = (entity == null) ? this : entity;
+            Integer position = positions.get(key);
+            if (position == null) {
+                positions.put(key, m_slots.size());
+                m_slots.add(new BufferedEvent(event, async));
+            }
+            else {
+                BufferedEvent previous = (BufferedEvent) m_slots.get(position);
+                m_slots.set(position, new BufferedEvent(merge(previous.m_event, event), async));
+            }
+        }
+    }
+
+    /**
+     * Delivers the coalesced events of this batch, in the order in which their first event was added.
+     * 
+     * @param eventAdmin
+     *            the event admin to deliver the events to, cannot be <code>null</code>.
+     */
+    void deliver(EventAdmin eventAdmin) {
+        for (Object slot : m_slots) {
+            BufferedEvent event = (slot instanceof EntitySlot) ? ((EntitySlot) slot).coalesce() : (BufferedEvent) slot;
+            if (event == null) {
+                // nothing left to report...
+            }
+            else if (event.m_async) {
+                eventAdmin.postEvent(event.m_event);
+            }
+            else {
+                eventAdmin.sendEvent(event.m_event);
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if this batch does not contain any events, <code>false</code> otherwise.
+     */
+    boolean isEmpty() {
+        return m_slots.isEmpty();
+    }
+
+    /**
+     * Merges two events of the same topic and entity, retaining the properties of the latest event, and combining
+     * their audit events, if any.
+     */
+    private static Event merge(Event previous, Event next) {
+        Object previousAuditEvents = previous.getProperty(StatefulTargetObject.KEY_AUDITEVENTS);
+        Object nextAuditEvents = next.getProperty(StatefulTargetObject.KEY_AUDITEVENTS);
+        if (!(previousAuditEvents instanceof Collection) || !(nextAuditEvents instanceof Collection)) {
+            return next;
+        }
+
+        List<Object> auditEvents = new ArrayList<>((Collection<?>) previousAuditEvents);
+        auditEvents.addAll((Collection<?>) nextAuditEvents);
+
+        Map<String, Object> props = new HashMap<>();
+        for (String name : next.getPropertyNames()) {
+            props.put(name, next.getProperty(name));
+        }
+        props.put(StatefulTargetObject.KEY_AUDITEVENTS, auditEvents);
+        return new Event(next.getTopic(), props);
+    }
+
+    private EntitySlot getEntitySlot(String root, Event event, boolean async) {
+        EntitySlot slot = m_entitySlots.get(root);
+        if (slot == null) {
+            slot = new EntitySlot(root, event.getProperty(SessionFactory.SERVICE_SID), async);
+            m_entitySlots.put(root, slot);
+            m_slots.add(slot);
+        }
+        slot.m_lastEvent = event;
+        slot.m_eventCount++;
+        return slot;
+    }
+
+    private static final class BufferedEvent {
+        final Event m_event;
+        final boolean m_async;
+
+        BufferedEvent(Event event, boolean async) {
+            m_event = event;
+            m_async = async;
+        }
+    }
+
+    /**
+     * Keeps the net change of all entities of a single topic root.
+     */
+    private static final class EntitySlot {
+        private final String m_root;
+        private final Object m_sessionID;
+        private final boolean m_async;
+        // repository objects have a mutable hash code, so we need to rely on their identity...
+        private final Map<RepositoryObject, String> m_states = new IdentityHashMap<>();
+        private final List<RepositoryObject> m_order = new ArrayList<>();
+
+        Event m_lastEvent;
+        int m_eventCount;
+
+        EntitySlot(String root, Object sessionID, boolean async) {
+            m_root = root;
+            m_sessionID = sessionID;
+            m_async = async;
+        }
+
+        void add(String suffix, RepositoryObject entity) {
+            if (!m_states.containsKey(entity)) {
+                m_order.add(entity);
+            }
+            m_states.put(entity, merge(m_states.get(entity), suffix));
+        }
+
+        void addAll(String suffix, Collection<RepositoryObject> entities) {
+            if (entities != null) {
+                for (RepositoryObject entity : entities) {
+                    add(suffix, entity);
+                }
+            }
+        }
+
+        BufferedEvent coalesce() {
+            if (m_eventCount == 1) {
+                // nothing to coalesce, retain the original event...
+                return new BufferedEvent(m_lastEvent, m_async);
+            }
+
+            List<RepositoryObject> added = new ArrayList<>();
+            List<RepositoryObject> changed = new ArrayList<>();
+            List<RepositoryObject> removed = new ArrayList<>();
+            for (RepositoryObject entity : m_order) {
+                String state = m_states.get(entity);
+                if (TOPIC_ADDED_SUFFIX.equals(state)) {
+                    added.add(entity);
+                }
+                else if (TOPIC_CHANGED_SUFFIX.equals(state)) {
+                    changed.add(entity);
+                }
+                else if (TOPIC_REMOVED_SUFFIX.equals(state)) {
+                    removed.add(entity);
+                }
+            }
+
+            Map<String, Object> props = new HashMap<>();
+            if (m_sessionID != null) {
+                props.put(SessionFactory.SERVICE_SID, m_sessionID);
+            }
+
+            int count = added.size() + changed.size() + removed.size();
+            if (count == 0) {
+                return null;
+            }
+            else if (count == 1) {
+                String suffix = added.isEmpty() ? (changed.isEmpty() ? TOPIC_REMOVED_SUFFIX : TOPIC_CHANGED_SUFFIX) : TOPIC_ADDED_SUFFIX;
+                props.put(EVENT_ENTITY, first(added, changed, removed));
+                return new BufferedEvent(new Event(m_root + suffix, props), m_async);
+            }
+
+            props.put(EVENT_ADDED_ENTITIES, Collections.unmodifiableList(added));
+            props.put(EVENT_CHANGED_ENTITIES, Collections.unmodifiableList(changed));
+            props.put(EVENT_REMOVED_ENTITIES, Collections.unmodifiableList(removed));
+            return new BufferedEvent(new Event(m_root + TOPIC_BATCH_SUFFIX, props), m_async);
+        }
+
+        private static RepositoryObject first(List<RepositoryObject> added, List<RepositoryObject> changed, List<RepositoryObject> removed) {
+            return !added.isEmpty() ? added.get(0) : (!changed.isEmpty() ? changed.get(0) : removed.get(0));
+        }
+
+        /**
+         * Determines the net change of an entity, given its current net change and a new change.
+         * 
+         * @return the net change, or <code>null</code> in case there is no net change.
+         */
+        private static String merge(String current, String next) {
+            if (current == null) {
+                return next;
+            }
+            if (TOPIC_ADDED_SUFFIX.equals(current)) {
+                // an added entity remains added, unless it is removed again...
+                return TOPIC_REMOVED_SUFFIX.equals(next) ? null : TOPIC_ADDED_SUFFIX;
+            }
+            if (TOPIC_REMOVED_SUFFIX.equals(current)) {
+                // a removed entity can only come back when it is added again...
+                return TOPIC_ADDED_SUFFIX.equals(next) ? TOPIC_CHANGED_SUFFIX : TOPIC_REMOVED_SUFFIX;
+            }
+            // a changed entity...
+            return TOPIC_CHANGED_SUFFIX.equals(next) ? TOPIC_CHANGED_SUFFIX : next;
+        }
+    }
+}
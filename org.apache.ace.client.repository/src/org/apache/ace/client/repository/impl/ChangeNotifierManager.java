@@ -24,11 +24,16 @@ import org.osgi.service.event.EventAdmin;
 
 /**
  * ChangeNotifierManager handles a number of ChangeNotifiers, so there is only one dependency on EventAdmin; this
- * manager directs all calls from the ChangeNotifiers to the 'real' EventAdmin.
+ * manager directs all calls from the ChangeNotifiers to the 'real' EventAdmin. While a batch is in progress, all
+ * events are buffered and delivered in a coalesced form once the (outermost) batch ends, see {@link ChangeBatch}.
  */
 public class ChangeNotifierManager implements EventAdmin {
     private volatile EventAdmin m_eventAdmin; /* Will be injected by dependency manager */
 
+    private final Object m_batchLock = new Object();
+    private int m_batchDepth = 0;
+    private ChangeBatch m_batch = null;
+
     /**
      * Creates and configures a ChangeNotifier for use with the given topics.
      * 
@@ -60,11 +65,58 @@ public class ChangeNotifierManager implements EventAdmin {
     }
 
     public void postEvent(Event event) {
-        m_eventAdmin.postEvent(event);
+        if (!addToBatch(event, true /* async */)) {
+            m_eventAdmin.postEvent(event);
+        }
     }
 
     public void sendEvent(Event event) {
-        m_eventAdmin.sendEvent(event);
+        if (!addToBatch(event, false /* async */)) {
+            m_eventAdmin.sendEvent(event);
+        }
+    }
+
+    /**
+     * Starts a batch, or nests a batch in the current one.
+     */
+    public void startBatch() {
+        synchronized (m_batchLock) {
+            if (m_batchDepth++ == 0) {
+                m_batch = new ChangeBatch();
+            }
+        }
+    }
+
+    /**
+     * Ends a batch, delivering all events of the batch in case it is the outermost batch.
+     * 
+     * @throws IllegalStateException
+     *             in case no batch was started.
+     */
+    public void endBatch() {
+        ChangeBatch batch;
+        synchronized (m_batchLock) {
+            if (m_batchDepth == 0) {
+                throw new IllegalStateException("No batch is in progress!");
+            }
+            if (--m_batchDepth > 0) {
+                return;
+            }
+            batch = m_batch;
+            m_batch = null;
+        }
+        // deliver outside our lock, as event handlers can cause new events to be fired...
+        batch.deliver(m_eventAdmin);
+    }
+
+    private boolean addToBatch(Event event, boolean async) {
+        synchronized (m_batchLock) {
+            if (m_batch == null) {
+                return false;
+            }
+            m_batch.add(event, async);
+            return true;
+        }
     }
 
 }
@@ -19,10 +19,13 @@
 package org.apache.ace.client.repository.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -92,6 +95,59 @@ abstract class ObjectRepositoryImpl<I extends RepositoryObjectImpl<T>, T extends
         throw new IllegalArgumentException("Failed to add new object: entity already exists!");
     }
 
+    /**
+     * Creates a number of new inhabitants of this repository at once. All inhabitants are stored in one go, after
+     * which a single batch event is fired for all of them. In case any of the new inhabitants already exists, or is
+     * given more than once, none of them are stored.
+     * 
+     * @param attributes
+     *            the attributes of the inhabitants to create;
+     * @param tags
+     *            the tags of the inhabitants to create, in the same order as the attributes.
+     * @return the created inhabitants, in the same order as the given attributes.
+     */
+    @SuppressWarnings("unchecked")
+    List<T> createAll(List<Map<String, String>> attributes, List<Map<String, String>> tags) throws IllegalArgumentException {
+        if (m_busy) {
+            throw new IllegalStateException("The repository is currently busy, so no new objects can be created.");
+        }
+        if (attributes.size() != tags.size()) {
+            throw new IllegalArgumentException("Expected the same number of attributes and tags!");
+        }
+        List<T> result = new ArrayList<>(attributes.size());
+        Set<String> definitions = new HashSet<>();
+        for (int i = 0; i < attributes.size(); i++) {
+            T entity = (T) createNewInhabitant(attributes.get(i), tags.get(i));
+            if (!definitions.add(entity.getDefinition())) {
+                throw new IllegalArgumentException("Failed to add new objects: entity is given more than once!");
+            }
+            result.add(entity);
+        }
+
+        Lock writeLock = m_lock.writeLock();
+        writeLock.lock();
+        try {
+            for (T entity : result) {
+                if (m_repo.contains(entity)) {
+                    throw new IllegalArgumentException("Failed to add new object: entity already exists!");
+                }
+            }
+            for (T entity : result) {
+                m_repo.add(entity);
+                m_index.put(entity.getDefinition(), entity);
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+
+        if (!result.isEmpty()) {
+            notifyEntitiesChanged(result, Collections.<T> emptyList(), Collections.<T> emptyList());
+        }
+
+        return result;
+    }
+
     public List<T> get() {
         Lock readLock = m_lock.readLock();
         readLock.lock();
@@ -352,5 +408,23 @@ abstract class ObjectRepositoryImpl<I extends RepositoryObjectImpl<T>, T extends
         props.put(RepositoryObject.EVENT_ENTITY, entity);
         notifyChanged(topic, props, m_busy);
     }
+
+    /**
+     * Notifies listeners of changes to many objects at once, using a single batch event.
+     * 
+     * @param added
+     *            the objects that are added;
+     * @param changed
+     *            the objects that have changed;
+     * @param removed
+     *            the objects that are removed.
+     */
+    private void notifyEntitiesChanged(List<T> added, List<T> changed, List<T> removed) {
+        Properties props = new Properties();
+        props.put(RepositoryObject.EVENT_ADDED_ENTITIES, Collections.unmodifiableList(new ArrayList<>(added)));
+        props.put(RepositoryObject.EVENT_CHANGED_ENTITIES, Collections.unmodifiableList(new ArrayList<>(changed)));
+        props.put(RepositoryObject.EVENT_REMOVED_ENTITIES, Collections.unmodifiableList(new ArrayList<>(removed)));
+        notifyChanged(RepositoryObject.TOPIC_BATCH_SUFFIX, props, m_busy);
+    }
 }
 
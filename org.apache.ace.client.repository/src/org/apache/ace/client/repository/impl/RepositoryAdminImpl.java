@@ -451,6 +451,14 @@ public class RepositoryAdminImpl implements RepositoryAdmin {
         }
     }
 
+    public void startBatch() {
+        m_changeNotifierManager.startBatch();
+    }
+
+    public void endBatch() {
+        m_changeNotifierManager.endBatch();
+    }
+
     private boolean loggedIn() {
         return m_user != null;
     }
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.Collection;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -326,6 +327,7 @@ class RepositorySet {
     
     final class ModifiedHandler implements EventHandler {
         
+        @SuppressWarnings("unchecked")
         public void handleEvent(Event event) {
             /*
              * NOTE: if recalculating the state for every event turns out to be
@@ -335,20 +337,42 @@ class RepositorySet {
             
             boolean wasModified = isModified();
             
-            RepositoryObject object = (RepositoryObject) event.getProperty(RepositoryObject.EVENT_ENTITY);
             String topic = event.getTopic();
             
-            WorkingState newState = WorkingState.Unchanged;
-            if (topic.endsWith("/ADDED")) {
-                newState = WorkingState.New;
+            if (topic.endsWith("/" + RepositoryObject.TOPIC_BATCH_SUFFIX)) {
+                updateWorkingStates((Collection<RepositoryObject>) event.getProperty(RepositoryObject.EVENT_ADDED_ENTITIES), WorkingState.New);
+                updateWorkingStates((Collection<RepositoryObject>) event.getProperty(RepositoryObject.EVENT_CHANGED_ENTITIES), WorkingState.Changed);
+                updateWorkingStates((Collection<RepositoryObject>) event.getProperty(RepositoryObject.EVENT_REMOVED_ENTITIES), WorkingState.Removed);
             }
-            else if (topic.endsWith("/CHANGED")) {
-                newState = WorkingState.Changed;
-            }
-            else if (topic.endsWith("/REMOVED")) {
-                newState = WorkingState.Removed;
+            else {
+                RepositoryObject object = (RepositoryObject) event.getProperty(RepositoryObject.EVENT_ENTITY);
+                
+                WorkingState newState = WorkingState.Unchanged;
+                if (topic.endsWith("/ADDED")) {
+                    newState = WorkingState.New;
+                }
+                else if (topic.endsWith("/CHANGED")) {
+                    newState = WorkingState.Changed;
+                }
+                else if (topic.endsWith("/REMOVED")) {
+                    newState = WorkingState.Removed;
+                }
+                
+                updateWorkingState(object, newState);
             }
             
+            if (!wasModified) {
+                m_notifier.notifyChanged(RepositoryAdmin.TOPIC_STATUSCHANGED_SUFFIX, null);
+            }
+        }
+        
+        private void updateWorkingStates(Collection<RepositoryObject> objects, WorkingState newState) {
+            for (RepositoryObject object : objects) {
+                updateWorkingState(object, newState);
+            }
+        }
+        
+        private void updateWorkingState(RepositoryObject object, WorkingState newState) {
             if (!newState.equals(m_workingState.get(object))) {
                 m_workingState.put(object, newState);
                 
@@ -356,10 +380,6 @@ class RepositorySet {
                 props.put(RepositoryObject.EVENT_ENTITY, object);
                 m_notifier.notifyChanged(RepositoryAdmin.TOPIC_STATUSCHANGED_SUFFIX, props);
             }
-            
-            if (!wasModified) {
-                m_notifier.notifyChanged(RepositoryAdmin.TOPIC_STATUSCHANGED_SUFFIX, null);
-            }
         }
     }
 }
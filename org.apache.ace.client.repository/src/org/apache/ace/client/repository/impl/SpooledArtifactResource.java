@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.client.repository.impl;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.ace.client.repository.helper.ArtifactResource;
+import org.apache.ace.connectionfactory.ConnectionFactory;
+
+/**
+ * Provides an {@link ArtifactResource} that is backed by a local copy of an artifact. The artifact is downloaded only
+ * once, while its size and digest are calculated, after which all recognizers, helpers and uploads can read it as
+ * often as they like without accessing the original location again. The local copy should be removed by calling
+ * {@link #close()} once it is no longer needed.
+ */
+class SpooledArtifactResource implements ArtifactResource, Closeable {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final URL m_url;
+    private final File m_file;
+    private final long m_size;
+    private final String m_digest;
+
+    private SpooledArtifactResource(URL url, File file, long size, String digest) {
+        m_url = url;
+        m_file = file;
+        m_size = size;
+        m_digest = digest;
+    }
+
+    /**
+     * Creates a local copy of the artifact at the given URL.
+     * 
+     * @param url
+     *            the URL of the artifact to copy, cannot be <code>null</code>;
+     * @param connectionFactory
+     *            the connection factory to use for accessing the given URL, cannot be <code>null</code>.
+     * @return a new {@link SpooledArtifactResource} instance, never <code>null</code>.
+     * @throws IOException
+     *             in case the artifact could not be read or copied.
+     */
+    static SpooledArtifactResource spool(URL url, ConnectionFactory connectionFactory) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unable to calculate digest of artifact!", e);
+        }
+
+        File file = File.createTempFile("artifact", ".tmp");
+        boolean success = false;
+
+        URLConnection conn = null;
+        InputStream input = null;
+        OutputStream output = null;
+        long size = 0L;
+        try {
+            conn = connectionFactory.createConnection(url);
+            input = conn.getInputStream();
+            output = new FileOutputStream(file);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int count = input.read(buffer); count != -1; count = input.read(buffer)) {
+                output.write(buffer, 0, count);
+                digest.update(buffer, 0, count);
+                size += count;
+            }
+
+            output.close();
+            success = true;
+        }
+        finally {
+            closeSilently(input);
+            closeSilently(output);
+            if (conn instanceof HttpURLConnection) {
+                ((HttpURLConnection) conn).disconnect();
+            }
+            if (!success) {
+                file.delete();
+            }
+        }
+
+        return new SpooledArtifactResource(url, file, size, toHex(digest.digest()));
+    }
+
+    @Override
+    public void close() {
+        m_file.delete();
+    }
+
+    /**
+     * @return the hex-encoded SHA-256 digest of the artifact, never <code>null</code>.
+     */
+    public String getDigest() {
+        return m_digest;
+    }
+
+    @Override
+    public long getSize() {
+        return m_size;
+    }
+
+    @Override
+    public URL getURL() {
+        return m_url;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return new BufferedInputStream(new FileInputStream(m_file), BUFFER_SIZE);
+    }
+
+    private static void closeSilently(Closeable resource) {
+        if (resource != null) {
+            try {
+                resource.close();
+            }
+            catch (IOException e) {
+                // Not much we can do...
+            }
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
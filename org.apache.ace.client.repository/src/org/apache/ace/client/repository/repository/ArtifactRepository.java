@@ -83,6 +83,28 @@ public interface ArtifactRepository extends ObjectRepository<ArtifactObject> {
      */
     public ArtifactObject importArtifact(URL artifact, boolean upload) throws IllegalArgumentException, IOException;
 
+    /**
+     * Tries to import a number of artifacts into storage at once, while extracting the necessary metadata.
+     * <p>
+     * The artifacts are recognized and uploaded concurrently, after which all artifact objects are created in one go,
+     * causing a single batch event to be fired instead of an event per artifact. In case any of the artifacts cannot
+     * be imported, none of the artifact objects are created.
+     * </p>
+     *
+     * @param artifacts
+     *            the URLs pointing to the 'physical' artifacts.
+     * @param upload
+     *            Indicates whether the artifacts should be uploaded to our own OBR.
+     * @return the <code>ArtifactObject</code>s representing the passed in artifacts, in the same order.
+     * @throws IllegalArgumentException
+     *             when any of the given artifacts represents an invalid URL, or cannot be recognized;
+     * @throws ArtifactAlreadyExistsException
+     *             in case an artifact could not be uploaded, as it already exists in the storage;
+     * @throws IOException
+     *             when there is a problem transferring an artifact to storage.
+     */
+    public List<ArtifactObject> importArtifacts(List<URL> artifacts, boolean upload) throws IllegalArgumentException, IOException;
+
     /**
      * Checks whether an artifact is 'usable', that is, there is a resource processor available for it, if necessary.
      *
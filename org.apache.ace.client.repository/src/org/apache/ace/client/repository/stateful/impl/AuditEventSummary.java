@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.client.repository.stateful.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ace.feedback.AuditEvent;
+import org.apache.ace.feedback.Descriptor;
+import org.apache.ace.feedback.Event;
+import org.apache.ace.range.SortedRangeSet;
+
+/**
+ * Compact summary of the audit events of a single target that were announced by the audit log store, but have not yet
+ * been processed by its stateful target object. Instead of the events themselves, only their IDs are kept, together
+ * with the latest install, complete and target properties events, as those are the only events that determine the
+ * state of a target. Announcements can arrive before the descriptors of the audit log store include them, so the
+ * summary is always queried and trimmed using the ranges of the descriptors that are actually processed.
+ */
+final class AuditEventSummary {
+    private final Comparator<Event> m_comparator;
+    private final Map<Long, SortedRangeSet> m_ids = new HashMap<>();
+    private Event m_lastInstall;
+    private Event m_lastComplete;
+    private Event m_lastProperties;
+
+    AuditEventSummary(Comparator<Event> comparator) {
+        m_comparator = comparator;
+    }
+
+    /**
+     * Adds a newly stored audit event to this summary.
+     *
+     * @param event the event to add, cannot be <code>null</code>.
+     */
+    synchronized void add(Event event) {
+        Long storeID = Long.valueOf(event.getStoreID());
+        SortedRangeSet ids = m_ids.get(storeID);
+        SortedRangeSet id = new SortedRangeSet(new long[] { event.getID() });
+        m_ids.put(storeID, (ids == null) ? id : ids.union(id));
+
+        int type = event.getType();
+        if (type == AuditEvent.DEPLOYMENTCONTROL_INSTALL) {
+            m_lastInstall = getLatest(m_lastInstall, event);
+        }
+        else if (type == AuditEvent.DEPLOYMENTADMIN_COMPLETE) {
+            m_lastComplete = getLatest(m_lastComplete, event);
+        }
+        else if (type == AuditEvent.TARGETPROPERTIES_SET) {
+            m_lastProperties = getLatest(m_lastProperties, event);
+        }
+    }
+
+    /**
+     * Determines whether this summary has seen all events in the given descriptors, and can tell which of them
+     * determine the state of a target. The latter is not the case if an event that is not yet part of the given
+     * descriptors replaced an earlier event of the same type.
+     *
+     * @param descriptors the descriptors to check, cannot be <code>null</code>.
+     * @return <code>true</code> if all events of the given descriptors were added to this summary, and all retained
+     *         events are part of the given descriptors, <code>false</code> otherwise.
+     */
+    synchronized boolean covers(List<Descriptor> descriptors) {
+        for (Descriptor descriptor : descriptors) {
+            SortedRangeSet ids = m_ids.get(Long.valueOf(descriptor.getStoreID()));
+            SortedRangeSet wanted = descriptor.getRangeSet();
+            if (ids == null) {
+                if (wanted.iterator().hasNext()) {
+                    return false;
+                }
+            }
+            else if (ids.diffDest(wanted).iterator().hasNext()) {
+                return false;
+            }
+        }
+        for (Event event : getRetainedEvents()) {
+            if (!isPartOf(event, descriptors)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the events of this summary that determine the state of a target, limited to the given descriptors.
+     *
+     * @param descriptors the descriptors of the events of interest, cannot be <code>null</code>.
+     * @return a list with the latest install, complete and target properties events that are part of the given
+     *         descriptors, in the order they happened.
+     */
+    synchronized List<Event> getEvents(List<Descriptor> descriptors) {
+        List<Event> result = new ArrayList<>();
+        for (Event event : getRetainedEvents()) {
+            if (isPartOf(event, descriptors)) {
+                result.add(event);
+            }
+        }
+        Collections.sort(result, m_comparator);
+        return result;
+    }
+
+    /**
+     * Removes all events of the given descriptors from this summary, as they are processed. Events that were announced
+     * but are not yet part of the given descriptors are retained.
+     *
+     * @param descriptors the descriptors of the processed events, cannot be <code>null</code>.
+     * @return <code>true</code> if this summary is empty afterwards, <code>false</code> otherwise.
+     */
+    synchronized boolean discard(List<Descriptor> descriptors) {
+        for (Descriptor descriptor : descriptors) {
+            Long storeID = Long.valueOf(descriptor.getStoreID());
+            SortedRangeSet ids = m_ids.get(storeID);
+            if (ids != null) {
+                SortedRangeSet remaining = descriptor.getRangeSet().diffDest(ids);
+                if (remaining.iterator().hasNext()) {
+                    m_ids.put(storeID, remaining);
+                }
+                else {
+                    m_ids.remove(storeID);
+                }
+            }
+        }
+        // only retain the events that are not yet processed...
+        m_lastInstall = getPending(m_lastInstall);
+        m_lastComplete = getPending(m_lastComplete);
+        m_lastProperties = getPending(m_lastProperties);
+        return m_ids.isEmpty();
+    }
+
+    private Event getLatest(Event current, Event event) {
+        return (current == null || m_comparator.compare(event, current) >= 0) ? event : current;
+    }
+
+    private Event getPending(Event event) {
+        if (event == null) {
+            return null;
+        }
+        SortedRangeSet ids = m_ids.get(Long.valueOf(event.getStoreID()));
+        return (ids != null && ids.contains(event.getID())) ? event : null;
+    }
+
+    private List<Event> getRetainedEvents() {
+        List<Event> result = new ArrayList<>(3);
+        for (Event event : Arrays.asList(m_lastInstall, m_lastComplete, m_lastProperties)) {
+            if (event != null) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isPartOf(Event event, List<Descriptor> descriptors) {
+        for (Descriptor descriptor : descriptors) {
+            if (descriptor.getStoreID() == event.getStoreID() && descriptor.getRangeSet().contains(event.getID())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.client.repository.stateful.impl;
+
+import org.apache.ace.feedback.Event;
+import org.apache.ace.log.server.store.LogStore;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Listens for new events that are stored in the audit log store, and hands them to a stateful target repository, so it
+ * does not have to read them back from the store.
+ */
+public class AuditLogListener implements EventHandler {
+    private final StatefulTargetRepositoryImpl m_repository;
+
+    public AuditLogListener(StatefulTargetRepositoryImpl repository) {
+        m_repository = repository;
+    }
+
+    @Override
+    public void handleEvent(org.osgi.service.event.Event event) {
+        Object auditEvent = event.getProperty(LogStore.EVENT_PROP_LOG_EVENT);
+        if (auditEvent instanceof Event) {
+            m_repository.auditEventStored((Event) auditEvent);
+        }
+    }
+}
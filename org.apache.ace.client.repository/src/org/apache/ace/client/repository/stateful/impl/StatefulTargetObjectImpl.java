@@ -62,6 +62,12 @@ public class StatefulTargetObjectImpl implements StatefulTargetObject {
     private boolean m_inConstructor = true;
     /** Boolean to ensure we don't recursively enter the determineProvisioningState() method. */
     private boolean m_determiningProvisioningState = false;
+    /** Derived state, cached until the generation of our repository changes. */
+    private ArtifactObject[] m_artifactsFromShop;
+    private long m_artifactsFromShopGeneration = -1;
+    private DeploymentVersionObject m_mostRecentDeploymentVersion;
+    private DeploymentArtifact[] m_artifactsFromDeployment;
+    private long m_deploymentVersionGeneration = -1;
 
     /**
      * Creates a new <code>StatefulTargetObjectImpl</code>. After creation, it will have the
@@ -95,7 +101,7 @@ public class StatefulTargetObjectImpl implements StatefulTargetObject {
     }
 
     public String getCurrentVersion() {
-        DeploymentVersionObject version = m_repository.getMostRecentDeploymentVersion(getID());
+        DeploymentVersionObject version = getMostRecentDeploymentVersion();
         if (version == null) {
             return StatefulTargetObject.UNKNOWN_VERSION;
         }
@@ -123,16 +129,53 @@ public class StatefulTargetObjectImpl implements StatefulTargetObject {
 
     public DeploymentArtifact[] getArtifactsFromDeployment() {
         synchronized (m_lock) {
-            DeploymentVersionObject mostRecentDeploymentVersion = m_repository.getMostRecentDeploymentVersion(getID());
-            if (mostRecentDeploymentVersion != null) {
-                return mostRecentDeploymentVersion.getDeploymentArtifacts();
+            DeploymentVersionObject mostRecentDeploymentVersion = getMostRecentDeploymentVersion();
+            if (m_artifactsFromDeployment == null) {
+                if (mostRecentDeploymentVersion != null) {
+                    m_artifactsFromDeployment = mostRecentDeploymentVersion.getDeploymentArtifacts();
+                }
+                else {
+                    m_artifactsFromDeployment = new DeploymentArtifact[0];
+                }
             }
-            return new DeploymentArtifact[0];
+            return m_artifactsFromDeployment.clone();
         }
     }
 
     public ArtifactObject[] getArtifactsFromShop() {
-        return m_repository.getNecessaryArtifacts(getID());
+        long generation;
+        synchronized (m_lock) {
+            generation = m_repository.getGeneration();
+            if (m_artifactsFromShopGeneration == generation) {
+                return (m_artifactsFromShop == null) ? null : m_artifactsFromShop.clone();
+            }
+        }
+        // walking the association graph can take a while, so do this without holding our lock...
+        ArtifactObject[] result = m_repository.getNecessaryArtifacts(getID());
+        synchronized (m_lock) {
+            // only cache the result if nothing has changed in the meantime...
+            if (m_repository.getGeneration() == generation) {
+                m_artifactsFromShop = result;
+                m_artifactsFromShopGeneration = generation;
+            }
+        }
+        return (result == null) ? null : result.clone();
+    }
+
+    /**
+     * @return the most recent deployment version of this target, or <code>null</code> if there is none. The result is
+     *         cached until the generation of our repository changes.
+     */
+    private DeploymentVersionObject getMostRecentDeploymentVersion() {
+        synchronized (m_lock) {
+            long generation = m_repository.getGeneration();
+            if (m_deploymentVersionGeneration != generation) {
+                m_mostRecentDeploymentVersion = m_repository.getMostRecentDeploymentVersion(getID());
+                m_artifactsFromDeployment = null;
+                m_deploymentVersionGeneration = generation;
+            }
+            return m_mostRecentDeploymentVersion;
+        }
     }
 
     public boolean getLastInstallSuccess() {
@@ -249,10 +292,10 @@ public class StatefulTargetObjectImpl implements StatefulTargetObject {
     private void determineStoreState(DeploymentVersionObject deploymentVersionObject) {
         synchronized (m_lock) {
             SortedSet<String> fromShop = new TreeSet<>();
-            ArtifactObject[] artifactsFromShop = m_repository.getNecessaryArtifacts(getID());
+            ArtifactObject[] artifactsFromShop = getArtifactsFromShop();
             DeploymentVersionObject mostRecentVersion;
             if (deploymentVersionObject == null) {
-                mostRecentVersion = m_repository.getMostRecentDeploymentVersion(getID());
+                mostRecentVersion = getMostRecentDeploymentVersion();
             }
             else {
                 mostRecentVersion = deploymentVersionObject;
@@ -318,7 +361,7 @@ public class StatefulTargetObjectImpl implements StatefulTargetObject {
             List<Descriptor> allDescriptors = m_repository.getAllDescriptors(getID());
             List<Descriptor> newDescriptors = m_repository.diffLogDescriptorLists(allDescriptors, m_processedAuditEvents);
 
-            List<Event> newEvents = m_repository.getAuditEvents(newDescriptors);
+            List<Event> newEvents = m_repository.getNewAuditEvents(getID(), newDescriptors);
             boolean foundDeploymentEvent = false;
             boolean foundPropertiesEvent = false;
             for (int position = newEvents.size() - 1; position >= 0; position--) {
@@ -20,6 +20,7 @@ package org.apache.ace.client.repository.stateful.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Dictionary;
@@ -31,6 +32,8 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ace.client.repository.PreCommitMember;
 import org.apache.ace.client.repository.RepositoryAdmin;
@@ -81,6 +84,8 @@ public class StatefulTargetRepositoryImpl implements StatefulTargetRepository, E
     // TODO: Make the concurrencyLevel of this concurrent hashmap settable?
     private Map<String, StatefulTargetObjectImpl> m_repository = new ConcurrentHashMap<>();
     private Map<String, StatefulTargetObjectImpl> m_index = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AuditEventSummary> m_auditEventSummaries = new ConcurrentHashMap<>();
+    private final AtomicLong m_generation = new AtomicLong();
 
     private final String m_sessionID;
     private final RepositoryConfiguration m_repoConfig;
@@ -155,9 +160,21 @@ public class StatefulTargetRepositoryImpl implements StatefulTargetRepository, E
     }
 
     public void refresh() {
+        m_generation.incrementAndGet();
         populate();
     }
 
+    /**
+     * Returns the current generation of this repository, which changes each time we are notified about a change in any
+     * of the underlying repositories. Stateful targets use it to determine whether their cached, derived state is still
+     * valid.
+     * 
+     * @return the current generation.
+     */
+    long getGeneration() {
+        return m_generation.get();
+    }
+
     /**
      * Gets the <code>TargetObject</code> which is identified by the <code>targetID</code>.
      * 
@@ -229,6 +246,7 @@ public class StatefulTargetRepositoryImpl implements StatefulTargetRepository, E
         synchronized (m_repository) {
             m_repository.remove(entity.getID());
             m_index.remove(entity.getDefinition());
+            m_auditEventSummaries.remove(entity.getID());
             notifyChanged(entity, StatefulTargetObject.TOPIC_REMOVED);
         }
     }
@@ -300,10 +318,15 @@ public class StatefulTargetRepositoryImpl implements StatefulTargetRepository, E
      */
     List<Event> getAuditEvents(List<Descriptor> events) {
         // Get all events from the audit log store, if possible.
-        List<Event> result = new ArrayList<>();
+        final List<Event> result = new ArrayList<>();
         for (Descriptor l : events) {
             try {
-                result.addAll(m_auditLogStore.get(l));
+                m_auditLogStore.get(l, new LogStore.EventCallback() {
+                    @Override
+                    public void handle(Event event) {
+                        result.add(event);
+                    }
+                });
             }
             catch (IOException e) {
                 // too bad, but not much to do.
@@ -315,6 +338,70 @@ public class StatefulTargetRepositoryImpl implements StatefulTargetRepository, E
         return result;
     }
 
+    /**
+     * Gets the audit log events of a target that are needed to determine its state, out of the given descriptors of
+     * events the target has not yet processed. If all of these events were announced by the audit log store, the
+     * summary of these announcements is used, otherwise the events are read from the audit log store.
+     *
+     * @param targetID
+     *            A string representing a target ID.
+     * @param newDescriptors
+     *            A list of <code>LogDescriptor</code> objects, which indicate the items the target has not yet
+     *            processed.
+     * @return A list of AuditLog events, ordered by 'happened-before'. This list does not necessarily contain all
+     *         events of the given descriptors, but at least the latest events that determine the state of the target.
+     */
+    List<Event> getNewAuditEvents(String targetID, List<Descriptor> newDescriptors) {
+        AuditEventSummary summary = m_auditEventSummaries.get(targetID);
+
+        boolean containsData = false;
+        for (Descriptor l : newDescriptors) {
+            containsData |= l.getRangeSet().iterator().hasNext();
+        }
+        if (!containsData) {
+            return new ArrayList<>();
+        }
+        if (summary == null) {
+            return getAuditEvents(newDescriptors);
+        }
+        List<Event> result;
+        if (summary.covers(newDescriptors)) {
+            result = summary.getEvents(newDescriptors);
+        }
+        else {
+            result = getAuditEvents(newDescriptors);
+        }
+        // keep announced events that are not yet part of the given descriptors for the next time...
+        if (summary.discard(newDescriptors)) {
+            m_auditEventSummaries.remove(targetID, summary);
+        }
+        return result;
+    }
+
+    /**
+     * Called by the {@link AuditLogListener} for each new event that is stored in the audit log store. Events of
+     * targets we do not represent are ignored; should such a target show up later on, its events are read from the
+     * audit log store instead.
+     *
+     * @param event
+     *            the stored audit event.
+     */
+    void auditEventStored(Event event) {
+        String targetID = event.getTargetID();
+        if (!m_repository.containsKey(targetID)) {
+            return;
+        }
+        AuditEventSummary summary = m_auditEventSummaries.get(targetID);
+        if (summary == null) {
+            AuditEventSummary newSummary = new AuditEventSummary(m_auditEventComparator);
+            summary = m_auditEventSummaries.putIfAbsent(targetID, newSummary);
+            if (summary == null) {
+                summary = newSummary;
+            }
+        }
+        summary.add(event);
+    }
+
     List<Descriptor> diffLogDescriptorLists(List<Descriptor> all, List<Descriptor> seen) {
         List<Descriptor> descriptors = new ArrayList<>();
 
@@ -414,6 +501,9 @@ public class StatefulTargetRepositoryImpl implements StatefulTargetRepository, E
                 stoi.updateDeploymentVersions(null);
                 stoi.updateTargetObject(true);
             }
+            // Forget about the audit events of targets we do not represent; should they show up
+            // later on, their events are read from the audit log store instead...
+            m_auditEventSummaries.keySet().retainAll(m_repository.keySet());
         }
     }
 
@@ -758,77 +848,133 @@ public class StatefulTargetRepositoryImpl implements StatefulTargetRepository, E
     }
 
     public void handleEvent(org.osgi.service.event.Event event) {
+        // invalidate all derived state of our stateful targets, the change is already made...
+        m_generation.incrementAndGet();
+
         String topic = event.getTopic();
         if (RepositoryAdmin.PRIVATE_TOPIC_HOLDUNTILREFRESH.equals(topic)) {
             m_holdEvents = true;
         }
         if (!m_holdEvents) {
-            if (TargetObject.PRIVATE_TOPIC_ADDED.equals(topic)) {
-                synchronized (m_repository) {
-                    String id = ((TargetObject) event.getProperty(RepositoryObject.EVENT_ENTITY)).getID();
-                    StatefulTargetObjectImpl stoi = getStatefulTargetObject(id);
-                    if (stoi == null) {
-                        createStateful(id);
-                    }
-                    else {
-                        stoi.updateTargetObject(true);
-                    }
+            if (topic.endsWith(RepositoryObject.TOPIC_BATCH_SUFFIX)) {
+                handleBatchEvent(topic, event);
+            }
+            else if (!RepositoryAdmin.PRIVATE_TOPIC_LOGIN.equals(topic) && !RepositoryAdmin.PRIVATE_TOPIC_REFRESH.equals(topic)) {
+                RepositoryObject entity = (RepositoryObject) event.getProperty(RepositoryObject.EVENT_ENTITY);
+                if (!handleEntityEvent(topic, entity) && (entity != null)) {
+                    // Something else has changed; however, the entire shop may have an influence on
+                    // any target, so recheck everything that is reachable from the entity...
+                    determineStatusReachableFrom(Collections.singletonList(entity));
                 }
             }
-            else if (TargetObject.PRIVATE_TOPIC_CHANGED.equals(topic)) {
-                synchronized (m_repository) {
-                    String id = ((TargetObject) event.getProperty(RepositoryObject.EVENT_ENTITY)).getID();
-                    StatefulTargetObjectImpl stoi = getStatefulTargetObject(id);
-                    if (stoi != null) {
-                        stoi.determineStatus();
+        }
+
+        if (RepositoryAdmin.PRIVATE_TOPIC_LOGIN.equals(topic) || RepositoryAdmin.PRIVATE_TOPIC_REFRESH.equals(topic)) {
+            m_holdEvents = false;
+            synchronized (m_repository) {
+                populate();
+            }
+        }
+    }
+
+    /**
+     * Handles a batch event by handling all target and deployment version changes individually, and by rechecking all
+     * targets that are reachable from any of the other entities only once.
+     */
+    @SuppressWarnings("unchecked")
+    private void handleBatchEvent(String topic, org.osgi.service.event.Event event) {
+        String topicRoot = topic.substring(0, topic.length() - RepositoryObject.TOPIC_BATCH_SUFFIX.length());
+
+        Map<String, String> suffixes = new HashMap<>();
+        suffixes.put(RepositoryObject.EVENT_ADDED_ENTITIES, RepositoryObject.TOPIC_ADDED_SUFFIX);
+        suffixes.put(RepositoryObject.EVENT_CHANGED_ENTITIES, RepositoryObject.TOPIC_CHANGED_SUFFIX);
+        suffixes.put(RepositoryObject.EVENT_REMOVED_ENTITIES, RepositoryObject.TOPIC_REMOVED_SUFFIX);
+
+        List<RepositoryObject> others = new ArrayList<>();
+        for (Entry<String, String> entry : suffixes.entrySet()) {
+            Collection<RepositoryObject> entities = (Collection<RepositoryObject>) event.getProperty(entry.getKey());
+            if (entities != null) {
+                for (RepositoryObject entity : entities) {
+                    if (!handleEntityEvent(topicRoot + entry.getValue(), entity)) {
+                        others.add(entity);
                     }
                 }
             }
-            else if (TargetObject.PRIVATE_TOPIC_REMOVED.equals(topic)) {
-                synchronized (m_repository) {
-                    String id = ((TargetObject) event.getProperty(RepositoryObject.EVENT_ENTITY)).getID();
-                    StatefulTargetObjectImpl stoi = getStatefulTargetObject(id);
-                    // if the stateful target is already gone; we don't have to do anything...
-                    if (stoi != null) {
-                        stoi.updateTargetObject(true);
-                    }
+        }
+        if (!others.isEmpty()) {
+            determineStatusReachableFrom(others);
+        }
+    }
+
+    /**
+     * Handles a change of a single target or deployment version.
+     * 
+     * @return <code>true</code> if the change is handled, <code>false</code> if it concerns another type of entity.
+     */
+    private boolean handleEntityEvent(String topic, RepositoryObject entity) {
+        if (TargetObject.PRIVATE_TOPIC_ADDED.equals(topic)) {
+            synchronized (m_repository) {
+                String id = ((TargetObject) entity).getID();
+                StatefulTargetObjectImpl stoi = getStatefulTargetObject(id);
+                if (stoi == null) {
+                    createStateful(id);
+                }
+                else {
+                    stoi.updateTargetObject(true);
                 }
             }
-            else if (DeploymentVersionObject.PRIVATE_TOPIC_ADDED.equals(topic) || DeploymentVersionObject.PRIVATE_TOPIC_REMOVED.equals(topic)) {
-                synchronized (m_repository) {
-                    DeploymentVersionObject deploymentVersionObject = ((DeploymentVersionObject) event.getProperty(RepositoryObject.EVENT_ENTITY));
-                    String id = deploymentVersionObject.getTargetID();
-                    StatefulTargetObjectImpl stoi = getStatefulTargetObject(id);
-                    if (stoi == null) {
-                        createStateful(id);
-                    }
-                    else {
-                        stoi.updateDeploymentVersions(deploymentVersionObject);
-                    }
+        }
+        else if (TargetObject.PRIVATE_TOPIC_CHANGED.equals(topic)) {
+            synchronized (m_repository) {
+                String id = ((TargetObject) entity).getID();
+                StatefulTargetObjectImpl stoi = getStatefulTargetObject(id);
+                if (stoi != null) {
+                    stoi.determineStatus();
                 }
             }
-            else if (!RepositoryAdmin.PRIVATE_TOPIC_LOGIN.equals(topic) && !RepositoryAdmin.PRIVATE_TOPIC_REFRESH.equals(topic)) {
-                // Something else has changed; however, the entire shop may have an influence on
-                // any target, so recheck everything that is reachable from the entity...
-
-                RepositoryObject entity = (RepositoryObject) event.getProperty(RepositoryObject.EVENT_ENTITY);
-                if (entity != null) {
-                    synchronized (m_repository) {
-                        for (StatefulTargetObjectImpl stoi : m_repository.values()) {
-                            // Check whether the entity is reachable from this target...
-                            if (isReachableFrom(stoi, entity)) {
-                                stoi.determineStatus();
-                            }
-                        }
-                    }
+        }
+        else if (TargetObject.PRIVATE_TOPIC_REMOVED.equals(topic)) {
+            synchronized (m_repository) {
+                String id = ((TargetObject) entity).getID();
+                StatefulTargetObjectImpl stoi = getStatefulTargetObject(id);
+                // if the stateful target is already gone; we don't have to do anything...
+                if (stoi != null) {
+                    stoi.updateTargetObject(true);
                 }
             }
         }
-
-        if (RepositoryAdmin.PRIVATE_TOPIC_LOGIN.equals(topic) || RepositoryAdmin.PRIVATE_TOPIC_REFRESH.equals(topic)) {
-            m_holdEvents = false;
+        else if (DeploymentVersionObject.PRIVATE_TOPIC_ADDED.equals(topic) || DeploymentVersionObject.PRIVATE_TOPIC_REMOVED.equals(topic)) {
             synchronized (m_repository) {
-                populate();
+                DeploymentVersionObject deploymentVersionObject = (DeploymentVersionObject) entity;
+                String id = deploymentVersionObject.getTargetID();
+                StatefulTargetObjectImpl stoi = getStatefulTargetObject(id);
+                if (stoi == null) {
+                    createStateful(id);
+                }
+                else {
+                    stoi.updateDeploymentVersions(deploymentVersionObject);
+                }
+            }
+        }
+        else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rechecks the status of all stateful targets that are reachable from any of the given entities.
+     */
+    private void determineStatusReachableFrom(List<RepositoryObject> entities) {
+        synchronized (m_repository) {
+            for (StatefulTargetObjectImpl stoi : m_repository.values()) {
+                for (RepositoryObject entity : entities) {
+                    // Check whether the entity is reachable from this target...
+                    if (isReachableFrom(stoi, entity)) {
+                        stoi.determineStatus();
+                        break;
+                    }
+                }
             }
         }
     }
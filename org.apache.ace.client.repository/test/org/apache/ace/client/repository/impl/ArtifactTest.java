@@ -18,21 +18,41 @@
  */
 package org.apache.ace.client.repository.impl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.ace.client.repository.helper.ArtifactHelper;
 import org.apache.ace.client.repository.helper.ArtifactPreprocessor;
+import org.apache.ace.client.repository.helper.ArtifactRecognizer;
+import org.apache.ace.client.repository.helper.ArtifactResource;
 import org.apache.ace.client.repository.helper.bundle.BundleHelper;
 import org.apache.ace.client.repository.helper.bundle.impl.BundleHelperImpl;
 import org.apache.ace.client.repository.object.ArtifactObject;
+import org.apache.ace.client.repository.repository.ArtifactRepository;
+import org.apache.ace.client.repository.repository.RepositoryConfiguration;
+import org.apache.ace.connectionfactory.ConnectionFactory;
+import org.apache.ace.test.utils.FileUtils;
 import org.apache.ace.test.utils.TestUtils;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
 import org.osgi.service.log.LogService;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -125,6 +145,176 @@ public class ArtifactTest {
         assert list.get(0).getSize() == 10 : "Expected the size to be filled in!";
     }
 
+    @Test()
+    public void testCreateAllRejectsDuplicates() {
+        m_artifactRepository.addHelper("myMime", new MockHelper());
+
+        List<Map<String, String>> attributes = new ArrayList<>();
+        List<Map<String, String>> tags = new ArrayList<>();
+        for (String url : new String[] { "url1", "url2", "url1" }) {
+            Map<String, String> attr = new HashMap<>();
+            attr.put(ArtifactObject.KEY_MIMETYPE, "myMime");
+            attr.put(ArtifactObject.KEY_URL, url);
+            attributes.add(attr);
+            tags.add(new HashMap<String, String>());
+        }
+
+        try {
+            m_artifactRepository.createAll(attributes, tags);
+            assert false : "Expected a duplicate artifact to be rejected!";
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+        assert m_artifactRepository.get().isEmpty() : "Expected no artifact to be added!";
+    }
+
+    @Test()
+    public void testImportArtifactsRemovesUploadsOnFailure() throws Exception {
+        final Set<String> obr = Collections.synchronizedSet(new HashSet<String>());
+        final List<String> deleted = Collections.synchronizedList(new ArrayList<String>());
+
+        ArtifactRepositoryImpl repository = createImportingRepository(obr, deleted);
+
+        File dir = FileUtils.createTempFile(null);
+        dir.mkdirs();
+        try {
+            List<URL> artifacts = new ArrayList<>();
+            for (String name : new String[] { "a.txt", "b.txt", "c.txt" }) {
+                File file = new File(dir, name);
+                try (FileWriter writer = new FileWriter(file)) {
+                    writer.write(name);
+                }
+                artifacts.add(file.toURI().toURL());
+            }
+            // c.txt is already present in the OBR, so uploading it should fail...
+            obr.add("c.txt");
+
+            try {
+                repository.importArtifacts(artifacts, true /* upload */);
+                assert false : "Expected the import to fail!";
+            }
+            catch (ArtifactRepository.ArtifactAlreadyExistsException e) {
+                // expected
+            }
+            assert repository.get().isEmpty() : "Expected no artifacts to be created!";
+            assert obr.equals(Collections.singleton("c.txt")) : "Expected uploaded artifacts to be removed, but OBR contains " + obr;
+            assert deleted.size() == 2 : "Expected two artifacts to be removed, got " + deleted;
+
+            // importing the same artifacts again (without the conflicting one) should now succeed...
+            List<ArtifactObject> result = repository.importArtifacts(artifacts.subList(0, 2), true /* upload */);
+            assert result.size() == 2 : "Expected two artifacts to be created!";
+            assert obr.size() == 3 : "Expected all artifacts to be present in the OBR, got " + obr;
+        }
+        finally {
+            FileUtils.removeDirectoryWithContent(dir);
+        }
+    }
+
+    /**
+     * Creates an artifact repository that recognizes all artifacts as <tt>myMime</tt>, and uploads them to an OBR that
+     * keeps track of its files in the given set.
+     */
+    private ArtifactRepositoryImpl createImportingRepository(final Set<String> obr, final List<String> deleted) throws Exception {
+        final URL obrBase = new URL("http://localhost/obr/");
+
+        final ArtifactRecognizer recognizer = TestUtils.createMockObjectAdapter(ArtifactRecognizer.class, new Object() {
+            @SuppressWarnings("unused")
+            public String recognize(ArtifactResource artifact) {
+                return "myMime";
+            }
+
+            @SuppressWarnings("unused")
+            public Map<String, String> extractMetaData(ArtifactResource artifact) {
+                String url = artifact.getURL().toString();
+                Map<String, String> result = new HashMap<>();
+                result.put("filename", url.substring(url.lastIndexOf('/') + 1));
+                result.put(ArtifactObject.KEY_MIMETYPE, "myMime");
+                return result;
+            }
+        });
+        final ServiceReference<?> recognizerRef = TestUtils.createNullObject(ServiceReference.class);
+
+        BundleContext bc = TestUtils.createMockObjectAdapter(BundleContext.class, new Object() {
+            @SuppressWarnings("unused")
+            public Filter createFilter(String filter) throws InvalidSyntaxException {
+                return FrameworkUtil.createFilter(filter);
+            }
+
+            @SuppressWarnings("unused")
+            public Collection<ServiceReference<?>> getServiceReferences(Class<?> clazz, String filter) {
+                return Collections.<ServiceReference<?>> singletonList(recognizerRef);
+            }
+
+            @SuppressWarnings("unused")
+            public Object getService(ServiceReference<?> ref) {
+                return recognizer;
+            }
+        });
+
+        ConnectionFactory connectionFactory = TestUtils.createMockObjectAdapter(ConnectionFactory.class, new Object() {
+            @SuppressWarnings("unused")
+            public URLConnection createConnection(final URL url) throws IOException {
+                if (!"http".equals(url.getProtocol())) {
+                    return url.openConnection();
+                }
+                return new HttpURLConnection(url) {
+                    @Override
+                    public OutputStream getOutputStream() {
+                        return new ByteArrayOutputStream();
+                    }
+
+                    @Override
+                    public int getResponseCode() {
+                        String query = url.getQuery();
+                        if ("DELETE".equals(getRequestMethod())) {
+                            String name = url.getPath().substring(url.getPath().lastIndexOf('/') + 1);
+                            deleted.add(name);
+                            return obr.remove(name) ? HTTP_OK : HTTP_NOT_FOUND;
+                        }
+                        String name = query.substring(query.indexOf('=') + 1);
+                        return obr.add(name) ? HTTP_CREATED : HTTP_CONFLICT;
+                    }
+
+                    @Override
+                    public String getHeaderField(String name) {
+                        String query = url.getQuery();
+                        return obrBase + query.substring(query.indexOf('=') + 1);
+                    }
+
+                    @Override
+                    public void connect() {
+                        // nop
+                    }
+
+                    @Override
+                    public void disconnect() {
+                        // nop
+                    }
+
+                    @Override
+                    public boolean usingProxy() {
+                        return false;
+                    }
+                };
+            }
+        });
+
+        RepositoryConfiguration config = TestUtils.createMockObjectAdapter(RepositoryConfiguration.class, new Object() {
+            @SuppressWarnings("unused")
+            public URL getOBRLocation() {
+                return obrBase;
+            }
+        });
+
+        ArtifactRepositoryImpl repository = new ArtifactRepositoryImpl(TestUtils.createNullObject(ChangeNotifier.class), config);
+        TestUtils.configureObject(repository, LogService.class);
+        TestUtils.configureObject(repository, BundleContext.class, bc);
+        TestUtils.configureObject(repository, ConnectionFactory.class, connectionFactory);
+        repository.addHelper("myMime", new MockHelper());
+        return repository;
+    }
+
     private ArtifactObject createArtifact(String mimetype, String URL, String symbolicName, String processorPID, String size) {
         Map<String, String> attributes = new HashMap<>();
         attributes.put(ArtifactObject.KEY_MIMETYPE, mimetype);
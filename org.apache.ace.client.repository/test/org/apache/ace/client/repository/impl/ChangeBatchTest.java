@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.client.repository.impl;
+
+import static org.apache.ace.client.repository.RepositoryObject.EVENT_ADDED_ENTITIES;
+import static org.apache.ace.client.repository.RepositoryObject.EVENT_CHANGED_ENTITIES;
+import static org.apache.ace.client.repository.RepositoryObject.EVENT_ENTITY;
+import static org.apache.ace.client.repository.RepositoryObject.EVENT_REMOVED_ENTITIES;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ace.client.repository.RepositoryObject;
+import org.apache.ace.client.repository.SessionFactory;
+import org.apache.ace.client.repository.object.ArtifactObject;
+import org.apache.ace.client.repository.stateful.StatefulTargetObject;
+import org.apache.ace.test.utils.TestUtils;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link ChangeBatch}.
+ */
+public class ChangeBatchTest {
+    private static final String ROOT = "org/apache/ace/client/repository/private/ArtifactObject/";
+
+    private final List<Event> m_sent = new ArrayList<>();
+    private final List<Event> m_posted = new ArrayList<>();
+    private EventAdmin m_eventAdmin;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        m_sent.clear();
+        m_posted.clear();
+        m_eventAdmin = new EventAdmin() {
+            @Override
+            public void sendEvent(Event event) {
+                m_sent.add(event);
+            }
+
+            @Override
+            public void postEvent(Event event) {
+                m_posted.add(event);
+            }
+        };
+    }
+
+    @Test()
+    public void testCoalesceEntityEvents() {
+        ArtifactObject a1 = createArtifact();
+        ArtifactObject a2 = createArtifact();
+        ArtifactObject a3 = createArtifact();
+        ArtifactObject a4 = createArtifact();
+
+        ChangeBatch batch = new ChangeBatch();
+        // added and changed afterwards: added...
+        batch.add(createEvent(ROOT + "ADDED", a1), false);
+        batch.add(createEvent(ROOT + "CHANGED", a1), false);
+        // changed twice: changed...
+        batch.add(createEvent(ROOT + "CHANGED", a2), false);
+        batch.add(createEvent(ROOT + "CHANGED", a2), false);
+        // added and removed again: not reported at all...
+        batch.add(createEvent(ROOT + "ADDED", a3), false);
+        batch.add(createEvent(ROOT + "REMOVED", a3), false);
+        // changed and removed: removed...
+        batch.add(createEvent(ROOT + "CHANGED", a4), false);
+        batch.add(createEvent(ROOT + "REMOVED", a4), false);
+
+        batch.deliver(m_eventAdmin);
+
+        assert m_posted.isEmpty() : "Expected no events to be posted!";
+        assert m_sent.size() == 1 : "Expected a single event, got " + m_sent;
+
+        Event event = m_sent.get(0);
+        assert (ROOT + "BATCH").equals(event.getTopic()) : "Expected a batch event, got " + event.getTopic();
+        assert "mySession".equals(event.getProperty(SessionFactory.SERVICE_SID)) : "Expected the session ID to be retained!";
+        assert containsOnly(event.getProperty(EVENT_ADDED_ENTITIES), a1) : "Expected only a1 to be added!";
+        assert containsOnly(event.getProperty(EVENT_CHANGED_ENTITIES), a2) : "Expected only a2 to be changed!";
+        assert containsOnly(event.getProperty(EVENT_REMOVED_ENTITIES), a4) : "Expected only a4 to be removed!";
+    }
+
+    @Test()
+    public void testNetSingleChangeIsDeliveredAsSingleEvent() {
+        ArtifactObject a1 = createArtifact();
+
+        ChangeBatch batch = new ChangeBatch();
+        batch.add(createEvent(ROOT + "CHANGED", a1), true);
+        batch.add(createEvent(ROOT + "CHANGED", a1), true);
+        batch.add(createEvent(ROOT + "CHANGED", a1), true);
+
+        batch.deliver(m_eventAdmin);
+
+        assert m_sent.isEmpty() : "Expected no events to be sent!";
+        assert m_posted.size() == 1 : "Expected a single event, got " + m_posted;
+
+        Event event = m_posted.get(0);
+        assert (ROOT + "CHANGED").equals(event.getTopic()) : "Expected a changed event, got " + event.getTopic();
+        assert event.getProperty(EVENT_ENTITY) == a1 : "Expected the changed entity!";
+    }
+
+    @Test()
+    public void testMergeBatchEventsAndDeduplicateOtherEvents() {
+        ArtifactObject a1 = createArtifact();
+        ArtifactObject a2 = createArtifact();
+
+        Map<String, Object> props = new HashMap<>();
+        props.put(EVENT_ADDED_ENTITIES, Arrays.asList(a1, a2));
+        props.put(EVENT_CHANGED_ENTITIES, Collections.emptyList());
+        props.put(EVENT_REMOVED_ENTITIES, Collections.emptyList());
+
+        ChangeBatch batch = new ChangeBatch();
+        batch.add(createEvent("org/apache/ace/client/repository/private/RepositoryAdmin/STATUSCHANGED", null), false);
+        batch.add(new Event(ROOT + "BATCH", props), false);
+        batch.add(createEvent(ROOT + "REMOVED", a2), false);
+        batch.add(createEvent(ROOT + "CHANGED", a1), false);
+        batch.add(createEvent("org/apache/ace/client/repository/private/RepositoryAdmin/STATUSCHANGED", null), false);
+
+        batch.deliver(m_eventAdmin);
+
+        assert m_sent.size() == 2 : "Expected two events, got " + m_sent;
+        assert m_sent.get(0).getTopic().endsWith("/STATUSCHANGED") : "Expected the status changed event only once, and first!";
+
+        Event event = m_sent.get(1);
+        assert (ROOT + "ADDED").equals(event.getTopic()) : "Expected a single added event, got " + event.getTopic();
+        assert event.getProperty(EVENT_ENTITY) == a1 : "Expected the added entity!";
+    }
+
+    @Test()
+    public void testRetainLatestPayloadOfOtherEvents() {
+        StatefulTargetObject t1 = TestUtils.createNullObject(StatefulTargetObject.class);
+        StatefulTargetObject t2 = TestUtils.createNullObject(StatefulTargetObject.class);
+
+        ChangeBatch batch = new ChangeBatch();
+        batch.add(createEvent(StatefulTargetObject.TOPIC_STATUS_CHANGED, t1, "state", "old"), true);
+        batch.add(createEvent(StatefulTargetObject.TOPIC_AUDITEVENTS_CHANGED, t1, StatefulTargetObject.KEY_AUDITEVENTS, Arrays.asList("d1")), true);
+        batch.add(createEvent(StatefulTargetObject.TOPIC_AUDITEVENTS_CHANGED, t2, StatefulTargetObject.KEY_AUDITEVENTS, Arrays.asList("d2")), true);
+        batch.add(createEvent(StatefulTargetObject.TOPIC_AUDITEVENTS_CHANGED, t1, StatefulTargetObject.KEY_AUDITEVENTS, Arrays.asList("d3")), true);
+        batch.add(createEvent(StatefulTargetObject.TOPIC_STATUS_CHANGED, t1, "state", "new"), true);
+
+        batch.deliver(m_eventAdmin);
+
+        assert m_sent.isEmpty() : "Expected no events to be sent!";
+        assert m_posted.size() == 3 : "Expected three events, got " + m_posted;
+
+        Event event = m_posted.get(0);
+        assert StatefulTargetObject.TOPIC_STATUS_CHANGED.equals(event.getTopic()) : "Expected the status changed event first!";
+        assert "new".equals(event.getProperty("state")) : "Expected the latest status to be delivered!";
+
+        event = m_posted.get(1);
+        assert StatefulTargetObject.TOPIC_AUDITEVENTS_CHANGED.equals(event.getTopic()) && event.getProperty(EVENT_ENTITY) == t1 : "Expected the audit events of t1 second!";
+        assert Arrays.asList("d1", "d3").equals(event.getProperty(StatefulTargetObject.KEY_AUDITEVENTS)) : "Expected all audit events of t1, got " + event.getProperty(StatefulTargetObject.KEY_AUDITEVENTS);
+        assert "mySession".equals(event.getProperty(SessionFactory.SERVICE_SID)) : "Expected the session ID to be retained!";
+
+        event = m_posted.get(2);
+        assert event.getProperty(EVENT_ENTITY) == t2 : "Expected the audit events of t2 last!";
+        assert Arrays.asList("d2").equals(event.getProperty(StatefulTargetObject.KEY_AUDITEVENTS)) : "Expected only the audit events of t2!";
+    }
+
+    private static boolean containsOnly(Object entities, RepositoryObject entity) {
+        // our artifacts are null objects, so we cannot rely on their equals method...
+        List<?> list = (List<?>) entities;
+        return (list.size() == 1) && (list.get(0) == entity);
+    }
+
+    private static ArtifactObject createArtifact() {
+        return TestUtils.createNullObject(ArtifactObject.class);
+    }
+
+    private static Event createEvent(String topic, RepositoryObject entity) {
+        return createEvent(topic, entity, null, null);
+    }
+
+    private static Event createEvent(String topic, Object entity, String key, Object value) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(SessionFactory.SERVICE_SID, "mySession");
+        if (entity != null) {
+            props.put(EVENT_ENTITY, entity);
+        }
+        if (key != null) {
+            props.put(key, value);
+        }
+        return new Event(topic, props);
+    }
+}
@@ -26,14 +26,17 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 import org.apache.ace.client.repository.Association;
 import org.apache.ace.client.repository.ObjectRepository;
+import org.apache.ace.client.repository.RepositoryObject;
 import org.apache.ace.client.repository.RepositoryUtil;
 import org.apache.ace.client.repository.helper.bundle.BundleHelper;
 import org.apache.ace.client.repository.helper.bundle.impl.BundleHelperImpl;
@@ -200,6 +203,75 @@ public class ModelTest {
         assert artifactWithInvalidSize.getSize() == -1L : "The artifact did have a size?!";
     }
 
+    /**
+     * Tests that creating many artifacts at once results in a single batch event, and that nothing is created in case
+     * one of them already exists.
+     */
+    @Test()
+    @SuppressWarnings("unchecked")
+    public void testCreateAllArtifactsFiresBatchEvent() {
+        final List<String> topics = new ArrayList<>();
+        final List<Properties> events = new ArrayList<>();
+        ChangeNotifier notifier = new ChangeNotifier() {
+            @Override
+            public void notifyChanged(String topic, Properties props) {
+                notifyChanged(topic, props, false);
+            }
+
+            @Override
+            public void notifyChanged(String topic, Properties props, boolean internalOnly) {
+                topics.add(topic);
+                events.add(props);
+            }
+
+            @Override
+            public String getTopicAll(boolean publicTopic) {
+                return "*";
+            }
+        };
+
+        ArtifactRepositoryImpl repository = new ArtifactRepositoryImpl(notifier, new RepositoryConfigurationImpl());
+        TestUtils.configureObject(repository, LogService.class);
+        TestUtils.configureObject(repository, BundleContext.class, m_mockBundleContext);
+        repository.addHelper(BundleHelper.MIMETYPE, m_bundleHelper);
+
+        List<Map<String, String>> attributes = new ArrayList<>();
+        List<Map<String, String>> tags = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Map<String, String> attr = new HashMap<>();
+            attr.put(BundleHelper.KEY_SYMBOLICNAME, "artifact" + i);
+            attr.put(ArtifactObject.KEY_MIMETYPE, BundleHelper.MIMETYPE);
+            attr.put(ArtifactObject.KEY_URL, "http://artifact" + i);
+            attributes.add(attr);
+            tags.add(new HashMap<String, String>());
+        }
+
+        List<ArtifactObject> created = repository.createAll(attributes, tags);
+        assert created.size() == 3 : "Expected three artifacts to be created!";
+        assert repository.get().equals(created) : "Expected all artifacts to be stored!";
+
+        assert topics.equals(Arrays.asList(RepositoryObject.TOPIC_BATCH_SUFFIX)) : "Expected a single batch event, got " + topics;
+        Properties props = events.get(0);
+        assert created.equals(props.get(RepositoryObject.EVENT_ADDED_ENTITIES)) : "Expected all artifacts to be added!";
+        assert ((List<ArtifactObject>) props.get(RepositoryObject.EVENT_CHANGED_ENTITIES)).isEmpty() : "Expected no changed artifacts!";
+        assert ((List<ArtifactObject>) props.get(RepositoryObject.EVENT_REMOVED_ENTITIES)).isEmpty() : "Expected no removed artifacts!";
+
+        Map<String, String> attr = new HashMap<>();
+        attr.put(BundleHelper.KEY_SYMBOLICNAME, "artifact3");
+        attr.put(ArtifactObject.KEY_MIMETYPE, BundleHelper.MIMETYPE);
+        attr.put(ArtifactObject.KEY_URL, "http://artifact3");
+
+        try {
+            repository.createAll(Arrays.asList(attr, attributes.get(0)), Arrays.asList(tags.get(0), tags.get(1)));
+            assert false : "Expected an existing artifact to be rejected!";
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+        assert repository.get().size() == 3 : "Expected no artifact to be added!";
+        assert topics.size() == 1 : "Expected no additional events!";
+    }
+
     /**
      * Tests the behavior when associating stuff, and removing associations.
      */
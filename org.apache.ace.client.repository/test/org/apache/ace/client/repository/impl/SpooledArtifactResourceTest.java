@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.client.repository.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ace.connectionfactory.ConnectionFactory;
+import org.osgi.service.useradmin.User;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link SpooledArtifactResource}.
+ */
+public class SpooledArtifactResourceTest {
+
+    @Test()
+    public void testSpoolArtifactReadsItOnlyOnce() throws Exception {
+        File file = File.createTempFile("artifact", ".txt");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write("abc".getBytes("UTF-8"));
+        }
+        finally {
+            fos.close();
+        }
+
+        final AtomicInteger connections = new AtomicInteger();
+        ConnectionFactory connectionFactory = new ConnectionFactory() {
+            @Override
+            public URLConnection createConnection(URL url) throws IOException {
+                connections.incrementAndGet();
+                return url.openConnection();
+            }
+
+            @Override
+            public URLConnection createConnection(URL url, User user) throws IOException {
+                return createConnection(url);
+            }
+        };
+
+        URL url = file.toURI().toURL();
+        SpooledArtifactResource resource = SpooledArtifactResource.spool(url, connectionFactory);
+        try {
+            assert url.equals(resource.getURL()) : "Expected the original URL to be retained!";
+            assert resource.getSize() == 3 : "Expected the size to be determined while spooling!";
+            assert "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad".equals(resource.getDigest()) : "Expected the SHA-256 digest to be determined while spooling!";
+
+            for (int i = 0; i < 3; i++) {
+                assert "abc".equals(read(resource.openStream())) : "Expected the contents of the artifact!";
+            }
+            assert connections.get() == 1 : "Expected the artifact to be read only once!";
+        }
+        finally {
+            resource.close();
+        }
+
+        try {
+            resource.openStream();
+            assert false : "Expected the local copy to be removed!";
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static String read(InputStream is) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (int b = is.read(); b != -1; b = is.read()) {
+                sb.append((char) b);
+            }
+        }
+        finally {
+            is.close();
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.client.repository.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ace.client.repository.RepositoryObject;
+import org.apache.ace.client.repository.helper.ArtifactHelper;
+import org.apache.ace.client.repository.helper.bundle.BundleHelper;
+import org.apache.ace.client.repository.helper.bundle.impl.BundleHelperImpl;
+import org.apache.ace.client.repository.object.Artifact2FeatureAssociation;
+import org.apache.ace.client.repository.object.ArtifactObject;
+import org.apache.ace.client.repository.object.DeploymentArtifact;
+import org.apache.ace.client.repository.object.DeploymentVersionObject;
+import org.apache.ace.client.repository.object.Distribution2TargetAssociation;
+import org.apache.ace.client.repository.object.DistributionObject;
+import org.apache.ace.client.repository.object.Feature2DistributionAssociation;
+import org.apache.ace.client.repository.object.FeatureObject;
+import org.apache.ace.client.repository.object.TargetObject;
+import org.apache.ace.client.repository.repository.ArtifactRepository;
+import org.apache.ace.client.repository.repository.DeploymentVersionRepository;
+import org.apache.ace.client.repository.repository.RepositoryConfiguration;
+import org.apache.ace.client.repository.repository.TargetRepository;
+import org.apache.ace.client.repository.stateful.StatefulTargetObject;
+import org.apache.ace.client.repository.stateful.StatefulTargetObject.StoreState;
+import org.apache.ace.client.repository.stateful.impl.StatefulTargetRepositoryImpl;
+import org.apache.ace.log.server.store.LogStore;
+import org.apache.ace.test.utils.TestUtils;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+import org.osgi.service.log.LogService;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link StatefulTargetRepositoryImpl} on top of the object model, verifying that the derived state of stateful targets is
+ * recomputed when any of the objects it depends on changes.
+ */
+public class StatefulTargetRepositoryImplTest {
+    private static final String SESSION_ID = "testSessionID";
+    private static final String TARGET_ID = "target";
+    private static final String TEST_MIMETYPE = "application/x-test";
+
+    private ArtifactRepositoryImpl m_artifactRepository;
+    private FeatureRepositoryImpl m_featureRepository;
+    private Artifact2FeatureAssociationRepositoryImpl m_artifact2FeatureRepository;
+    private DistributionRepositoryImpl m_distributionRepository;
+    private Feature2DistributionAssociationRepositoryImpl m_feature2DistributionRepository;
+    private TargetRepositoryImpl m_targetRepository;
+    private Distribution2TargetAssociationRepositoryImpl m_distribution2TargetRepository;
+    private DeploymentVersionRepositoryImpl m_deploymentVersionRepository;
+    private StatefulTargetRepositoryImpl m_statefulTargetRepository;
+
+    private ArtifactObject m_artifact;
+    private FeatureObject m_feature;
+    private DistributionObject m_distribution;
+    private StatefulTargetObject m_statefulTarget;
+
+    @Test
+    public void testArtifactChangeRecomputesState() {
+        approveCurrentArtifacts();
+
+        ArtifactObject artifact2 = createArtifact("bundle2");
+        assertArtifactsFromShop("http://bundle1");
+
+        m_artifact2FeatureRepository.create(artifact2, m_feature);
+        assertArtifactsFromShop("http://bundle1", "http://bundle2");
+        assertEquals(m_statefulTarget.getStoreState(), StoreState.Unapproved);
+
+        m_artifactRepository.remove(artifact2);
+        assertArtifactsFromShop("http://bundle1");
+        assertEquals(m_statefulTarget.getStoreState(), StoreState.Approved);
+    }
+
+    @Test
+    public void testFeatureChangeRecomputesState() {
+        approveCurrentArtifacts();
+
+        m_featureRepository.remove(m_feature);
+        assertArtifactsFromShop();
+        assertEquals(m_statefulTarget.getStoreState(), StoreState.Unapproved);
+
+        // the associations of a new feature with the same name should pick it up again...
+        m_feature = createFeature("feature");
+        assertArtifactsFromShop("http://bundle1");
+        assertEquals(m_statefulTarget.getStoreState(), StoreState.Approved);
+    }
+
+    @Test
+    public void testDistributionChangeRecomputesState() {
+        approveCurrentArtifacts();
+
+        m_distributionRepository.remove(m_distribution);
+        assertArtifactsFromShop();
+        assertEquals(m_statefulTarget.getStoreState(), StoreState.Unapproved);
+
+        m_distribution = createDistribution("distribution");
+        assertArtifactsFromShop("http://bundle1");
+        assertEquals(m_statefulTarget.getStoreState(), StoreState.Approved);
+    }
+
+    @Test
+    public void testDeploymentVersionChangeRecomputesState() {
+        assertEquals(m_statefulTarget.getCurrentVersion(), StatefulTargetObject.UNKNOWN_VERSION);
+        assertEquals(m_statefulTarget.getArtifactsFromDeployment().length, 0);
+        assertEquals(m_statefulTarget.getStoreState(), StoreState.Unapproved);
+
+        DeploymentVersionObject version = createDeploymentVersion("1.0.0", "http://bundle1");
+        assertEquals(m_statefulTarget.getCurrentVersion(), "1.0.0");
+        assertEquals(m_statefulTarget.getArtifactsFromDeployment().length, 1);
+        assertEquals(m_statefulTarget.getStoreState(), StoreState.Approved);
+
+        createDeploymentVersion("2.0.0", "http://bundle1", "http://bundle2");
+        assertEquals(m_statefulTarget.getCurrentVersion(), "2.0.0");
+        assertEquals(m_statefulTarget.getArtifactsFromDeployment().length, 2);
+        assertEquals(m_statefulTarget.getStoreState(), StoreState.Unapproved);
+
+        m_deploymentVersionRepository.remove(m_deploymentVersionRepository.getMostRecentDeploymentVersion(TARGET_ID));
+        assertEquals(m_statefulTarget.getCurrentVersion(), version.getVersion());
+        assertEquals(m_statefulTarget.getArtifactsFromDeployment().length, 1);
+        assertEquals(m_statefulTarget.getStoreState(), StoreState.Approved);
+    }
+
+    @Test
+    public void testUnresolvableArtifactsAreRecomputed() {
+        m_artifactRepository.remove(m_artifact);
+        m_artifact = createArtifact("bundle1", TEST_MIMETYPE, "test.processor");
+        m_artifact2FeatureRepository.create(m_artifact, m_feature);
+        // no resource processor is available yet...
+        assertNull(m_statefulTarget.getArtifactsFromShop());
+
+        createArtifact("processor", BundleHelper.MIMETYPE, null, BundleHelper.KEY_RESOURCE_PROCESSOR_PID, "test.processor");
+        assertArtifactsFromShop("http://bundle1", "http://processor");
+    }
+
+    @BeforeMethod(alwaysRun = true)
+    protected void setUp() throws Exception {
+        BundleContext bundleContext = TestUtils.createMockObjectAdapter(BundleContext.class, new Object() {
+            @SuppressWarnings("unused")
+            public Filter createFilter(String filter) throws InvalidSyntaxException {
+                return FrameworkUtil.createFilter(filter);
+            }
+        });
+        // delivers all private events synchronously, like the event admin does for the repository admin...
+        EventAdmin eventAdmin = TestUtils.createMockObjectAdapter(EventAdmin.class, new Object() {
+            @SuppressWarnings("unused")
+            public void sendEvent(Event event) {
+                if (event.getTopic().startsWith(RepositoryObject.PRIVATE_TOPIC_ROOT)) {
+                    m_artifact2FeatureRepository.handleEvent(event);
+                    m_feature2DistributionRepository.handleEvent(event);
+                    m_distribution2TargetRepository.handleEvent(event);
+                    m_statefulTargetRepository.handleEvent(event);
+                }
+            }
+        });
+        ChangeNotifierManager notifierManager = new ChangeNotifierManager();
+        TestUtils.configureObject(notifierManager, EventAdmin.class, eventAdmin);
+
+        RepositoryConfiguration repoConfig = new RepositoryConfigurationImpl();
+        BundleHelperImpl bundleHelper = new BundleHelperImpl();
+
+        m_artifactRepository = new ArtifactRepositoryImpl(notifierManager.getConfiguredNotifier(ArtifactObject.TOPIC_ENTITY_ROOT, SESSION_ID), repoConfig);
+        TestUtils.configureObject(m_artifactRepository, LogService.class);
+        TestUtils.configureObject(m_artifactRepository, BundleContext.class, bundleContext);
+        m_artifactRepository.addHelper(BundleHelper.MIMETYPE, bundleHelper);
+        m_artifactRepository.addHelper(TEST_MIMETYPE, TestUtils.createMockObjectAdapter(ArtifactHelper.class, new Object() {
+            @SuppressWarnings("unused")
+            public Map<String, String> checkAttributes(Map<String, String> attributes) {
+                return attributes;
+            }
+
+            @SuppressWarnings("unused")
+            public String getAssociationFilter(ArtifactObject obj, Map<String, String> properties) {
+                return "(" + ArtifactObject.KEY_URL + "=" + obj.getURL() + ")";
+            }
+
+            @SuppressWarnings("unused")
+            public int getCardinality(ArtifactObject obj, Map<String, String> properties) {
+                return 1;
+            }
+
+            @SuppressWarnings("unused")
+            public String[] getDefiningKeys() {
+                return new String[] { ArtifactObject.KEY_URL };
+            }
+
+            @SuppressWarnings("unused")
+            public String[] getMandatoryAttributes() {
+                return new String[0];
+            }
+        }));
+        m_featureRepository = new FeatureRepositoryImpl(notifierManager.getConfiguredNotifier(FeatureObject.TOPIC_ENTITY_ROOT, SESSION_ID), repoConfig);
+        TestUtils.configureObject(m_featureRepository, BundleContext.class, bundleContext);
+        m_artifact2FeatureRepository = new Artifact2FeatureAssociationRepositoryImpl(m_artifactRepository, m_featureRepository, notifierManager.getConfiguredNotifier(Artifact2FeatureAssociation.TOPIC_ENTITY_ROOT, SESSION_ID), repoConfig);
+        TestUtils.configureObject(m_artifact2FeatureRepository, BundleContext.class, bundleContext);
+        m_distributionRepository = new DistributionRepositoryImpl(notifierManager.getConfiguredNotifier(DistributionObject.TOPIC_ENTITY_ROOT, SESSION_ID), repoConfig);
+        TestUtils.configureObject(m_distributionRepository, BundleContext.class, bundleContext);
+        m_feature2DistributionRepository = new Feature2DistributionAssociationRepositoryImpl(m_featureRepository, m_distributionRepository, notifierManager.getConfiguredNotifier(Feature2DistributionAssociation.TOPIC_ENTITY_ROOT, SESSION_ID), repoConfig);
+        TestUtils.configureObject(m_feature2DistributionRepository, BundleContext.class, bundleContext);
+        m_targetRepository = new TargetRepositoryImpl(notifierManager.getConfiguredNotifier(TargetObject.TOPIC_ENTITY_ROOT, SESSION_ID), repoConfig);
+        TestUtils.configureObject(m_targetRepository, BundleContext.class, bundleContext);
+        m_distribution2TargetRepository = new Distribution2TargetAssociationRepositoryImpl(m_distributionRepository, m_targetRepository, notifierManager.getConfiguredNotifier(Distribution2TargetAssociation.TOPIC_ENTITY_ROOT, SESSION_ID), repoConfig);
+        TestUtils.configureObject(m_distribution2TargetRepository, BundleContext.class, bundleContext);
+        m_deploymentVersionRepository = new DeploymentVersionRepositoryImpl(notifierManager.getConfiguredNotifier(DeploymentVersionObject.TOPIC_ENTITY_ROOT, SESSION_ID), repoConfig);
+        TestUtils.configureObject(m_deploymentVersionRepository, BundleContext.class, bundleContext);
+
+        m_statefulTargetRepository = new StatefulTargetRepositoryImpl(SESSION_ID, repoConfig);
+        TestUtils.configureObject(m_statefulTargetRepository, BundleContext.class, bundleContext);
+        TestUtils.configureObject(m_statefulTargetRepository, ArtifactRepository.class, m_artifactRepository);
+        TestUtils.configureObject(m_statefulTargetRepository, TargetRepository.class, m_targetRepository);
+        TestUtils.configureObject(m_statefulTargetRepository, DeploymentVersionRepository.class, m_deploymentVersionRepository);
+        TestUtils.configureObject(m_statefulTargetRepository, LogStore.class);
+        TestUtils.configureObject(m_statefulTargetRepository, EventAdmin.class);
+        TestUtils.configureObject(m_statefulTargetRepository, LogService.class);
+        TestUtils.configureObject(m_statefulTargetRepository, BundleHelper.class, bundleHelper);
+
+        // target -> distribution -> feature -> bundle1...
+        m_artifact = createArtifact("bundle1");
+        m_feature = createFeature("feature");
+        m_distribution = createDistribution("distribution");
+        m_artifact2FeatureRepository.create(m_artifact, m_feature);
+        m_feature2DistributionRepository.create(m_feature, m_distribution);
+        TargetObject target = createTarget(TARGET_ID);
+        m_distribution2TargetRepository.create(m_distribution, target);
+
+        m_statefulTargetRepository.refresh();
+        List<StatefulTargetObject> targets = m_statefulTargetRepository.get();
+        assertEquals(targets.size(), 1);
+        m_statefulTarget = targets.get(0);
+        assertArtifactsFromShop("http://bundle1");
+    }
+
+    private void approveCurrentArtifacts() {
+        createDeploymentVersion("1.0.0", "http://bundle1");
+        assertEquals(m_statefulTarget.getStoreState(), StoreState.Approved);
+    }
+
+    private void assertArtifactsFromShop(String... urls) {
+        List<String> actual = new ArrayList<>();
+        for (ArtifactObject artifact : m_statefulTarget.getArtifactsFromShop()) {
+            actual.add(artifact.getURL());
+        }
+        assertEquals(actual.size(), urls.length, "Unexpected artifacts: " + actual);
+        for (String url : urls) {
+            assertTrue(actual.contains(url), "Missing artifact " + url + " in " + actual);
+        }
+    }
+
+    private ArtifactObject createArtifact(String name) {
+        return createArtifact(name, BundleHelper.MIMETYPE, null);
+    }
+
+    private ArtifactObject createArtifact(String name, String mimetype, String processorPID, String... extraAttrs) {
+        Map<String, String> attr = new HashMap<>();
+        attr.put(ArtifactObject.KEY_MIMETYPE, mimetype);
+        attr.put(ArtifactObject.KEY_URL, "http://" + name);
+        if (BundleHelper.MIMETYPE.equals(mimetype)) {
+            attr.put(BundleHelper.KEY_SYMBOLICNAME, name);
+        }
+        else {
+            attr.put(ArtifactObject.KEY_ARTIFACT_NAME, name);
+            attr.put(ArtifactObject.KEY_PROCESSOR_PID, processorPID);
+        }
+        for (int i = 0; i < extraAttrs.length; i += 2) {
+            attr.put(extraAttrs[i], extraAttrs[i + 1]);
+        }
+        return m_artifactRepository.create(attr, new HashMap<String, String>());
+    }
+
+    private DeploymentVersionObject createDeploymentVersion(String version, String... urls) {
+        Map<String, String> attr = new HashMap<>();
+        attr.put(DeploymentVersionObject.KEY_TARGETID, TARGET_ID);
+        attr.put(DeploymentVersionObject.KEY_VERSION, version);
+
+        DeploymentArtifact[] artifacts = new DeploymentArtifact[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            Map<String, String> directives = new HashMap<>();
+            directives.put(DeploymentArtifact.DIRECTIVE_KEY_BASEURL, urls[i]);
+            artifacts[i] = m_deploymentVersionRepository.createDeploymentArtifact(urls[i], -1L, directives);
+        }
+        return m_deploymentVersionRepository.create(attr, new HashMap<String, String>(), artifacts);
+    }
+
+    private DistributionObject createDistribution(String name) {
+        Map<String, String> attr = new HashMap<>();
+        attr.put(DistributionObject.KEY_NAME, name);
+        return m_distributionRepository.create(attr, new HashMap<String, String>());
+    }
+
+    private FeatureObject createFeature(String name) {
+        Map<String, String> attr = new HashMap<>();
+        attr.put(FeatureObject.KEY_NAME, name);
+        return m_featureRepository.create(attr, new HashMap<String, String>());
+    }
+
+    private TargetObject createTarget(String id) {
+        Map<String, String> attr = new HashMap<>();
+        attr.put(TargetObject.KEY_ID, id);
+        return m_targetRepository.create(attr, new HashMap<String, String>());
+    }
+}
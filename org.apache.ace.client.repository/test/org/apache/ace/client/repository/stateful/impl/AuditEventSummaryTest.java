@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.client.repository.stateful.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ace.feedback.AuditEvent;
+import org.apache.ace.feedback.Descriptor;
+import org.apache.ace.feedback.Event;
+import org.apache.ace.range.SortedRangeSet;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link AuditEventSummary}.
+ */
+public class AuditEventSummaryTest {
+    private static final String TARGET_ID = "target";
+
+    @Test
+    public void testCoversOnlyAnnouncedEvents() {
+        AuditEventSummary summary = new AuditEventSummary(new LogEventComparator());
+        for (long id = 1; id <= 5; id++) {
+            summary.add(new Event(TARGET_ID, 1, id, id, AuditEvent.FRAMEWORK_STARTED));
+        }
+        summary.add(new Event(TARGET_ID, 2, 1, 1, AuditEvent.FRAMEWORK_STARTED));
+
+        assertTrue(summary.covers(Arrays.asList(descriptor(1, "2-5"), descriptor(2, "1"))));
+        assertTrue(summary.covers(Arrays.asList(descriptor(1, ""), descriptor(3, ""))));
+        assertFalse(summary.covers(Arrays.asList(descriptor(1, "4-6"))));
+        assertFalse(summary.covers(Arrays.asList(descriptor(3, "1"))));
+    }
+
+    @Test
+    public void testKeepsLatestRelevantEvents() {
+        AuditEventSummary summary = new AuditEventSummary(new LogEventComparator());
+        summary.add(new Event(TARGET_ID, 1, 1, 1, AuditEvent.DEPLOYMENTCONTROL_INSTALL, props(AuditEvent.KEY_VERSION, "1.0.0")));
+        summary.add(new Event(TARGET_ID, 1, 2, 2, AuditEvent.TARGETPROPERTIES_SET, props("key", "old")));
+        summary.add(new Event(TARGET_ID, 1, 3, 3, AuditEvent.DEPLOYMENTADMIN_COMPLETE, props(AuditEvent.KEY_VERSION, "1.0.0")));
+        summary.add(new Event(TARGET_ID, 1, 4, 4, AuditEvent.TARGETPROPERTIES_SET, props("key", "new")));
+        summary.add(new Event(TARGET_ID, 1, 5, 5, AuditEvent.FRAMEWORK_STARTED));
+
+        List<Descriptor> known = Arrays.asList(descriptor(1, "1-5"));
+        assertTrue(summary.covers(known));
+
+        List<Event> events = summary.getEvents(known);
+        assertEquals(events.size(), 3);
+        assertEquals(events.get(0).getID(), 1);
+        assertEquals(events.get(1).getID(), 3);
+        assertEquals(events.get(2).getID(), 4);
+    }
+
+    @Test
+    public void testKeepsOnlyLatestEventOfEachType() {
+        AuditEventSummary summary = new AuditEventSummary(new LogEventComparator());
+        int[] types = { AuditEvent.DEPLOYMENTCONTROL_INSTALL, AuditEvent.DEPLOYMENTADMIN_COMPLETE, AuditEvent.TARGETPROPERTIES_SET, AuditEvent.FRAMEWORK_STARTED };
+        for (long id = 1; id <= 1000; id++) {
+            summary.add(new Event(TARGET_ID, 1, id, id, types[(int) (id % types.length)]));
+        }
+
+        List<Event> events = summary.getEvents(Arrays.asList(descriptor(1, "1-1000")));
+        assertEquals(events.size(), 3);
+        assertEquals(events.get(0).getID(), 997);
+        assertEquals(events.get(1).getID(), 998);
+        assertEquals(events.get(2).getID(), 1000);
+    }
+
+    @Test
+    public void testDoesNotCoverEventsReplacedByUnknownEvents() {
+        AuditEventSummary summary = new AuditEventSummary(new LogEventComparator());
+        summary.add(new Event(TARGET_ID, 1, 1, 1, AuditEvent.DEPLOYMENTADMIN_COMPLETE, props(AuditEvent.KEY_VERSION, "1.0.0")));
+        summary.add(new Event(TARGET_ID, 1, 2, 2, AuditEvent.FRAMEWORK_STARTED));
+        // announced before the descriptors of the store include it, and replaces the first event...
+        summary.add(new Event(TARGET_ID, 1, 3, 3, AuditEvent.DEPLOYMENTADMIN_COMPLETE, props(AuditEvent.KEY_VERSION, "2.0.0")));
+
+        List<Descriptor> known = Arrays.asList(descriptor(1, "1-2"));
+        assertFalse(summary.covers(known));
+
+        // the processed events are discarded, the one that is not yet known is retained...
+        assertFalse(summary.discard(known));
+        assertFalse(summary.covers(Arrays.asList(descriptor(1, "1-3"))));
+
+        known = Arrays.asList(descriptor(1, "3"));
+        assertTrue(summary.covers(known));
+
+        List<Event> events = summary.getEvents(known);
+        assertEquals(events.size(), 1);
+        assertEquals(events.get(0).getProperties().get(AuditEvent.KEY_VERSION), "2.0.0");
+
+        assertTrue(summary.discard(known));
+        assertTrue(summary.getEvents(Arrays.asList(descriptor(1, "1-3"))).isEmpty());
+    }
+
+    @Test
+    public void testDoesNotCoverMissingEarlierEvents() {
+        AuditEventSummary summary = new AuditEventSummary(new LogEventComparator());
+        summary.add(new Event(TARGET_ID, 1, 1, 1, AuditEvent.FRAMEWORK_STARTED));
+        // event 2 is still missing, while event 3 lies beyond the known descriptors...
+        summary.add(new Event(TARGET_ID, 1, 3, 3, AuditEvent.DEPLOYMENTADMIN_COMPLETE, props(AuditEvent.KEY_VERSION, "1.0.0")));
+
+        assertFalse(summary.covers(Arrays.asList(descriptor(1, "1-2"))));
+        assertFalse(summary.covers(Arrays.asList(descriptor(1, "1"))));
+        assertTrue(summary.getEvents(Arrays.asList(descriptor(1, "1-2"))).isEmpty());
+
+        assertFalse(summary.discard(Arrays.asList(descriptor(1, "1"))));
+        assertTrue(summary.covers(Arrays.asList(descriptor(1, "3"))));
+    }
+
+    private static Descriptor descriptor(long storeID, String ranges) {
+        return new Descriptor(TARGET_ID, storeID, new SortedRangeSet(ranges));
+    }
+
+    private static Map<String, String> props(String key, String value) {
+        Map<String, String> result = new HashMap<>();
+        result.put(key, value);
+        return result;
+    }
+}
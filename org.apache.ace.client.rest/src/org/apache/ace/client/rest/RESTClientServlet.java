@@ -40,6 +40,7 @@ import org.apache.ace.client.repository.stateful.StatefulTargetObject;
 import org.apache.ace.client.workspace.Workspace;
 import org.apache.ace.client.workspace.WorkspaceManager;
 import org.apache.ace.feedback.Event;
+import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
 import org.osgi.service.log.LogService;
@@ -49,6 +50,7 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Servlet that offers a REST client API.
@@ -71,20 +73,34 @@ public class RESTClientServlet extends HttpServlet implements ManagedService, Ht
     /** The action name for reading audit events. */
     private static final String ACTION_AUDITEVENTS = "auditEvents";
 
+    /** Request parameter with an LDAP filter to select the listed repository objects. */
+    private static final String PARAM_FILTER = "filter";
+    /** Request parameter with the index of the first repository object to list. */
+    private static final String PARAM_OFFSET = "offset";
+    /** Request parameter with the maximum number of repository objects to list. */
+    private static final String PARAM_LIMIT = "limit";
+    /** Request parameter with a comma-separated list of fields to return for each listed repository object. */
+    private static final String PARAM_FIELDS = "fields";
+
     private volatile LogService m_logger;
 
     private volatile WorkspaceManager m_workspaceManager;
     
     private volatile int m_sessionTimeout = DEFAULT_SESSION_TIMEOUT;
 
+    private final RepositoryObjectSerializer m_serializer;
     private final Gson m_gson;
+    /** Makes our ETags differ from those handed out by earlier instances of this servlet. */
+    private final String m_etagPrefix;
 
     /**
      * Creates a new {@link RESTClientServlet} instance.
      */
     public RESTClientServlet() {
+        m_serializer = new RepositoryObjectSerializer();
+        m_etagPrefix = Long.toHexString(System.currentTimeMillis());
         m_gson = (new GsonBuilder())
-            .registerTypeHierarchyAdapter(RepositoryObject.class, new RepositoryObjectSerializer())
+            .registerTypeHierarchyAdapter(RepositoryObject.class, m_serializer)
             .registerTypeHierarchyAdapter(Event.class, new LogEventSerializer())
             .create();        
     }
@@ -238,10 +254,10 @@ public class RESTClientServlet extends HttpServlet implements ManagedService, Ht
                 return;
             }
             else if (pathElements.length == 3) {
-                listRepositoryObjects(workspace, pathElements[2], resp);
+                listRepositoryObjects(workspace, pathElements[2], req, resp);
             }
             else if (pathElements.length == 4) {
-                readRepositoryObject(workspace, pathElements[2], pathElements[3], resp);
+                readRepositoryObject(workspace, pathElements[2], pathElements[3], req, resp);
             }
             else if (pathElements.length == 5) {
                 handleWorkspaceAction(workspace, pathElements[2], pathElements[3], pathElements[4], req, resp);
@@ -460,26 +476,64 @@ public class RESTClientServlet extends HttpServlet implements ManagedService, Ht
     }
 
     /**
-     * Returns the identifiers of all repository objects of a given type.
+     * Returns the identifiers of all repository objects of a given type. The request can narrow down the returned
+     * objects by means of an LDAP filter and offset/limit parameters. In case fields are requested, the projected
+     * objects are returned instead of their identifiers.
      * 
      * @param workspace the workspace to read the repository objects from;
      * @param entityType the type of repository objects to read;
+     * @param req the servlet request to read the request parameters from;
      * @param resp the servlet response to write the response data to.
      * @throws IOException in case of I/O problems.
      */
-    private void listRepositoryObjects(Workspace workspace, String entityType, HttpServletResponse resp) throws IOException {
-        // TODO add a feature to filter the list that is returned (query, paging, ...)
-        List<RepositoryObject> objects = workspace.getRepositoryObjects(entityType);
-
-        JsonArray result = new JsonArray();
-        for (RepositoryObject ro : objects) {
-            String identity = ro.getDefinition();
-            if (identity != null) {
-                result.add(new JsonPrimitive(urlEncode(identity)));
+    private void listRepositoryObjects(Workspace workspace, String entityType, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        int offset;
+        int limit;
+        Set<String> fields;
+        try {
+            offset = getIntParameter(req, PARAM_OFFSET, 0);
+            limit = getIntParameter(req, PARAM_LIMIT, Integer.MAX_VALUE);
+            fields = getFields(req);
+        }
+        catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        // Determine the ETag before reading the objects, so concurrent changes always lead to a new ETag...
+        if (isNotModified(workspace, req, resp)) {
+            return;
+        }
+
+        List<RepositoryObject> objects;
+        try {
+            objects = workspace.getRepositoryObjects(entityType, req.getParameter(PARAM_FILTER));
+        }
+        catch (InvalidSyntaxException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid filter: " + e.getMessage());
+            return;
+        }
+
+        int end = (int) Math.min(objects.size(), (long) offset + limit);
+
+        JsonWriter writer = new JsonWriter(resp.getWriter());
+        writer.beginArray();
+        for (int i = offset; i < end; i++) {
+            RepositoryObject ro = objects.get(i);
+            if (fields != null) {
+                m_gson.toJson(m_serializer.serialize(ro, fields), writer);
+            }
+            else {
+                String identity = ro.getDefinition();
+                if (identity != null) {
+                    writer.value(urlEncode(identity));
+                }
             }
         }
+        writer.endArray();
+        writer.flush();
 
-        resp.getWriter().println(m_gson.toJson(result));
+        resp.getWriter().println();
     }
 
     /**
@@ -526,10 +580,15 @@ public class RESTClientServlet extends HttpServlet implements ManagedService, Ht
      * @param workspace the workspace to read the repository object from;
      * @param entityType the type of repository object to read;
      * @param entityId the identifier of the repository object to read;
+     * @param req the servlet request to read the request headers from;
      * @param resp the servlet response to write the response data to.
      * @throws IOException in case of I/O problems.
      */
-    private void readRepositoryObject(Workspace workspace, String entityType, String entityId, HttpServletResponse resp) throws IOException {
+    private void readRepositoryObject(Workspace workspace, String entityType, String entityId, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (isNotModified(workspace, req, resp)) {
+            return;
+        }
+
         RepositoryObject repositoryObject = workspace.getRepositoryObject(entityType, entityId);
         if (repositoryObject == null) {
             resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Repository object of type " + entityType + " and identity " + entityId + " not found.");
@@ -563,6 +622,81 @@ public class RESTClientServlet extends HttpServlet implements ManagedService, Ht
         }
     }
 
+    /**
+     * Parses the fields that should be returned for each listed repository object.
+     * 
+     * @param req the servlet request to read the parameter from.
+     * @return the requested fields, or <code>null</code> if only the identifiers should be returned.
+     * @throws IllegalArgumentException in case an unknown field was requested.
+     */
+    Set<String> getFields(HttpServletRequest req) {
+        String value = req.getParameter(PARAM_FIELDS);
+        if (value == null) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        for (String field : value.split(",")) {
+            field = field.trim();
+            if (!RepositoryObjectSerializer.ALL_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown field: " + field);
+            }
+            result.add(field);
+        }
+        return result;
+    }
+
+    /**
+     * Parses a non-negative integer request parameter.
+     * 
+     * @param req the servlet request to read the parameter from;
+     * @param name the name of the parameter;
+     * @param defaultValue the value to return in case the parameter is not given.
+     * @return the parameter value.
+     * @throws IllegalArgumentException in case the parameter is not a non-negative integer.
+     */
+    int getIntParameter(HttpServletRequest req, String name, int defaultValue) {
+        String value = req.getParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result >= 0) {
+                return result;
+            }
+        }
+        catch (NumberFormatException e) {
+            // fall through...
+        }
+        throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+    }
+
+    /**
+     * Sets the ETag of the given workspace on the response, and tells the client that nothing has changed in case it
+     * already has the current representation.
+     * 
+     * @param workspace the workspace to determine the ETag for;
+     * @param req the servlet request to read the request headers from;
+     * @param resp the servlet response to write the response headers to.
+     * @return <code>true</code> if the client already has the current representation, <code>false</code> otherwise.
+     */
+    boolean isNotModified(Workspace workspace, HttpServletRequest req, HttpServletResponse resp) {
+        String etag = "\"" + m_etagPrefix + "-" + workspace.getSessionID() + "-" + workspace.getModificationCount() + "\"";
+        resp.setHeader("ETag", etag);
+
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (etag.equals(candidate) || "*".equals(candidate)) {
+                    resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * URL decodes a given element.
      * 
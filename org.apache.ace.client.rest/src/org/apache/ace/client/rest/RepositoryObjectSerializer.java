@@ -19,7 +19,11 @@
 package org.apache.ace.client.rest;
 
 import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.ace.client.repository.RepositoryObject;
 import org.apache.ace.client.repository.object.ArtifactObject;
@@ -39,13 +43,15 @@ import com.google.gson.JsonSerializer;
 public class RepositoryObjectSerializer implements JsonSerializer<RepositoryObject> {
 
     /** used in all repository objects. */
-    private static final String DEFINITION = "definition";
+    static final String DEFINITION = "definition";
     /** used in all repository objects. */
-    private static final String TAGS = "tags";
+    static final String TAGS = "tags";
     /** used in all repository objects. */
-    private static final String ATTRIBUTES = "attributes";
+    static final String ATTRIBUTES = "attributes";
     /** used in stateful target objects only. */
-    private static final String STATE = "state";
+    static final String STATE = "state";
+    /** all fields that can be serialized. */
+    static final Set<String> ALL_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(DEFINITION, TAGS, ATTRIBUTES, STATE)));
     
     private static final String REGISTRATION_STATE = "registrationState";
     private static final String CURRENT_VERSION = "currentVersion";
@@ -63,13 +69,25 @@ public class RepositoryObjectSerializer implements JsonSerializer<RepositoryObje
      * @see com.google.gson.JsonSerializer#serialize(java.lang.Object, java.lang.reflect.Type, com.google.gson.JsonSerializationContext)
      */
     public JsonElement serialize(RepositoryObject repositoryObject, Type featureType, JsonSerializationContext context) {
+        return serialize(repositoryObject, ALL_FIELDS);
+    }
+
+    /**
+     * Serializes only the given fields of a repository object. Fields that are not requested are not computed at all,
+     * which matters for stateful target objects whose state is expensive to determine.
+     * 
+     * @param repositoryObject the repository object to serialize, cannot be <code>null</code>;
+     * @param fields the fields to serialize, should be a subset of {@link #ALL_FIELDS}.
+     * @return a JSON representation of the given repository object, never <code>null</code>.
+     */
+    public JsonElement serialize(RepositoryObject repositoryObject, Set<String> fields) {
         // ACE-164: for stateful target objects we need some special measures to serialize it...
         if (repositoryObject instanceof StatefulTargetObject) {
-            return serializeStatefulTargetObject((StatefulTargetObject) repositoryObject);
+            return serializeStatefulTargetObject((StatefulTargetObject) repositoryObject, fields);
         }
 
         // All other repository objects can be simply serialized...
-        return serializeRepositoryObject(repositoryObject);
+        return serializeRepositoryObject(repositoryObject, fields);
     }
 
     /**
@@ -77,15 +95,33 @@ public class RepositoryObjectSerializer implements JsonSerializer<RepositoryObje
      * always in the same way as other repository objects. For example, when dealing with unregistered targets,
      * we cannot ask for the attributes and/or tags of a target.
      * 
-     * @param targetObject the target object to serialize, cannot be <code>null</code>.
+     * @param targetObject the target object to serialize, cannot be <code>null</code>;
+     * @param fields the fields to serialize.
      * @return a JSON representation of the given target object, never <code>null</code>.
      */
-    private JsonElement serializeStatefulTargetObject(StatefulTargetObject targetObject) {
+    private JsonElement serializeStatefulTargetObject(StatefulTargetObject targetObject, Set<String> fields) {
         JsonObject result = new JsonObject();
         // ACE-243: first all the definition...
-        result.addProperty(DEFINITION, targetObject.getDefinition());
+        if (fields.contains(DEFINITION)) {
+            result.addProperty(DEFINITION, targetObject.getDefinition());
+        }
 
-        // then add all attributes
+        if (fields.contains(ATTRIBUTES)) {
+            result.add(ATTRIBUTES, serializeTargetAttributes(targetObject));
+        }
+
+        if (fields.contains(TAGS)) {
+            result.add(TAGS, serializeTargetTags(targetObject));
+        }
+
+        if (fields.contains(STATE)) {
+            result.add(STATE, serializeTargetState(targetObject));
+        }
+
+        return result;
+    }
+
+    private JsonObject serializeTargetAttributes(StatefulTargetObject targetObject) {
         JsonObject attr = new JsonObject();
 
         if (targetObject.isRegistered()) {
@@ -99,10 +135,10 @@ public class RepositoryObjectSerializer implements JsonSerializer<RepositoryObje
             // Ensure that the ID of the target is always present as attribute...
             attr.addProperty(StatefulTargetObject.KEY_ID, targetObject.getID());
         }
+        return attr;
+    }
 
-        result.add(ATTRIBUTES, attr);
-
-        // then add all tags
+    private JsonObject serializeTargetTags(StatefulTargetObject targetObject) {
         JsonObject tags = new JsonObject();
 
         if (targetObject.isRegistered()) {
@@ -112,10 +148,10 @@ public class RepositoryObjectSerializer implements JsonSerializer<RepositoryObje
                 tags.addProperty(key, targetObject.getTag(key));
             }
         }
+        return tags;
+    }
 
-        result.add(TAGS, tags);
-
-        // finally, if it's a target with state, add that as well
+    private JsonObject serializeTargetState(StatefulTargetObject targetObject) {
         JsonObject state = new JsonObject();
         state.addProperty(REGISTRATION_STATE, targetObject.getRegistrationState().name());
         state.addProperty(PROVISIONING_STATE, targetObject.getProvisioningState().name());
@@ -149,41 +185,46 @@ public class RepositoryObjectSerializer implements JsonSerializer<RepositoryObje
         /* TODO getLicenses/AssocationsWith might not be that helpful since the data is also available in a different way */
         /* TODO some of this tends to show up as attributes as well, so we will need to do some filtering there */
         /* TODO some aspects of the state can be manipulated as well, we need to supply methods for that */
-        result.add(STATE, state);
-
-        return result;
+        return state;
     }
 
     /**
      * Serializes a (non stateful target object) repository object to a JSON representation.
      * 
-     * @param repositoryObject the repository object to serialize, cannot be <code>null</code>.
+     * @param repositoryObject the repository object to serialize, cannot be <code>null</code>;
+     * @param fields the fields to serialize.
      * @return a JSON representation of the given repository object, never <code>null</code>.
      */
-    private JsonElement serializeRepositoryObject(RepositoryObject repositoryObject) {
+    private JsonElement serializeRepositoryObject(RepositoryObject repositoryObject, Set<String> fields) {
         JsonObject result = new JsonObject();
         // ACE-243: first all the definition...
-        result.addProperty(DEFINITION, repositoryObject.getDefinition());
+        if (fields.contains(DEFINITION)) {
+            result.addProperty(DEFINITION, repositoryObject.getDefinition());
+        }
         
         // then add all attributes
-        JsonObject attr = new JsonObject();
-        
-        Enumeration<String> keys = repositoryObject.getAttributeKeys();
-        while (keys.hasMoreElements()) {
-            String key = keys.nextElement();
-            attr.addProperty(key, repositoryObject.getAttribute(key));
+        if (fields.contains(ATTRIBUTES)) {
+            JsonObject attr = new JsonObject();
+
+            Enumeration<String> keys = repositoryObject.getAttributeKeys();
+            while (keys.hasMoreElements()) {
+                String key = keys.nextElement();
+                attr.addProperty(key, repositoryObject.getAttribute(key));
+            }
+            result.add(ATTRIBUTES, attr);
         }
-        result.add(ATTRIBUTES, attr);
         
         // then add all tags
-        JsonObject tags = new JsonObject();
+        if (fields.contains(TAGS)) {
+            JsonObject tags = new JsonObject();
 
-        keys = repositoryObject.getTagKeys();
-        while (keys.hasMoreElements()) {
-            String key = keys.nextElement();
-            tags.addProperty(key, repositoryObject.getTag(key));
+            Enumeration<String> keys = repositoryObject.getTagKeys();
+            while (keys.hasMoreElements()) {
+                String key = keys.nextElement();
+                tags.addProperty(key, repositoryObject.getTag(key));
+            }
+            result.add(TAGS, tags);
         }
-        result.add(TAGS, tags);
         
         return result;
     }
@@ -18,8 +18,14 @@
  */
 package org.apache.ace.client.rest;
 
+import java.util.Arrays;
+import java.util.HashSet;
+
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.apache.ace.client.workspace.Workspace;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -37,4 +43,55 @@ public class RESTClientTest {
 		Assert.assertEquals(elements[2], "last path");
 		String result = s.buildPathFromElements(elements);
 		Assert.assertEquals(result, path);
-	}}
+	}
+
+	@Test
+	public void testListingParameters() {
+		RESTClientServlet s = new RESTClientServlet();
+		HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+		Mockito.when(request.getParameter("offset")).thenReturn("10");
+		Mockito.when(request.getParameter("fields")).thenReturn("definition, state");
+		Assert.assertEquals(s.getIntParameter(request, "offset", 0), 10);
+		Assert.assertEquals(s.getIntParameter(request, "limit", 42), 42);
+		Assert.assertEquals(s.getFields(request), new HashSet<>(Arrays.asList("definition", "state")));
+
+		Mockito.when(request.getParameter("offset")).thenReturn("-1");
+		Mockito.when(request.getParameter("fields")).thenReturn("definition,unknown");
+		try {
+			s.getIntParameter(request, "offset", 0);
+			Assert.fail("Negative offset should not be accepted!");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			s.getFields(request);
+			Assert.fail("Unknown field should not be accepted!");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testETagFollowsModificationCount() {
+		RESTClientServlet s = new RESTClientServlet();
+		Workspace workspace = Mockito.mock(Workspace.class);
+		Mockito.when(workspace.getSessionID()).thenReturn("rest-1");
+		Mockito.when(workspace.getModificationCount()).thenReturn(1L);
+
+		HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+		HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+		Assert.assertFalse(s.isNotModified(workspace, request, response));
+
+		ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+		Mockito.verify(response).setHeader(Mockito.eq("ETag"), etag.capture());
+
+		Mockito.when(request.getHeader("If-None-Match")).thenReturn(etag.getValue());
+		Assert.assertTrue(s.isNotModified(workspace, request, response));
+		Mockito.verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+
+		Mockito.when(workspace.getModificationCount()).thenReturn(2L);
+		Assert.assertFalse(s.isNotModified(workspace, request, response));
+	}
+}
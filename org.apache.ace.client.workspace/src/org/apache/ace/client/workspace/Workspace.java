@@ -24,6 +24,7 @@ import java.util.Map;
 
 import org.apache.ace.client.repository.Association;
 import org.apache.ace.client.repository.ObjectRepository;
+import org.apache.ace.client.repository.RepositoryAdmin;
 import org.apache.ace.client.repository.RepositoryObject;
 import org.apache.ace.client.repository.helper.ArtifactHelper;
 import org.apache.ace.client.repository.object.Artifact2FeatureAssociation;
@@ -33,6 +34,8 @@ import org.apache.ace.client.repository.object.DistributionObject;
 import org.apache.ace.client.repository.object.Feature2DistributionAssociation;
 import org.apache.ace.client.repository.object.FeatureObject;
 import org.apache.ace.client.repository.stateful.StatefulTargetObject;
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.service.useradmin.User;
 
 /**
@@ -54,6 +57,7 @@ import org.osgi.service.useradmin.User;
  * @see ObjectRepository
  * @see WorkspaceManager
  */
+@ProviderType
 public interface Workspace {
     static final String ARTIFACT = "artifact";
     static final String ARTIFACT2FEATURE = "artifact2feature";
@@ -96,6 +100,21 @@ public interface Workspace {
      */
     public void commit() throws IOException;
 
+    /**
+     * Starts a batch of changes to this Workspace. Until the batch is ended, all change events are buffered and
+     * coalesced per object, so listeners only need to process the net changes once.
+     * 
+     * @see RepositoryAdmin#startBatch()
+     */
+    public void startBatch();
+
+    /**
+     * Ends a batch of changes to this Workspace, delivering all coalesced change events.
+     * 
+     * @see RepositoryAdmin#endBatch()
+     */
+    public void endBatch();
+
     /**
      * Logout from the repository.
      * 
@@ -138,6 +157,20 @@ public interface Workspace {
      */
     public List<RepositoryObject> getRepositoryObjects(String entityType);
 
+    /**
+     * Returns all repository objects of a given type that match the given filter.
+     * 
+     * @param entityType
+     *            the type of repository objects to return;
+     * @param filter
+     *            the LDAP filter to match the repository objects against, can be <code>null</code> to return all
+     *            repository objects of the given type.
+     * @return a list with all matching repository objects, never <code>null</code>.
+     * @throws InvalidSyntaxException
+     *             in case the given filter is invalid.
+     */
+    public List<RepositoryObject> getRepositoryObjects(String entityType, String filter) throws InvalidSyntaxException;
+
     /**
      * Update the RepositoryObject for the specified type and identifier with the specified attributes and tags.
      * 
@@ -236,6 +269,24 @@ public interface Workspace {
      */
     public ArtifactObject ca(String url, boolean upload) throws Exception;
 
+    /**
+     * Creates and optionally uploads a number of artifacts from the given URLs at once.
+     * <p>
+     * The artifacts are recognized and uploaded concurrently, and are all created in one go, causing a single batch
+     * event to be fired instead of an event per artifact. In case any of the artifacts cannot be imported, none of
+     * them are created.
+     * </p>
+     * 
+     * @param urls
+     *            the URLs of the artifacts to import & create;
+     * @param upload
+     *            <code>true</code> if the artifacts should be uploaded to the OBR, <code>false</code> if they are
+     *            already in the OBR.
+     * @return the created artifacts, in the same order as the given URLs.
+     * @throws Exception
+     */
+    public List<ArtifactObject> ca(List<String> urls, boolean upload) throws Exception;
+
     /**
      * Creates a new bundle artifact.
      * 
@@ -389,6 +440,15 @@ public interface Workspace {
 
     public boolean isCurrent() throws IOException;
 
+    /**
+     * Returns a counter that is incremented each time a repository object in this workspace changes or the workspace
+     * itself is checked out, committed or refreshed. It can be used to cheaply determine whether anything has changed
+     * between two calls.
+     * 
+     * @return the current modification count of this workspace.
+     */
+    public long getModificationCount();
+
     /*** deployment package ***/
 
     /**
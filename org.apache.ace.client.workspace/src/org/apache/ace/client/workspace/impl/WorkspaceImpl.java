@@ -21,6 +21,7 @@ package org.apache.ace.client.workspace.impl;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -28,6 +29,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ace.client.repository.Association;
 import org.apache.ace.client.repository.ObjectRepository;
@@ -55,10 +57,13 @@ import org.apache.felix.dm.Component;
 import org.apache.felix.dm.DependencyManager;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
 import org.osgi.service.log.LogService;
 import org.osgi.service.useradmin.User;
 
-public class WorkspaceImpl implements Workspace {
+public class WorkspaceImpl implements Workspace, EventHandler {
 
     private final String m_sessionID;
     private final URL m_repositoryURL;
@@ -81,6 +86,8 @@ public class WorkspaceImpl implements Workspace {
     private volatile Distribution2TargetAssociationRepository m_distribution2TargetAssociationRepository;
     private volatile LogService m_log;
 
+    private final AtomicLong m_modificationCount = new AtomicLong();
+
     public WorkspaceImpl(String sessionID, String repositoryURL, String customerName, String storeRepositoryName,
         String distributionRepositoryName, String deploymentRepositoryName) throws MalformedURLException {
         this(sessionID, repositoryURL, customerName, storeRepositoryName, customerName, distributionRepositoryName,
@@ -170,6 +177,16 @@ public class WorkspaceImpl implements Workspace {
         m_repositoryAdmin.commit();
     }
 
+    @Override
+    public void startBatch() {
+        m_repositoryAdmin.startBatch();
+    }
+
+    @Override
+    public void endBatch() {
+        m_repositoryAdmin.endBatch();
+    }
+
     @Override
     public void logout() throws IOException {
         try {
@@ -192,6 +209,15 @@ public class WorkspaceImpl implements Workspace {
         return getGenericRepositoryObjects(entityType);
     }
 
+    @Override
+    public List<RepositoryObject> getRepositoryObjects(String entityType, String filter) throws InvalidSyntaxException {
+        if (filter == null) {
+            return getGenericRepositoryObjects(entityType);
+        }
+        ObjectRepository<RepositoryObject> repo = getGenericObjectRepository(entityType);
+        return repo.get(m_context.createFilter(filter));
+    }
+
     @Override
     public RepositoryObject createRepositoryObject(String entityType, Map<String, String> attributes,
         Map<String, String> tags) throws IllegalArgumentException {
@@ -529,6 +555,19 @@ public class WorkspaceImpl implements Workspace {
         return m_artifactRepository.importArtifact(new URL(url), upload);
     }
 
+    @Override
+    public List<ArtifactObject> ca(List<String> urls, boolean upload) throws Exception {
+        return createArtifacts(urls, upload);
+    }
+
+    public List<ArtifactObject> createArtifacts(List<String> urls, boolean upload) throws Exception {
+        List<URL> artifacts = new ArrayList<>();
+        for (String url : urls) {
+            artifacts.add(new URL(url));
+        }
+        return m_artifactRepository.importArtifacts(artifacts, upload);
+    }
+
     @Override
     public ArtifactObject ca(String name, String url, String bsn, String version) {
         Map<String, String> attrs = new HashMap<>();
@@ -815,6 +854,17 @@ public class WorkspaceImpl implements Workspace {
         return m_repositoryAdmin.isCurrent();
     }
 
+    @Override
+    public long getModificationCount() {
+        return m_modificationCount.get();
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        // Any change to our repositories, stateful targets or the repository admin itself...
+        m_modificationCount.incrementAndGet();
+    }
+
     @Override
     public Association<? extends RepositoryObject, ? extends RepositoryObject> cas(String entityType, String leftEntityId, String rightEntityId, String leftCardinality, String rightCardinality) {
         return createAssocation(entityType, leftEntityId, rightEntityId, leftCardinality, rightCardinality);
@@ -21,17 +21,22 @@ package org.apache.ace.client.workspace.impl;
 import java.io.IOException;
 import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.ace.authentication.api.AuthenticationService;
+import org.apache.ace.client.repository.RepositoryAdmin;
 import org.apache.ace.client.repository.SessionFactory;
+import org.apache.ace.client.repository.stateful.StatefulTargetObject;
 import org.apache.ace.client.workspace.Workspace;
 import org.apache.ace.client.workspace.WorkspaceManager;
 import org.apache.felix.dm.Component;
 import org.apache.felix.dm.DependencyManager;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
 import org.osgi.service.log.LogService;
 import org.osgi.service.useradmin.User;
 import org.osgi.service.useradmin.UserAdmin;
@@ -138,7 +143,7 @@ public class WorkspaceManagerImpl implements ManagedService, WorkspaceManager {
                     m_targetRepositoryName, m_deploymentRepositoryName);
             m_workspaces.put(sessionID, workspace);
 
-            component = m_dm.createComponent().setImplementation(workspace);
+            component = createWorkspaceComponent(sessionID, workspace);
             m_workspaceComponents.put(sessionID, component);
         }
         // any parameters supplied in this call are passed on to the session
@@ -224,7 +229,7 @@ public class WorkspaceManagerImpl implements ManagedService, WorkspaceManager {
                     targetCustomerName, m_targetRepositoryName, deploymentCustomerName, m_deploymentRepositoryName);
             m_workspaces.put(sessionID, workspace);
 
-            component = m_dm.createComponent().setImplementation(workspace);
+            component = createWorkspaceComponent(sessionID, workspace);
             m_workspaceComponents.put(sessionID, component);
         }
         m_sessionFactory.createSession(sessionID, sessionConfiguration);
@@ -290,4 +295,18 @@ public class WorkspaceManagerImpl implements ManagedService, WorkspaceManager {
         }
         return null;
     }
+
+    /**
+     * Creates the component for a workspace, which also listens to all changes made in the session of the workspace
+     * in order to keep its modification count.
+     */
+    private Component createWorkspaceComponent(String sessionID, Workspace workspace) {
+        Dictionary<String, Object> props = new Hashtable<>();
+        props.put(EventConstants.EVENT_TOPIC, new String[] { RepositoryAdmin.PRIVATE_TOPIC_ROOT + "*", StatefulTargetObject.TOPIC_ALL });
+        props.put(EventConstants.EVENT_FILTER, "(" + SessionFactory.SERVICE_SID + "=" + sessionID + ")");
+
+        return m_dm.createComponent()
+            .setInterface(EventHandler.class.getName(), props)
+            .setImplementation(workspace);
+    }
 }
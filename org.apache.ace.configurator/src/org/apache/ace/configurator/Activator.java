@@ -27,13 +27,16 @@ import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.log.LogService;
 
 public class Activator extends DependencyActivatorBase {
+    private static final long DEFAULT_PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
 
     public void init(BundleContext context, DependencyManager manager) throws Exception {
         manager.add(createComponent()
             .setImplementation(new Configurator(new File(
                 getProperty(context.getProperty(Activator.class.getPackage().getName() + ".CONFIG_DIR"), "conf")),
                 getProperty(context.getProperty(Activator.class.getPackage().getName() + ".POLL_INTERVAL"), 2000),
-                getProperty(context.getProperty(Activator.class.getPackage().getName() + ".RECONFIG"), true)))
+                getProperty(context.getProperty(Activator.class.getPackage().getName() + ".RECONFIG"), true),
+                Boolean.parseBoolean(getProperty(context.getProperty(Activator.class.getPackage().getName() + ".WATCH"), "false")),
+                (int) getProperty(context.getProperty(Activator.class.getPackage().getName() + ".PARALLELISM"), DEFAULT_PARALLELISM)))
             .add(createServiceDependency()
                 .setService(ConfigurationAdmin.class)
                 .setRequired(true))
@@ -23,6 +23,12 @@ import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
@@ -32,6 +38,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
@@ -47,6 +60,10 @@ import org.osgi.service.log.LogService;
  * The configuration files should be stored in the configuration directory (often the 'conf' directory) of the OSGi
  * framework and should have the format: &lt;pid&gt;.cfg
  * <p>
+ * Changes are either detected by periodically scanning the configuration directory, or, in watch mode, by a
+ * <code>WatchService</code> that reports changed files only. In both cases, the changed configurations of different PIDs
+ * are handed to the <code>ConfigurationAdmin</code> concurrently.
+ * <p>
  * Note: this Configurator is based upon the principle in the FileInstall bundle Peter Kriens wrote. (see
  * http://www.aqute.biz/Code/FileInstall for more information)
  */
@@ -61,6 +78,8 @@ public class Configurator implements Runnable {
     };
 
     private static final String FACTORY_INSTANCE_KEY = "factory.instance.pid";
+    /** The time (in ms) to wait for more file changes before applying a batch of changes in watch mode. */
+    private static final long BATCH_DELAY = 100;
 
     private volatile LogService m_log; /* injected by dependency manager */
     private volatile ConfigurationAdmin m_configAdmin; /* injected by dependency manager */
@@ -71,8 +90,15 @@ public class Configurator implements Runnable {
     private final Map<String, Long> m_checksums = new HashMap<>();
     private final Map<String, Map<String, Long>> m_foundFactories = new HashMap<>();
     private final boolean m_reconfig;
+    private final boolean m_watch;
+    private final int m_parallelism;
 
     private Thread m_configThread;
+    private volatile ExecutorService m_executor;
+    private volatile long m_startupTime = -1L;
+    // Only accessed by the configuration thread...
+    private WatchService m_watcher;
+    private final Set<String> m_watchedFactories = new HashSet<>();
 
     /**
      * Instantiates a new configurator.
@@ -86,18 +112,53 @@ public class Configurator implements Runnable {
      *            be overwritten, only new values (for a given pid) will be added.
      */
     public Configurator(File dir, long pollInterval, boolean reconfig) {
-        if ((dir == null) || !dir.isDirectory() || (pollInterval < 0)) {
-            throw new IllegalArgumentException("Bad arguments; either not an existing directory or an invalid interval.");
+        this(dir, pollInterval, reconfig, false /* watch */, 1 /* parallelism */);
+    }
+
+    /**
+     * Instantiates a new configurator.
+     * 
+     * @param dir
+     *            The directory to watch.
+     * @param pollInterval
+     *            The poll iterval in ms, only used when not in watch mode.
+     * @param reconfig
+     *            Whether or not to use reconfiguration: if <code>false</code>, existing configuration values will not
+     *            be overwritten, only new values (for a given pid) will be added.
+     * @param watch
+     *            Whether or not to use a <code>WatchService</code> to detect changes instead of scanning the directory
+     *            every poll interval.
+     * @param parallelism
+     *            The maximum number of configurations that are handed to the <code>ConfigurationAdmin</code>
+     *            concurrently.
+     */
+    public Configurator(File dir, long pollInterval, boolean reconfig, boolean watch, int parallelism) {
+        if ((dir == null) || !dir.isDirectory() || (pollInterval < 0) || (parallelism < 1)) {
+            throw new IllegalArgumentException("Bad arguments; either not an existing directory, an invalid interval or invalid parallelism.");
         }
         m_configDir = dir;
         m_pollInterval = pollInterval;
         m_reconfig = reconfig;
+        m_watch = watch;
+        m_parallelism = parallelism;
     }
 
     /**
      * Starts the Configuration timer.
      */
     synchronized void start() {
+        if ((m_executor == null) && (m_parallelism > 1)) {
+            m_executor = Executors.newFixedThreadPool(m_parallelism, new ThreadFactory() {
+                private final AtomicInteger m_count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Apache ACE Configurator Worker " + m_count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
         if (m_configThread == null) {
             m_configThread = new Thread(this, "Apache ACE Configurator");
         }
@@ -116,79 +177,311 @@ public class Configurator implements Runnable {
         m_configThread.join();
         m_configThread = null;
         m_checksums.clear();
+        m_foundFactories.clear();
+        m_watchedFactories.clear();
+        if (m_executor != null) {
+            m_executor.shutdownNow();
+            m_executor = null;
+        }
+    }
+
+    /**
+     * Returns the time the initial configuration pass took.
+     * 
+     * @return the time (in ms) it took to apply all configurations found at startup, or <code>-1</code> if the initial
+     *         pass did not finish yet.
+     */
+    long getStartupTime() {
+        return m_startupTime;
     }
 
     /**
      * Starts the actual Timer task, and calls the configurator to make sure the configurations are performed. Checking
-     * whether a new configuration is present, will be done with an interval that can be defined via a system property.
+     * whether a new configuration is present, will be done with an interval that can be defined via a system property,
+     * or, in watch mode, as soon as a configuration file is changed.
      */
     public void run() {
         try {
-            while (!Thread.interrupted()) {
-                doConfigs();
-                Thread.sleep(m_pollInterval);
+            if (m_watch) {
+                // start watching before the initial pass, so we do not miss any changes made during that pass...
+                m_watcher = createWatchService();
+            }
+
+            long start = System.nanoTime();
+            int count = doConfigs();
+            m_startupTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            m_log.log(LogService.LOG_INFO, "Initial configuration of " + count + " configuration(s) took " + m_startupTime + " ms.");
+
+            if (m_watcher != null) {
+                watchConfigs();
+            }
+            else {
+                while (!Thread.interrupted()) {
+                    Thread.sleep(m_pollInterval);
+                    doConfigs();
+                }
             }
         }
         catch (InterruptedException ex) {
             // We are requested to stop.
         }
+        finally {
+            if (m_watcher != null) {
+                try {
+                    m_watcher.close();
+                }
+                catch (IOException e) {
+                    // Not much we can do about this...
+                }
+                m_watcher = null;
+            }
+        }
+    }
+
+    /**
+     * Applies the given configuration tasks, concurrently if possible, and waits until all of them are done. All
+     * tasks concern a different PID, so they are independent of each other.
+     */
+    private void apply(List<Runnable> tasks) {
+        ExecutorService executor = m_executor;
+        if ((executor == null) || (tasks.size() < 2)) {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            }
+            catch (InterruptedException e) {
+                // We are requested to stop, do not wait for the remaining tasks...
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e) {
+                m_log.log(LogService.LOG_ERROR, "Unable to apply configuration!", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Collects the files changed according to the given watch key.
+     * 
+     * @return <code>true</code> if events were lost and a full scan is needed, <code>false</code> otherwise.
+     */
+    private boolean collectChanges(WatchKey key, Set<File> changed) {
+        boolean overflow = false;
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            }
+            else {
+                changed.add(dir.resolve((Path) event.context()).toFile());
+            }
+        }
+        if (!key.reset()) {
+            // the directory itself is no longer accessible...
+            changed.add(dir.toFile());
+        }
+        return overflow;
+    }
+
+    private WatchService createWatchService() {
+        WatchService watcher = null;
+        try {
+            watcher = m_configDir.toPath().getFileSystem().newWatchService();
+            register(watcher, m_configDir);
+        }
+        catch (IOException e) {
+            m_log.log(LogService.LOG_WARNING, "Unable to watch configuration directory, falling back to polling!", e);
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                }
+                catch (IOException ex) {
+                    // Not much we can do about this...
+                }
+            }
+            watcher = null;
+        }
+        return watcher;
+    }
+
+    /**
+     * Handles the changes of the given files only. Changes to factory configurations cause the complete directory of
+     * the factory to be checked.
+     */
+    private void doChangedConfigs(Set<File> changed) {
+        List<Runnable> tasks = new ArrayList<>();
+        Set<File> factoryDirs = new HashSet<>();
+        for (File file : changed) {
+            if (m_configDir.equals(file)) {
+                // our configuration directory itself is gone, nothing we can do about this...
+                continue;
+            }
+            if (m_configDir.equals(file.getParentFile())) {
+                if (file.isDirectory() || m_foundFactories.containsKey(file.getName())) {
+                    factoryDirs.add(file);
+                }
+                else if (FILENAME_FILTER.accept(file)) {
+                    doConfig(file, tasks);
+                }
+            }
+            else {
+                factoryDirs.add(file.getParentFile());
+            }
+        }
+        for (File factoryDir : factoryDirs) {
+            doFactoryConfigs(factoryDir, tasks);
+        }
+        apply(tasks);
+    }
+
+    /**
+     * Checks a single configuration file, which may have been removed, and adds a task for it if it has changed.
+     */
+    private void doConfig(final File file, List<Runnable> tasks) {
+        final String pid = parsePid(file);
+        if (file.isFile()) {
+            Long newChecksum = new Long(file.lastModified() ^ file.length());
+            Long oldChecksum = (Long) m_checksums.get(pid); // may be null, intended
+            if (!newChecksum.equals(oldChecksum)) {
+                m_checksums.put(pid, newChecksum);
+                tasks.add(new Runnable() {
+                    public void run() {
+                        processConfigFile(file, null);
+                    }
+                });
+            }
+        }
+        else if (m_checksums.remove(pid) != null) {
+            tasks.add(new Runnable() {
+                public void run() {
+                    deleteConfig(pid, null);
+                }
+            });
+        }
     }
 
     /**
      * Enables the actual configuring of OSGi ManagedServices. It makes sure all new configurations are added, changed
      * configurations are updated, and old configurations are removed. Configurations are updated when the timestamp or
      * the size of the new configuration has changed.
+     * 
+     * @return the number of configurations that were added, updated or removed.
      */
-    private void doConfigs() {
+    private int doConfigs() {
+        List<Runnable> tasks = new ArrayList<>();
         Set<String> pids = new HashSet<>(m_checksums.keySet());
+        Set<String> factoryPids = new HashSet<>(m_foundFactories.keySet());
 
         File[] files = m_configDir.listFiles(FILENAME_FILTER);
         for (int i = 0; (files != null) && (i < files.length); i++) {
             File file = files[i];
-            String pid = parsePid(file);
 
             if (file.isDirectory()) {
-                doFactoryConfigs(pid, file.listFiles(FILENAME_FILTER));
+                doFactoryConfigs(file, tasks);
+                factoryPids.remove(parsePid(file));
             }
             else {
-                Long newChecksum = new Long(file.lastModified() ^ file.length());
-                Long oldChecksum = (Long) m_checksums.get(pid); // may be null, intended
-                if (!newChecksum.equals(oldChecksum)) {
-                    m_checksums.put(pid, newChecksum);
-                    processConfigFile(file, null);
-                }
-                pids.remove(pid);
+                doConfig(file, tasks);
+                pids.remove(parsePid(file));
             }
         }
         for (String pid : pids) {
-            deleteConfig(pid, null);
-            m_checksums.remove(pid);
+            doConfig(new File(m_configDir, pid + ".cfg"), tasks);
         }
+        for (String factoryPid : factoryPids) {
+            doFactoryConfigs(new File(m_configDir, factoryPid), tasks);
+        }
+
+        apply(tasks);
+        return tasks.size();
     }
 
-    private void doFactoryConfigs(String factoryPid, File[] newInstances) {
+    private void doFactoryConfigs(File factoryDir, List<Runnable> tasks) {
+        final String factoryPid = parsePid(factoryDir);
         if (!m_foundFactories.containsKey(factoryPid)) {
             m_foundFactories.put(factoryPid, new HashMap<String, Long>());
         }
+        if ((m_watcher != null) && factoryDir.isDirectory() && m_watchedFactories.add(factoryPid)) {
+            // register before listing the directory, so we do not miss any changes...
+            try {
+                register(m_watcher, factoryDir);
+            }
+            catch (IOException e) {
+                m_log.log(LogService.LOG_WARNING, "Unable to watch factory configuration directory: " + factoryDir, e);
+            }
+        }
+
         Map<String, Long> instances = m_foundFactories.get(factoryPid);
         Set<String> instancesPids = new HashSet<>(instances.keySet());
 
-        for (int j = 0; j < newInstances.length; j++) {
-            File instanceConfigFile = newInstances[j];
+        File[] newInstances = factoryDir.listFiles(FILENAME_FILTER);
+        for (int j = 0; (newInstances != null) && (j < newInstances.length); j++) {
+            final File instanceConfigFile = newInstances[j];
             String instancePid = parsePid(instanceConfigFile);
 
             Long newChecksum = new Long(instanceConfigFile.lastModified() ^ instanceConfigFile.length());
             Long oldChecksum = (Long) instances.get(instancePid);
             if (!newChecksum.equals(oldChecksum)) {
                 instances.put(instancePid, newChecksum);
-                processConfigFile(instanceConfigFile, factoryPid);
+                tasks.add(new Runnable() {
+                    public void run() {
+                        processConfigFile(instanceConfigFile, factoryPid);
+                    }
+                });
             }
             instancesPids.remove(instancePid);
         }
 
-        for (String instancePid : instancesPids) {
-            deleteConfig(instancePid, factoryPid);
+        for (final String instancePid : instancesPids) {
             instances.remove(instancePid);
+            tasks.add(new Runnable() {
+                public void run() {
+                    deleteConfig(instancePid, factoryPid);
+                }
+            });
+        }
+
+        if (newInstances == null) {
+            // the factory directory itself is gone...
+            m_foundFactories.remove(factoryPid);
+            m_watchedFactories.remove(factoryPid);
+        }
+    }
+
+    private void register(WatchService watcher, File dir) throws IOException {
+        dir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Waits for changes reported by the watch service and handles them in batches.
+     */
+    private void watchConfigs() throws InterruptedException {
+        while (!Thread.currentThread().isInterrupted()) {
+            Set<File> changed = new HashSet<>();
+            boolean overflow = collectChanges(m_watcher.take(), changed);
+
+            // wait a little while for more changes, as files are often changed together...
+            WatchKey key;
+            while ((key = m_watcher.poll(BATCH_DELAY, TimeUnit.MILLISECONDS)) != null) {
+                overflow |= collectChanges(key, changed);
+            }
+
+            if (overflow) {
+                doConfigs();
+            }
+            else {
+                doChangedConfigs(changed);
+            }
         }
     }
 
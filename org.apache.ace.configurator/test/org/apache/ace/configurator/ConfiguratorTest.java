@@ -140,6 +140,75 @@ public class ConfiguratorTest {
         assertEquals(configurationValues, configuration);
     }
 
+    @Test()
+    public void testAddConfigurationWithWatchService() throws Exception {
+        String pid = "test-add";
+
+        setUp(false, true, 1); // Instruct the configurator to watch for changes
+
+        Properties initialConfiguration = createProperties();
+        saveConfiguration(pid, initialConfiguration);
+
+        Dictionary<String, ?> configuration = getAndWaitForConfigurationUpdate(pid);
+        assertNotNull(configuration, "No configuration received from configurator");
+        assertEquals(createProperties(), configuration, "Configuration content is unexpected");
+
+        initialConfiguration.put("anotherKey", "anotherValue");
+        saveConfiguration(pid, initialConfiguration);
+
+        configuration = getAndWaitForConfigurationUpdate(pid);
+        assertNotNull(configuration, "No configuration received from configurator");
+        assertEquals(initialConfiguration, configuration);
+
+        removeConfiguration(pid);
+        waitForConfigurationDelete(pid);
+    }
+
+    @Test()
+    public void testAddFactoryConfigurationWithWatchService() throws Exception {
+        String pid = "test-add";
+        String factoryPID = "testFactory";
+
+        setUp(false, true, 1); // Instruct the configurator to watch for changes
+
+        Properties props = createProperties();
+        saveConfiguration(pid, factoryPID, props);
+
+        Dictionary<String, ?> configuration = getAndWaitForConfigurationUpdate(factoryPID);
+        assertNotNull(configuration, "No configuration received from configurator");
+        assertEquals(configuration.remove("factory.instance.pid"), "testFactory_test-add", "Incorrect factory instance pid was added to the configuration");
+        assertEquals(createProperties(), configuration, "Configuration content is unexpected");
+
+        removeConfiguration(pid, factoryPID);
+        waitForConfigurationDelete(factoryPID);
+    }
+
+    @Test()
+    public void testInitialConfigurationIsAppliedConcurrently() throws Exception {
+        int count = 20;
+
+        // replace the default configurator with one that starts with a filled configuration directory...
+        m_configurator.stop();
+        for (int i = 0; i < count; i++) {
+            saveConfiguration("test-initial-" + i, createProperties());
+        }
+        m_updateLatch = new CountDownLatch(count);
+
+        m_configurator = createConfigurator(m_configDir, false, true, 4);
+        m_configurator.start();
+
+        assertTrue(m_updateLatch.await(2, TimeUnit.SECONDS), "Not all configurations were applied");
+        for (int i = 0; i < count; i++) {
+            assertEquals(m_configAdmin.getConfiguration("test-initial-" + i).getProperties(), createProperties());
+        }
+
+        long timeout = System.currentTimeMillis() + 2000;
+        while ((m_configurator.getStartupTime() < 0) && (System.currentTimeMillis() < timeout)) {
+            Thread.sleep(10);
+        }
+        assertTrue(m_configurator.getStartupTime() >= 0, "Startup time not recorded");
+    }
+
     @Test()
     public void testPropertySubstitution() throws Exception {
         String pid = "test-subst";
@@ -224,6 +293,20 @@ public class ConfiguratorTest {
      *            Indicates whether or not the configurator should use reconfiguration.
      */
     protected void setUp(boolean reconfig) throws Exception {
+        setUp(reconfig, false, 1);
+    }
+
+    /**
+     * Sets up the environment for testing.
+     * 
+     * @param reconfig
+     *            Indicates whether or not the configurator should use reconfiguration.
+     * @param watch
+     *            Indicates whether or not the configurator should use a watch service.
+     * @param parallelism
+     *            The number of configurations the configurator may apply concurrently.
+     */
+    protected void setUp(boolean reconfig, boolean watch, int parallelism) throws Exception {
         m_configAdmin = new MockConfigAdmin() {
             @Override
             void configDeleted(MockConfiguration config) {
@@ -238,19 +321,7 @@ public class ConfiguratorTest {
 
         m_configDir = FileUtils.createTempFile(null);
         m_configDir.mkdir();
-        m_configurator = new Configurator(m_configDir, 200, reconfig);
-
-        TestUtils.configureObject(m_configurator, ConfigurationAdmin.class, m_configAdmin);
-        TestUtils.configureObject(m_configurator, LogService.class);
-        TestUtils.configureObject(m_configurator, BundleContext.class, TestUtils.createMockObjectAdapter(BundleContext.class, new Object() {
-            @SuppressWarnings("unused")
-            public String getProperty(String key) {
-                if ("contextProp".equals(key)) {
-                    return "contextVal";
-                }
-                return null;
-            }
-        }));
+        m_configurator = createConfigurator(m_configDir, reconfig, watch, parallelism);
         m_configurator.start();
     }
 
@@ -263,6 +334,23 @@ public class ConfiguratorTest {
         m_updateLatch = null;
     }
 
+    private Configurator createConfigurator(File configDir, boolean reconfig, boolean watch, int parallelism) throws Exception {
+        Configurator configurator = new Configurator(configDir, 200, reconfig, watch, parallelism);
+
+        TestUtils.configureObject(configurator, ConfigurationAdmin.class, m_configAdmin);
+        TestUtils.configureObject(configurator, LogService.class);
+        TestUtils.configureObject(configurator, BundleContext.class, TestUtils.createMockObjectAdapter(BundleContext.class, new Object() {
+            @SuppressWarnings("unused")
+            public String getProperty(String key) {
+                if ("contextProp".equals(key)) {
+                    return "contextVal";
+                }
+                return null;
+            }
+        }));
+        return configurator;
+    }
+
     // set some standard properties for testing
     private Properties createProperties() {
         Properties props = new Properties();
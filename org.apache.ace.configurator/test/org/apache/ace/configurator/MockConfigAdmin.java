@@ -38,7 +38,7 @@ public abstract class MockConfigAdmin implements ConfigurationAdmin {
         return createFactoryConfiguration(factoryPID, null);
     }
 
-    public Configuration createFactoryConfiguration(String factoryPID, String location) throws IOException {
+    public synchronized Configuration createFactoryConfiguration(String factoryPID, String location) throws IOException {
         Configuration config = m_configs.get(factoryPID);
         if (config == null) {
             config = new MockConfiguration(this);
@@ -51,7 +51,7 @@ public abstract class MockConfigAdmin implements ConfigurationAdmin {
         return getConfiguration(pid, null);
     }
 
-    public Configuration getConfiguration(String pid, String location) throws IOException {
+    public synchronized Configuration getConfiguration(String pid, String location) throws IOException {
         Configuration config = m_configs.get(pid);
         if (config == null) {
             config = new MockConfiguration(this);
@@ -60,7 +60,7 @@ public abstract class MockConfigAdmin implements ConfigurationAdmin {
         return config;
     }
 
-    public Configuration[] listConfigurations(String filter) throws IOException, InvalidSyntaxException {
+    public synchronized Configuration[] listConfigurations(String filter) throws IOException, InvalidSyntaxException {
         Collection<Configuration> configs = m_configs.values();
         return configs.toArray(new Configuration[configs.size()]);
     }
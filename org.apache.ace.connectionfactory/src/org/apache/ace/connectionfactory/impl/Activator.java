@@ -32,6 +32,9 @@ import org.osgi.service.cm.ManagedServiceFactory;
  * Provides the bundle activator for the {@link ConnectionFactoryImpl} service.
  */
 public class Activator implements BundleActivator {
+    // Use the plain property names for shell commands to avoid a dependency on the Gogo runtime...
+    private static final String COMMAND_SCOPE = "osgi.command.scope";
+    private static final String COMMAND_FUNCTION = "osgi.command.function";
 
     /**
      * {@inheritDoc}
@@ -40,6 +43,8 @@ public class Activator implements BundleActivator {
         Dictionary<String, Object> props = new Hashtable<>();
         props.put(Constants.SERVICE_PID, ConnectionFactoryImpl.FACTORY_PID);
         props.put("impl.type", "jdk");
+        props.put(COMMAND_SCOPE, "connection");
+        props.put(COMMAND_FUNCTION, new String[] { "metrics" });
 
         context.registerService(new String[]{ ConnectionFactory.class.getName(), ManagedServiceFactory.class.getName() }, 
             new ConnectionFactoryImpl(), props);
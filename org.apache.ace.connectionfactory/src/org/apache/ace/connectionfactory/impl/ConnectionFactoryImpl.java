@@ -23,10 +23,14 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -42,6 +46,11 @@ import org.osgi.service.useradmin.User;
 /**
  * Provides a default implementation for {@link ConnectionFactory} based on the standard <code>java.net</code>
  * implementation of {@link URLConnection}.
+ * <p>
+ * HTTP(S) connections are returned as wrappers that keep their socket alive when they are disconnected after their
+ * response is read, allowing the JDK to reuse it from its (bounded, per host) keep-alive cache. These wrappers also
+ * keep track of the number of requests, the number of in-flight connections and their durations per host.
+ * </p>
  */
 public class ConnectionFactoryImpl implements ConnectionFactory, ManagedServiceFactory {
 
@@ -50,12 +59,16 @@ public class ConnectionFactoryImpl implements ConnectionFactory, ManagedServiceF
     private static final String HTTP_HEADER_AUTHORIZATION = "Authorization";
 
     private final Map<String /* config PID */, UrlCredentials> m_credentialMapping;
+    private final ConcurrentMap<String /* host */, HostMetrics> m_hostMetrics;
+    private volatile UrlCredentialsIndex m_credentialsIndex;
 
     /**
      * Creates a new {@link ConnectionFactoryImpl}.
      */
     public ConnectionFactoryImpl() {
         m_credentialMapping = new HashMap<>();
+        m_hostMetrics = new ConcurrentHashMap<>();
+        m_credentialsIndex = new UrlCredentialsIndex(Collections.<UrlCredentials> emptyList(), this);
     }
 
     /**
@@ -68,12 +81,12 @@ public class ConnectionFactoryImpl implements ConnectionFactory, ManagedServiceF
 
         URLConnection conn = url.openConnection();
 
-        UrlCredentials creds = getCredentials(url);
+        UrlCredentialsIndex.Entry creds = m_credentialsIndex.get(url);
         if (creds != null) {
             supplyCredentials(conn, creds);
         }
 
-        return conn;
+        return track(conn);
     }
 
     /**
@@ -89,13 +102,13 @@ public class ConnectionFactoryImpl implements ConnectionFactory, ManagedServiceF
 
         URLConnection conn = url.openConnection();
 
-        UrlCredentials creds = getCredentials(url);
+        UrlCredentialsIndex.Entry creds = m_credentialsIndex.get(url);
         if (creds != null) {
             // TODO apply user!
             supplyCredentials(conn, creds);
         }
 
-        return conn;
+        return track(conn);
     }
 
     /**
@@ -104,6 +117,7 @@ public class ConnectionFactoryImpl implements ConnectionFactory, ManagedServiceF
     public void deleted(String pid) {
         synchronized (m_credentialMapping) {
             m_credentialMapping.remove(pid);
+            updateCredentialsIndex();
         }
     }
 
@@ -128,6 +142,7 @@ public class ConnectionFactoryImpl implements ConnectionFactory, ManagedServiceF
 
             synchronized (m_credentialMapping) {
                 m_credentialMapping.put(pid, creds);
+                updateCredentialsIndex();
             }
         }
         catch (MissingValueException e) {
@@ -144,18 +159,50 @@ public class ConnectionFactoryImpl implements ConnectionFactory, ManagedServiceF
      *         were necessary.
      */
     final UrlCredentials getCredentials(URL url) {
-        Collection<UrlCredentials> creds;
-        synchronized (m_credentialMapping) {
-            creds = new ArrayList<>(m_credentialMapping.values());
-        }
+        UrlCredentialsIndex.Entry entry = m_credentialsIndex.get(url);
+        return (entry == null) ? null : entry.m_credentials;
+    }
 
-        for (UrlCredentials c : creds) {
-            if (c.matches(url)) {
-                return c;
+    /**
+     * Shell command that shows the connection metrics per host.
+     */
+    public void metrics() {
+        List<HostMetrics> metrics = new ArrayList<>(m_hostMetrics.values());
+        if (metrics.isEmpty()) {
+            System.out.println("No connections made.");
+            return;
+        }
+        Collections.sort(metrics, new Comparator<HostMetrics>() {
+            @Override
+            public int compare(HostMetrics m1, HostMetrics m2) {
+                return m1.getHost().compareTo(m2.getHost());
             }
+        });
+        for (HostMetrics m : metrics) {
+            System.out.println(m);
         }
+    }
+
+    /**
+     * Returns the metrics for the given host.
+     * 
+     * @param url
+     *            the URL to return the metrics of its host for, cannot be <code>null</code>.
+     * @return the metrics, never <code>null</code>.
+     */
+    final HostMetrics getHostMetrics(URL url) {
+        int port = (url.getPort() < 0) ? url.getDefaultPort() : url.getPort();
+        String host = url.getProtocol() + "://" + url.getHost() + ":" + port;
 
-        return null;
+        HostMetrics metrics = m_hostMetrics.get(host);
+        if (metrics == null) {
+            HostMetrics newMetrics = new HostMetrics(host);
+            metrics = m_hostMetrics.putIfAbsent(host, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
     }
 
     /**
@@ -194,12 +241,12 @@ public class ConnectionFactoryImpl implements ConnectionFactory, ManagedServiceF
      * 
      * @param conn
      *            the connection to apply basic authentication to;
-     * @param values
-     *            the credentials to apply.
+     * @param header
+     *            the (precomputed) authorization header to apply.
      */
-    private void applyBasicAuthentication(URLConnection conn, Object[] values) {
+    private void applyBasicAuthentication(URLConnection conn, String header) {
         if (conn instanceof HttpURLConnection) {
-            conn.setRequestProperty(HTTP_HEADER_AUTHORIZATION, getBasicAuthCredentials(values));
+            conn.setRequestProperty(HTTP_HEADER_AUTHORIZATION, header);
         }
     }
 
@@ -222,17 +269,17 @@ public class ConnectionFactoryImpl implements ConnectionFactory, ManagedServiceF
      * 
      * @param conn
      *            the connection to supply the credentials to, cannot be <code>null</code>;
-     * @param urlCreds
+     * @param entry
      *            the URL credentials to supply, cannot be <code>null</code>.
      * @throws IOException
      *             in case of I/O problems.
      */
-    private void supplyCredentials(URLConnection conn, UrlCredentials urlCreds) throws IOException {
-        final AuthType type = urlCreds.getType();
-        final Object[] creds = urlCreds.getCredentials();
+    private void supplyCredentials(URLConnection conn, UrlCredentialsIndex.Entry entry) throws IOException {
+        final AuthType type = entry.m_credentials.getType();
+        final Object[] creds = entry.m_credentials.getCredentials();
 
         if (AuthType.BASIC.equals(type)) {
-            applyBasicAuthentication(conn, creds);
+            applyBasicAuthentication(conn, entry.m_authorizationHeader);
         }
         else if (AuthType.CLIENT_CERT.equals(type)) {
             applyClientCertificate(conn, creds);
@@ -241,4 +288,29 @@ public class ConnectionFactoryImpl implements ConnectionFactory, ManagedServiceF
             throw new IllegalArgumentException("Unknown authentication type: " + type);
         }
     }
+
+    /**
+     * Wraps HTTP(S) connections to keep them alive and to keep track of their use.
+     * 
+     * @param conn
+     *            the connection to wrap, cannot be <code>null</code>.
+     * @return the wrapped connection, or the given connection if it is not a HTTP(S) connection.
+     */
+    private URLConnection track(URLConnection conn) {
+        if (conn instanceof HttpsURLConnection) {
+            return new TrackedHttpsURLConnection((HttpsURLConnection) conn, getHostMetrics(conn.getURL()));
+        }
+        else if (conn instanceof HttpURLConnection) {
+            return new TrackedHttpURLConnection((HttpURLConnection) conn, getHostMetrics(conn.getURL()));
+        }
+        return conn;
+    }
+
+    /**
+     * Rebuilds the index used to look up the credentials for URLs, should be called while holding the lock on
+     * {@link #m_credentialMapping}.
+     */
+    private void updateCredentialsIndex() {
+        m_credentialsIndex = new UrlCredentialsIndex(m_credentialMapping.values(), this);
+    }
 }
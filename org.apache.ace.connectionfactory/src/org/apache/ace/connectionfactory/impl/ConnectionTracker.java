@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.connectionfactory.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tracks the use of a single {@link HttpURLConnection} for the {@link HostMetrics} of its host, and makes sure that
+ * disconnecting it keeps the underlying connection alive whenever possible.
+ * <p>
+ * Calling {@link HttpURLConnection#disconnect()} closes the socket used by the connection, even if the response was
+ * read completely, which means that the next connection to the same host has to set up a new socket (and possibly do
+ * a new TLS handshake). Instead, we drain and close the response stream, which lets the JDK return the socket to its
+ * (bounded, per host) keep-alive cache.
+ * </p>
+ */
+final class ConnectionTracker {
+    /** The maximum number of bytes we are willing to skip to be able to reuse a connection. */
+    private static final int MAX_DRAIN_SIZE = 64 * 1024;
+
+    private final HttpURLConnection m_conn;
+    private final HostMetrics m_metrics;
+    private final AtomicBoolean m_started = new AtomicBoolean();
+    private final AtomicBoolean m_finished = new AtomicBoolean();
+    private volatile long m_startTime;
+    private volatile InputStream m_input;
+
+    ConnectionTracker(HttpURLConnection conn, HostMetrics metrics) {
+        m_conn = conn;
+        m_metrics = metrics;
+    }
+
+    /**
+     * Called upon each operation that (possibly) causes network I/O.
+     */
+    void start() {
+        if (m_started.compareAndSet(false, true)) {
+            m_startTime = System.nanoTime();
+            m_metrics.started();
+        }
+    }
+
+    /**
+     * Called when the connection is no longer in use.
+     */
+    void finish() {
+        if (m_started.get() && m_finished.compareAndSet(false, true)) {
+            m_metrics.finished(System.nanoTime() - m_startTime);
+        }
+    }
+
+    /**
+     * Wraps a response stream, so that closing it finishes the use of the connection.
+     * 
+     * @param in the stream to wrap, can be <code>null</code>.
+     * @return the wrapped stream, or <code>null</code> if the given stream was <code>null</code>.
+     */
+    InputStream track(InputStream in) {
+        if (in == null) {
+            return null;
+        }
+        InputStream result = new FilterInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                }
+                finally {
+                    finish();
+                }
+            }
+        };
+        m_input = result;
+        return result;
+    }
+
+    /**
+     * Releases the connection, keeping its socket alive if the response was (or can be) read completely.
+     */
+    void disconnect() {
+        try {
+            InputStream in = m_input;
+            if (in != null && drain(in)) {
+                // the JDK has returned the socket to its keep-alive cache...
+                return;
+            }
+            m_conn.disconnect();
+        }
+        finally {
+            finish();
+        }
+    }
+
+    private static boolean drain(InputStream in) {
+        try {
+            byte[] buffer = new byte[4096];
+            int remaining = MAX_DRAIN_SIZE;
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, Math.min(buffer.length, remaining))) >= 0) {
+                remaining -= read;
+            }
+            boolean eof = remaining > 0 || in.read() < 0;
+            in.close();
+            return eof;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.connectionfactory.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the connections made to a single host.
+ */
+final class HostMetrics {
+    private final String m_host;
+    private final AtomicLong m_requests = new AtomicLong();
+    private final AtomicInteger m_inFlight = new AtomicInteger();
+    private final AtomicLong m_totalDuration = new AtomicLong();
+    private final AtomicLong m_maxDuration = new AtomicLong();
+
+    HostMetrics(String host) {
+        m_host = host;
+    }
+
+    /**
+     * Called when a connection to our host is started.
+     */
+    void started() {
+        m_requests.incrementAndGet();
+        m_inFlight.incrementAndGet();
+    }
+
+    /**
+     * Called when a connection to our host is finished.
+     * 
+     * @param duration the time (in nanoseconds) the connection was in use.
+     */
+    void finished(long duration) {
+        m_inFlight.decrementAndGet();
+        m_totalDuration.addAndGet(duration);
+        long max;
+        do {
+            max = m_maxDuration.get();
+        }
+        while (duration > max && !m_maxDuration.compareAndSet(max, duration));
+    }
+
+    String getHost() {
+        return m_host;
+    }
+
+    long getRequests() {
+        return m_requests.get();
+    }
+
+    int getInFlight() {
+        return m_inFlight.get();
+    }
+
+    /**
+     * @return the average time (in milliseconds) connections to our host were in use.
+     */
+    long getAverageDuration() {
+        long finished = m_requests.get() - m_inFlight.get();
+        return (finished <= 0) ? 0 : TimeUnit.NANOSECONDS.toMillis(m_totalDuration.get() / finished);
+    }
+
+    /**
+     * @return the longest time (in milliseconds) a connection to our host was in use.
+     */
+    long getMaxDuration() {
+        return TimeUnit.NANOSECONDS.toMillis(m_maxDuration.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d requests, %d in flight, %d ms average, %d ms max", m_host, getRequests(), getInFlight(), getAverageDuration(), getMaxDuration());
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.connectionfactory.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.security.Permission;
+import java.security.Principal;
+import java.security.cert.Certificate;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Delegating {@link HttpsURLConnection} that keeps the connection alive upon {@link #disconnect()} and keeps track of
+ * its use, see {@link ConnectionTracker}.
+ */
+final class TrackedHttpsURLConnection extends HttpsURLConnection {
+    private final HttpsURLConnection m_conn;
+    private final ConnectionTracker m_tracker;
+
+    TrackedHttpsURLConnection(HttpsURLConnection conn, HostMetrics metrics) {
+        super(conn.getURL());
+        m_conn = conn;
+        m_tracker = new ConnectionTracker(conn, metrics);
+    }
+
+    @Override
+    public void connect() throws IOException {
+        m_tracker.start();
+        m_conn.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        m_tracker.disconnect();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        m_tracker.start();
+        return m_tracker.track(m_conn.getInputStream());
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return m_tracker.track(m_conn.getErrorStream());
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        m_tracker.start();
+        return m_conn.getOutputStream();
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        m_tracker.start();
+        return m_conn.getResponseCode();
+    }
+
+    @Override
+    public String getResponseMessage() throws IOException {
+        m_tracker.start();
+        return m_conn.getResponseMessage();
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        m_tracker.start();
+        return m_conn.getHeaderField(name);
+    }
+
+    @Override
+    public String getHeaderField(int n) {
+        m_tracker.start();
+        return m_conn.getHeaderField(n);
+    }
+
+    @Override
+    public String getHeaderFieldKey(int n) {
+        m_tracker.start();
+        return m_conn.getHeaderFieldKey(n);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        m_tracker.start();
+        return m_conn.getHeaderFields();
+    }
+
+    @Override
+    public Object getContent() throws IOException {
+        m_tracker.start();
+        return m_conn.getContent();
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Object getContent(Class[] classes) throws IOException {
+        m_tracker.start();
+        return m_conn.getContent(classes);
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return m_conn.usingProxy();
+    }
+
+    @Override
+    public Permission getPermission() throws IOException {
+        return m_conn.getPermission();
+    }
+
+    @Override
+    public void setRequestMethod(String method) throws ProtocolException {
+        m_conn.setRequestMethod(method);
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return m_conn.getRequestMethod();
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(int contentLength) {
+        m_conn.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(long contentLength) {
+        m_conn.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public void setChunkedStreamingMode(int chunklen) {
+        m_conn.setChunkedStreamingMode(chunklen);
+    }
+
+    @Override
+    public void setInstanceFollowRedirects(boolean followRedirects) {
+        m_conn.setInstanceFollowRedirects(followRedirects);
+    }
+
+    @Override
+    public boolean getInstanceFollowRedirects() {
+        return m_conn.getInstanceFollowRedirects();
+    }
+
+    @Override
+    public void setConnectTimeout(int timeout) {
+        m_conn.setConnectTimeout(timeout);
+    }
+
+    @Override
+    public int getConnectTimeout() {
+        return m_conn.getConnectTimeout();
+    }
+
+    @Override
+    public void setReadTimeout(int timeout) {
+        m_conn.setReadTimeout(timeout);
+    }
+
+    @Override
+    public int getReadTimeout() {
+        return m_conn.getReadTimeout();
+    }
+
+    @Override
+    public URL getURL() {
+        return m_conn.getURL();
+    }
+
+    @Override
+    public void setDoInput(boolean doinput) {
+        m_conn.setDoInput(doinput);
+    }
+
+    @Override
+    public boolean getDoInput() {
+        return m_conn.getDoInput();
+    }
+
+    @Override
+    public void setDoOutput(boolean dooutput) {
+        m_conn.setDoOutput(dooutput);
+    }
+
+    @Override
+    public boolean getDoOutput() {
+        return m_conn.getDoOutput();
+    }
+
+    @Override
+    public void setAllowUserInteraction(boolean allowuserinteraction) {
+        m_conn.setAllowUserInteraction(allowuserinteraction);
+    }
+
+    @Override
+    public boolean getAllowUserInteraction() {
+        return m_conn.getAllowUserInteraction();
+    }
+
+    @Override
+    public void setUseCaches(boolean usecaches) {
+        m_conn.setUseCaches(usecaches);
+    }
+
+    @Override
+    public boolean getUseCaches() {
+        return m_conn.getUseCaches();
+    }
+
+    @Override
+    public void setIfModifiedSince(long ifmodifiedsince) {
+        m_conn.setIfModifiedSince(ifmodifiedsince);
+    }
+
+    @Override
+    public long getIfModifiedSince() {
+        return m_conn.getIfModifiedSince();
+    }
+
+    @Override
+    public boolean getDefaultUseCaches() {
+        return m_conn.getDefaultUseCaches();
+    }
+
+    @Override
+    public void setDefaultUseCaches(boolean defaultusecaches) {
+        m_conn.setDefaultUseCaches(defaultusecaches);
+    }
+
+    @Override
+    public void setRequestProperty(String key, String value) {
+        m_conn.setRequestProperty(key, value);
+    }
+
+    @Override
+    public void addRequestProperty(String key, String value) {
+        m_conn.addRequestProperty(key, value);
+    }
+
+    @Override
+    public String getRequestProperty(String key) {
+        return m_conn.getRequestProperty(key);
+    }
+
+    @Override
+    public Map<String, List<String>> getRequestProperties() {
+        return m_conn.getRequestProperties();
+    }
+
+    @Override
+    public String toString() {
+        return m_conn.toString();
+    }
+
+    @Override
+    public String getCipherSuite() {
+        return m_conn.getCipherSuite();
+    }
+
+    @Override
+    public Certificate[] getLocalCertificates() {
+        return m_conn.getLocalCertificates();
+    }
+
+    @Override
+    public Certificate[] getServerCertificates() throws SSLPeerUnverifiedException {
+        return m_conn.getServerCertificates();
+    }
+
+    @Override
+    public Principal getPeerPrincipal() throws SSLPeerUnverifiedException {
+        return m_conn.getPeerPrincipal();
+    }
+
+    @Override
+    public Principal getLocalPrincipal() {
+        return m_conn.getLocalPrincipal();
+    }
+
+    @Override
+    public void setHostnameVerifier(HostnameVerifier verifier) {
+        m_conn.setHostnameVerifier(verifier);
+    }
+
+    @Override
+    public HostnameVerifier getHostnameVerifier() {
+        return m_conn.getHostnameVerifier();
+    }
+
+    @Override
+    public void setSSLSocketFactory(SSLSocketFactory factory) {
+        m_conn.setSSLSocketFactory(factory);
+    }
+
+    @Override
+    public SSLSocketFactory getSSLSocketFactory() {
+        return m_conn.getSSLSocketFactory();
+    }
+}
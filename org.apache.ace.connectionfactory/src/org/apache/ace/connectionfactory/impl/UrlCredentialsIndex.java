@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.connectionfactory.impl;
+
+import java.net.URL;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable prefix trie that maps URLs to the credentials of the longest matching base URL. Resolving the credentials
+ * for a URL takes time proportional to the length of the URL, regardless of the number of configured credentials. For
+ * credentials using basic authentication, the authorization header is computed once when the index is built.
+ */
+final class UrlCredentialsIndex {
+    /** The result of a lookup: the matching credentials and their precomputed authorization header, if any. */
+    static final class Entry {
+        final UrlCredentials m_credentials;
+        final String m_authorizationHeader;
+
+        Entry(UrlCredentials credentials, String authorizationHeader) {
+            m_credentials = credentials;
+            m_authorizationHeader = authorizationHeader;
+        }
+    }
+
+    private static final class Node {
+        final Map<Character, Node> m_children = new HashMap<>();
+        Entry m_entry;
+    }
+
+    private final Node m_root = new Node();
+
+    /**
+     * Creates a new {@link UrlCredentialsIndex} instance.
+     * 
+     * @param credentials the credentials to index, cannot be <code>null</code>;
+     * @param factory the connection factory used to compute basic authentication headers, cannot be <code>null</code>.
+     */
+    UrlCredentialsIndex(Collection<UrlCredentials> credentials, ConnectionFactoryImpl factory) {
+        for (UrlCredentials creds : credentials) {
+            String header = null;
+            if (UrlCredentials.AuthType.BASIC.equals(creds.getType())) {
+                header = factory.getBasicAuthCredentials(creds.getCredentials());
+            }
+
+            String prefix = creds.getBaseURL().toExternalForm();
+            Node node = m_root;
+            for (int i = 0; i < prefix.length(); i++) {
+                Character c = Character.valueOf(prefix.charAt(i));
+                Node child = node.m_children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.m_children.put(c, child);
+                }
+                node = child;
+            }
+            // in case of duplicate base URLs, the first one wins...
+            if (node.m_entry == null) {
+                node.m_entry = new Entry(creds, header);
+            }
+        }
+    }
+
+    /**
+     * Returns the entry for the given URL.
+     * 
+     * @param url the URL to look up, can be <code>null</code>.
+     * @return the entry whose base URL is the longest prefix of the given URL, or <code>null</code> if there is none.
+     */
+    Entry get(URL url) {
+        if (url == null) {
+            return null;
+        }
+        String str = url.toExternalForm();
+        Entry result = m_root.m_entry;
+        Node node = m_root;
+        for (int i = 0; i < str.length() && node != null; i++) {
+            node = node.m_children.get(Character.valueOf(str.charAt(i)));
+            if (node != null && node.m_entry != null) {
+                result = node.m_entry;
+            }
+        }
+        return result;
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.apache.ace.connectionfactory.impl;
 
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
@@ -68,6 +69,44 @@ public class ConnectionFactoryImplTest {
         assert conn != null : "Expected valid connection to be created!";
     }
 
+    /**
+     * Test method for {@link org.apache.ace.connectionfactory.impl.ConnectionFactoryImpl#createConnection(java.net.URL)}.
+     */
+    @Test()
+    public void testCreateHttpConnectionIsTrackedOk() throws Exception {
+        ConnectionFactoryImpl connFactory = new ConnectionFactoryImpl();
+
+        URLConnection conn = connFactory.createConnection(new URL("http://localhost:8080/foo"));
+        assert conn instanceof HttpURLConnection : "Expected a HTTP connection to be created!";
+
+        HostMetrics metrics = connFactory.getHostMetrics(TEST_URL);
+        assert metrics == connFactory.getHostMetrics(new URL("http://localhost:8080/bar")) : "Expected metrics to be shared per host!";
+        assert metrics.getRequests() == 0 : "Expected no requests to be made yet!";
+        assert metrics != connFactory.getHostMetrics(new URL("http://localhost:8181/")) : "Expected metrics to differ per port!";
+    }
+
+    /**
+     * Test method for {@link org.apache.ace.connectionfactory.impl.ConnectionFactoryImpl#getCredentials(java.net.URL)}.
+     */
+    @Test()
+    public void testGetCredentialsLongestPrefixOk() throws Exception {
+        ConnectionFactoryImpl connFactory = new ConnectionFactoryImpl();
+
+        connFactory.updated("pid1", createBasicAuthConfig(TEST_URL.toExternalForm()));
+        connFactory.updated("pid2", createBasicAuthConfig(TEST_URL.toExternalForm() + "repository/"));
+
+        UrlCredentials credentials = connFactory.getCredentials(new URL(TEST_URL, "repository/query"));
+        assert credentials != null : "Expected valid credentials to be found!";
+        assert !credentials.matches(TEST_URL) : "Expected the most specific credentials to be found!";
+
+        credentials = connFactory.getCredentials(new URL(TEST_URL, "obr/"));
+        assert credentials != null : "Expected valid credentials to be found!";
+        assert credentials.matches(TEST_URL) : "Expected the generic credentials to be found!";
+
+        credentials = connFactory.getCredentials(new URL("http://localhost:8181/"));
+        assert credentials == null : "Expected no credentials to be found!";
+    }
+
     /**
      * Test method for {@link org.apache.ace.connectionfactory.impl.ConnectionFactoryImpl#deleted(java.lang.String)}.
      */
@@ -21,6 +21,7 @@ package org.apache.ace.deployment.servlet;
 import static org.apache.ace.http.HttpConstants.ACE_WHITEBOARD_CONTEXT_SELECT_FILTER;
 import static org.osgi.service.http.whiteboard.HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_SELECT;
 import static org.osgi.service.http.whiteboard.HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_PATTERN;
+import static org.osgi.service.http.whiteboard.HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_ASYNC_SUPPORTED;
 import static org.osgi.service.http.whiteboard.HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN;
 
 import java.util.Properties;
@@ -40,6 +41,9 @@ import org.osgi.service.log.LogService;
 public class Activator extends DependencyActivatorBase {
     public static final String AGENT_PID = "org.apache.ace.deployment.servlet.agent";
 
+    /** The directory in which agent bundles are cached. */
+    private static final String AGENT_CACHE_DIR = "agents";
+
     @Override
     public void init(BundleContext context, DependencyManager manager) throws Exception {
         Properties deploymentServletProps = new Properties();
@@ -59,14 +63,27 @@ public class Activator extends DependencyActivatorBase {
         agentServletProps.put(HTTP_WHITEBOARD_SERVLET_PATTERN, "/agent/*");
         agentServletProps.put(HTTP_WHITEBOARD_CONTEXT_SELECT, ACE_WHITEBOARD_CONTEXT_SELECT_FILTER);
         
+        AgentDeploymentServlet agentServlet = new AgentDeploymentServlet(context.getDataFile(AGENT_CACHE_DIR), AgentDeploymentServlet.DEFAULT_INDEX_CHECK_INTERVAL);
         manager.add(createComponent()
             .setInterface(Servlet.class.getName(), agentServletProps)
-            .setImplementation(AgentDeploymentServlet.class)
+            .setImplementation(agentServlet)
             .add(createConfigurationDependency().setPid(AGENT_PID))
             .add(createServiceDependency().setService(ConnectionFactory.class).setRequired(true))
             .add(createServiceDependency().setService(LogService.class).setRequired(false))
         );
         
+        Properties notificationServletProps = new Properties();
+        notificationServletProps.put(HTTP_WHITEBOARD_SERVLET_PATTERN, "/notification/*");
+        notificationServletProps.put(HTTP_WHITEBOARD_SERVLET_ASYNC_SUPPORTED, "true");
+        notificationServletProps.put(HTTP_WHITEBOARD_CONTEXT_SELECT, ACE_WHITEBOARD_CONTEXT_SELECT_FILTER);
+
+        manager.add(createComponent()
+            .setInterface(Servlet.class.getName(), notificationServletProps)
+            .setImplementation(new NotificationServlet(agentServlet))
+            .add(createServiceDependency().setService(DeploymentProvider.class).setRequired(true))
+            .add(createServiceDependency().setService(LogService.class).setRequired(false))
+        );
+
         Properties filterProps = new Properties();
         filterProps.put(HTTP_WHITEBOARD_FILTER_PATTERN, "/*");
         manager.add(createComponent()
@@ -18,9 +18,15 @@
  */
 package org.apache.ace.deployment.servlet;
 
+import static org.apache.ace.http.HttpUtil.matchesEntityTag;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
@@ -30,16 +36,21 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.xml.xpath.XPathExpressionException;
 
 import org.apache.ace.bnd.registry.RegistryImpl;
 import org.apache.ace.bnd.repository.AceUrlConnector;
@@ -59,14 +70,61 @@ import aQute.bnd.deployer.repository.FixedIndexedRepo;
 import aQute.bnd.osgi.resource.CapReqBuilder;
 import aQute.bnd.service.Registry;
 
+/**
+ * Provides the versions of the agent that are available in the OBR, and delivers them to the agents.
+ * <p>
+ * As every agent asks for this information every time it synchronizes, the parsed OBR index is kept, and only reloaded
+ * when the entity tag or modification time of the index changes, which is checked at most once every few seconds.
+ * Agent bundles are kept in a local cache, with a directory per agent that only contains the bundles of the current
+ * index, and are delivered with an entity tag so agents can use conditional requests.
+ */
 public class AgentDeploymentServlet extends HttpServlet implements ManagedService {
+    /**
+     * Provides the information about the agent bundles found in a single version of the OBR index. The versions of each
+     * agent are looked up once, when they are first requested.
+     */
+    private static class AgentIndex {
+        private final URL m_indexURL;
+        private final String m_indexTag;
+        private final Repository m_repository;
+        private final ConcurrentMap<String, NavigableMap<Version, AgentBundle>> m_agents = new ConcurrentHashMap<>();
+        private volatile long m_lastChecked;
+
+        AgentIndex(URL indexURL, String indexTag, Repository repository) {
+            m_indexURL = indexURL;
+            m_indexTag = indexTag;
+            m_repository = repository;
+            m_lastChecked = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Describes a single agent bundle in the OBR.
+     */
+    private static class AgentBundle {
+        private final URI m_uri;
+        private final String m_hash;
+
+        AgentBundle(URI uri, String hash) {
+            m_uri = uri;
+            m_hash = hash;
+        }
+    }
+
     private static final long serialVersionUID = 1L;
 
     private static final int BUFFER_SIZE = 1024 * 32;
+    /** The default time (in ms) during which the OBR index is assumed to be unchanged. */
+    static final long DEFAULT_INDEX_CHECK_INTERVAL = 5000;
 
     /** URL to the OBR that is used for finding versions of the agent. */
     private static final String KEY_OBR_URL = "obr.url";
 
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
     public static final String VERSIONS = "versions";
     public static final String BUNDLE_MIMETYPE = "application/octet-stream";
     public static final String TEXT_MIMETYPE = "text/plain";
@@ -75,9 +133,31 @@ public class AgentDeploymentServlet extends HttpServlet implements ManagedServic
     private volatile LogService m_log;
     private volatile ConnectionFactory m_connectionFactory;
     // See updated()
-    private URL m_obrURL;
+    private volatile URL m_obrURL;
 
     private final String m_repositoryXML = "index.xml";
+    private final File m_cacheDir;
+    private final long m_indexCheckInterval;
+    private final Object m_indexLock = new Object();
+    private volatile AgentIndex m_index;
+
+    public AgentDeploymentServlet() {
+        this(null, DEFAULT_INDEX_CHECK_INTERVAL);
+    }
+
+    /**
+     * Creates a new {@link AgentDeploymentServlet} instance.
+     * 
+     * @param cacheDir
+     *            the directory in which the agent bundles are cached, can be <code>null</code> in which case the
+     *            bundles are streamed directly from the OBR;
+     * @param indexCheckInterval
+     *            the time (in ms) during which the OBR index is assumed to be unchanged.
+     */
+    AgentDeploymentServlet(File cacheDir, long indexCheckInterval) {
+        m_cacheDir = cacheDir;
+        m_indexCheckInterval = indexCheckInterval;
+    }
 
     @Override
     public void updated(Dictionary<String, ?> settings) throws ConfigurationException {
@@ -123,44 +203,151 @@ public class AgentDeploymentServlet extends HttpServlet implements ManagedServic
 
     protected URLConnection openConnection(URL url) throws IOException {
         return m_connectionFactory.createConnection(url);
-    }    
-    
-    private InputStream getAgentFromOBR(URL obrBaseUrl, String agentID, Version version) throws IOException {
-        Repository repository = createRepository();
-        
-        Requirement requirement = new CapReqBuilder("osgi.identity")
-            .addDirective("filter", String.format("(&(osgi.identity=%s)(version=%s)(type=*))", agentID, version))
-            .buildSyntheticRequirement();
-        
-        Map<Requirement, Collection<Capability>> sourceResources = repository.findProviders(Collections.singleton(requirement));
-        if (sourceResources.isEmpty() || sourceResources.get(requirement).isEmpty()) {
+    }
+
+    /**
+     * Returns the name of the local copy of the given agent bundle, which changes whenever the agent bundle changes.
+     * 
+     * @return the name of the cached agent bundle, or <code>null</code> if the agent bundle cannot be cached as there
+     *         is no way to tell whether it has changed.
+     */
+    private static String getCacheName(AgentIndex index, Version version, AgentBundle bundle) {
+        String tag = (bundle.m_hash != null) ? bundle.m_hash : index.m_indexTag;
+        if (tag == null) {
             return null;
         }
-        
-        Iterator<Capability> capabilities = sourceResources.get(requirement).iterator();
-        while (capabilities.hasNext()) {
-            Capability capability = capabilities.next();
-            Resource resource = capability.getResource();
-            
-            List<Capability> contentCapabilities = resource.getCapabilities(ContentNamespace.CONTENT_NAMESPACE);
-            if (contentCapabilities != null && contentCapabilities.size() == 1) {
-                Capability content = contentCapabilities.get(0);
-                URI uri = (URI) content.getAttributes().get(ContentNamespace.CAPABILITY_URL_ATTRIBUTE);
-                if (uri != null) {
-                    return m_connectionFactory.createConnection(uri.toURL()).getInputStream();
+        return version + "-" + tag.replaceAll("[^a-zA-Z0-9._-]", "_") + ".jar";
+    }
+
+    /**
+     * Returns the local copy of the given agent bundle, downloading it from the OBR if needed.
+     */
+    private File getCachedBundle(String agentID, String name, AgentBundle bundle) throws IOException {
+        File dir = new File(m_cacheDir, agentID);
+        File file = new File(dir, name);
+        if (file.isFile()) {
+            return file;
+        }
+
+        dir.mkdirs();
+        File tempFile = File.createTempFile(name, ".tmp", dir);
+        try {
+            try (InputStream is = openConnection(bundle.m_uri.toURL()).getInputStream(); OutputStream os = new FileOutputStream(tempFile)) {
+                copy(is, os);
+            }
+            // another request might have beaten us to it, in which case we use its copy...
+            if (!tempFile.renameTo(file) && !file.isFile()) {
+                throw new IOException("Unable to store agent bundle in " + file);
+            }
+        }
+        finally {
+            tempFile.delete();
+        }
+        return file;
+    }
+
+    private static void copy(InputStream is, OutputStream os) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int bytes;
+        while ((bytes = is.read(buffer)) != -1) {
+            os.write(buffer, 0, bytes);
+        }
+    }
+
+    /**
+     * Returns the agent bundles of the given agent, sorted by their version.
+     */
+    private NavigableMap<Version, AgentBundle> getAgentBundles(String agentID) throws IOException {
+        return getAgentBundles(getIndex(), agentID);
+    }
+
+    /**
+     * Returns the agent bundles of the given agent in the given index, sorted by their version.
+     */
+    private NavigableMap<Version, AgentBundle> getAgentBundles(AgentIndex index, String agentID) {
+        NavigableMap<Version, AgentBundle> result = index.m_agents.get(agentID);
+        if (result == null) {
+            result = findAgentBundles(index.m_repository, agentID);
+            NavigableMap<Version, AgentBundle> existing = index.m_agents.putIfAbsent(agentID, result);
+            if (existing != null) {
+                result = existing;
+            }
+            else {
+                pruneCachedBundles(index, agentID, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the current OBR index, reloading it if it has changed since it was last checked.
+     */
+    private AgentIndex getIndex() throws IOException {
+        URL indexURL = createOBRURL();
+        AgentIndex index = m_index;
+        if (isRecentlyChecked(index, indexURL)) {
+            return index;
+        }
+
+        synchronized (m_indexLock) {
+            index = m_index;
+            if (isRecentlyChecked(index, indexURL)) {
+                return index;
+            }
+
+            String indexTag = getIndexTag(indexURL);
+            if ((index != null) && index.m_indexURL.equals(indexURL) && (indexTag != null) && indexTag.equals(index.m_indexTag)) {
+                index.m_lastChecked = System.currentTimeMillis();
+            }
+            else {
+                m_log.log(LogService.LOG_DEBUG, "Loading OBR index from " + indexURL);
+                index = new AgentIndex(indexURL, indexTag, createRepository(indexURL));
+                m_index = index;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Determines a tag that changes whenever the OBR index changes, without downloading the index itself.
+     * 
+     * @return the entity tag or modification time of the index, or <code>null</code> if neither is available.
+     */
+    private String getIndexTag(URL indexURL) throws IOException {
+        URLConnection connection = openConnection(indexURL);
+        try {
+            if (connection instanceof HttpURLConnection) {
+                HttpURLConnection httpConnection = (HttpURLConnection) connection;
+                httpConnection.setRequestMethod("HEAD");
+                if (httpConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    return null;
+                }
+            }
+            String etag = connection.getHeaderField(HEADER_ETAG);
+            if (etag != null) {
+                return etag;
+            }
+            long lastModified = connection.getLastModified();
+            return (lastModified > 0) ? Long.toString(lastModified) : null;
+        }
+        finally {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            }
+            else {
+                try {
+                    connection.getInputStream().close();
+                }
+                catch (IOException e) {
+                    // Ignore, we only needed its headers...
                 }
             }
         }
-        
-        return null;
     }
 
     private List<Version> getVersions(String agentID) throws AceRestException {
         try {
-            return getVersionsFromOBR(m_obrURL, agentID);
-        }
-        catch (XPathExpressionException e) {
-            throw new AceRestException(HttpServletResponse.SC_NOT_FOUND, "Unknown agent (" + agentID + ")");
+            return new ArrayList<>(getAgentBundles(agentID).keySet());
         }
         catch (IOException ioe) {
             m_log.log(LogService.LOG_WARNING, "Error getting available versions.", ioe);
@@ -168,60 +355,75 @@ public class AgentDeploymentServlet extends HttpServlet implements ManagedServic
         }
     }
 
-    private List<Version> getVersionsFromOBR(URL obrBaseUrl, String agentID) throws XPathExpressionException, IOException {
-        Repository repository = createRepository();
-        
+    /**
+     * Returns the highest version of the given agent that is available.
+     * 
+     * @param agentID
+     *            the identity of the agent, cannot be <code>null</code>.
+     * @return the highest available version, or <code>null</code> if no version is available or no OBR is configured.
+     * @throws IOException
+     *             in case the available versions could not be determined.
+     */
+    Version getHighestVersion(String agentID) throws IOException {
+        if (m_obrURL == null) {
+            return null;
+        }
+        NavigableMap<Version, AgentBundle> bundles = getAgentBundles(agentID);
+        return bundles.isEmpty() ? null : bundles.lastKey();
+    }
+
+    private NavigableMap<Version, AgentBundle> findAgentBundles(Repository repository, String agentID) {
         Requirement requirement = new CapReqBuilder("osgi.identity")
             .addDirective("filter", String.format("(&(osgi.identity=%s)(version=*)(type=*))", agentID))
             .buildSyntheticRequirement();
-        
+
+        NavigableMap<Version, AgentBundle> bundles = new TreeMap<>();
+
         Map<Requirement, Collection<Capability>> sourceResources = repository.findProviders(Collections.singleton(requirement));
         if (sourceResources.isEmpty() || sourceResources.get(requirement).isEmpty()) {
-            return Collections.emptyList();
-        }
-        
-        Iterator<Capability> capabilities = sourceResources.get(requirement).iterator();
-        List<Version> versions = new ArrayList<>();
-        
-        while (capabilities.hasNext()) {
-            Capability capability = capabilities.next();
-            
+            return Collections.unmodifiableNavigableMap(bundles);
+        }
+
+        for (Capability capability : sourceResources.get(requirement)) {
             Resource resource = capability.getResource();
             List<Capability> identities = resource.getCapabilities(IdentityNamespace.IDENTITY_NAMESPACE);
             Version version = null;
-            if (identities != null && identities.size() == 1){
+            if (identities != null && identities.size() == 1) {
                 Capability id = identities.get(0);
                 version = (Version) id.getAttributes().get(IdentityNamespace.CAPABILITY_VERSION_ATTRIBUTE);
             }
-            
+
             URI uri = null;
+            String hash = null;
             List<Capability> contentCapabilities = resource.getCapabilities(ContentNamespace.CONTENT_NAMESPACE);
             if (contentCapabilities != null && contentCapabilities.size() == 1) {
                 Capability content = contentCapabilities.get(0);
                 uri = (URI) content.getAttributes().get(ContentNamespace.CAPABILITY_URL_ATTRIBUTE);
+                Object contentHash = content.getAttributes().get(ContentNamespace.CONTENT_NAMESPACE);
+                hash = (contentHash != null) ? contentHash.toString() : null;
             }
-            
+
             if (version != null && uri != null) {
-                versions.add(version);
+                bundles.put(version, new AgentBundle(uri, hash));
             }
         }
 
-        return versions;
+        return Collections.unmodifiableNavigableMap(bundles);
     }
 
-    private Repository createRepository() throws MalformedURLException {
+    private Repository createRepository(URL indexURL) {
         FixedIndexedRepo fixedIndexedRepo = new FixedIndexedRepo();
-        
+
         AceUrlConnector aceUrlConnector = new AceUrlConnector(m_connectionFactory);
         Registry registry = new RegistryImpl(aceUrlConnector);
         fixedIndexedRepo.setRegistry(registry);
-        
+
         Map<String, String> properties = new HashMap<>();
-        properties.put(FixedIndexedRepo.PROP_LOCATIONS, createOBRURL().toString());
+        properties.put(FixedIndexedRepo.PROP_LOCATIONS, indexURL.toString());
         fixedIndexedRepo.setProperties(properties);
         return fixedIndexedRepo;
     }
-    
+
     private URL createOBRURL() throws MalformedURLException {
         try {
             return new URL(m_obrURL, m_repositoryXML);
@@ -231,24 +433,33 @@ public class AgentDeploymentServlet extends HttpServlet implements ManagedServic
             throw e;
         }
     }
-    
+
     private void handlePackageDelivery(String agentID, Version version, HttpServletRequest request, HttpServletResponse response) throws AceRestException {
-        try (InputStream is = getAgentFromOBR(m_obrURL, agentID, version)){            
-            if (is == null) {
+        try {
+            AgentIndex index = getIndex();
+            AgentBundle bundle = getAgentBundles(index, agentID).get(version);
+            if (bundle == null) {
                 throw (AceRestException) new AceRestException(HttpServletResponse.SC_NOT_FOUND, "Agent not found in OBR.");
             }
 
-            // Wrap response to add support for range requests
-            response = new ContentRangeResponseWrapper(request, response);
-            response.setContentType(BUNDLE_MIMETYPE);
-
-            try (OutputStream os = response.getOutputStream()) {
-                byte[] buffer = new byte[BUFFER_SIZE];
-                int bytes;
-                while ((bytes = is.read(buffer)) != -1) {
-                    os.write(buffer, 0, bytes);
+            String cacheName = getCacheName(index, version, bundle);
+            if ((m_cacheDir == null) || (cacheName == null)) {
+                if ((bundle.m_hash != null) && isNotModified(request, response, "\"" + bundle.m_hash + "\"", -1L)) {
+                    return;
+                }
+                try (InputStream is = openConnection(bundle.m_uri.toURL()).getInputStream()) {
+                    writeBundle(is, request, response);
                 }
-                os.flush();
+                return;
+            }
+
+            File file = getCachedBundle(agentID, cacheName, bundle);
+            String etag = "\"" + ((bundle.m_hash != null) ? bundle.m_hash : agentID + "-" + version + "-" + file.lastModified()) + "\"";
+            if (isNotModified(request, response, etag, file.lastModified())) {
+                return;
+            }
+            try (InputStream is = new FileInputStream(file)) {
+                writeBundle(is, request, response);
             }
         }
         catch (IllegalArgumentException e) {
@@ -272,6 +483,69 @@ public class AgentDeploymentServlet extends HttpServlet implements ManagedServic
         }
     }
 
+    /**
+     * Adds the validators of an agent bundle to the response, and determines whether the client already has it.
+     * 
+     * @return <code>true</code> if a <code>304 Not Modified</code> was sent, <code>false</code> if the bundle itself
+     *         should be sent.
+     */
+    private boolean isNotModified(HttpServletRequest request, HttpServletResponse response, String etag, long lastModified) {
+        response.setHeader(HEADER_ETAG, etag);
+        if (lastModified > 0) {
+            response.setDateHeader(HEADER_LAST_MODIFIED, lastModified);
+        }
+
+        boolean notModified;
+        String ifNoneMatch = request.getHeader(HEADER_IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since...
+            notModified = matchesEntityTag(ifNoneMatch, etag);
+        }
+        else {
+            long ifModifiedSince;
+            try {
+                ifModifiedSince = request.getDateHeader(HEADER_IF_MODIFIED_SINCE);
+            }
+            catch (IllegalArgumentException e) {
+                ifModifiedSince = -1L;
+            }
+            // HTTP dates have a resolution of seconds...
+            notModified = (lastModified > 0) && (ifModifiedSince >= 0) && ((lastModified / 1000) <= (ifModifiedSince / 1000));
+        }
+
+        if (notModified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+
+    /**
+     * Removes all cached bundles of the given agent that are no longer part of the given index.
+     */
+    private void pruneCachedBundles(AgentIndex index, String agentID, NavigableMap<Version, AgentBundle> bundles) {
+        if (m_cacheDir == null) {
+            return;
+        }
+        File[] files = new File(m_cacheDir, agentID).listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> names = new HashSet<>();
+        for (Entry<Version, AgentBundle> entry : bundles.entrySet()) {
+            names.add(getCacheName(index, entry.getKey(), entry.getValue()));
+        }
+        for (File file : files) {
+            // leave the temporary files of ongoing downloads alone...
+            if (file.getName().endsWith(".jar") && !names.contains(file.getName()) && !file.delete()) {
+                m_log.log(LogService.LOG_WARNING, "Unable to remove cached agent bundle " + file);
+            }
+        }
+    }
+
+    private boolean isRecentlyChecked(AgentIndex index, URL indexURL) {
+        return (index != null) && index.m_indexURL.equals(indexURL) && (System.currentTimeMillis() - index.m_lastChecked) < m_indexCheckInterval;
+    }
+
     private String[] verifyAndGetPathElements(String path) throws AceRestException {
         if (path == null) {
             throw new AceRestException(HttpServletResponse.SC_BAD_REQUEST, "Request URI is invalid, no path specified.");
@@ -283,4 +557,15 @@ public class AgentDeploymentServlet extends HttpServlet implements ManagedServic
         }
         return elements;
     }
+
+    private void writeBundle(InputStream is, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // Wrap response to add support for range requests
+        response = new ContentRangeResponseWrapper(request, response);
+        response.setContentType(BUNDLE_MIMETYPE);
+
+        try (OutputStream os = response.getOutputStream()) {
+            copy(is, os);
+            os.flush();
+        }
+    }
 }
@@ -0,0 +1,457 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.deployment.servlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.ace.deployment.provider.DeploymentProvider;
+import org.apache.ace.deployment.provider.OverloadedException;
+import org.osgi.framework.Version;
+import org.osgi.service.log.LogService;
+
+/**
+ * The NotificationServlet allows targets to wait for changes instead of polling for them. For each target, it keeps a
+ * generation number that is bumped whenever the latest deployment version of that target, or the latest version of
+ * its agent changes.
+ * <p>
+ * A target requests <code>http://host/notification/targetid[/agentid]?generation=n&amp;timeout=s</code>. In case the
+ * current generation differs from the given one, it is returned immediately. Otherwise, the request is kept waiting
+ * for at most the given number of seconds until the generation changes, after which the (possibly unchanged) current
+ * generation is returned. The state of all waiting targets is checked periodically by a single background task, so
+ * the cost of checking is independent of the number of waiting requests.
+ */
+public class NotificationServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    public static final String GENERATION = "generation";
+    public static final String TIMEOUT = "timeout";
+    public static final String TEXT_MIMETYPE = "text/plain";
+
+    /** The maximum time, in seconds, a request is kept waiting for a change. */
+    static final long MAX_TIMEOUT = 300;
+    /** The default interval, in seconds, in which the state of targets is checked. */
+    static final long CHECK_INTERVAL = 5;
+    /** The time, in seconds, after which the state of a target that is no longer seen is discarded. */
+    private static final long EXPIRY_TIME = 4 * MAX_TIMEOUT;
+
+    /**
+     * Keeps the generation of a single target, and the requests that are waiting for it to change.
+     */
+    static final class TargetState {
+        final String m_targetID;
+        final String m_agentID;
+        final AtomicBoolean m_refreshing = new AtomicBoolean();
+        private final List<AsyncContext> m_waiters = new ArrayList<>();
+        private long m_generation = System.currentTimeMillis();
+        private String m_fingerprint;
+        private long m_lastChecked;
+        private long m_lastSeen = System.currentTimeMillis();
+        private int m_blocked;
+
+        TargetState(String targetID, String agentID) {
+            m_targetID = targetID;
+            m_agentID = agentID;
+        }
+
+        synchronized long getGeneration() {
+            m_lastSeen = System.currentTimeMillis();
+            return m_generation;
+        }
+
+        synchronized boolean isStale(long now, long interval) {
+            return (now - m_lastChecked) >= interval;
+        }
+
+        synchronized boolean isExpired(long now) {
+            return !hasWaiters() && (now - m_lastSeen) >= TimeUnit.SECONDS.toMillis(EXPIRY_TIME);
+        }
+
+        synchronized boolean hasWaiters() {
+            return !m_waiters.isEmpty() || (m_blocked > 0);
+        }
+
+        /**
+         * Adds a waiting request, unless the generation is no longer the given one.
+         * 
+         * @return <code>true</code> if the request is added, <code>false</code> if the generation has changed.
+         */
+        synchronized boolean addWaiter(AsyncContext context, long generation) {
+            if (m_generation != generation) {
+                return false;
+            }
+            m_waiters.add(context);
+            return true;
+        }
+
+        /**
+         * @return <code>true</code> if the given request was still waiting, <code>false</code> otherwise.
+         */
+        synchronized boolean removeWaiter(AsyncContext context) {
+            return m_waiters.remove(context);
+        }
+
+        /**
+         * Blocks until the generation is no longer the given one, or the given time has passed.
+         * 
+         * @return the current generation.
+         */
+        synchronized long await(long generation, long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+            m_blocked++;
+            try {
+                while ((m_generation == generation) && (remaining > 0)) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            }
+            finally {
+                m_blocked--;
+            }
+            m_lastSeen = System.currentTimeMillis();
+            return m_generation;
+        }
+
+        /**
+         * Updates the fingerprint of this target, bumping its generation if it has changed.
+         * 
+         * @param fingerprint
+         *            the new fingerprint, or <code>null</code> if it could not be determined.
+         * @return the requests that should be woken up, never <code>null</code>.
+         */
+        synchronized List<AsyncContext> update(String fingerprint, long now) {
+            m_lastChecked = now;
+            if (fingerprint == null || fingerprint.equals(m_fingerprint)) {
+                return new ArrayList<>();
+            }
+            boolean changed = (m_fingerprint != null);
+            m_fingerprint = fingerprint;
+            if (!changed) {
+                return new ArrayList<>();
+            }
+            m_generation++;
+            notifyAll();
+            return drainWaiters();
+        }
+
+        synchronized List<AsyncContext> drainWaiters() {
+            List<AsyncContext> result = new ArrayList<>(m_waiters);
+            m_waiters.clear();
+            return result;
+        }
+    }
+
+    private final ConcurrentMap<String, TargetState> m_targets = new ConcurrentHashMap<>();
+    private final AgentDeploymentServlet m_agentServlet;
+    private final long m_checkInterval;
+
+    // injected by Dependency Manager
+    private volatile DeploymentProvider m_provider;
+    private volatile LogService m_log;
+
+    private volatile ScheduledExecutorService m_executor;
+
+    /**
+     * @param agentServlet
+     *            the servlet to obtain the available agent versions from, cannot be <code>null</code>.
+     */
+    public NotificationServlet(AgentDeploymentServlet agentServlet) {
+        this(agentServlet, TimeUnit.SECONDS.toMillis(CHECK_INTERVAL));
+    }
+
+    /**
+     * @param agentServlet
+     *            the servlet to obtain the available agent versions from, cannot be <code>null</code>;
+     * @param checkInterval
+     *            the minimal time, in milliseconds, between two checks of the same target.
+     */
+    NotificationServlet(AgentDeploymentServlet agentServlet, long checkInterval) {
+        m_agentServlet = agentServlet;
+        m_checkInterval = checkInterval;
+    }
+
+    @Override
+    public String getServletInfo() {
+        return "Ace Notification Servlet Endpoint";
+    }
+
+    /**
+     * Called by Dependency Manager upon start of this component.
+     */
+    protected void start() {
+        long interval = Math.max(1L, m_checkInterval);
+        m_executor = Executors.newSingleThreadScheduledExecutor();
+        m_executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkTargets();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Called by Dependency Manager upon stop of this component.
+     */
+    protected void stop() {
+        ScheduledExecutorService executor = m_executor;
+        if (executor != null) {
+            executor.shutdownNow();
+            m_executor = null;
+        }
+        // Let all waiting requests return their current generation...
+        for (TargetState state : m_targets.values()) {
+            long generation = state.getGeneration();
+            for (AsyncContext context : state.drainWaiters()) {
+                respond(context, generation);
+            }
+        }
+        m_targets.clear();
+    }
+
+    /**
+     * Responds to GET requests sent to this endpoint, with the current generation of the requested target.
+     * 
+     * The status code of the response can be one of the following: <li><code>HttpServletResponse.SC_BAD_REQUEST</code>
+     * - If no target is specified or the request is malformed in a different way. <li>
+     * <code>HttpServletResponse.SC_OK</code> - If all went fine
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        try {
+            String[] pathElements = verifyAndGetPathElements(request.getPathInfo());
+            String targetID = pathElements[1];
+            String agentID = (pathElements.length > 2) ? pathElements[2] : null;
+
+            long generation = getParameter(request, GENERATION, -1L);
+            long timeout = Math.min(Math.max(0L, getParameter(request, TIMEOUT, 0L)), MAX_TIMEOUT);
+
+            TargetState state = getTargetState(targetID, agentID);
+            if (state.isStale(System.currentTimeMillis(), m_checkInterval)) {
+                refresh(state);
+            }
+
+            long current = state.getGeneration();
+            if (current != generation || timeout == 0) {
+                writeGeneration(response, current);
+            }
+            else if (request.isAsyncSupported()) {
+                await(request, state, generation, timeout);
+            }
+            else {
+                // No async support, so we have to block this thread...
+                writeGeneration(response, state.await(generation, TimeUnit.SECONDS.toMillis(timeout)));
+            }
+        }
+        catch (AceRestException e) {
+            m_log.log(LogService.LOG_WARNING, e.getMessage(), e);
+            if (!e.handleAsHttpError(response)) {
+                m_log.log(LogService.LOG_ERROR, "Failed to properly notify client of exception!", e);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Checks the state of all targets that have waiting requests, and discards the targets that are no longer seen.
+     */
+    final void checkTargets() {
+        long now = System.currentTimeMillis();
+        Iterator<TargetState> iter = m_targets.values().iterator();
+        while (iter.hasNext()) {
+            TargetState state = iter.next();
+            if (state.isExpired(now)) {
+                iter.remove();
+            }
+            else if (state.hasWaiters() && state.isStale(now, m_checkInterval)) {
+                refresh(state);
+            }
+        }
+    }
+
+    final TargetState getTargetState(String targetID, String agentID) {
+        String key = (agentID == null) ? targetID : targetID + "/" + agentID;
+        TargetState state = m_targets.get(key);
+        if (state == null) {
+            TargetState newState = new TargetState(targetID, agentID);
+            state = m_targets.putIfAbsent(key, newState);
+            if (state == null) {
+                state = newState;
+            }
+        }
+        return state;
+    }
+
+    private void await(HttpServletRequest request, final TargetState state, long generation, long timeout) {
+        final AsyncContext context = request.startAsync();
+        context.setTimeout(TimeUnit.SECONDS.toMillis(timeout));
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) throws IOException {
+                state.removeWaiter(context);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (state.removeWaiter(context)) {
+                    respond(context, state.getGeneration());
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) throws IOException {
+                state.removeWaiter(context);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) throws IOException {
+                // Nop
+            }
+        });
+        if (!state.addWaiter(context, generation)) {
+            // Changed in the meantime...
+            respond(context, state.getGeneration());
+        }
+    }
+
+    /**
+     * Determines a fingerprint of everything that should cause the given target to synchronize with the server.
+     * 
+     * @return the fingerprint, or <code>null</code> if it could not be determined.
+     */
+    private String getFingerprint(TargetState state) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            List<String> versions = m_provider.getVersions(state.m_targetID);
+            if (!versions.isEmpty()) {
+                sb.append(versions.get(versions.size() - 1));
+            }
+        }
+        catch (IllegalArgumentException e) {
+            // Unknown target, nothing to deploy (yet)...
+        }
+        catch (OverloadedException | IOException e) {
+            m_log.log(LogService.LOG_DEBUG, "Unable to determine deployment versions for " + state.m_targetID, e);
+            return null;
+        }
+        if (state.m_agentID != null) {
+            try {
+                Version version = m_agentServlet.getHighestVersion(state.m_agentID);
+                sb.append('/').append(version);
+            }
+            catch (IOException | RuntimeException e) {
+                m_log.log(LogService.LOG_DEBUG, "Unable to determine agent versions for " + state.m_agentID, e);
+                return null;
+            }
+        }
+        return sb.toString();
+    }
+
+    private void refresh(TargetState state) {
+        if (!state.m_refreshing.compareAndSet(false, true)) {
+            // Someone else is already checking this target...
+            return;
+        }
+        List<AsyncContext> woken;
+        try {
+            woken = state.update(getFingerprint(state), System.currentTimeMillis());
+        }
+        finally {
+            state.m_refreshing.set(false);
+        }
+        if (!woken.isEmpty()) {
+            long generation = state.getGeneration();
+            for (AsyncContext context : woken) {
+                respond(context, generation);
+            }
+        }
+    }
+
+    private void respond(AsyncContext context, long generation) {
+        try {
+            writeGeneration((HttpServletResponse) context.getResponse(), generation);
+        }
+        catch (IOException | RuntimeException e) {
+            // Client has gone or request is already completed...
+            m_log.log(LogService.LOG_DEBUG, "Unable to notify waiting request.", e);
+        }
+        finally {
+            try {
+                context.complete();
+            }
+            catch (IllegalStateException e) {
+                // Already completed...
+            }
+        }
+    }
+
+    private void writeGeneration(HttpServletResponse response, long generation) throws IOException {
+        response.setContentType(TEXT_MIMETYPE);
+        response.setHeader("Cache-Control", "no-cache");
+        try (ServletOutputStream output = response.getOutputStream()) {
+            output.print(Long.toString(generation));
+            output.print("\n");
+        }
+    }
+
+    private static long getParameter(HttpServletRequest request, String name, long defaultValue) throws AceRestException {
+        String value = request.getParameter(name);
+        if (value == null || "".equals(value)) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException e) {
+            throw new AceRestException(HttpServletResponse.SC_BAD_REQUEST, "Invalid value for " + name + ": " + value);
+        }
+    }
+
+    private static String[] verifyAndGetPathElements(String path) throws AceRestException {
+        if (path == null) {
+            throw new AceRestException(HttpServletResponse.SC_BAD_REQUEST, "Request URI is invalid, no path specified.");
+        }
+        String[] elements = path.split("/");
+        int numberOfElements = elements.length;
+        if ((numberOfElements < 2) || (numberOfElements > 3) || "".equals(elements[1])) {
+            throw new AceRestException(HttpServletResponse.SC_BAD_REQUEST, "Request URI elements are invalid: " + path);
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.deployment.servlet;
+
+import static org.apache.ace.test.utils.TestUtils.configureObject;
+import static org.apache.ace.test.utils.TestUtils.createMockObjectAdapter;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.ace.connectionfactory.ConnectionFactory;
+import org.apache.ace.test.utils.FileUtils;
+import org.osgi.service.log.LogService;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AgentDeploymentServletTest {
+    private static final String AGENT_ID = "org.apache.ace.agent";
+
+    // the servlet under test
+    private AgentDeploymentServlet m_servlet;
+
+    private File m_obrDir;
+    private File m_cacheDir;
+
+    @Test
+    public void getVersionsReloadsChangedIndex() throws Exception {
+        writeIndex(createBundle("1.0.0"));
+
+        Response response = doGet("/target/" + AGENT_ID + "/versions", null);
+        assertEquals(response.m_status, HttpServletResponse.SC_OK);
+        assertEquals(response.m_output.toString(), "1.0.0\n");
+
+        writeIndex(createBundle("1.0.0"), createBundle("2.0.0"));
+
+        response = doGet("/target/" + AGENT_ID + "/versions", null);
+        assertEquals(response.m_status, HttpServletResponse.SC_OK);
+        assertEquals(response.m_output.toString(), "1.0.0\n2.0.0\n");
+        assertEquals(m_servlet.getHighestVersion(AGENT_ID).toString(), "2.0.0");
+    }
+
+    @Test
+    public void getVersionsOfUnknownAgent() throws Exception {
+        writeIndex(createBundle("1.0.0"));
+
+        Response response = doGet("/target/unknown.agent/versions", null);
+        assertEquals(response.m_status, HttpServletResponse.SC_OK);
+        assertEquals(response.m_output.toString(), "");
+    }
+
+    @Test
+    public void getUnknownAgentBundle() throws Exception {
+        writeIndex(createBundle("1.0.0"));
+
+        Response response = doGet("/target/" + AGENT_ID + "/versions/3.0.0", null);
+        assertEquals(response.m_status, HttpServletResponse.SC_NOT_FOUND);
+    }
+
+    @Test
+    public void getAgentBundleFromCache() throws Exception {
+        File bundle = createBundle("1.0.0");
+        byte[] contents = java.nio.file.Files.readAllBytes(bundle.toPath());
+        writeIndex(bundle);
+
+        Response response = doGet("/target/" + AGENT_ID + "/versions/1.0.0", null);
+        assertEquals(response.m_status, HttpServletResponse.SC_OK);
+        assertTrue(Arrays.equals(response.m_output.toByteArray(), contents), "Unexpected bundle contents");
+        String etag = response.m_headers.get("ETag");
+        assertNotNull(etag, "No entity tag");
+        assertEquals(new File(m_cacheDir, AGENT_ID).list().length, 1, "Agent bundle was not cached");
+
+        // the cached copy should be used from now on...
+        bundle.delete();
+
+        response = doGet("/target/" + AGENT_ID + "/versions/1.0.0", null);
+        assertEquals(response.m_status, HttpServletResponse.SC_OK);
+        assertTrue(Arrays.equals(response.m_output.toByteArray(), contents), "Unexpected bundle contents");
+        assertEquals(response.m_headers.get("ETag"), etag);
+
+        response = doGet("/target/" + AGENT_ID + "/versions/1.0.0", etag);
+        assertEquals(response.m_status, HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals(response.m_output.size(), 0);
+    }
+
+    @Test
+    public void getAgentBundlePrunesCache() throws Exception {
+        writeIndex(createBundle("1.0.0"), createBundle("2.0.0"));
+
+        assertEquals(doGet("/target/" + AGENT_ID + "/versions/1.0.0", null).m_status, HttpServletResponse.SC_OK);
+        assertEquals(doGet("/target/" + AGENT_ID + "/versions/2.0.0", null).m_status, HttpServletResponse.SC_OK);
+        assertEquals(new File(m_cacheDir, AGENT_ID).list().length, 2, "Agent bundles were not cached");
+
+        new File(m_obrDir, AGENT_ID + "-1.0.0.jar").delete();
+        writeIndex(new File(m_obrDir, AGENT_ID + "-2.0.0.jar"));
+
+        Response response = doGet("/target/" + AGENT_ID + "/versions", null);
+        assertEquals(response.m_output.toString(), "2.0.0\n");
+        assertEquals(new File(m_cacheDir, AGENT_ID).list().length, 1, "Removed agent bundle was not pruned from cache");
+    }
+
+    @Test
+    public void getRebuiltAgentBundleWithoutContentHash() throws Exception {
+        File bundle = createBundle("1.0.0");
+        writeIndex(false, bundle);
+
+        Response response = doGet("/target/" + AGENT_ID + "/versions/1.0.0", null);
+        assertEquals(response.m_status, HttpServletResponse.SC_OK);
+        String etag = response.m_headers.get("ETag");
+
+        // rebuild the agent bundle with the same version...
+        try (OutputStream os = new FileOutputStream(bundle)) {
+            os.write("rebuilt agent".getBytes());
+        }
+        writeIndex(false, bundle);
+
+        response = doGet("/target/" + AGENT_ID + "/versions/1.0.0", etag);
+        assertEquals(response.m_status, HttpServletResponse.SC_OK);
+        assertEquals(response.m_output.toString(), "rebuilt agent");
+        assertEquals(new File(m_cacheDir, AGENT_ID).list().length, 1, "Stale agent bundle was not pruned from cache");
+    }
+
+    @BeforeMethod(alwaysRun = true)
+    protected void setUp() throws Exception {
+        m_obrDir = FileUtils.createTempFile(null);
+        m_obrDir.mkdir();
+        m_cacheDir = FileUtils.createTempFile(null);
+        m_cacheDir.mkdir();
+
+        // always check whether the index is changed...
+        m_servlet = new AgentDeploymentServlet(m_cacheDir, 0L);
+        configureObject(m_servlet, LogService.class);
+        configureObject(m_servlet, ConnectionFactory.class, createMockObjectAdapter(ConnectionFactory.class, new Object() {
+            @SuppressWarnings("unused")
+            public URLConnection createConnection(URL url) throws IOException {
+                return url.openConnection();
+            }
+        }));
+
+        Dictionary<String, Object> settings = new Hashtable<>();
+        settings.put("obr.url", m_obrDir.toURI().toURL().toExternalForm());
+        m_servlet.updated(settings);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    protected void tearDown() throws Exception {
+        FileUtils.removeDirectoryWithContent(m_obrDir);
+        FileUtils.removeDirectoryWithContent(m_cacheDir);
+    }
+
+    private File createBundle(String version) throws IOException {
+        File file = new File(m_obrDir, AGENT_ID + "-" + version + ".jar");
+        try (OutputStream os = new FileOutputStream(file)) {
+            // the contents do not matter, as long as they differ per version...
+            for (int i = 0; i < 1024; i++) {
+                os.write(("agent " + version + " ").getBytes());
+            }
+        }
+        return file;
+    }
+
+    private Response doGet(final String pathInfo, final String ifNoneMatch) throws Exception {
+        Response response = new Response();
+        m_servlet.doGet(createMockObjectAdapter(HttpServletRequest.class, new Object() {
+            @SuppressWarnings("unused")
+            public String getPathInfo() {
+                return pathInfo;
+            }
+
+            @SuppressWarnings("unused")
+            public String getHeader(String name) {
+                return "If-None-Match".equals(name) ? ifNoneMatch : null;
+            }
+
+            @SuppressWarnings("unused")
+            public long getDateHeader(String name) {
+                return -1L;
+            }
+        }), response.m_mock);
+        return response;
+    }
+
+    private void writeIndex(File... bundles) throws IOException {
+        writeIndex(true, bundles);
+    }
+
+    private void writeIndex(boolean withContentHash, File... bundles) throws IOException {
+        File index = new File(m_obrDir, "index.xml");
+        long lastModified = index.lastModified();
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(index), "UTF-8")) {
+            writer.write("<?xml version='1.0' encoding='utf-8'?>\n");
+            writer.write("<repository increment='" + System.currentTimeMillis() + "' name='test' xmlns='http://www.osgi.org/xmlns/repository/v1.0.0'>\n");
+            for (File bundle : bundles) {
+                String name = bundle.getName();
+                String version = name.substring(AGENT_ID.length() + 1, name.length() - 4);
+                writer.write("<resource>\n");
+                writer.write("<capability namespace='osgi.identity'>\n");
+                writer.write("<attribute name='osgi.identity' value='" + AGENT_ID + "'/>\n");
+                writer.write("<attribute name='type' value='osgi.bundle'/>\n");
+                writer.write("<attribute name='version' type='Version' value='" + version + "'/>\n");
+                writer.write("</capability>\n");
+                writer.write("<capability namespace='osgi.content'>\n");
+                if (withContentHash) {
+                    writer.write("<attribute name='osgi.content' value='" + Integer.toHexString(name.hashCode()) + "'/>\n");
+                }
+                writer.write("<attribute name='url' value='" + bundle.toURI() + "'/>\n");
+                writer.write("<attribute name='size' type='Long' value='" + bundle.length() + "'/>\n");
+                writer.write("<attribute name='mime' value='application/vnd.osgi.bundle'/>\n");
+                writer.write("</capability>\n");
+                writer.write("</resource>\n");
+            }
+            writer.write("</repository>\n");
+        }
+        // make sure the change is noticed, regardless of the resolution of the file system timestamps...
+        if (lastModified > 0) {
+            index.setLastModified(lastModified + 2000);
+        }
+    }
+
+    static class Response {
+        final ByteArrayOutputStream m_output = new ByteArrayOutputStream();
+        final Map<String, String> m_headers = new HashMap<>();
+        final HttpServletResponse m_mock;
+        volatile int m_status = HttpServletResponse.SC_OK;
+
+        Response() {
+            m_mock = createMockObjectAdapter(HttpServletResponse.class, new Object() {
+                @SuppressWarnings("unused")
+                public ServletOutputStream getOutputStream() {
+                    return new ServletOutputStream() {
+                        @Override
+                        public void write(int b) throws IOException {
+                            m_output.write(b);
+                        }
+
+                        @Override
+                        public boolean isReady() {
+                            return true;
+                        }
+
+                        @Override
+                        public void setWriteListener(WriteListener l) {
+                            // nop
+                        }
+                    };
+                }
+
+                @SuppressWarnings("unused")
+                public void sendError(int status) {
+                    m_status = status;
+                }
+
+                @SuppressWarnings("unused")
+                public void sendError(int status, String desc) {
+                    sendError(status);
+                }
+
+                @SuppressWarnings("unused")
+                public void setHeader(String name, String value) {
+                    m_headers.put(name, value);
+                }
+
+                @SuppressWarnings("unused")
+                public void setStatus(int status) {
+                    m_status = status;
+                }
+            });
+        }
+    }
+}
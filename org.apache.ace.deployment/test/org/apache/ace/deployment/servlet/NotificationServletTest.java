@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.deployment.servlet;
+
+import static org.apache.ace.test.utils.TestUtils.configureObject;
+import static org.apache.ace.test.utils.TestUtils.createMockObjectAdapter;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.ace.deployment.provider.ArtifactData;
+import org.apache.ace.deployment.provider.DeploymentProvider;
+import org.osgi.service.log.LogService;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class NotificationServletTest {
+    // the servlet under test
+    private NotificationServlet m_servlet;
+
+    // deployment provider state
+    private final Map<String, List<String>> m_providerVersions = new ConcurrentHashMap<>();
+
+    @Test
+    public void getGenerationForBadURL() throws Exception {
+        Response response = new Response();
+        m_servlet.doGet(createRequest("/", null, null), response.m_mock);
+        assertEquals(response.m_status, HttpServletResponse.SC_BAD_REQUEST);
+
+        response = new Response();
+        m_servlet.doGet(createRequest("/existing", "abc", null), response.m_mock);
+        assertEquals(response.m_status, HttpServletResponse.SC_BAD_REQUEST);
+    }
+
+    @Test
+    public void getGenerationForUnknownGeneration() throws Exception {
+        long generation = getGeneration("/existing", "-1", "10");
+        assertTrue(generation > 0, "Expected a valid generation");
+        // the generation should be stable as long as nothing changes...
+        assertEquals(getGeneration("/existing", null, null), generation);
+        assertEquals(getGeneration("/nonexisting/agent", null, null) > 0, true);
+    }
+
+    @Test
+    public void getGenerationTimesOutWithoutChanges() throws Exception {
+        long generation = getGeneration("/existing", null, null);
+
+        long start = System.nanoTime();
+        assertEquals(getGeneration("/existing", Long.toString(generation), "1"), generation);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900, "Request should have been kept waiting");
+    }
+
+    @Test
+    public void getGenerationReturnsUponChange() throws Exception {
+        final long generation = getGeneration("/existing", null, null);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long[] result = new long[1];
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = getGeneration("/existing", Long.toString(generation), "10");
+                    latch.countDown();
+                }
+                catch (Exception e) {
+                    // Will cause the test to fail...
+                }
+            }
+        };
+        waiter.start();
+
+        // Give the waiter some time to start waiting...
+        TimeUnit.MILLISECONDS.sleep(100);
+        m_providerVersions.put("existing", Arrays.asList("2.0.0", "3.0.0"));
+        m_servlet.checkTargets();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "Waiting request was not notified of change");
+        assertNotEquals(result[0], generation);
+        // subsequent requests should see the new generation as well...
+        assertEquals(getGeneration("/existing", null, null), result[0]);
+        // other targets are not affected...
+        assertEquals(getGeneration("/existing/agent", null, null) > 0, true);
+    }
+
+    @BeforeMethod(alwaysRun = true)
+    protected void setUp() throws Exception {
+        m_providerVersions.clear();
+        m_providerVersions.put("existing", Arrays.asList("2.0.0"));
+
+        DeploymentProvider provider = new DeploymentProvider() {
+            public List<ArtifactData> getBundleData(String targetId, String version) throws IllegalArgumentException {
+                return Collections.emptyList();
+            }
+
+            public List<ArtifactData> getBundleData(String targetId, String versionFrom, String versionTo) throws IllegalArgumentException {
+                return Collections.emptyList();
+            }
+
+            public List<String> getVersions(String targetId) throws IllegalArgumentException {
+                if (m_providerVersions.containsKey(targetId)) {
+                    return m_providerVersions.get(targetId);
+                }
+                throw new IllegalArgumentException();
+            }
+        };
+
+        // create the instance to test, always checking the state of targets...
+        m_servlet = new NotificationServlet(new AgentDeploymentServlet(), 0L);
+        configureObject(m_servlet, LogService.class);
+        configureObject(m_servlet, DeploymentProvider.class, provider);
+    }
+
+    private HttpServletRequest createRequest(final String pathInfo, final String generation, final String timeout) {
+        return createMockObjectAdapter(HttpServletRequest.class, new Object() {
+            @SuppressWarnings("unused")
+            public String getParameter(String param) {
+                if (param.equals(NotificationServlet.GENERATION)) {
+                    return generation;
+                }
+                else if (param.equals(NotificationServlet.TIMEOUT)) {
+                    return timeout;
+                }
+                return null;
+            }
+
+            @SuppressWarnings("unused")
+            public String getPathInfo() {
+                return pathInfo;
+            }
+
+            @SuppressWarnings("unused")
+            public boolean isAsyncSupported() {
+                return false;
+            }
+        });
+    }
+
+    private long getGeneration(String pathInfo, String generation, String timeout) throws Exception {
+        Response response = new Response();
+        m_servlet.doGet(createRequest(pathInfo, generation, timeout), response.m_mock);
+        assertEquals(response.m_status, HttpServletResponse.SC_OK, "Incorrect response code from server");
+        return Long.parseLong(response.m_output.toString().trim());
+    }
+
+    static class Response {
+        final ByteArrayOutputStream m_output = new ByteArrayOutputStream();
+        final HttpServletResponse m_mock;
+        volatile int m_status = HttpServletResponse.SC_OK;
+
+        Response() {
+            m_mock = createMockObjectAdapter(HttpServletResponse.class, new Object() {
+                @SuppressWarnings("unused")
+                public ServletOutputStream getOutputStream() {
+                    return new ServletOutputStream() {
+                        @Override
+                        public void write(int b) throws IOException {
+                            m_output.write(b);
+                        }
+
+                        @Override
+                        public boolean isReady() {
+                            return true;
+                        }
+
+                        @Override
+                        public void setWriteListener(WriteListener l) {
+                            // nop
+                        }
+                    };
+                }
+
+                @SuppressWarnings("unused")
+                public void sendError(int status) {
+                    m_status = status;
+                }
+
+                @SuppressWarnings("unused")
+                public void sendError(int status, String desc) {
+                    sendError(status);
+                }
+
+                @SuppressWarnings("unused")
+                public void setStatus(int status) {
+                    m_status = status;
+                }
+            });
+        }
+    }
+}
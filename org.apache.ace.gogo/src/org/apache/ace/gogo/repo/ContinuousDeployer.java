@@ -18,13 +18,12 @@
  */
 package org.apache.ace.gogo.repo;
 
+import static org.apache.ace.gogo.repo.DeployerUtil.bundlesDiffer;
 import static org.apache.ace.gogo.repo.DeployerUtil.filesDiffer;
 import static org.apache.ace.gogo.repo.DeployerUtil.getBundleWithNewVersion;
 import static org.apache.ace.gogo.repo.DeployerUtil.getNextSnapshotVersion;
 import static org.apache.ace.gogo.repo.DeployerUtil.isSameBaseVersion;
 import static org.apache.ace.gogo.repo.DeployerUtil.isSnapshotVersion;
-import static org.apache.ace.gogo.repo.DeployerUtil.jarsDiffer;
-import static org.apache.ace.gogo.repo.RepositoryUtil.copyResources;
 import static org.apache.ace.gogo.repo.RepositoryUtil.findResources;
 import static org.apache.ace.gogo.repo.RepositoryUtil.getFileName;
 import static org.apache.ace.gogo.repo.RepositoryUtil.getIdentity;
@@ -39,6 +38,14 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.ace.bnd.repository.AceObrRepository;
 import org.osgi.framework.Version;
@@ -47,15 +54,79 @@ import org.osgi.resource.Resource;
 import aQute.bnd.deployer.repository.FixedIndexedRepo;
 import aQute.bnd.service.Strategy;
 
+/**
+ * Deploys all resources from a development repository into a deployment repository, using the versions of a release
+ * repository as base for the snapshot versions of changed resources.
+ * <p>
+ * Resources are processed concurrently with a bounded number of threads. The index of the deployment repository is
+ * not modified while resources are being processed, and is refreshed only once after all uploads are done. Snapshots
+ * of resources with the same identity are deployed one at a time, so each of them gets its own snapshot version.
+ */
 public class ContinuousDeployer {
+    /** The default number of resources that are processed concurrently. */
+    public static final int DEFAULT_PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The outcome of deploying a single resource: either a resource that already exists in the deployment repository,
+     * or the identity and version of a resource that was uploaded and can only be found after the index is refreshed.
+     */
+    private static final class Deployment {
+        final Resource m_resource;
+        final String m_identity;
+        final Version m_version;
+
+        Deployment(Resource resource) {
+            m_resource = resource;
+            m_identity = null;
+            m_version = null;
+        }
+
+        Deployment(String identity, Version version) {
+            m_resource = null;
+            m_identity = identity;
+            m_version = version;
+        }
+
+        boolean isUploaded() {
+            return m_resource == null;
+        }
+    }
+
+    /**
+     * A snapshot that was uploaded while deploying resources, but is not yet part of the deployment index.
+     */
+    private static final class Snapshot {
+        final Version m_version;
+        final File m_file;
+
+        Snapshot(Version version, File file) {
+            m_version = version;
+            m_file = file;
+        }
+    }
+
+    /** Guards the snapshot versions assigned to resources with the same identity. */
+    private final ConcurrentMap<String, Object> m_snapshotLocks = new ConcurrentHashMap<>();
+    /** The snapshots uploaded while deploying resources, keyed by identity and base version. */
+    private final Map<String, Snapshot> m_uploadedSnapshots = new ConcurrentHashMap<>();
+
     final FixedIndexedRepo m_deploymentRepo;
     final FixedIndexedRepo m_developmentRepo;
     final FixedIndexedRepo m_releaseRepo;
+    final int m_parallelism;
 
     public ContinuousDeployer(FixedIndexedRepo deploymentRepo, FixedIndexedRepo developmentRepo, FixedIndexedRepo releaseRepo) {
+        this(deploymentRepo, developmentRepo, releaseRepo, DEFAULT_PARALLELISM);
+    }
+
+    public ContinuousDeployer(FixedIndexedRepo deploymentRepo, FixedIndexedRepo developmentRepo, FixedIndexedRepo releaseRepo, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism should be at least one!");
+        }
         m_deploymentRepo = deploymentRepo;
         m_developmentRepo = developmentRepo;
         m_releaseRepo = releaseRepo;
+        m_parallelism = parallelism;
     }
 
     /**
@@ -67,8 +138,42 @@ public class ContinuousDeployer {
     public List<Resource> deployResources() throws Exception {
         List<Resource> developmentResources = findResources(m_developmentRepo, "*", "*");
         List<Resource> deployedResources = new ArrayList<>();
-        for (Resource developmentResource : developmentResources) {
-            deployedResources.add(deployResource(developmentResource));
+        if (developmentResources.isEmpty()) {
+            return deployedResources;
+        }
+
+        List<Deployment> deployments = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(developmentResources.size(), m_parallelism));
+        try {
+            List<Future<Deployment>> futures = new ArrayList<>();
+            for (final Resource developmentResource : developmentResources) {
+                futures.add(executor.submit(new Callable<Deployment>() {
+                    @Override
+                    public Deployment call() throws Exception {
+                        return deployResource(developmentResource);
+                    }
+                }));
+            }
+            for (Future<Deployment> future : futures) {
+                deployments.add(getDeployment(future));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+            m_uploadedSnapshots.clear();
+        }
+
+        boolean uploaded = false;
+        for (Deployment deployment : deployments) {
+            uploaded |= deployment.isUploaded();
+        }
+        if (uploaded) {
+            // Pick up all uploaded resources at once...
+            m_deploymentRepo.reset();
+        }
+
+        for (Deployment deployment : deployments) {
+            deployedResources.add(getDeployedResource(deployment));
         }
         return deployedResources;
     }
@@ -81,7 +186,7 @@ public class ContinuousDeployer {
      * @throws Exception
      *             On failure
      */
-    private Resource deployResource(Resource developmentResource) throws Exception {
+    private Deployment deployResource(Resource developmentResource) throws Exception {
         List<Resource> releaseResources = findResources(m_releaseRepo, getIdentityVersionRequirement(developmentResource));
         if (releaseResources.size() > 0) {
             return deployReleasedResource(releaseResources.get(0));
@@ -100,104 +205,105 @@ public class ContinuousDeployer {
      * @return The deployed resource
      * @throws Exception
      */
-    private Resource deployReleasedResource(Resource releasedResource) throws Exception {
+    private Deployment deployReleasedResource(Resource releasedResource) throws Exception {
         List<Resource> deployedResources = findResources(m_deploymentRepo, getIdentityVersionRequirement(releasedResource));
         if (deployedResources.size() == 0) {
             System.out.println("Uploading released resource: " + getString(releasedResource));
-            List<Resource> copied = copyResources(m_releaseRepo, m_deploymentRepo, getIdentityVersionRequirement(releasedResource));
-            if (copied.size() != 1) {
-                throw new IllegalStateException("Expected one result after copy: " + getString(releasedResource));
-            }
-            return copied.get(0);
+            File file = m_releaseRepo.get(getIdentity(releasedResource), getVersion(releasedResource).toString(), Strategy.EXACT, null);
+            upload(file, getFileName(releasedResource), getMimetype(releasedResource));
+            return new Deployment(getIdentity(releasedResource), getVersion(releasedResource));
         }
         else {
             System.out.println("Released resource already deployed: " + getString(releasedResource));
-            return deployedResources.get(0);
+            return new Deployment(deployedResources.get(0));
         }
     }
 
     /**
      * Deploys a snapshot resource to the deployment repository if it differs from the highest existing snapshot
-     * resource of the same base version in the deployment repository.
+     * resource of the same base version in the deployment repository, or from the snapshot of the same base version
+     * that was uploaded while deploying the current resources.
      * 
      * @param developmentResource
      *            The development resource
      * @return The deployed resource
      * @throws Exception
      */
-    private Resource deploySnapshotResource(Resource developmentResource) throws Exception {
+    private Deployment deploySnapshotResource(Resource developmentResource) throws Exception {
+        String identity = getIdentity(developmentResource);
         Version releasedBaseVersion = getReleasedBaseVersion(developmentResource);
-        Resource snapshotResource = getHighestSnapshotResource(developmentResource, releasedBaseVersion);
+        String key = identity + ";" + releasedBaseVersion;
 
-        if (snapshotResource == null) {
-            System.out.println("Uploading initial snapshot: " + getString(developmentResource) + " -> " + getNextSnapshotVersion(releasedBaseVersion));
-            return deploySnapshotResource(developmentResource, getNextSnapshotVersion(releasedBaseVersion));
-        }
+        // The deployment index is not refreshed during deployment, so resources with the same identity need to be
+        // deployed one at a time to prevent them from getting the same snapshot version...
+        synchronized (getSnapshotLock(identity)) {
+            File developmentFile = m_developmentRepo.get(identity, getVersion(developmentResource).toString(), Strategy.EXACT, null);
 
-        System.out.println("Found existing snapshot: " + getString(snapshotResource));
-        if (getIdentity(developmentResource).equals("com.google.guava")) {
-            // FIXME workaround for BND#374
-            System.out.println("Skipping snapshot diff on Google Guava to work around https://github.com/bndtools/bnd/issues/374");
-            return snapshotResource;
-        }
+            Snapshot uploadedSnapshot = m_uploadedSnapshots.get(key);
+            if (uploadedSnapshot != null) {
+                System.out.println("Found uploaded snapshot: " + identity + ";" + uploadedSnapshot.m_version);
 
-        File developmentFile = m_developmentRepo.get(getIdentity(developmentResource), getVersion(developmentResource).toString(), Strategy.EXACT, null);
-        File deployedFile = m_deploymentRepo.get(getIdentity(snapshotResource), getVersion(snapshotResource).toString(), Strategy.EXACT, null);
+                if (resourcesDiffer(developmentResource, uploadedSnapshot.m_file, developmentFile)) {
+                    System.out.println("Uploading new snapshot: " + getString(developmentResource) + " -> " + getNextSnapshotVersion(uploadedSnapshot.m_version));
+                    return deploySnapshotResource(key, developmentResource, developmentFile, getNextSnapshotVersion(uploadedSnapshot.m_version));
+                }
+                System.out.println("Ignoring new snapshot: " + getString(developmentResource));
+                return new Deployment(identity, uploadedSnapshot.m_version);
+            }
 
-        boolean snapshotModified = false;
-        if (getType(developmentResource).equals("osgi.bundle")) {
+            Resource snapshotResource = getHighestSnapshotResource(developmentResource, releasedBaseVersion);
+            if (snapshotResource == null) {
+                System.out.println("Uploading initial snapshot: " + getString(developmentResource) + " -> " + getNextSnapshotVersion(releasedBaseVersion));
+                return deploySnapshotResource(key, developmentResource, developmentFile, getNextSnapshotVersion(releasedBaseVersion));
+            }
 
-            // Get a copy of the dep resource with the same version as the dev resource so we can diff diff.
-            File comparableDeployedResource = getBundleWithNewVersion(deployedFile, getVersion(developmentResource).toString());
+            System.out.println("Found existing snapshot: " + getString(snapshotResource));
 
-            // This may seem strange but the value in the dev resource manifest may be "0" which will not match
-            // "0.0.0" during diff.
-            File comparableDevelopmentResource = getBundleWithNewVersion(developmentFile, getVersion(developmentResource).toString());
-            snapshotModified = jarsDiffer(comparableDeployedResource, comparableDevelopmentResource);
-        }
-        else {
-            snapshotModified = filesDiffer(developmentFile, deployedFile);
-        }
+            File deployedFile = m_deploymentRepo.get(getIdentity(snapshotResource), getVersion(snapshotResource).toString(), Strategy.EXACT, null);
 
-        if (snapshotModified) {
-            System.out.println("Uploading new snapshot: " + getString(developmentResource) + " -> " + getNextSnapshotVersion(getVersion(snapshotResource)));
-            return deploySnapshotResource(developmentResource, getNextSnapshotVersion(getVersion(snapshotResource)));
-        }
-        else {
-            System.out.println("Ignoring new snapshot: " + getString(developmentResource));
-            List<Resource> resultResources = findResources(m_deploymentRepo, getIdentityVersionRequirement(snapshotResource));
-            if (resultResources == null || resultResources.size() == 0) {
-                throw new IllegalStateException("Can not find target resource after put: " + developmentResource);
+            if (resourcesDiffer(developmentResource, deployedFile, developmentFile)) {
+                System.out.println("Uploading new snapshot: " + getString(developmentResource) + " -> " + getNextSnapshotVersion(getVersion(snapshotResource)));
+                return deploySnapshotResource(key, developmentResource, developmentFile, getNextSnapshotVersion(getVersion(snapshotResource)));
+            }
+            else {
+                System.out.println("Ignoring new snapshot: " + getString(developmentResource));
+                return new Deployment(snapshotResource);
             }
-            return resultResources.get(0);
         }
     }
 
-    private Resource deploySnapshotResource(Resource resource, Version snapshotVersion) throws Exception {
-        File file = m_developmentRepo.get(getIdentity(resource), getVersion(resource).toString(), Strategy.EXACT, null);
+    private Deployment deploySnapshotResource(String key, Resource resource, File file, Version snapshotVersion) throws Exception {
         if (getType(resource).equals("osgi.bundle") || getType(resource).equals("osgi.fragment")) {
-            file = getBundleWithNewVersion(file, snapshotVersion.toString());
+            File versionedFile = getBundleWithNewVersion(file, snapshotVersion.toString());
+            try {
+                upload(versionedFile, getFileName(resource, snapshotVersion), getMimetype(resource));
+            }
+            finally {
+                versionedFile.delete();
+            }
+        }
+        else {
+            upload(file, getFileName(resource, snapshotVersion), getMimetype(resource));
         }
+        m_uploadedSnapshots.put(key, new Snapshot(snapshotVersion, file));
+        return new Deployment(getIdentity(resource), snapshotVersion);
+    }
 
+    /**
+     * Uploads a file to the deployment repository without refreshing its index.
+     */
+    private void upload(File file, String filename, String mimetype) throws Exception {
         InputStream input = null;
         try {
             input = new FileInputStream(file);
             if (m_deploymentRepo instanceof AceObrRepository) {
                 // ACE OBR can handle non-bundle resources if we pass a correct filename
                 AceObrRepository aceToRepo = (AceObrRepository) m_deploymentRepo;
-                aceToRepo.upload(input, getFileName(resource, snapshotVersion), getMimetype(resource));
+                aceToRepo.upload(input, filename, mimetype);
             }
             else {
                 m_deploymentRepo.put(input, null);
             }
-            m_deploymentRepo.reset();
-
-            List<Resource> resultResources = findResources(m_deploymentRepo, getIdentity(resource), snapshotVersion.toString());
-            if (resultResources == null || resultResources.size() == 0) {
-                throw new IllegalStateException("Can not find target resource after put: " + resource);
-            }
-            return resultResources.get(0);
-
         }
         finally {
             if (input != null) {
@@ -206,6 +312,36 @@ public class ContinuousDeployer {
         }
     }
 
+    private Resource getDeployedResource(Deployment deployment) throws Exception {
+        if (!deployment.isUploaded()) {
+            return deployment.m_resource;
+        }
+        List<Resource> resultResources = findResources(m_deploymentRepo, deployment.m_identity, deployment.m_version.toString());
+        if (resultResources == null || resultResources.size() == 0) {
+            throw new IllegalStateException("Can not find target resource after put: " + deployment.m_identity + ";" + deployment.m_version);
+        }
+        return resultResources.get(0);
+    }
+
+    private static Deployment getDeployment(Future<Deployment> future) throws Exception {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private Object getSnapshotLock(String identity) {
+        Object lock = new Object();
+        Object existing = m_snapshotLocks.putIfAbsent(identity, lock);
+        return (existing != null) ? existing : lock;
+    }
+
     private Resource getHighestSnapshotResource(Resource resource, Version base) throws Exception {
         List<Resource> resources = findResources(m_deploymentRepo, getIdentity(resource));
         Resource matchedResource = null;
@@ -219,6 +355,14 @@ public class ContinuousDeployer {
         return matchedResource;
     }
 
+    private static boolean resourcesDiffer(Resource resource, File first, File second) throws Exception {
+        if (getType(resource).equals("osgi.bundle")) {
+            // Compares the contents, ignoring the versions as the deployed resource has a snapshot version...
+            return bundlesDiffer(first, second);
+        }
+        return filesDiffer(first, second);
+    }
+
     private Version getReleasedBaseVersion(Resource resource) throws Exception {
         List<Resource> resources = findResources(m_releaseRepo, getIdentity(resource));
         Version resourceVersion = getVersion(resource);
@@ -18,6 +18,7 @@
  */
 package org.apache.ace.gogo.repo;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
@@ -26,9 +27,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -45,6 +61,15 @@ public final class DeployerUtil {
 
     public static final String QUALIFIER_PREFIX = "CDS";
 
+    /**
+     * The manifest headers that are not taken into account when comparing bundles, as they either contain the version
+     * or change with every build.
+     */
+    private static final Set<String> IGNORED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    static {
+        IGNORED_HEADERS.addAll(Arrays.asList("Bundle-Version", "Bnd-LastModified", "Built-By", "Build-Jdk", "Created-By", "Tool"));
+    }
+
     private static final Pattern QUALIFIER_PATTERN = Pattern.compile(QUALIFIER_PREFIX + "([\\d]{3})$|(.*)(_" + QUALIFIER_PREFIX + "([\\d]{3})?$)");
 
     /**
@@ -124,15 +149,18 @@ public final class DeployerUtil {
         if (first.length() != second.length()) {
             return true;
         }
-        InputStream firstStream = new FileInputStream(first);
-        InputStream secondStream = new FileInputStream(second);
+        InputStream firstStream = new BufferedInputStream(new FileInputStream(first));
+        InputStream secondStream = new BufferedInputStream(new FileInputStream(second));
         try {
-            for (int i = 0; i < first.length(); i++) {
-                if (firstStream.read() != secondStream.read()) {
-                    return false;
+            int b;
+            do {
+                b = firstStream.read();
+                if (b != secondStream.read()) {
+                    return true;
                 }
             }
-            return true;
+            while (b >= 0);
+            return false;
         }
         finally {
             try {
@@ -144,6 +172,78 @@ public final class DeployerUtil {
         }
     }
 
+    /**
+     * Check if there is a difference between the contents of two bundles, ignoring their versions and the headers that
+     * change with every build. Unlike {@link #jarsDiffer(File, File)}, this does not require the bundles to have the
+     * same version, so they do not have to be rewritten before comparing them.
+     * 
+     * @param first
+     *            The first bundle
+     * @param second
+     *            The second bundle
+     * @return <code>true</code> if there is a difference, otherwise <code>false</code>
+     * @throws IOException
+     *             On failure
+     */
+    public static boolean bundlesDiffer(File first, File second) throws IOException {
+        return !MessageDigest.isEqual(getBundleDigest(first), getBundleDigest(second));
+    }
+
+    /**
+     * Calculates a digest over the contents of a bundle. The digest only depends on the names and contents of the
+     * entries in the bundle, not on their order or timestamps. The manifest is normalized first, leaving out the
+     * headers listed in {@link #IGNORED_HEADERS}.
+     * 
+     * @param bundle
+     *            The bundle
+     * @return The digest of the bundle
+     * @throws IOException
+     *             On failure
+     */
+    public static byte[] getBundleDigest(File bundle) throws IOException {
+        MessageDigest digest = createDigest();
+        MessageDigest entryDigest = createDigest();
+
+        ZipFile zip = new ZipFile(bundle);
+        try {
+            List<String> names = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    names.add(entry.getName());
+                }
+            }
+            Collections.sort(names);
+
+            byte[] buf = new byte[8192];
+            for (String name : names) {
+                InputStream is = zip.getInputStream(zip.getEntry(name));
+                try {
+                    if (JarFile.MANIFEST_NAME.equalsIgnoreCase(name)) {
+                        entryDigest.update(getNormalizedManifest(is).getBytes("UTF-8"));
+                    }
+                    else {
+                        int len;
+                        while ((len = is.read(buf)) > 0) {
+                            entryDigest.update(buf, 0, len);
+                        }
+                    }
+                }
+                finally {
+                    is.close();
+                }
+                digest.update(name.getBytes("UTF-8"));
+                digest.update((byte) 0);
+                digest.update(entryDigest.digest());
+            }
+        }
+        finally {
+            zip.close();
+        }
+        return digest.digest();
+    }
+
     /**
      * Clones a bundle file while replacing the Bundle-Version in the manifest with the specified value.
      * 
@@ -253,6 +353,42 @@ public final class DeployerUtil {
         }
     }
 
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException("No SHA-256 digest available?!", e);
+        }
+    }
+
+    private static String getNormalizedManifest(InputStream is) throws IOException {
+        Manifest manifest = new Manifest(is);
+
+        StringBuilder sb = new StringBuilder();
+        appendAttributes(sb, manifest.getMainAttributes());
+
+        Map<String, Attributes> sections = new TreeMap<>(manifest.getEntries());
+        for (Map.Entry<String, Attributes> section : sections.entrySet()) {
+            sb.append("\nName: ").append(section.getKey()).append('\n');
+            appendAttributes(sb, section.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static void appendAttributes(StringBuilder sb, Attributes attributes) {
+        Map<String, String> sorted = new TreeMap<>();
+        for (Map.Entry<Object, Object> attribute : attributes.entrySet()) {
+            String name = attribute.getKey().toString();
+            if (!IGNORED_HEADERS.contains(name)) {
+                sorted.put(name, String.valueOf(attribute.getValue()));
+            }
+        }
+        for (Map.Entry<String, String> attribute : sorted.entrySet()) {
+            sb.append(attribute.getKey()).append(": ").append(attribute.getValue()).append('\n');
+        }
+    }
+
     private static boolean isEmpty(String s) {
         return s == null || s.equals("");
     }
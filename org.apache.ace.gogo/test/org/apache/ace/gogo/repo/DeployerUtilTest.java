@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.gogo.repo;
+
+import static org.apache.ace.gogo.repo.DeployerUtil.bundlesDiffer;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.osgi.framework.Constants;
+import org.testng.annotations.Test;
+
+public class DeployerUtilTest {
+
+    @Test
+    public void testIdenticalBundlesDoNotDiffer() throws Exception {
+        File first = createBundle("1.0.0", "1234", 1000L, "contents");
+        File second = createBundle("1.0.0", "1234", 1000L, "contents");
+
+        assertFalse(bundlesDiffer(first, second), "Identical bundles should not differ!");
+    }
+
+    @Test
+    public void testBundlesOnlyDifferingInTimestampsDoNotDiffer() throws Exception {
+        File first = createBundle("1.0.0", "1234", 1000L, "contents");
+        File second = createBundle("1.0.0.CDS001", "5678", 2000L, "contents");
+
+        assertFalse(bundlesDiffer(first, second), "Bundles only differing in version and timestamps should not differ!");
+    }
+
+    @Test
+    public void testBundlesWithDifferentContentsDiffer() throws Exception {
+        File first = createBundle("1.0.0", "1234", 1000L, "contents");
+        File second = createBundle("1.0.0", "1234", 1000L, "other contents");
+
+        assertTrue(bundlesDiffer(first, second), "Bundles with different contents should differ!");
+    }
+
+    private File createBundle(String version, String lastModified, long entryTime, String contents) throws IOException {
+        File tmpFile = File.createTempFile("tmpbundle-", ".jar");
+        tmpFile.deleteOnExit();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, "foo.bar");
+        manifest.getMainAttributes().putValue(Constants.BUNDLE_VERSION, version);
+        manifest.getMainAttributes().putValue("Bnd-LastModified", lastModified);
+        JarOutputStream target = new JarOutputStream(new FileOutputStream(tmpFile), manifest);
+        try {
+            JarEntry entry = new JarEntry("foo/bar/contents.txt");
+            entry.setTime(entryTime);
+            target.putNextEntry(entry);
+            target.write(contents.getBytes("UTF-8"));
+            target.closeEntry();
+        }
+        finally {
+            target.close();
+        }
+        return tmpFile;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.http;
+
+/**
+ * Utility methods for handling HTTP requests in the servlets of ACE.
+ */
+public final class HttpUtil {
+
+    private HttpUtil() {
+        // Not intended to be instantiated
+    }
+
+    /**
+     * Determines whether the given <code>If-None-Match</code> header value matches the given entity tag.
+     * 
+     * @param header
+     *            the header value, can be <code>null</code>;
+     * @param etag
+     *            the (quoted) entity tag to match.
+     * @return <code>true</code> if the header contains the entity tag, or is a wildcard, <code>false</code> otherwise.
+     */
+    public static boolean matchesEntityTag(String header, String etag) {
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                // weak comparison is allowed for If-None-Match...
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || etag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -18,26 +18,71 @@
  */
 package org.apache.ace.log.listener;
 
-import java.util.ArrayList;
 import java.util.Dictionary;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.ace.log.Log;
 
 /**
  * This cache is used whenever the real log service is not available. When the real log becomes available, all cached
  * log entries should be flushed to the real log service and leaving the cache empty afterwards.
+ * <p>
+ * The cache is a bounded ring buffer: once it is full, each new entry replaces the oldest one, so a log service that
+ * never shows up cannot exhaust the memory.
  */
 public class LogCache implements Log {
+    /** The default maximum number of entries that are cached. */
+    public static final int DEFAULT_CAPACITY = 1024;
 
-    private final List<LogEntry> m_logEntries = new CopyOnWriteArrayList<>();
+    private final LogEntry[] m_logEntries;
+    // index of the oldest entry
+    private int m_head;
+    private int m_size;
+    private long m_dropped;
+
+    public LogCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *            the maximum number of entries to cache, should be at least one.
+     */
+    public LogCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity should be at least one!");
+        }
+        m_logEntries = new LogEntry[capacity];
+    }
+
+    /**
+     * Log the entry in the cache for flushing to the real log service later on. In case the cache is full, the oldest
+     * entry is dropped.
+     */
+    public synchronized void log(int type, Dictionary properties) {
+        LogEntry entry = new LogEntry(type, properties);
+        if (m_size == m_logEntries.length) {
+            m_logEntries[m_head] = entry;
+            m_head = (m_head + 1) % m_logEntries.length;
+            m_dropped++;
+        }
+        else {
+            m_logEntries[(m_head + m_size) % m_logEntries.length] = entry;
+            m_size++;
+        }
+    }
 
     /**
-     * Log the entry in the cache for flushing to the real log service later on.
+     * @return the number of entries that were dropped because the cache was full, since it was created.
      */
-    public void log(int type, Dictionary properties) {
-        m_logEntries.add(new LogEntry(type, properties));
+    public synchronized long getDroppedCount() {
+        return m_dropped;
+    }
+
+    /**
+     * @return the number of entries currently in the cache.
+     */
+    public synchronized int size() {
+        return m_size;
     }
 
     /**
@@ -53,17 +98,26 @@ public class LogCache implements Log {
             return;
         }
 
-        List<LogEntry> entries = new ArrayList<>(m_logEntries);
-        m_logEntries.removeAll(entries);
+        LogEntry[] entries;
+        synchronized (this) {
+            entries = new LogEntry[m_size];
+            for (int i = 0; i < m_size; i++) {
+                int idx = (m_head + i) % m_logEntries.length;
+                entries[i] = m_logEntries[idx];
+                m_logEntries[idx] = null;
+            }
+            m_head = 0;
+            m_size = 0;
+        }
 
         for (LogEntry entry : entries) {
             log.log(entry.getType(), entry.getProperties());
         }
     }
 
-    private class LogEntry {
-        private int m_type;
-        private Dictionary<String, ?> m_properties;
+    private static class LogEntry {
+        private final int m_type;
+        private final Dictionary<String, ?> m_properties;
 
         public LogEntry(int type, Dictionary<String, ?> properties) {
             m_type = type;
@@ -179,8 +179,7 @@ public class LogServlet extends HttpServlet {
         if ((targetID != null) && (logID != null)) {
             // target and log id are specified, return only the events that are in the range that matches these id's
             if (range != null) {
-                Descriptor storeDescriptor = m_store.getDescriptor(targetID, Long.parseLong(logID));
-                outputRange(output, new Descriptor(storeDescriptor.getTargetID(), storeDescriptor.getStoreID(), new SortedRangeSet(range)));
+                outputRange(output, new Descriptor(targetID, Long.parseLong(logID), new SortedRangeSet(range)));
             }
             else {
                 outputRange(output, m_store.getDescriptor(targetID, Long.parseLong(logID)));
@@ -310,11 +309,13 @@ public class LogServlet extends HttpServlet {
 	}
 
     // print string representations of all events in the specified range to the specified output
-    private void outputRange(ServletOutputStream output, Descriptor range) throws IOException {
-        List<Event> events = m_store.get(range);
-        for (Event event : events) {
-            output.print(event.toRepresentation() + "\n");
-        }
+    private void outputRange(final ServletOutputStream output, Descriptor range) throws IOException {
+        m_store.get(range, new LogStore.EventCallback() {
+            @Override
+            public void handle(Event event) throws IOException {
+                output.print(event.toRepresentation() + "\n");
+            }
+        });
     }
 
     // send an error response
@@ -25,6 +25,7 @@ import java.util.List;
 import org.apache.ace.feedback.Descriptor;
 import org.apache.ace.feedback.Event;
 
+import org.osgi.annotation.versioning.ConsumerType;
 import org.osgi.annotation.versioning.ProviderType;
 
 /**
@@ -50,6 +51,20 @@ public interface LogStore
      */
     public static final String EVENT_PROP_LOG_EVENT = "Event";
 
+    /**
+     * Callback that receives events that are streamed from the store.
+     */
+    @ConsumerType
+    public interface EventCallback {
+        /**
+         * Called for each event that is read from the store, in the order in which the events are stored.
+         *
+         * @param event the event, never <code>null</code>.
+         * @throws java.io.IOException in case the event could not be processed, this aborts the read.
+         */
+        public void handle(Event event) throws IOException;
+    }
+
     /**
      * Return all events in a given range.
      *
@@ -59,6 +74,16 @@ public interface LogStore
      */
     public List<Event> get(Descriptor range) throws IOException;
 
+    /**
+     * Streams all events in a given range to the given callback, without decoding them all in memory first. The
+     * callback is not called while the log is locked, so a slow callback does not block others from writing to it.
+     *
+     * @param range the range to filter events by.
+     * @param callback the callback to hand each event in the given range to.
+     * @throws java.io.IOException in case of any error, or when the callback throws one.
+     */
+    public void get(Descriptor range, EventCallback callback) throws IOException;
+
     /**
      * Get the range for the given id and the given log.
      *
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.log.server.store.impl;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Sparse, in-memory index of a log file that maps event IDs to byte offsets in that file. Every
+ * {@link #INTERVAL}th line is recorded, so a reader can seek close to the first event it needs
+ * instead of parsing the log from its start. The index only covers files whose event IDs are
+ * strictly increasing; as soon as an out-of-order ID is encountered, {@link #isOrdered()} returns
+ * <code>false</code> and readers should scan the whole file. This class is not thread-safe, it
+ * relies on the locking done by the {@link LogStoreImpl}.
+ */
+class LogFileIndex {
+    /** The number of lines between two index entries. */
+    static final int INTERVAL = 256;
+
+    private long[] m_ids = new long[16];
+    private long[] m_offsets = new long[16];
+    private int m_size = 0;
+    private long m_length = 0;
+    private long m_lines = 0;
+    private long m_lastID = -1;
+    private boolean m_ordered = true;
+
+    /**
+     * Brings this index up to date with the given file by scanning everything that was appended to it since the last
+     * update. In case the file has been truncated, the index is rebuilt from scratch. Files that have been rewritten
+     * otherwise should get a new index instead.
+     *
+     * @param file the log file to index, cannot be <code>null</code>.
+     * @throws IOException in case of I/O problems reading the file.
+     */
+    void update(File file) throws IOException {
+        long length = file.length();
+        if (length < m_length) {
+            reset();
+        }
+        if (!m_ordered || (length <= m_length)) {
+            return;
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            skipFully(in, m_length);
+
+            long offset = m_length;
+            long lineStart = offset;
+            byte[] line = new byte[128];
+            int lineLength = 0;
+            int b;
+            while ((b = in.read()) >= 0) {
+                offset++;
+                if (b != '\n') {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = (byte) b;
+                    continue;
+                }
+                long id = parseID(line, lineLength);
+                if (id <= m_lastID) {
+                    // IDs are no longer increasing, so seeking is no longer possible...
+                    m_ordered = false;
+                    return;
+                }
+                if ((m_lines++ % INTERVAL) == 0) {
+                    add(id, lineStart);
+                }
+                m_lastID = id;
+                m_length = offset;
+                lineStart = offset;
+                lineLength = 0;
+            }
+            // a trailing partial line is picked up during the next update...
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if all indexed IDs are strictly increasing, <code>false</code> otherwise.
+     */
+    boolean isOrdered() {
+        return m_ordered;
+    }
+
+    /**
+     * Returns the offset at which a reader should start to find the first event with an ID of at least the given ID.
+     *
+     * @param id the ID of the first event of interest.
+     * @return a byte offset in the indexed file, never beyond the event with the given ID.
+     */
+    long getOffset(long id) {
+        if (!m_ordered || (m_size == 0)) {
+            return 0;
+        }
+        int idx = Arrays.binarySearch(m_ids, 0, m_size, id);
+        if (idx < 0) {
+            // take the entry just before the insertion point...
+            idx = -idx - 2;
+        }
+        return (idx < 0) ? 0 : m_offsets[idx];
+    }
+
+    private void reset() {
+        m_size = 0;
+        m_length = 0;
+        m_lines = 0;
+        m_lastID = -1;
+        m_ordered = true;
+    }
+
+    private void add(long id, long offset) {
+        if (m_size == m_ids.length) {
+            m_ids = Arrays.copyOf(m_ids, m_size * 2);
+            m_offsets = Arrays.copyOf(m_offsets, m_size * 2);
+        }
+        m_ids[m_size] = id;
+        m_offsets[m_size] = offset;
+        m_size++;
+    }
+
+    /**
+     * Parses the ID from an event representation, which is its third comma-separated field, without decoding the rest
+     * of the event.
+     */
+    static long parseID(byte[] line, int length) throws IOException {
+        int field = 0;
+        int i = 0;
+        while (i < length && field < 2) {
+            if (line[i++] == ',') {
+                field++;
+            }
+        }
+        long result = 0;
+        int digits = 0;
+        while (i < length && line[i] != ',') {
+            int digit = line[i++] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            result = result * 10 + digit;
+            digits++;
+        }
+        if (digits == 0) {
+            throw new IOException("Unable to parse event ID from log entry!");
+        }
+        return result;
+    }
+
+    /**
+     * Parses the ID from an event representation, see {@link #parseID(byte[], int)}.
+     */
+    static long parseID(String line) throws IOException {
+        int start = line.indexOf(',');
+        start = (start < 0) ? -1 : line.indexOf(',', start + 1);
+        if (start < 0) {
+            throw new IOException("Unable to parse event ID from log entry!");
+        }
+        int end = line.indexOf(',', start + 1);
+        try {
+            return Long.parseLong(line.substring(start + 1, (end < 0) ? line.length() : end).trim());
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Unable to parse event ID from log entry!", e);
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of log file!");
+            }
+            count -= skipped;
+        }
+    }
+}
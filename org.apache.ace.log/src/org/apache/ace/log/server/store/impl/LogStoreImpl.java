@@ -20,10 +20,12 @@ package org.apache.ace.log.server.store.impl;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
@@ -43,6 +45,7 @@ import org.apache.ace.feedback.Descriptor;
 import org.apache.ace.feedback.Event;
 import org.apache.ace.log.server.store.LogStore;
 import org.apache.ace.range.Range;
+import org.apache.ace.range.RangeIterator;
 import org.apache.ace.range.SortedRangeSet;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
@@ -54,6 +57,8 @@ import org.osgi.service.event.EventAdmin;
 public class LogStoreImpl implements LogStore, ManagedService {
 
     private static final String MAXIMUM_NUMBER_OF_EVENTS = "MaxEvents";
+    /** The maximum number of events that are read from a log while holding its lock when streaming events. */
+    static final int STREAM_CHUNK_SIZE = 1000;
 
     private volatile EventAdmin m_eventAdmin; /* Injected by dependency manager */
 
@@ -65,6 +70,7 @@ public class LogStoreImpl implements LogStore, ManagedService {
     private final ConcurrentMap<String, Set<Long>> m_locks = new ConcurrentHashMap<>();
     private final Map<String, Long> m_fileToHighestID = new HashMap<>();
     private final Map<String, Long> m_fileToLowestID = new HashMap<>();
+    private final ConcurrentMap<String, LogFileIndex> m_fileToIndex = new ConcurrentHashMap<>();
 
     public LogStoreImpl(File baseDir, String name) {
         m_name = name;
@@ -90,6 +96,133 @@ public class LogStoreImpl implements LogStore, ManagedService {
         }
     }
 
+    public void get(Descriptor descriptor, EventCallback callback) throws IOException {
+        ReadPosition position = new ReadPosition();
+        List<String> lines = new ArrayList<>();
+        do {
+            lines.clear();
+            obtainLock(descriptor.getTargetID(), descriptor.getStoreID());
+            try {
+                getRepresentationsInternal(descriptor, position, STREAM_CHUNK_SIZE, lines);
+            }
+            finally {
+                releaseLock(descriptor.getTargetID(), descriptor.getStoreID());
+            }
+            // the callback can be slow (e.g., writing to a remote client), so it should not block writers of this log...
+            for (String line : lines) {
+                callback.handle(new Event(line));
+            }
+        }
+        while (!position.m_done);
+    }
+
+    /**
+     * Retrieves the next chunk of representations of the events that match the given descriptor. Uses the offset index
+     * of the log to skip all events before the first requested ID, and stops reading as soon as the highest requested
+     * ID is passed or the chunk is full, in which case the given position is updated so the next call continues where
+     * this one stopped. The events are not decoded, which is left to the caller once it has released the lock. This
+     * method relies on external locking, the caller should take care of that.
+     *
+     * @param descriptor
+     *            the events to retrieve
+     * @param position
+     *            the position to continue reading from, will be updated to the position of the next chunk
+     * @param max
+     *            the maximum number of representations to retrieve
+     * @param result
+     *            the list to add the representations of the matching events to, in the order they appear in the log
+     * @throws IOException
+     *             if anything goes wrong
+     */
+    private void getRepresentationsInternal(Descriptor descriptor, ReadPosition position, int max, List<String> result) throws IOException {
+        position.m_done = true;
+
+        final SortedRangeSet set = descriptor.getRangeSet();
+        RangeIterator ids = set.iterator();
+        if (!ids.hasNext()) {
+            return;
+        }
+        File log = getLogFile(descriptor.getTargetID(), descriptor.getStoreID());
+        if (!log.isFile()) {
+            return;
+        }
+        long lowestID = getLowestIDInternal(descriptor.getTargetID(), descriptor.getStoreID());
+        long firstID = Math.max(ids.next(), lowestID);
+        long lastID = set.getHigh();
+
+        LogFileIndex index = getIndex(log);
+        // an unordered log can only be continued by skipping the lines already read, which is only valid as long as it
+        // was not rewritten in the meantime (in which case it gets a new index). Rewritten logs are sorted, so in all
+        // other cases we can simply continue with the next event ID...
+        long skipLines = 0;
+        if (!index.isOrdered() && index == position.m_index) {
+            skipLines = position.m_lines;
+        }
+        else {
+            firstID = Math.max(firstID, position.m_nextID);
+        }
+
+        FileInputStream fis = new FileInputStream(log);
+        BufferedReader in = null;
+        try {
+            fis.getChannel().position(index.getOffset(firstID));
+            in = new BufferedReader(new InputStreamReader(fis));
+            long lineNr = 0;
+            for (String line = in.readLine(); line != null; line = in.readLine(), lineNr++) {
+                if (lineNr < skipLines) {
+                    continue;
+                }
+                long id = LogFileIndex.parseID(line);
+                if (id < firstID) {
+                    continue;
+                }
+                if (id > lastID && index.isOrdered()) {
+                    // all remaining events are beyond the requested range...
+                    break;
+                }
+                if (set.contains(id)) {
+                    if (result.size() >= max) {
+                        // chunk is full, remember where to continue...
+                        position.m_done = false;
+                        position.m_index = index.isOrdered() ? null : index;
+                        position.m_nextID = id;
+                        position.m_lines = lineNr;
+                        break;
+                    }
+                    result.add(line);
+                }
+            }
+        }
+        finally {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+                else {
+                    fis.close();
+                }
+            }
+            catch (Exception ex) {
+                // Not much we can do
+            }
+        }
+    }
+
+    /**
+     * Returns an up to date offset index for the given log file. This method relies on external locking, the caller
+     * should take care of that.
+     */
+    private LogFileIndex getIndex(File log) throws IOException {
+        String file = log.getAbsolutePath();
+        LogFileIndex index = m_fileToIndex.get(file);
+        if (index == null) {
+            index = new LogFileIndex();
+            m_fileToIndex.put(file, index);
+        }
+        index.update(log);
+        return index;
+    }
+
     /**
      * Retrieve the events that match the given descriptor. This method relies on external locking, the caller should
      * take care of that.
@@ -288,6 +421,8 @@ public class LogStoreImpl implements LogStore, ManagedService {
 	                }
                 }
                 out = new PrintWriter(new FileWriter(new File(dir, logID.toString())));
+                // the file is rewritten, so its offsets are no longer valid
+                m_fileToIndex.remove(file);
             }
             long high = 0;
             for (Event event : list) {
@@ -639,6 +774,20 @@ public class LogStoreImpl implements LogStore, ManagedService {
     }
 
     private static FilenameFilter LOGID_FILENAME_FILTER = new LogIDFilenameFilter();
+
+    /**
+     * Keeps track of where to continue reading a log when streaming its events in chunks.
+     */
+    private static class ReadPosition {
+        /** The index of the unordered log that was read, <code>null</code> if the log was ordered. */
+        LogFileIndex m_index;
+        /** The ID of the next event to read. */
+        long m_nextID;
+        /** The number of lines of the unordered log that were already read. */
+        long m_lines;
+        boolean m_done;
+    }
+
     private static class LogIDFilenameFilter implements FilenameFilter {
 		@Override
 		public boolean accept(File dir, String name) {
@@ -18,8 +18,11 @@
  */
 package org.apache.ace.log.target.store.impl;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
@@ -38,6 +41,10 @@ import org.osgi.service.log.LogService;
  * This class provides an implementation of the LogStore service. It tries to
  * repair broken log files to make them readable again. However, this might lead
  * to loss of data. Additionally, a new file is used when an error is detected.
+ * <p>
+ * For each log, a sparse index of its records is kept in memory. Readers use
+ * this index to start reading close to the first requested record, and read
+ * the log through their own file handle, so they do not block appends.
  */
 public class LogStoreImpl implements LogStore {
     // injected by dependencymanager
@@ -48,6 +55,8 @@ public class LogStoreImpl implements LogStore {
     private Store m_store = null;
     private final File m_baseDir;
     private long m_highest;
+    // The indices of all logs read so far, keyed by log ID
+    private final Map<Long, StoreIndex> m_indices = new HashMap<>();
 
     /**
      * Create new instance using the specified directory as root directory.
@@ -79,12 +88,7 @@ public class LogStoreImpl implements LogStore {
                 m_store = newStore();
             } else {
                 m_store = createStore(current);
-                try {
-                    m_store.init();
-                } 
-                catch (IOException ex) {
-                    handleException(m_store, ex);
-                }
+                getIndex(m_store);
             }
         } 
         catch (IOException ex) {
@@ -103,6 +107,7 @@ public class LogStoreImpl implements LogStore {
     protected synchronized void stop() throws IOException {
         m_store.close();
         m_store = null;
+        m_indices.clear();
     }
 
     /**
@@ -149,33 +154,121 @@ public class LogStoreImpl implements LogStore {
      * @throws java.io.IOException
      *             in case of any IO error.
      */
-    public synchronized List get(long logID, long from, long to)
+    public List get(long logID, long from, long to)
             throws IOException {
-        Store store = getLog(logID);
-        List<Event> result = new ArrayList<>();
-        try {
-            if (store.getCurrent() > from) {
-                store.reset();
+        Store store;
+        long offset;
+        long length;
+        boolean ordered;
+        synchronized (this) {
+            store = getLog(logID);
+            StoreIndex index;
+            try {
+                index = getIndex(store);
+            } 
+            catch (IOException ex) {
+                closeIfNeeded(store);
+                throw ex;
             }
+            offset = index.getOffset(from);
+            length = index.getLength();
+            ordered = index.isOrdered();
+        }
 
-            while (store.hasNext()) {
-                long eventID = store.readCurrentID();
+        // Only read the records that were complete when we took the index,
+        // appends can continue in the meantime...
+        List<Event> result = new ArrayList<>();
+        long pos = offset;
+        DataInputStream in = null;
+        try {
+            FileInputStream fis = new FileInputStream(store.getFile());
+            in = new DataInputStream(new BufferedInputStream(fis));
+            fis.getChannel().position(offset);
+
+            while (pos < length) {
+                long eventID = in.readLong();
+                int next = in.readInt();
+                if (ordered && (eventID > to)) {
+                    break;
+                }
                 if ((eventID >= from) && (eventID <= to)) {
-                    result.add(new Event(new String(store.read())));
+                    byte[] entry = new byte[next];
+                    in.readFully(entry);
+                    result.add(new Event(new String(entry)));
                 } else {
-                    store.skip();
+                    skipFully(in, next);
                 }
+                pos += Store.HEADER_SIZE + next;
             }
         } 
         catch (Exception ex) {
-            handleException(store, ex);
+            handleReadException(store, pos, ex);
         } 
         finally {
-            closeIfNeeded(store);
+            if (in != null) {
+                try {
+                    in.close();
+                } 
+                catch (IOException ex) {
+                    // Not much we can do
+                }
+            }
+            synchronized (this) {
+                closeIfNeeded(store);
+            }
         }
         return result;
     }
 
+    /**
+     * Handles an exception that occurred while reading the given store
+     * outside the lock, see {@link #handleException(Store, Exception)}.
+     * 
+     * @param store
+     *            the store to repair/close.
+     * @param pos
+     *            the offset of the record that could not be read.
+     * @param exception
+     *            the exception to log and rethrow.
+     * @throws java.io.IOException
+     *             always, see {@link #handleException(Store, Exception)}.
+     */
+    private synchronized void handleReadException(Store store, long pos,
+            Exception exception) throws IOException {
+        try {
+            store.seek(pos);
+        } 
+        catch (IOException ex) {
+            // The store has been closed in the meantime, nothing to repair
+        }
+        handleException(store, exception);
+    }
+
+    /**
+     * Get the index of the given store, bringing it up to date with all
+     * records appended since it was last used.
+     * 
+     * @param store
+     *            the store to get the index for.
+     * @return the index of the given store.
+     * @throws java.io.IOException
+     *             in case the store could not be read.
+     */
+    private StoreIndex getIndex(Store store) throws IOException {
+        StoreIndex index = m_indices.get(store.getId());
+        if (index == null) {
+            index = new StoreIndex();
+            m_indices.put(store.getId(), index);
+        }
+        try {
+            store.index(index);
+        } 
+        catch (IOException ex) {
+            handleException(store, ex);
+        }
+        return index;
+    }
+
     /**
      * Try to repair the given store, log the given exception and rethrow it. In
      * case the store is the current log switch to a new one if possible.
@@ -192,6 +285,7 @@ public class LogStoreImpl implements LogStore {
             throws IOException {
         m_log.log(LogService.LOG_WARNING, "Exception accessing the log: "
                 + store.getId(), exception);
+        m_indices.remove(store.getId());
         if (store == m_store) {
             m_store = newStore();
         }
@@ -286,19 +380,14 @@ public class LogStoreImpl implements LogStore {
         Store store = getLog(logID);
         try {
             if (m_highest == 0) {
-                store.init();
-                return (m_highest = store.getCurrent());
+                return (m_highest = getIndex(store).getLastID());
             } else {
                 return m_highest;
             }
         } 
-        catch (IOException ex) {
-            handleException(store, ex);
-        } 
         finally {
             closeIfNeeded(store);
         }
-        return -1;
     }
 
     /**
@@ -345,6 +434,16 @@ public class LogStoreImpl implements LogStore {
         return (m_highest = getHighestID(m_store.m_id) + 1);
     }
 
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes(count);
+            if (skipped <= 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+            count -= skipped;
+        }
+    }
+
     /*
      * throw IOException in case the target is null else return the target.
      */
@@ -358,15 +457,18 @@ public class LogStoreImpl implements LogStore {
 
     /**
      * The general idea is to provide easy access to a file of records. It
-     * supports iterating over records both by skipping and by reading.
-     * Furthermore, files can be truncated. Most methods will make an effort to
+     * supports indexing the records and appending new ones. Furthermore,
+     * files can be truncated. Most methods will make an effort to
      * reset to the last good record in case of an error -- hence, a call to
      * truncate after an IOException might make the store readable again.
      */
     class Store {
+        /** The size of the ID and length preceding the data of each record. */
+        static final int HEADER_SIZE = 12;
+
         private final RandomAccessFile m_store;
+        private final File m_file;
         private final long m_id;
-        private long m_current;
 
         /**
          * Create a new File based Store.
@@ -380,29 +482,17 @@ public class LogStoreImpl implements LogStore {
          */
         Store(File store, long id) throws IOException {
             m_store = new RandomAccessFile(store, "rwd");
+            m_file = store;
             m_id = id;
         }
 
         /**
-         * Get the id of the current record.
+         * Get the file backing this store.
          * 
-         * @return the idea of the current record.
+         * @return the file of this store.
          */
-        public long getCurrent() throws IOException {
-            long pos = m_store.getFilePointer();
-            if (m_store.length() == 0) {
-                return 0;
-            }
-            long result = 0;
-            try {
-                m_store.seek(m_current);
-                result = readCurrentID();
-                m_store.seek(pos);
-            } 
-            catch (IOException ex) {
-                handle(pos, ex);
-            }
-            return result;
+        public File getFile() {
+            return m_file;
         }
 
         /**
@@ -415,103 +505,47 @@ public class LogStoreImpl implements LogStore {
         }
 
         /**
-         * Reset the store to the beginning of the records
+         * Set the position of this store, which is where it will be truncated.
          * 
+         * @param pos
+         *            the new position.
          * @throws java.io.IOException
          *             in case of an IO error.
          */
-        public void reset() throws IOException {
-            m_store.seek(0);
-            m_current = 0;
+        public void seek(long pos) throws IOException {
+            m_store.seek(pos);
         }
 
         /**
-         * Determine whether there are any records left based on the current
-         * postion.
+         * Add all records beyond the length of the given index to it. This
+         * makes sure the store is readable.
          * 
-         * @return <code>true</code> if there are still records to be read.
+         * @param index
+         *            the index to bring up to date.
          * @throws java.io.IOException
-         *             in case of an IO error.
+         *             in case of any IO error; the store is positioned at the
+         *             first record that could not be read.
          */
-        public boolean hasNext() throws IOException {
-            return m_store.getFilePointer() < m_store.length();
-        }
-
-        @SuppressWarnings("unused")
-        public byte[] read() throws IOException {
+        public void index(StoreIndex index) throws IOException {
             long pos = m_store.getFilePointer();
+            long offset = index.getLength();
+            long length = m_store.length();
             try {
-                if (pos < m_store.length()) {
-                    long current = m_store.getFilePointer();
+                while (offset < length) {
+                    m_store.seek(offset);
                     long id = m_store.readLong();
                     int next = m_store.readInt();
-                    byte[] entry = new byte[next];
-                    m_store.readFully(entry);
-                    m_current = current;
-                    return entry;
-                }
-            } 
-            catch (IOException ex) {
-                handle(pos, ex);
-            }
-            return null;
-        }
-
-        public long readCurrentID() throws IOException {
-            long pos = m_store.getFilePointer();
-            try {
-                if (pos < m_store.length()) {
-                    long id = m_store.readLong();
-                    m_store.seek(pos);
-                    return id;
+                    long end = offset + HEADER_SIZE + next;
+                    if ((next < 0) || (length < end)) {
+                        throw new IOException("Unexpected end of file");
+                    }
+                    index.add(id, offset, end);
+                    offset = end;
                 }
+                m_store.seek(pos);
             } 
             catch (IOException ex) {
-                handle(pos, ex);
-            }
-            return -1;
-        }
-
-        /**
-         * Make sure the store is readable. As a result, the store is at the end
-         * of the records.
-         * 
-         * @throws java.io.IOException
-         *             in case of any IO error.
-         */
-        public void init() throws IOException {
-            reset();
-            try {
-                while (true) {
-                    skip();
-                }
-            } 
-            catch (EOFException ex) {
-                // done
-            }
-        }
-
-        /**
-         * Skip the next record if there is any.
-         * 
-         * @throws java.io.IOException
-         *             in case of any IO error or if there is no record left.
-         */
-        @SuppressWarnings("unused")
-        public void skip() throws IOException {
-            long pos = m_store.getFilePointer();
-            try {
-                long id = m_store.readLong();
-                int next = m_store.readInt();
-                if (m_store.length() < next + m_store.getFilePointer()) {
-                    throw new IOException("Unexpected end of file");
-                }
-                m_store.seek(m_store.getFilePointer() + next);
-                m_current = pos;
-                pos = m_store.getFilePointer();
-            } 
-            catch (IOException ex) {
-                handle(pos, ex);
+                handle(offset, ex);
             }
         }
 
@@ -524,13 +558,12 @@ public class LogStoreImpl implements LogStore {
          *             in case of any IO error.
          */
         public void append(long id, byte[] entry) throws IOException {
-            long pos = m_store.getFilePointer();
+            long pos = m_store.length();
             try {
-                m_store.seek(m_store.length());
+                m_store.seek(pos);
                 m_store.writeLong(id);
                 m_store.writeInt(entry.length);
                 m_store.write(entry);
-                m_store.seek(pos);
             } 
             catch (IOException ex) {
                 handle(pos, ex);
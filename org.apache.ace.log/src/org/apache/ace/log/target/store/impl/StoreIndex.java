@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.log.target.store.impl;
+
+import java.util.Arrays;
+
+/**
+ * Sparse, in-memory index of the records in a store, mapping event IDs to the offsets of their records. Every
+ * {@link #INTERVAL}th record is recorded, so a reader can start close to the first record it needs instead of reading
+ * the store from its start. Seeking is only possible as long as the event IDs in the store are strictly increasing;
+ * as soon as an out-of-order ID is encountered, {@link #isOrdered()} returns <code>false</code> and readers should
+ * read the whole store. This class is not thread-safe, it relies on the locking done by the {@link LogStoreImpl}.
+ */
+class StoreIndex {
+    /** The number of records between two index entries. */
+    static final int INTERVAL = 64;
+
+    private long[] m_ids = new long[16];
+    private long[] m_offsets = new long[16];
+    private int m_size = 0;
+    private long m_length = 0;
+    private long m_records = 0;
+    private long m_lastID = 0;
+    private boolean m_ordered = true;
+
+    /**
+     * Adds a record to this index. Records should be added in the order in which they appear in the store.
+     *
+     * @param id the event ID of the record;
+     * @param offset the offset of the record in the store;
+     * @param end the offset just beyond the record in the store.
+     */
+    void add(long id, long offset, long end) {
+        if ((m_records > 0) && (id <= m_lastID)) {
+            // IDs are no longer increasing, so seeking is no longer possible...
+            m_ordered = false;
+        }
+        if (m_ordered && ((m_records % INTERVAL) == 0)) {
+            if (m_size == m_ids.length) {
+                m_ids = Arrays.copyOf(m_ids, m_size * 2);
+                m_offsets = Arrays.copyOf(m_offsets, m_size * 2);
+            }
+            m_ids[m_size] = id;
+            m_offsets[m_size] = offset;
+            m_size++;
+        }
+        m_records++;
+        m_lastID = id;
+        m_length = end;
+    }
+
+    /**
+     * @return the offset just beyond the last indexed record, which is the length of the store when the index is up to
+     *         date.
+     */
+    long getLength() {
+        return m_length;
+    }
+
+    /**
+     * @return the event ID of the last indexed record, or <code>0</code> if no records were indexed.
+     */
+    long getLastID() {
+        return m_lastID;
+    }
+
+    /**
+     * @return <code>true</code> if all indexed IDs are strictly increasing, <code>false</code> otherwise.
+     */
+    boolean isOrdered() {
+        return m_ordered;
+    }
+
+    /**
+     * Returns the offset at which a reader should start to find the first record with an ID of at least the given ID.
+     *
+     * @param id the ID of the first event of interest.
+     * @return an offset in the store, never beyond the record with the given ID.
+     */
+    long getOffset(long id) {
+        if (!m_ordered || (m_size == 0)) {
+            return 0;
+        }
+        int idx = Arrays.binarySearch(m_ids, 0, m_size, id);
+        if (idx < 0) {
+            // take the entry just before the insertion point...
+            idx = -idx - 2;
+        }
+        return (idx < 0) ? 0 : m_offsets[idx];
+    }
+}
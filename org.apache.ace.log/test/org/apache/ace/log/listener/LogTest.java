@@ -67,6 +67,30 @@ public class LogTest {
         assert ((MockLog.LogEntry) ((MockLog) m_mockLog).getLogEntries().get(0)).getProperties().get(test).equals(value) : "The property should be 'test:value'";
     }
 
+    /**
+     * Test whether the cache drops the oldest entries once it is full.
+     */
+    @Test()
+    public void testLogCacheOverflow() throws Exception {
+        LogCache cache = new LogCache(3);
+        for (int i = 0; i < 5; i++) {
+            Dictionary<String, Object> props = new Hashtable<>();
+            props.put("test", "value" + i);
+            cache.log(i, props);
+        }
+        assert cache.size() == 3 : "Cache should contain 3 entries";
+        assert cache.getDroppedCount() == 2 : "Cache should have dropped 2 entries";
+
+        cache.flushTo(m_mockLog);
+
+        List<LogEntry> logEntries = ((MockLog) m_mockLog).getLogEntries();
+        assert logEntries.size() == 3 : "MockLog should have 3 log entries";
+        for (int i = 0; i < 3; i++) {
+            assert logEntries.get(i).getType() == i + 2 : "Oldest entries should have been dropped";
+        }
+        assert cache.size() == 0 : "Cache should be empty after flushing";
+    }
+
     /**
      * Test whether after unsetting the Log, no new log entries are added, but that they are added to the cache instead
      * (test the latter by flushing the cache).
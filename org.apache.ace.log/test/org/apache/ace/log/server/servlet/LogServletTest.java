@@ -207,6 +207,12 @@ public class LogServletTest {
             return events;
         }
 
+        public void get(Descriptor range, EventCallback callback) throws IOException {
+            for (Event event : get(range)) {
+                callback.handle(event);
+            }
+        }
+
         public List<Descriptor> getDescriptors(String targetID) {
             List<Descriptor> ranges = new ArrayList<>();
             ranges.add(m_range);
@@ -21,6 +21,7 @@ package org.apache.ace.log.server.store.impl;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -29,13 +30,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.ace.feedback.AuditEvent;
 import org.apache.ace.feedback.Descriptor;
 import org.apache.ace.feedback.Event;
+import org.apache.ace.log.server.store.LogStore;
+import org.apache.ace.range.SortedRangeSet;
 import org.apache.ace.test.utils.TestUtils;
 import org.osgi.service.event.EventAdmin;
 import org.testng.annotations.AfterMethod;
@@ -236,6 +242,155 @@ public class ServerLogStoreTester {
         assert range.equals("21-40") : "Incorrect range in descriptor: " + range;
     }
 
+    @Test()
+    public void testStreamEventsInRange() throws IOException {
+        Map<String, String> props = new HashMap<>();
+        props.put("test", "bar");
+
+        List<Event> events = new ArrayList<>();
+        for (long id = 1; id <= 2000; id++) {
+            events.add(new Event("target", 1, id, System.currentTimeMillis(), AuditEvent.FRAMEWORK_STARTED, props));
+        }
+        m_logStore.put(events);
+
+        List<Event> streamed = getStreamedEvents(new Descriptor("target", 1, new SortedRangeSet("5,1000-1003,1999-2005")));
+        assert streamed.size() == 7 : "Expected 7 events, got: " + streamed.size();
+        assert streamed.get(0).getID() == 5 : "Expected event 5 first, got: " + streamed.get(0).getID();
+        assert streamed.get(6).getID() == 2000 : "Expected event 2000 last, got: " + streamed.get(6).getID();
+
+        // append some more events and make sure the index picks these up
+        events.clear();
+        for (long id = 2001; id <= 2010; id++) {
+            events.add(new Event("target", 1, id, System.currentTimeMillis(), AuditEvent.FRAMEWORK_STARTED, props));
+        }
+        m_logStore.put(events);
+
+        streamed = getStreamedEvents(new Descriptor("target", 1, new SortedRangeSet("2005-3000")));
+        assert streamed.size() == 6 : "Expected 6 events, got: " + streamed.size();
+        assert streamed.equals(m_logStore.get(new Descriptor("target", 1, new SortedRangeSet("2005-3000")))) : "Streamed events differ from the retrieved events";
+
+        m_logStore.setLowestID("target", 1, 2008);
+        streamed = getStreamedEvents(new Descriptor("target", 1, new SortedRangeSet("1-3000")));
+        assert streamed.size() == 3 : "Expected 3 events, got: " + streamed.size();
+    }
+
+    @Test()
+    public void testStreamEventsOutOfOrder() throws IOException {
+        List<Event> events = new ArrayList<>();
+        events.add(new Event("t1", 1, 2, 2, AuditEvent.FRAMEWORK_STARTED));
+        events.add(new Event("t1", 1, 3, 3, AuditEvent.FRAMEWORK_STARTED));
+        events.add(new Event("t1", 1, 1, 1, AuditEvent.FRAMEWORK_STARTED));
+        m_logStore.put(events);
+
+        List<Event> streamed = getStreamedEvents(new Descriptor("t1", 1, new SortedRangeSet("1-2")));
+        assert streamed.size() == 2 : "Expected 2 events, got: " + streamed.size();
+        assert getStreamedEvents(new Descriptor("t1", 1, new SortedRangeSet("4-5"))).isEmpty() : "Expected no events";
+        assert getStreamedEvents(new Descriptor("t2", 1, new SortedRangeSet("1-5"))).isEmpty() : "Expected no events";
+    }
+
+    @Test()
+    public void testStreamEventsDoesNotBlockWriters() throws Exception {
+        List<Event> events = new ArrayList<>();
+        events.add(new Event("t1", 1, 1, 1, AuditEvent.FRAMEWORK_STARTED));
+        events.add(new Event("t1", 1, 2, 2, AuditEvent.FRAMEWORK_STARTED));
+        m_logStore.put(events);
+
+        final CountDownLatch streaming = new CountDownLatch(1);
+        final CountDownLatch written = new CountDownLatch(1);
+        final List<Event> streamed = new ArrayList<>();
+
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> reader = exec.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    m_logStore.get(new Descriptor("t1", 1, new SortedRangeSet("1-10")), new LogStore.EventCallback() {
+                        @Override
+                        public void handle(Event event) throws IOException {
+                            streamed.add(event);
+                            streaming.countDown();
+                            try {
+                                // simulate a slow client that only continues once the event below is written...
+                                written.await(15, TimeUnit.SECONDS);
+                            }
+                            catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+                    return null;
+                }
+            });
+
+            assert streaming.await(5, TimeUnit.SECONDS) : "Streaming did not start?!";
+
+            m_logStore.put(Arrays.asList(new Event("t1", 1, 3, 3, AuditEvent.FRAMEWORK_STARTED)));
+            written.countDown();
+
+            reader.get(5, TimeUnit.SECONDS);
+        }
+        finally {
+            exec.shutdownNow();
+        }
+
+        assert streamed.size() == 2 : "Expected 2 events, got: " + streamed.size();
+        assert m_logStore.get(new Descriptor("t1", 1, new SortedRangeSet("1-10"))).size() == 3 : "Expected 3 stored events";
+    }
+
+    @Test()
+    public void testStreamEventsInChunks() throws Exception {
+        final int count = 2 * LogStoreImpl.STREAM_CHUNK_SIZE + 10;
+        List<Event> events = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            events.add(new Event("t1", 1, id, id, AuditEvent.FRAMEWORK_STARTED));
+        }
+        m_logStore.put(events);
+
+        final List<Long> streamed = new ArrayList<>();
+        m_logStore.get(new Descriptor("t1", 1, SortedRangeSet.FULL_SET), new LogStore.EventCallback() {
+            @Override
+            public void handle(Event event) throws IOException {
+                streamed.add(event.getID());
+                if (event.getID() == 1) {
+                    // the log should not be locked while handling events, so we can write to it...
+                    m_logStore.put(Arrays.asList(new Event("t1", 1, count + 1, count + 1, AuditEvent.FRAMEWORK_STARTED)));
+                }
+            }
+        });
+
+        assert streamed.size() == count + 1 : "Expected " + (count + 1) + " events, got: " + streamed.size();
+        for (int i = 0; i < streamed.size(); i++) {
+            assert streamed.get(i) == i + 1 : "Expected event " + (i + 1) + ", got: " + streamed.get(i);
+        }
+    }
+
+    @Test()
+    public void testStreamUnorderedEventsInChunks() throws Exception {
+        int count = 2 * LogStoreImpl.STREAM_CHUNK_SIZE + 10;
+        List<Event> events = new ArrayList<>();
+        for (int id = count; id > 0; id--) {
+            events.add(new Event("t1", 1, id, id, AuditEvent.FRAMEWORK_STARTED));
+        }
+        m_logStore.put(events);
+
+        List<Event> streamed = getStreamedEvents(new Descriptor("t1", 1, SortedRangeSet.FULL_SET));
+        assert streamed.size() == count : "Expected " + count + " events, got: " + streamed.size();
+        for (int i = 0; i < streamed.size(); i++) {
+            assert streamed.get(i).getID() == count - i : "Expected event " + (count - i) + ", got: " + streamed.get(i).getID();
+        }
+    }
+
+    private List<Event> getStreamedEvents(Descriptor descriptor) throws IOException {
+        final List<Event> result = new ArrayList<>();
+        m_logStore.get(descriptor, new LogStore.EventCallback() {
+            @Override
+            public void handle(Event event) throws IOException {
+                result.add(event);
+            }
+        });
+        return result;
+    }
+
     private List<Event> getStoredEvents() throws IOException {
         List<Event> stored = new ArrayList<>();
         for (Descriptor range : m_logStore.getDescriptors()) {
@@ -98,6 +98,40 @@ public class GatewayLogStoreTest {
         assert result.equals(events) : "Events " + events + " should equal full log " + result;
     }
 
+    @SuppressWarnings({ "serial", "unchecked" })
+    @Test
+    public void testLogRanges() throws IOException {
+        long[] ids = m_logStore.getLogIDs();
+        int count = StoreIndex.INTERVAL * 5 + 3;
+        for (int i = 0; i < count; i++) {
+            final String value = "value" + i;
+            m_logStore.put(AuditEvent.BUNDLE_INSTALLED, new Properties() {
+                {
+                    put("test", value);
+                }
+            });
+        }
+        assert m_logStore.get(ids[0]).size() == count : "Store should contain all " + count + " entries";
+
+        long[][] ranges = { { 1, 1 }, { StoreIndex.INTERVAL, StoreIndex.INTERVAL + 1 }, { 100, 300 }, { count - 2, count + 10 }, { count + 1, count + 10 } };
+        for (long[] range : ranges) {
+            List<Event> events = (List<Event>) m_logStore.get(ids[0], range[0], range[1]);
+            long expected = Math.max(0, Math.min(range[1], count) - range[0] + 1);
+            assert events.size() == expected : "Range " + range[0] + "-" + range[1] + " should contain " + expected + " entries, but contained " + events.size();
+            for (int i = 0; i < events.size(); i++) {
+                Event event = events.get(i);
+                assert event.getID() == range[0] + i : "Unexpected event " + event.getID() + " in range " + range[0] + "-" + range[1];
+                assert ("value" + (event.getID() - 1)).equals(event.getProperties().get("test")) : "Unexpected properties for event " + event.getID();
+            }
+        }
+
+        // entries put after a read should be visible to the next read...
+        m_logStore.put(AuditEvent.BUNDLE_STARTED, new Properties());
+        List<Event> events = (List<Event>) m_logStore.get(ids[0], count, count + 1);
+        assert events.size() == 2 : "Range should contain two entries, but contained " + events.size();
+        assert events.get(1).getType() == AuditEvent.BUNDLE_STARTED : "Last entry should be the new entry";
+    }
+
     @Test(expectedExceptions = { IOException.class })
     public void testExceptionHandling() throws IOException {
         m_logStore.handleException(m_logStore.getLog(4711), new IOException("test"));
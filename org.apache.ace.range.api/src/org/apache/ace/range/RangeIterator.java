@@ -18,7 +18,6 @@
  */
 package org.apache.ace.range;
 
-import java.util.ListIterator;
 import java.util.NoSuchElementException;
 
 import org.osgi.annotation.versioning.ProviderType;
@@ -32,93 +31,79 @@ import org.osgi.annotation.versioning.ProviderType;
  */
 @ProviderType
 public class RangeIterator {
-    private final ListIterator m_iterator;
-    private Range m_current;
+    private final long[] m_ranges;
+    private final int m_size;
+    private final boolean m_reverseOrder;
+    /** index of the low bound of the current range, or -1 if we did not start yet. */
+    private int m_index;
     private long m_number;
-    private boolean m_reverseOrder;
 
-    RangeIterator(ListIterator iterator, boolean reverseOrder) {
-        m_iterator = iterator;
+    RangeIterator(long[] ranges, int size, boolean reverseOrder) {
+        m_ranges = ranges;
+        m_size = size;
         m_reverseOrder = reverseOrder;
+        m_index = -1;
     }
 
     public boolean hasNext() {
         return m_reverseOrder ? hasPreviousElement() : hasNextElement();
     }
-    
+
     public long next() {
         return m_reverseOrder ? previousElement() : nextElement();
     }
-    
+
     private boolean hasNextElement() {
-        if (m_current == null) {
-            return m_iterator.hasNext();
-        }
-        if (m_number == m_current.getHigh()) {
-            return m_iterator.hasNext();
-        }
-        else {
-            return true;
+        if (m_index < 0) {
+            return m_size > 0;
         }
+        return (m_number != m_ranges[m_index + 1]) || (m_index + 2 < m_size);
     }
-    
+
     private boolean hasPreviousElement() {
-        if (m_current == null) {
-            return m_iterator.hasPrevious();
-        }
-        if (m_number == m_current.getLow()) {
-            return m_iterator.hasPrevious();
-        }
-        else {
-            return true;
+        if (m_index < 0) {
+            return m_size > 0;
         }
+        return (m_number != m_ranges[m_index]) || (m_index > 0);
     }
 
     private long nextElement() {
-        if (m_current == null) {
-            if (m_iterator.hasNext()) {
-                m_current = (Range) m_iterator.next();
-                m_number = m_current.getLow();
+        if (m_index < 0) {
+            if (m_size > 0) {
+                m_index = 0;
+                m_number = m_ranges[m_index];
                 return m_number;
             }
         }
-        else {
-            if (m_number == m_current.getHigh()) {
-                if (m_iterator.hasNext()) {
-                    m_current = (Range) m_iterator.next();
-                    m_number = m_current.getLow();
-                    return m_number;
-                }
-            }
-            else {
-                m_number++;
-                return m_number;
-            }
+        else if (m_number != m_ranges[m_index + 1]) {
+            m_number++;
+            return m_number;
+        }
+        else if (m_index + 2 < m_size) {
+            m_index += 2;
+            m_number = m_ranges[m_index];
+            return m_number;
         }
         throw new NoSuchElementException();
     }
 
     private long previousElement() {
-        if (m_current == null) {
-            if (m_iterator.hasPrevious()) {
-                m_current = (Range) m_iterator.previous();
-                m_number = m_current.getHigh();
+        if (m_index < 0) {
+            if (m_size > 0) {
+                m_index = m_size - 2;
+                m_number = m_ranges[m_index + 1];
                 return m_number;
             }
         }
-        else {
-            if (m_number == m_current.getLow()) {
-                if (m_iterator.hasPrevious()) {
-                    m_current = (Range) m_iterator.previous();
-                    m_number = m_current.getHigh();
-                    return m_number;
-                }
-            }
-            else {
-                m_number--;
-                return m_number;
-            }
+        else if (m_number != m_ranges[m_index]) {
+            m_number--;
+            return m_number;
+        }
+        else if (m_index > 0) {
+            m_index -= 2;
+            m_number = m_ranges[m_index + 1];
+            return m_number;
         }
         throw new NoSuchElementException();
     }
-}
\ No newline at end of file
+}
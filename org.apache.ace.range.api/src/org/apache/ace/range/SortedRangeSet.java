@@ -18,11 +18,9 @@
  */
 package org.apache.ace.range;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
 import org.osgi.annotation.versioning.ProviderType;
@@ -30,6 +28,11 @@ import org.osgi.annotation.versioning.ProviderType;
 /**
  * Collection that stores a sorted set of ranges and is able to represent them
  * as a string.
+ * <p>
+ * The ranges are stored in a packed array of longs, in which each range takes
+ * two consecutive slots: its lower and its higher bound. The ranges are sorted
+ * and never overlap, which allows for binary searches and for set operations
+ * that work on whole ranges instead of on individual numbers.
  */
 @ProviderType
 public class SortedRangeSet {
@@ -42,7 +45,10 @@ public class SortedRangeSet {
         }
     };
 
-    private List<Range> m_ranges = new ArrayList<>();
+    /** low and high bounds of all ranges, packed as [low0, high0, low1, high1, ...]. */
+    private long[] m_ranges;
+    /** number of slots in use, always twice the number of ranges. */
+    private int m_size;
 
     /**
      * Creates a new instance from a string representation.
@@ -51,9 +57,18 @@ public class SortedRangeSet {
      * @throws NumberFormatException If the string representation does not contain a valid <code>SortedRangeSet</code>.
      */
     public SortedRangeSet(String representation) {
+        this(4);
+        boolean sorted = true;
         StringTokenizer st = new StringTokenizer(representation, ",");
         while (st.hasMoreTokens()) {
-            m_ranges.add(new Range(st.nextToken()));
+            Range r = new Range(st.nextToken());
+            if (m_size > 0 && r.getLow() <= m_ranges[m_size - 1]) {
+                sorted = false;
+            }
+            append(r.getLow(), r.getHigh());
+        }
+        if (!sorted) {
+            normalize();
         }
     }
 
@@ -64,31 +79,16 @@ public class SortedRangeSet {
      * @param items Array of longs
      */
     public SortedRangeSet(long[] items) {
+        this(4);
         Arrays.sort(items);
-        Range r = null;
         for (int i = 0; i < items.length; i++) {
-            if (r == null) {
-                r = new Range(items[i]);
-            }
-            else {
-                if (items[i] == r.getHigh()) {
-                    // ignore this duplicate
-                }
-                else if (items[i] == r.getHigh() + 1) {
-                    r.setHigh(items[i]);
-                }
-                else {
-                    m_ranges.add(r);
-                    r = new Range(items[i]);
-                }
-            }
-        }
-        if (r != null) {
-            m_ranges.add(r);
+            add(items[i], items[i]);
         }
     }
 
-    private SortedRangeSet() {
+    private SortedRangeSet(int capacity) {
+        m_ranges = new long[Math.max(2, capacity)];
+        m_size = 0;
     }
 
     /**
@@ -97,14 +97,15 @@ public class SortedRangeSet {
      * @return A string representation of the <code>SortedRangeSet</code>.
      */
     public String toRepresentation() {
-        StringBuffer result = new StringBuffer();
-        Iterator<Range> i = m_ranges.iterator();
-        while (i.hasNext()) {
-            Range r = i.next();
-            if (result.length() > 0) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < m_size; i += 2) {
+            if (i > 0) {
                 result.append(',');
             }
-            result.append(r.toRepresentation());
+            result.append(m_ranges[i]);
+            if (m_ranges[i] != m_ranges[i + 1]) {
+                result.append('-').append(m_ranges[i + 1]);
+            }
         }
         return result.toString();
     }
@@ -114,17 +115,37 @@ public class SortedRangeSet {
      * <code>result = dest \ this</code>,<br>
      * that is, if <code>dest = {1, 2}</code> and <code>this = {2, 3}</code>, then
      * <code>result = {1, 2} \ {2, 3} = {1}</code>
-     * 
+     *
      * @param dest The set from which this set should be 'set-minussed'.
      * @return The resulting set after the diff.
      */
     public SortedRangeSet diffDest(SortedRangeSet dest) {
-        SortedRangeSet result = new SortedRangeSet();
-        RangeIterator i = dest.iterator();
-        while (i.hasNext()) {
-            long number = i.next();
-            if (!contains(number)) {
-                result.add(number);
+        SortedRangeSet result = new SortedRangeSet(dest.m_size);
+        int j = 0;
+        for (int i = 0; i < dest.m_size; i += 2) {
+            long low = dest.m_ranges[i];
+            long high = dest.m_ranges[i + 1];
+            // skip all our ranges that end before the current range starts...
+            while (j < m_size && m_ranges[j + 1] < low) {
+                j += 2;
+            }
+            // cut out all our ranges that overlap with the current range...
+            boolean remaining = true;
+            int k = j;
+            while (k < m_size && m_ranges[k] <= high) {
+                if (m_ranges[k] > low) {
+                    result.add(low, m_ranges[k] - 1);
+                }
+                if (m_ranges[k + 1] >= high) {
+                    // nothing of the current range remains...
+                    remaining = false;
+                    break;
+                }
+                low = m_ranges[k + 1] + 1;
+                k += 2;
+            }
+            if (remaining) {
+                result.add(low, high);
             }
         }
         return result;
@@ -137,56 +158,63 @@ public class SortedRangeSet {
      * @return <code>true</code> if the number was inside any range in this set
      */
     public boolean contains(long number) {
-        Iterator<Range> i = m_ranges.iterator();
-        while (i.hasNext()) {
-            Range r = i.next();
-            if (r.contains(number)) {
-                return true;
+        // find the last range with a lower bound that is not larger than the given number...
+        int lo = 0;
+        int hi = (m_size / 2) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (m_ranges[mid * 2] <= number) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid - 1;
             }
         }
-        return false;
+        return (hi >= 0) && (m_ranges[hi * 2 + 1] >= number);
     }
 
     /**
-     * Adds a number to the set of ranges. Tries to be as smart as possible about it.
-     *
-     * @param number the number to add
+     * Appends a range to the end of this set, merging it with the last range if they overlap or are adjacent. The
+     * given range cannot start before the last range in this set.
      */
-    private void add(long number) {
-        ListIterator<Range> i = m_ranges.listIterator();
-        while (i.hasNext()) {
-            int index = i.nextIndex();
-            Range r = i.next();
-            if (r.contains(number)) {
-                return;
-            }
-            long low = r.getLow();
-            long high = r.getHigh();
-            if (number < low) {
-                if (number == (low - 1)) {
-                    r.setLow(number);
-                    return;
-                }
-                else {
-                    Range nr = new Range(number);
-                    m_ranges.add(index, nr);
-                    return;
-                }
-            }
-            if (number == (high + 1)) {
-                r.setHigh(number);
-                if (i.hasNext()) {
-                    Range nr = (Range) i.next();
-                    if (number == nr.getLow() - 1) {
-                        r.setHigh(nr.getHigh());
-                        i.remove();
-                    }
+    private void add(long low, long high) {
+        if (m_size > 0) {
+            long last = m_ranges[m_size - 1];
+            if (last == Long.MAX_VALUE || low <= last + 1) {
+                if (high > last) {
+                    m_ranges[m_size - 1] = high;
                 }
                 return;
             }
         }
-        Range nr = new Range(number);
-        m_ranges.add(nr);
+        append(low, high);
+    }
+
+    /**
+     * Appends a range to the end of this set without any checks.
+     */
+    private void append(long low, long high) {
+        if (m_size + 2 > m_ranges.length) {
+            m_ranges = Arrays.copyOf(m_ranges, m_ranges.length * 2);
+        }
+        m_ranges[m_size++] = low;
+        m_ranges[m_size++] = high;
+    }
+
+    /**
+     * Sorts the ranges in this set and merges all ranges that overlap.
+     */
+    private void normalize() {
+        int count = m_size / 2;
+        Range[] ranges = new Range[count];
+        for (int i = 0; i < count; i++) {
+            ranges[i] = new Range(m_ranges[i * 2], m_ranges[i * 2 + 1]);
+        }
+        Arrays.sort(ranges, (r1, r2) -> Long.compare(r1.getLow(), r2.getLow()));
+        m_size = 0;
+        for (Range r : ranges) {
+            add(r.getLow(), r.getHigh());
+        }
     }
 
     /**
@@ -195,25 +223,48 @@ public class SortedRangeSet {
      * @return a range iterator
      */
     public RangeIterator iterator() {
-        return new RangeIterator(m_ranges.listIterator(), false);
+        return new RangeIterator(m_ranges, m_size, false);
     }
-    
+
     /**
      * Returns an iterator that iterates over all the ranges in this set in reverse order.
-     * 
+     *
      * @return a range iterator
      */
     public RangeIterator reverseIterator() {
-        return new RangeIterator(m_ranges.listIterator(m_ranges.size()), true);
+        return new RangeIterator(m_ranges, m_size, true);
     }
-    
+
     /**
-     * Returns an iterator that iterates over all the <code>Range</code> instances in this set.
-     * 
+     * Returns an iterator that iterates over all the <code>Range</code> instances in this set. The returned
+     * instances are copies, changing them does not affect this set.
+     *
      * @return an iterator of <code>Range</code> objects
      */
-    public Iterator rangeIterator() {
-        return m_ranges.iterator();
+    public Iterator<Range> rangeIterator() {
+        return new Iterator<Range>() {
+            private int m_index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return m_index < m_size;
+            }
+
+            @Override
+            public Range next() {
+                if (m_index >= m_size) {
+                    throw new NoSuchElementException();
+                }
+                Range result = new Range(m_ranges[m_index], m_ranges[m_index + 1]);
+                m_index += 2;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
     /**
@@ -223,10 +274,8 @@ public class SortedRangeSet {
      *     or <code>0</code> if the <code>SortedRangeSet</code> is empty.
      */
     public long getHigh() {
-        int size = m_ranges.size();
-        if (size > 0) {
-            Range range = m_ranges.get(size - 1);
-            return range.getHigh();
+        if (m_size > 0) {
+            return m_ranges[m_size - 1];
         }
         else {
             return 0;
@@ -235,27 +284,29 @@ public class SortedRangeSet {
 
     /**
      * Returns the union of this set and the provided set.
-     * 
+     *
      * @param dest a set to union with ourselves
      * @return the resulting set
      */
     public SortedRangeSet union(SortedRangeSet dest) {
-        SortedRangeSet result = new SortedRangeSet();
-        RangeIterator i = dest.iterator();
-        while (i.hasNext()) {
-            long number = i.next();
-            result.add(number);
-        }
-        i = iterator();
-        while (i.hasNext()) {
-            long number = i.next();
-            result.add(number);
+        SortedRangeSet result = new SortedRangeSet(m_size + dest.m_size);
+        int i = 0;
+        int j = 0;
+        while (i < m_size || j < dest.m_size) {
+            if (j >= dest.m_size || (i < m_size && m_ranges[i] <= dest.m_ranges[j])) {
+                result.add(m_ranges[i], m_ranges[i + 1]);
+                i += 2;
+            }
+            else {
+                result.add(dest.m_ranges[j], dest.m_ranges[j + 1]);
+                j += 2;
+            }
         }
         return result;
     }
-    
+
     @Override
     public String toString() {
         return "SortedRangeSet[" + toRepresentation() + "]";
     }
-}
\ No newline at end of file
+}
@@ -19,6 +19,8 @@
 package org.apache.ace.range;
 
 import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -137,6 +139,82 @@ public class SortedRangeSetTest {
         Assert.assertEquals((new SortedRangeSet(new long[] { 3, 2, 1 })).toRepresentation(), (new SortedRangeSet(new long[] { 1, 2, 3, 2, 1 })).toRepresentation());
     }
 
+    @Test()
+    public void containsUsesAllRanges() {
+        SortedRangeSet s1 = new SortedRangeSet("1-3,5,7-10,12,20-30");
+        long[] in = { 1, 2, 3, 5, 7, 10, 12, 20, 25, 30 };
+        long[] out = { 0, 4, 6, 11, 13, 19, 31, Long.MAX_VALUE };
+        for (long l : in) {
+            assert s1.contains(l) : "Set should contain " + l;
+        }
+        for (long l : out) {
+            assert !s1.contains(l) : "Set should not contain " + l;
+        }
+        assert !new SortedRangeSet("").contains(0) : "Empty set should not contain anything";
+    }
+
+    @Test()
+    public void unsortedRepresentationIsNormalized() {
+        SortedRangeSet s1 = new SortedRangeSet("8-10,1-3,2-5");
+        Assert.assertEquals(s1.toRepresentation(), "1-5,8-10");
+        assert s1.contains(4) && s1.contains(9) && !s1.contains(6) : "Normalized set has wrong contents";
+        // sorted representations are kept as they are...
+        Assert.assertEquals(new SortedRangeSet("1-3,4").toRepresentation(), "1-3,4");
+    }
+
+    @Test()
+    public void setOperationsOnLargeRanges() {
+        SortedRangeSet all = new SortedRangeSet("1-10000000");
+        SortedRangeSet gaps = new SortedRangeSet("1-99,101-4999999,5000001-9999999");
+        Assert.assertEquals(gaps.diffDest(all).toRepresentation(), "100,5000000,10000000");
+        Assert.assertEquals(all.diffDest(gaps).toRepresentation(), "");
+        Assert.assertEquals(gaps.union(new SortedRangeSet("100,5000000")).toRepresentation(), "1-9999999");
+        Assert.assertEquals(new SortedRangeSet("0-" + Long.MAX_VALUE).diffDest(SortedRangeSet.FULL_SET).toRepresentation(), "");
+        Assert.assertEquals(new SortedRangeSet("5").diffDest(SortedRangeSet.FULL_SET).toRepresentation(), "0-4,6-" + Long.MAX_VALUE);
+        Assert.assertEquals(new SortedRangeSet("5").union(SortedRangeSet.FULL_SET).toRepresentation(), "0-" + Long.MAX_VALUE);
+    }
+
+    @Test()
+    public void setOperationsMatchIndividualNumbers() {
+        Random rnd = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            TreeSet<Long> a = randomSet(rnd);
+            TreeSet<Long> b = randomSet(rnd);
+            SortedRangeSet sa = toRangeSet(a);
+            SortedRangeSet sb = toRangeSet(b);
+
+            TreeSet<Long> union = new TreeSet<>(a);
+            union.addAll(b);
+            Assert.assertEquals(sa.union(sb).toRepresentation(), toRangeSet(union).toRepresentation());
+
+            TreeSet<Long> diff = new TreeSet<>(b);
+            diff.removeAll(a);
+            Assert.assertEquals(sa.diffDest(sb).toRepresentation(), toRangeSet(diff).toRepresentation());
+
+            for (long l = 0; l < 70; l++) {
+                Assert.assertEquals(sa.contains(l), a.contains(l));
+            }
+        }
+    }
+
+    private static TreeSet<Long> randomSet(Random rnd) {
+        TreeSet<Long> result = new TreeSet<>();
+        int count = rnd.nextInt(40);
+        for (int i = 0; i < count; i++) {
+            result.add(Long.valueOf(rnd.nextInt(64)));
+        }
+        return result;
+    }
+
+    private static SortedRangeSet toRangeSet(TreeSet<Long> set) {
+        long[] items = new long[set.size()];
+        int i = 0;
+        for (Long l : set) {
+            items[i++] = l.longValue();
+        }
+        return new SortedRangeSet(items);
+    }
+
     @Test(expectedExceptions = IllegalArgumentException.class)
     public void invalidRange() {
         new SortedRangeSet("8-5");
@@ -27,4 +27,5 @@ public interface RepositoryConstants
     public static final String REPOSITORY_BASE_DIR = "basedir";
     public static final String REPOSITORY_FILE_EXTENSION = "fileextension";
     public static final String REPOSITORY_LIMIT = "limit";
+    public static final String REPOSITORY_SNAPSHOT_INTERVAL = "snapshotinterval";
 }
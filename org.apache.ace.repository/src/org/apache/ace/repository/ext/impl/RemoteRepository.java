@@ -41,12 +41,28 @@ import org.osgi.annotation.versioning.ConsumerType;
  */
 @ConsumerType
 public class RemoteRepository implements Repository {
+    /**
+     * The last range obtained from the remote repository, along with the entity tag the server gave it.
+     */
+    private static final class CachedRange {
+        final String m_etag;
+        final SortedRangeSet m_range;
+
+        CachedRange(String etag, SortedRangeSet range) {
+            m_etag = etag;
+            m_range = range;
+        }
+    }
+
     private static final String COMMAND_QUERY = "/query";
     private static final String COMMAND_CHECKOUT = "/checkout";
     private static final String COMMAND_COMMIT = "/commit";
 
     private static final String MIME_APPLICATION_OCTET_STREAM = "application/octet-stream";
 
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
     private static final int COPY_BUFFER_SIZE = 64 * 1024;
 
     private final URL m_url;
@@ -54,6 +70,7 @@ public class RemoteRepository implements Repository {
     private final String m_name;
 
     private volatile ConnectionFactory m_connectionFactory;
+    private volatile CachedRange m_cachedRange;
 
     /**
      * Creates a remote repository that connects to a given location with a given customer- and repository name.
@@ -141,8 +158,18 @@ public class RemoteRepository implements Repository {
 
         HttpURLConnection connection = (HttpURLConnection) m_connectionFactory.createConnection(url);
 
+        // Let the server tell us whether the range we've got is still valid...
+        CachedRange cached = m_cachedRange;
+        if (cached != null) {
+            connection.setRequestProperty(HEADER_IF_NONE_MATCH, cached.m_etag);
+        }
+
         try {
-            if (connection.getResponseCode() == HttpServletResponse.SC_OK) {
+            int rc = connection.getResponseCode();
+            if (rc == HttpServletResponse.SC_NOT_MODIFIED && cached != null) {
+                return cached.m_range;
+            }
+            if (rc == HttpServletResponse.SC_OK) {
                 BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
                 try {
                     String line = reader.readLine();
@@ -151,7 +178,11 @@ public class RemoteRepository implements Repository {
                     }
 
                     String representation = line.substring(line.lastIndexOf(','));
-                    return new SortedRangeSet(representation);
+                    SortedRangeSet range = new SortedRangeSet(representation);
+
+                    String etag = connection.getHeaderField(HEADER_ETAG);
+                    m_cachedRange = (etag == null) ? null : new CachedRange(etag, range);
+                    return range;
                 }
                 finally {
                     reader.close();
@@ -29,11 +29,16 @@ import org.osgi.service.log.LogService;
 import org.osgi.service.prefs.PreferencesService;
 
 public class Activator extends DependencyActivatorBase {
+    // Use the plain property names for shell commands to avoid a dependency on the Gogo runtime...
+    private static final String COMMAND_SCOPE = "osgi.command.scope";
+    private static final String COMMAND_FUNCTION = "osgi.command.function";
 
     @Override
     public void init(BundleContext context, DependencyManager manager) throws Exception {
         Properties props = new Properties();
         props.put(Constants.SERVICE_PID, "org.apache.ace.server.repository.factory");
+        props.put(COMMAND_SCOPE, "repository");
+        props.put(COMMAND_FUNCTION, new String[] { "metrics" });
         manager.add(createComponent()
             .setInterface(ManagedServiceFactory.class.getName(), props)
             .setImplementation(new RepositoryFactory(manager))
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.repository.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the commits made to a single repository.
+ */
+final class CommitMetrics {
+    private final AtomicInteger m_queued = new AtomicInteger();
+    private final AtomicLong m_commits = new AtomicLong();
+    private final AtomicLong m_failures = new AtomicLong();
+    private final AtomicLong m_batches = new AtomicLong();
+    private final AtomicLong m_totalLatency = new AtomicLong();
+    private final AtomicLong m_maxLatency = new AtomicLong();
+
+    /**
+     * Called when a commit is queued.
+     */
+    void queued() {
+        m_queued.incrementAndGet();
+    }
+
+    /**
+     * Called when a batch of queued commits is taken by the writer.
+     * 
+     * @param size the number of commits in the batch.
+     */
+    void batched(int size) {
+        m_queued.addAndGet(-size);
+        m_batches.incrementAndGet();
+    }
+
+    /**
+     * Called when a commit is completed.
+     * 
+     * @param latency the time (in nanoseconds) between queueing and completing the commit;
+     * @param failed <code>true</code> if the commit failed, <code>false</code> otherwise.
+     */
+    void completed(long latency, boolean failed) {
+        m_commits.incrementAndGet();
+        if (failed) {
+            m_failures.incrementAndGet();
+        }
+        m_totalLatency.addAndGet(latency);
+        long max;
+        do {
+            max = m_maxLatency.get();
+        }
+        while (latency > max && !m_maxLatency.compareAndSet(max, latency));
+    }
+
+    /**
+     * @return the number of commits currently waiting for the writer.
+     */
+    int getQueueDepth() {
+        return m_queued.get();
+    }
+
+    long getCommits() {
+        return m_commits.get();
+    }
+
+    long getFailures() {
+        return m_failures.get();
+    }
+
+    long getBatches() {
+        return m_batches.get();
+    }
+
+    /**
+     * @return the average time (in milliseconds) between queueing and completing a commit.
+     */
+    long getAverageLatency() {
+        long commits = m_commits.get();
+        return (commits == 0) ? 0 : TimeUnit.NANOSECONDS.toMillis(m_totalLatency.get() / commits);
+    }
+
+    /**
+     * @return the longest time (in milliseconds) between queueing and completing a commit.
+     */
+    long getMaxLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(m_maxLatency.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d commits (%d failed) in %d batches, %d queued, %d ms average, %d ms max", getCommits(), getFailures(), getBatches(), getQueueDepth(), getAverageLatency(), getMaxLatency());
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.repository.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes and decodes binary deltas between two versions of a repository. A delta consists of a small header followed
+ * by a sequence of instructions, each of which either copies a range of bytes from the source (the previous version)
+ * or adds literal bytes. It is terminated by a CRC-32 checksum of the resulting content, so a corrupt delta or the use of
+ * the wrong source is detected upon decoding.
+ * <p>
+ * Matches are found by indexing the source in fixed size blocks, after which a rolling hash over the target is used to
+ * look up candidate blocks. This finds all insertions, deletions and modifications that are at least one block apart,
+ * which is the common case for (uncompressed) repository contents, where a commit usually changes a few elements only.
+ */
+final class DeltaCodec {
+    /** "ACED" */
+    private static final int MAGIC = 0x41434544;
+    private static final int FORMAT_VERSION = 1;
+    /** Denotes that the content is to be compressed with GZIP after decoding. */
+    static final int FLAG_GZIP = 0x01;
+
+    private static final int OP_END = 0;
+    private static final int OP_COPY = 1;
+    private static final int OP_ADD = 2;
+
+    private static final int MIN_BLOCK_SIZE = 16;
+    /** The maximum number of source blocks to index, bounds the memory needed for encoding. */
+    private static final int MAX_BLOCKS = 1 << 20;
+    private static final int HASH_BASE = 257;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Determines whether a delta can be made between the given files.
+     */
+    static boolean canEncode(File source, File target) {
+        return source.length() < Integer.MAX_VALUE && target.length() < Integer.MAX_VALUE;
+    }
+
+    /**
+     * Encodes the delta between a source and a target.
+     * 
+     * @param source
+     *            the source file to encode the delta against;
+     * @param target
+     *            the target file to encode;
+     * @param flags
+     *            the flags to store in the delta;
+     * @param out
+     *            the stream to write the delta to, is not closed by this method.
+     * @throws IOException
+     *             in case of I/O problems.
+     */
+    static void encode(File source, File target, int flags, OutputStream out) throws IOException {
+        if (!canEncode(source, target)) {
+            throw new IOException("Content too large to encode as delta!");
+        }
+        encode(read(source), read(target), flags, out);
+    }
+
+    /**
+     * Encodes the delta between a source and a target.
+     */
+    static void encode(ByteBuffer src, ByteBuffer tgt, int flags, OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(MAGIC);
+        dos.writeByte(FORMAT_VERSION);
+        dos.writeByte(flags);
+
+        int srcLen = src.limit();
+        int tgtLen = tgt.limit();
+        int blockSize = Math.max(MIN_BLOCK_SIZE, (srcLen / MAX_BLOCKS) + 1);
+
+        // Index the source in non-overlapping blocks...
+        int blocks = srcLen / blockSize;
+        int[] table = new int[Math.max(1024, Integer.highestOneBit(Math.max(1, blocks)) << 2)];
+        int mask = table.length - 1;
+        Arrays.fill(table, -1);
+        for (int b = blocks - 1; b >= 0; b--) {
+            // iterate backwards, so the first occurrence of a block wins...
+            table[hash(src, b * blockSize, blockSize) & mask] = b;
+        }
+
+        int pow = 1;
+        for (int i = 1; i < blockSize; i++) {
+            pow *= HASH_BASE;
+        }
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        int pos = 0;
+        int literalStart = 0;
+        int h = (tgtLen >= blockSize) ? hash(tgt, 0, blockSize) : 0;
+        while (pos + blockSize <= tgtLen) {
+            int candidate = (blocks > 0) ? table[h & mask] : -1;
+            if (candidate >= 0) {
+                int srcPos = candidate * blockSize;
+                if (equals(src, srcPos, tgt, pos, blockSize)) {
+                    // Extend the match forwards...
+                    int length = blockSize;
+                    while (pos + length < tgtLen && srcPos + length < srcLen && src.get(srcPos + length) == tgt.get(pos + length)) {
+                        length++;
+                    }
+                    // ...and backwards into the pending literal bytes...
+                    while (pos > literalStart && srcPos > 0 && src.get(srcPos - 1) == tgt.get(pos - 1)) {
+                        pos--;
+                        srcPos--;
+                        length++;
+                    }
+
+                    writeAdd(dos, tgt, literalStart, pos - literalStart, buffer, crc);
+                    writeCopy(dos, src, srcPos, length, buffer, crc);
+
+                    pos += length;
+                    literalStart = pos;
+                    if (pos + blockSize <= tgtLen) {
+                        h = hash(tgt, pos, blockSize);
+                    }
+                    continue;
+                }
+            }
+            // No match, roll on to the next position...
+            if (pos + blockSize < tgtLen) {
+                h = (h - (tgt.get(pos) & 0xFF) * pow) * HASH_BASE + (tgt.get(pos + blockSize) & 0xFF);
+            }
+            pos++;
+        }
+        writeAdd(dos, tgt, literalStart, tgtLen - literalStart, buffer, crc);
+
+        dos.writeByte(OP_END);
+        dos.writeLong(crc.getValue());
+        dos.flush();
+    }
+
+    /**
+     * Decodes a delta against a given source.
+     * 
+     * @param source
+     *            the source file the delta was encoded against;
+     * @param delta
+     *            the stream with the delta to decode, is not closed by this method;
+     * @param out
+     *            the stream to write the decoded content to, is not closed by this method.
+     * @return the flags of the decoded delta.
+     * @throws IOException
+     *             in case the delta is invalid, or in case of I/O problems.
+     */
+    static int decode(File source, InputStream delta, OutputStream out) throws IOException {
+        return decode(read(source), delta, out);
+    }
+
+    /**
+     * Decodes a delta against a given source.
+     */
+    static int decode(ByteBuffer src, InputStream delta, OutputStream out) throws IOException {
+        DataInputStream in = new DataInputStream(delta);
+        int flags = readHeader(in);
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int op;
+            while ((op = in.readUnsignedByte()) != OP_END) {
+                if (op == OP_COPY) {
+                    long offset = readVarLong(in);
+                    long length = readVarLong(in);
+                    if (offset + length > src.limit()) {
+                        throw new IOException("Invalid delta: copy beyond end of source!");
+                    }
+                    ByteBuffer range = src.duplicate();
+                    range.position((int) offset);
+                    while (length > 0) {
+                        int count = (int) Math.min(length, buffer.length);
+                        range.get(buffer, 0, count);
+                        crc.update(buffer, 0, count);
+                        out.write(buffer, 0, count);
+                        length -= count;
+                    }
+                }
+                else if (op == OP_ADD) {
+                    long length = readVarLong(in);
+                    while (length > 0) {
+                        int count = (int) Math.min(length, buffer.length);
+                        in.readFully(buffer, 0, count);
+                        crc.update(buffer, 0, count);
+                        out.write(buffer, 0, count);
+                        length -= count;
+                    }
+                }
+                else {
+                    throw new IOException("Invalid delta: unknown instruction " + op + "!");
+                }
+            }
+            if (in.readLong() != crc.getValue()) {
+                throw new IOException("Invalid delta: checksum mismatch!");
+            }
+        }
+        catch (EOFException e) {
+            throw new IOException("Invalid delta: unexpected end of data!", e);
+        }
+        out.flush();
+        return flags;
+    }
+
+    private static boolean equals(ByteBuffer a, int aPos, ByteBuffer b, int bPos, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a.get(aPos + i) != b.get(bPos + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(ByteBuffer buf, int pos, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = h * HASH_BASE + (buf.get(pos + i) & 0xFF);
+        }
+        return h;
+    }
+
+    /**
+     * Reads a file into memory. Files are deliberately not memory mapped: on some platforms, a mapped file cannot be
+     * deleted or renamed until its mapping is garbage collected.
+     */
+    private static ByteBuffer read(File file) throws IOException {
+        if (file.length() >= Integer.MAX_VALUE) {
+            throw new IOException("Content too large to read into memory!");
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    }
+
+    private static int readHeader(DataInputStream in) throws IOException {
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Invalid delta: no delta header found!");
+            }
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Invalid delta: unsupported format version " + version + "!");
+            }
+            return in.readUnsignedByte();
+        }
+        catch (EOFException e) {
+            throw new IOException("Invalid delta: no delta header found!", e);
+        }
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 63) {
+                throw new IOException("Invalid delta: malformed number!");
+            }
+            b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+        return result;
+    }
+
+    private static void writeAdd(DataOutputStream out, ByteBuffer tgt, int pos, int length, byte[] buffer, CRC32 crc) throws IOException {
+        if (length <= 0) {
+            return;
+        }
+        out.writeByte(OP_ADD);
+        writeVarLong(out, length);
+
+        ByteBuffer range = tgt.duplicate();
+        range.position(pos);
+        while (length > 0) {
+            int count = Math.min(length, buffer.length);
+            range.get(buffer, 0, count);
+            crc.update(buffer, 0, count);
+            out.write(buffer, 0, count);
+            length -= count;
+        }
+    }
+
+    private static void writeCopy(DataOutputStream out, ByteBuffer src, int pos, int length, byte[] buffer, CRC32 crc) throws IOException {
+        out.writeByte(OP_COPY);
+        writeVarLong(out, pos);
+        writeVarLong(out, length);
+
+        ByteBuffer range = src.duplicate();
+        range.position(pos);
+        while (length > 0) {
+            int count = Math.min(length, buffer.length);
+            range.get(buffer, 0, count);
+            crc.update(buffer, 0, count);
+            length -= count;
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private DeltaCodec() {
+        // Nop
+    }
+}
@@ -25,6 +25,7 @@ import static org.apache.ace.repository.RepositoryConstants.REPOSITORY_INITIAL_C
 import static org.apache.ace.repository.RepositoryConstants.REPOSITORY_LIMIT;
 import static org.apache.ace.repository.RepositoryConstants.REPOSITORY_MASTER;
 import static org.apache.ace.repository.RepositoryConstants.REPOSITORY_NAME;
+import static org.apache.ace.repository.RepositoryConstants.REPOSITORY_SNAPSHOT_INTERVAL;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -32,6 +33,7 @@ import java.io.IOException;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -133,6 +135,27 @@ public class RepositoryFactory implements ManagedServiceFactory {
         return "RepositoryFactory";
     }
 
+    /**
+     * Shell command that shows the commit metrics per repository.
+     */
+    public void metrics() {
+        Map<String, String> metrics = new TreeMap<>();
+        for (Map.Entry<Entry, String> entry : m_index.entrySet()) {
+            Component service = m_instances.get(entry.getValue());
+            if (service != null) {
+                RepositoryImpl repository = (RepositoryImpl) service.getInstance();
+                metrics.put(entry.getKey().toString(), repository.getCommitMetrics().toString());
+            }
+        }
+        if (metrics.isEmpty()) {
+            System.out.println("No repositories configured.");
+            return;
+        }
+        for (Map.Entry<String, String> entry : metrics.entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
     /**
      * Called by Felix DM.
      */
@@ -207,11 +230,25 @@ public class RepositoryFactory implements ManagedServiceFactory {
             }
         }
 
+        String snapshotInterval = (String) dict.get(REPOSITORY_SNAPSHOT_INTERVAL);
+        long snapshotIntervalValue = 1L;
+        if (snapshotInterval != null) {
+            try {
+                snapshotIntervalValue = Long.parseLong(snapshotInterval);
+            }
+            catch (NumberFormatException nfe) {
+                throw new ConfigurationException(REPOSITORY_SNAPSHOT_INTERVAL, "Snapshot interval has to be a number, was: " + snapshotInterval);
+            }
+            if (snapshotIntervalValue < 1) {
+                throw new ConfigurationException(REPOSITORY_SNAPSHOT_INTERVAL, "Snapshot interval has to be at least 1, was " + snapshotInterval);
+            }
+        }
+
         String initialContents = (String) dict.get(REPOSITORY_INITIAL_CONTENT);
 
         Component service = m_manager.createComponent()
             .setInterface(new String[] { RepositoryReplication.class.getName(), Repository.class.getName() }, dict)
-            .setImplementation(createRepositoryStore(pid, baseDir, isMaster, limitValue, fileExtension, initialContents))
+            .setImplementation(createRepositoryStore(pid, baseDir, isMaster, limitValue, snapshotIntervalValue, fileExtension, initialContents))
             .add(m_manager.createServiceDependency().setService(LogService.class).setRequired(false));
 
         Component oldService = m_instances.putIfAbsent(pid, service);
@@ -231,13 +268,13 @@ public class RepositoryFactory implements ManagedServiceFactory {
                 m_log.log(LogService.LOG_WARNING, "Cannot update file extension of repository from " + store.getFileExtension() + " to " + fileExtension);
             }
 
-            store.updated(isMaster, limitValue);
+            store.updated(isMaster, limitValue, snapshotIntervalValue);
         }
     }
 
-    private RepositoryImpl createRepositoryStore(String pid, File baseDir, boolean isMaster, long limitValue, String fileExtension, String initialContents) {
+    private RepositoryImpl createRepositoryStore(String pid, File baseDir, boolean isMaster, long limitValue, long snapshotIntervalValue, String fileExtension, String initialContents) {
         File dir = ensureDirectoryAvailable(new File(baseDir, pid));
-        RepositoryImpl store = new RepositoryImpl(dir, m_tempDir, fileExtension, isMaster, limitValue);
+        RepositoryImpl store = new RepositoryImpl(dir, m_tempDir, fileExtension, isMaster, limitValue, snapshotIntervalValue);
         if ((initialContents != null) && isMaster) {
             try {
                 // Do not even try to commit initial contents for existing repositories...
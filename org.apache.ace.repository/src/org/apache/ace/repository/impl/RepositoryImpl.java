@@ -19,6 +19,7 @@
 package org.apache.ace.repository.impl;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
@@ -27,8 +28,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
 
+import org.apache.ace.range.Range;
+import org.apache.ace.range.RangeIterator;
 import org.apache.ace.range.SortedRangeSet;
 import org.apache.ace.repository.Repository;
 import org.apache.ace.repository.RepositoryConstants;
@@ -45,13 +62,77 @@ import org.osgi.service.log.LogService;
  * versions</li>
  * </ul>
  * A repository can be either a master or a slave repository. Committing a new version is only possible on a master
- * repository.
+ * repository. All commits are queued and written by a single writer, which is whichever committer obtains the write
+ * lock first: it takes all commits queued so far and writes them as a single batch. This serializes the checks on the
+ * version that is committed against, while allowing the data of concurrent commits to be received in parallel. Each
+ * committer syncs its own data to disk while it is received; the writer only syncs the repository directory, once per
+ * batch, to persist the new files of all commits in the batch before they are published.
+ * <p>
+ * Optionally, a repository can store its versions as deltas against their previous version, with a full snapshot every
+ * given number of versions. Deltas are made over the uncompressed content of GZIP-compressed versions, and are only
+ * stored when they are smaller than the version itself. Upon checkout, such a version is reconstructed from its
+ * nearest snapshot. Note that the reconstructed (compressed) bytes can differ from the bytes originally stored, while
+ * their uncompressed content is identical.
  */
 public class RepositoryImpl implements RepositoryReplication, Repository {
+    /**
+     * The content of a version as used for creating deltas, which is the uncompressed content for GZIP-compressed
+     * versions.
+     */
+    private static final class Content {
+        final File m_file;
+        final boolean m_gzip;
+        final boolean m_temporary;
+
+        Content(File file, boolean gzip, boolean temporary) {
+            m_file = file;
+            m_gzip = gzip;
+            m_temporary = temporary;
+        }
+
+        void discard() {
+            if (m_temporary) {
+                m_file.delete();
+            }
+        }
+    }
+
+    /**
+     * A commit that is waiting to be written.
+     */
+    private static final class PendingCommit {
+        final File m_tempFile;
+        final byte[] m_digest;
+        final long m_fromVersion;
+        final long m_queued;
+        /* all guarded by m_writeLock */
+        boolean m_done;
+        boolean m_result;
+        IOException m_failure;
+
+        PendingCommit(File tempFile, byte[] digest, long fromVersion) {
+            m_tempFile = tempFile;
+            m_digest = digest;
+            m_fromVersion = fromVersion;
+            m_queued = System.nanoTime();
+        }
+    }
+
+    private static final String DELTA_SUFFIX = ".delta";
 
     private volatile LogService m_log; /* will be injected by dependency manager */
     private volatile boolean m_isMaster;
     private volatile long m_limit;
+    private volatile long m_snapshotInterval;
+    /** the versions stored in this repository, loaded upon first use and replaced after each change. */
+    private volatile SortedRangeSet m_catalog;
+    /** the digests of the data of stored versions, as far as they are known. */
+    private final ConcurrentMap<Long, byte[]> m_digests = new ConcurrentHashMap<>();
+    private final Object m_catalogLock = new Object();
+    private final Queue<PendingCommit> m_commitQueue = new ConcurrentLinkedQueue<>();
+    private final CommitMetrics m_metrics = new CommitMetrics();
+    /** serializes all changes to the stored versions. */
+    private final Object m_writeLock = new Object();
 
     private final File m_tempDir;
     private final File m_dir;
@@ -126,6 +207,29 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
      *             If <code>dir</code> and/or <code>temp</code> could not be created or is not a directory.
      */
     public RepositoryImpl(File dir, File temp, String fileExtension, boolean isMaster, long limit) {
+        this(dir, temp, fileExtension, isMaster, limit, 1L);
+    }
+
+    /**
+     * Creates a new repository.
+     * 
+     * @param dir
+     *            Directory to be used for storage of the repository data, will be created if needed.
+     * @param temp
+     *            Directory to be used as temp directory, will be created if needed.
+     * @param fileExtension
+     *            Extension to be used for repository files.
+     * @param isMaster
+     *            True if this repository is a master repository, false otherwise.
+     * @param limit
+     *            The maximum number of versions to store in this repository.
+     * @param snapshotInterval
+     *            The maximum number of versions between two full snapshots, all versions in between are stored as
+     *            deltas. Use <code>1</code> to store all versions in full.
+     * @throws IllegalArgumentException
+     *             If <code>dir</code> and/or <code>temp</code> could not be created or is not a directory.
+     */
+    public RepositoryImpl(File dir, File temp, String fileExtension, boolean isMaster, long limit, long snapshotInterval) {
         m_isMaster = isMaster;
         if (!dir.isDirectory() && !dir.mkdirs()) {
             throw new IllegalArgumentException("Repository location is not a valid directory (" + dir.getAbsolutePath() + ")");
@@ -139,10 +243,14 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
         if (limit < 1) {
             throw new IllegalArgumentException("Limit must be at least 1, was " + limit);
         }
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("Snapshot interval must be at least 1, was " + snapshotInterval);
+        }
         m_tempDir = temp;
         m_dir = dir;
         m_fileExtension = fileExtension;
         m_limit = limit;
+        m_snapshotInterval = snapshotInterval;
     }
 
     public InputStream checkout(long version) throws IOException, IllegalArgumentException {
@@ -155,6 +263,9 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
         if (file.isFile()) {
             result = new FileInputStream(file);
         }
+        else if (getDeltaFilename(version).isFile()) {
+            result = reconstruct(version);
+        }
         return result;
     }
 
@@ -166,24 +277,30 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
             throw new IllegalArgumentException("Version must be greater than or equal to 0.");
         }
 
-        long[] versions = getVersions();
-        if (versions.length == 0) {
-            if (fromVersion != 0) {
-                throw new IOException("Repository already changed, cannot commit initial version!");
+        // Fail fast, before receiving all data, in case the repository already changed...
+        checkVersion(getCatalog().getHigh(), fromVersion);
+
+        MessageDigest digest = createDigest();
+        File tempFile = writeTempFile(data, digest, true /* sync */);
+        try {
+            PendingCommit commit = new PendingCommit(tempFile, digest.digest(), fromVersion);
+            m_commitQueue.add(commit);
+            m_metrics.queued();
+
+            synchronized (m_writeLock) {
+                if (!commit.m_done) {
+                    // Become the writer for all commits that are queued so far...
+                    writeCommits();
+                }
+                if (commit.m_failure != null) {
+                    throw new IOException(commit.m_failure.getMessage(), commit.m_failure);
+                }
+                return commit.m_result;
             }
-            return put(data, 1);
         }
-
-        long lastVersion = versions[versions.length - 1];
-        if (lastVersion != fromVersion) {
-            throw new IOException("Repository already changed, cannot commit version " + fromVersion + "!");
+        finally {
+            tempFile.delete();
         }
-
-        boolean result = put(data, fromVersion + 1);
-        // Make sure we do not exceed our max limit...
-        purgeOldFiles(getVersions(), m_limit);
-
-        return result;
     }
 
     public InputStream get(long version) throws IOException, IllegalArgumentException {
@@ -197,6 +314,13 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
         return m_dir;
     }
 
+    /**
+     * @return the metrics of the commits made to this repository.
+     */
+    CommitMetrics getCommitMetrics() {
+        return m_metrics;
+    }
+
     /**
      * @return the file extension used for this repository.
      */
@@ -209,57 +333,44 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
         return m_limit;
     }
 
+    /**
+     * @return the maximum number of versions between two full snapshots.
+     */
+    public long getSnapshotInterval() {
+        return m_snapshotInterval;
+    }
+
     public SortedRangeSet getRange() throws IOException {
-        return new SortedRangeSet(getVersions());
+        return getCatalog();
     }
 
     public boolean put(InputStream data, long version) throws IOException, IllegalArgumentException {
         if (version <= 0) {
             throw new IllegalArgumentException("Version must be greater than 0.");
         }
-        File file = getFilename(version);
-        if (file.exists()) {
+        if (getCatalog().contains(version)) {
             return false;
         }
 
-        // store stream in temp file
-        File tempFile = File.createTempFile("repository", null, m_tempDir);
-        OutputStream fileStream = null;
-
+        MessageDigest digest = createDigest();
+        File tempFile = writeTempFile(data, digest, false /* sync */);
         try {
-            fileStream = new FileOutputStream(tempFile);
-
-            byte[] buffer = new byte[1024];
-            int bytes;
-
-            while ((bytes = data.read(buffer)) >= 0) {
-                fileStream.write(buffer, 0, bytes);
-            }
-        }
-        catch (IOException e) {
-            String deleteMsg = "";
-            if (!tempFile.delete()) {
-                deleteMsg = " and was unable to remove temp file " + tempFile.getAbsolutePath();
+            synchronized (m_writeLock) {
+                SortedRangeSet catalog = getCatalog();
+                if (catalog.contains(version)) {
+                    return false;
+                }
+                if (!store(tempFile, digest.digest(), version, version > 1 && catalog.contains(version - 1))) {
+                    return false;
+                }
+                addToCatalog(new long[] { version });
+                return true;
             }
-            m_log.log(LogService.LOG_WARNING, "Error occurred while storing new version in repository" + deleteMsg, e);
-            throw e;
         }
         finally {
-            closeQuietly(fileStream);
-        }
-
-        // ACE-421: check whether there's a change in data...
-        if (version > 1) {
-            File current = getFilename(version - 1);
-            if (current.exists() && contentsEqual(current, tempFile)) {
-                return false;
-            }
+            // in case the temp file is not moved to its final location...
+            tempFile.delete();
         }
-
-        // move temp file to final location
-        renameFile(tempFile, file);
-
-        return true;
     }
 
     /**
@@ -271,6 +382,26 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
      *             If it was impossible to use the new configuration.
      */
     public void updated(boolean isMaster, long limit) throws ConfigurationException {
+        updated(isMaster, limit, m_snapshotInterval);
+    }
+
+    /**
+     * Updates the repository configuration.
+     * 
+     * @param isMaster
+     *            True if the repository is a master repository, false otherwise.
+     * @param limit
+     *            The maximum number of versions to store in this repository.
+     * @param snapshotInterval
+     *            The maximum number of versions between two full snapshots, only applies to new versions.
+     * @throws ConfigurationException
+     *             If it was impossible to use the new configuration.
+     */
+    public void updated(boolean isMaster, long limit, long snapshotInterval) throws ConfigurationException {
+        if (snapshotInterval < 1) {
+            throw new ConfigurationException(RepositoryConstants.REPOSITORY_SNAPSHOT_INTERVAL, "Snapshot interval must be at least 1, was " + snapshotInterval);
+        }
+        m_snapshotInterval = snapshotInterval;
         if (limit < 1) {
             throw new ConfigurationException(RepositoryConstants.REPOSITORY_LIMIT, "Limit must be at least 1, was " + limit);
         }
@@ -278,7 +409,9 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
         if (limit < m_limit) {
             // limit was decreased, we might need to delete some old versions
             try {
-                purgeOldFiles(getVersions(), limit);
+                synchronized (m_writeLock) {
+                    purgeOldFiles(limit);
+                }
             }
             catch (IOException e) {
                 throw new ConfigurationException(RepositoryConstants.REPOSITORY_LIMIT, "Could not set new limit to " + limit, e);
@@ -329,13 +462,15 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
         boolean result = true;
 
         try {
-            is1 = new BufferedInputStream(new FileInputStream(file1));
-            is2 = new BufferedInputStream(new FileInputStream(file2));
+            is1 = new FileInputStream(file1);
+            is2 = new FileInputStream(file2);
 
+            byte[] buffer1 = new byte[8192];
+            byte[] buffer2 = new byte[8192];
             int read;
-            while ((read = is1.read()) >= 0) {
-                int readData = is2.read();
-                if (readData != read) {
+            while ((read = readFully(is1, buffer1)) > 0) {
+                // both buffers are either filled completely, or end with the equal bytes of the previous round...
+                if (readFully(is2, buffer2) != read || !Arrays.equals(buffer1, buffer2)) {
                     result = false;
                     break;
                 }
@@ -358,12 +493,168 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
             throw new IllegalArgumentException("Version must be greater than 0.");
         }
         File file = getFilename(version);
+        if (!file.exists()) {
+            file = getDeltaFilename(version);
+        }
         if (file.exists()) {
-            return file.delete();
+            try {
+                return file.delete();
+            }
+            finally {
+                removeFromCatalog(version);
+            }
         }
         return false;
     }
 
+    /**
+     * Adds the given versions to the catalog of this repository in one go.
+     */
+    private void addToCatalog(long[] versions) throws IOException {
+        synchronized (m_catalogLock) {
+            m_catalog = getCatalog().union(new SortedRangeSet(versions));
+        }
+    }
+
+    /**
+     * Checks whether a commit against a given version is possible.
+     * 
+     * @throws IOException
+     *             in case the repository has changed since the given version.
+     */
+    private void checkVersion(long lastVersion, long fromVersion) throws IOException {
+        if (lastVersion == 0 && fromVersion != 0) {
+            throw new IOException("Repository already changed, cannot commit initial version!");
+        }
+        if (lastVersion != fromVersion) {
+            throw new IOException("Repository already changed, cannot commit version " + fromVersion + "!");
+        }
+    }
+
+    /**
+     * Returns the catalog of versions in this repository, which is only read from disk upon first use.
+     */
+    private SortedRangeSet getCatalog() throws IOException {
+        SortedRangeSet catalog = m_catalog;
+        if (catalog == null) {
+            synchronized (m_catalogLock) {
+                catalog = m_catalog;
+                if (catalog == null) {
+                    catalog = new SortedRangeSet(getVersions());
+                    m_catalog = catalog;
+                }
+            }
+        }
+        return catalog;
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256...
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the number of deltas that need to be applied to the nearest full snapshot to obtain the given version.
+     * 
+     * @return the length of the delta chain, or {@link Long#MAX_VALUE} in case the chain is broken.
+     */
+    private long getChainLength(long version) {
+        long length = 0;
+        long v = version;
+        while (!getFilename(v).isFile()) {
+            if (v <= 1 || !getDeltaFilename(v).isFile()) {
+                return Long.MAX_VALUE;
+            }
+            length++;
+            v--;
+        }
+        return length;
+    }
+
+    /**
+     * Obtains the content of a given version, applying all deltas needed to reconstruct it.
+     */
+    private Content getContent(long version) throws IOException {
+        File file = getFilename(version);
+        if (file.isFile()) {
+            return getContent(file);
+        }
+        File delta = getDeltaFilename(version);
+        if (!delta.isFile()) {
+            throw new IOException("Unable to reconstruct version " + version + ": version not found!");
+        }
+
+        Content base = getContent(version - 1);
+        try {
+            File result = File.createTempFile("repository", null, m_tempDir);
+            int flags;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(delta)); OutputStream out = new BufferedOutputStream(new FileOutputStream(result))) {
+                flags = DeltaCodec.decode(base.m_file, in, out);
+            }
+            catch (IOException e) {
+                result.delete();
+                throw new IOException("Unable to reconstruct version " + version + "!", e);
+            }
+            return new Content(result, (flags & DeltaCodec.FLAG_GZIP) != 0, true);
+        }
+        finally {
+            base.discard();
+        }
+    }
+
+    /**
+     * Obtains the content of a given file, uncompressing it if needed.
+     */
+    private Content getContent(File file) throws IOException {
+        if (isGzip(file)) {
+            File result = File.createTempFile("repository", null, m_tempDir);
+            try (InputStream in = new GZIPInputStream(new FileInputStream(file)); OutputStream out = new FileOutputStream(result)) {
+                copy(in, out);
+                return new Content(result, true, true);
+            }
+            catch (ZipException e) {
+                // Apparently not compressed after all...
+                result.delete();
+            }
+        }
+        return new Content(file, false, false);
+    }
+
+    /**
+     * Returns the digest of the data of a given version, determining it if needed.
+     * 
+     * @return the digest of the version, or <code>null</code> if it is unknown as the version is stored as delta.
+     */
+    private byte[] getDigest(long version) throws IOException {
+        byte[] result = m_digests.get(version);
+        if (result == null) {
+            File file = getFilename(version);
+            if (!file.isFile()) {
+                return null;
+            }
+            MessageDigest digest = createDigest();
+            try (InputStream is = new FileInputStream(file)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = is.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            result = digest.digest();
+            m_digests.put(version, result);
+        }
+        return result;
+    }
+
+    private File getDeltaFilename(long version) {
+        return new File(m_dir, String.format("%d%s%s", version, m_fileExtension, DELTA_SUFFIX));
+    }
+
     private File getFilename(long version) {
         return new File(m_dir, String.format("%d%s", version, m_fileExtension));
     }
@@ -377,6 +668,9 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
         long[] results = new long[versions.length];
         for (int i = 0; i < versions.length; i++) {
             String name = versions[i].getName();
+            if (name.endsWith(DELTA_SUFFIX)) {
+                name = name.substring(0, name.length() - DELTA_SUFFIX.length());
+            }
             name = name.substring(0, name.length() - m_fileExtension.length());
             try {
                 results[i] = Long.parseLong(name);
@@ -441,14 +735,119 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
         return true;
     }
 
-    private void purgeOldFiles(long[] versions, long limit) throws IOException {
-        int length = versions.length;
-        int index = 0;
-        while (length > limit) {
-            delete(versions[index]);
-            length--;
-            index++;
+    /**
+     * Determines whether a given file is compressed with GZIP by looking at its magic header.
+     */
+    private boolean isGzip(File file) throws IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            return (is.read() == 0x1f) && (is.read() == 0x8b);
+        }
+    }
+
+    private void purgeOldFiles(long limit) throws IOException {
+        SortedRangeSet catalog = getCatalog();
+
+        long excess = -limit;
+        Iterator<Range> ranges = catalog.rangeIterator();
+        while (ranges.hasNext()) {
+            Range range = ranges.next();
+            excess += range.getHigh() - range.getLow() + 1;
+        }
+
+        RangeIterator versions = catalog.iterator();
+        while (excess > 0 && versions.hasNext()) {
+            long version = versions.next();
+            // make sure the next version no longer depends on the version we're about to delete...
+            rebase(version + 1);
+            delete(version);
+            excess--;
+        }
+    }
+
+    /**
+     * Fills the given buffer with as much data as possible from the given stream.
+     * 
+     * @return the number of bytes read, which is less than the buffer size only at the end of the stream.
+     */
+    private int readFully(InputStream is, byte[] buffer) throws IOException {
+        int count = 0;
+        int read;
+        while (count < buffer.length && (read = is.read(buffer, count, buffer.length - count)) >= 0) {
+            count += read;
+        }
+        return count;
+    }
+
+    /**
+     * Replaces a version that is stored as delta by its full contents.
+     */
+    private void rebase(long version) throws IOException {
+        File delta = getDeltaFilename(version);
+        if (!delta.isFile()) {
+            return;
+        }
+
+        File tempFile = File.createTempFile("repository", null, m_tempDir);
+        try {
+            Content content = getContent(version);
+            try {
+                writeContent(content, tempFile, true /* sync */);
+            }
+            finally {
+                content.discard();
+            }
+            renameFile(tempFile, getFilename(version));
+            // Only remove the delta once the full version is persisted...
+            syncDirectory();
+            delta.delete();
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Removes a given version from the catalog of this repository.
+     */
+    private void removeFromCatalog(long version) throws IOException {
+        synchronized (m_catalogLock) {
+            m_catalog = new SortedRangeSet(new long[] { version }).diffDest(getCatalog());
+        }
+        m_digests.remove(version);
+    }
+
+    /**
+     * Reconstructs a version that is stored as delta.
+     * 
+     * @return a stream with the contents of the version, which removes all temporary files upon closing.
+     */
+    private InputStream reconstruct(long version) throws IOException {
+        final File result = File.createTempFile("repository", null, m_tempDir);
+        try {
+            Content content = getContent(version);
+            try {
+                writeContent(content, result, false /* sync */);
+            }
+            finally {
+                content.discard();
+            }
         }
+        catch (IOException e) {
+            result.delete();
+            throw e;
+        }
+
+        return new FileInputStream(result) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                }
+                finally {
+                    result.delete();
+                }
+            }
+        };
     }
 
     /**
@@ -486,4 +885,228 @@ public class RepositoryImpl implements RepositoryReplication, Repository {
             throw new IOException("Could not move temporary file (" + source.getAbsolutePath() + ") to it's final location (" + dest.getAbsolutePath() + ")");
         }
     }
+
+    /**
+     * Stores the data in a given temporary file as the given version, either in full or as delta against the previous
+     * version.
+     * 
+     * @return <code>true</code> if the version is stored, <code>false</code> if its data is equal to that of the
+     *         previous version.
+     */
+    private boolean store(File tempFile, byte[] digest, long version, boolean hasPrevious) throws IOException {
+        long snapshotInterval = m_snapshotInterval;
+        boolean storedAsDelta = false;
+
+        if (hasPrevious) {
+            // ACE-421: check whether there's a change in data...
+            byte[] previousDigest = getDigest(version - 1);
+            if (previousDigest != null && MessageDigest.isEqual(previousDigest, digest)) {
+                return false;
+            }
+            // Only read back both versions when a delta is to be built, or when the previous digest is unknown;
+            // doing so also detects equal data that is compressed differently...
+            boolean buildDelta = snapshotInterval > 1 && getChainLength(version - 1) < (snapshotInterval - 1);
+            if (buildDelta || previousDigest == null) {
+                Content previous = getContent(version - 1);
+                Content current = getContent(tempFile);
+                try {
+                    if (contentsEqual(previous.m_file, current.m_file)) {
+                        return false;
+                    }
+                    if (buildDelta) {
+                        storedAsDelta = storeDelta(previous, current, tempFile.length(), version);
+                    }
+                }
+                finally {
+                    previous.discard();
+                    current.discard();
+                }
+            }
+        }
+
+        if (!storedAsDelta) {
+            // move temp file to final location
+            renameFile(tempFile, getFilename(version));
+        }
+        m_digests.put(version, digest);
+
+        return true;
+    }
+
+    /**
+     * Stores a version as delta against the previous version, provided the delta is smaller than the version itself.
+     * 
+     * @return <code>true</code> if the delta is stored, <code>false</code> otherwise.
+     */
+    private boolean storeDelta(Content previous, Content current, long size, long version) throws IOException {
+        if (!DeltaCodec.canEncode(previous.m_file, current.m_file)) {
+            return false;
+        }
+
+        File deltaFile = File.createTempFile("repository", null, m_tempDir);
+        try {
+            try (FileOutputStream fos = new FileOutputStream(deltaFile)) {
+                OutputStream out = new BufferedOutputStream(fos);
+                DeltaCodec.encode(previous.m_file, current.m_file, current.m_gzip ? DeltaCodec.FLAG_GZIP : 0, out);
+                out.flush();
+                fos.getFD().sync();
+            }
+            if (deltaFile.length() >= size) {
+                return false;
+            }
+            renameFile(deltaFile, getDeltaFilename(version));
+            return true;
+        }
+        finally {
+            deltaFile.delete();
+        }
+    }
+
+    /**
+     * Makes sure that all renames in our directory are persisted, as far as supported by the platform.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(m_dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException e) {
+            // Not all platforms allow directories to be synced...
+        }
+    }
+
+    /**
+     * Writes all queued commits as a single batch. Should only be called while holding the write lock.
+     */
+    private void writeCommits() {
+        List<PendingCommit> batch = new ArrayList<>();
+        PendingCommit commit;
+        while ((commit = m_commitQueue.poll()) != null) {
+            batch.add(commit);
+        }
+        m_metrics.batched(batch.size());
+
+        long[] versions = new long[batch.size()];
+        int count = 0;
+        try {
+            long lastVersion = getCatalog().getHigh();
+            for (PendingCommit c : batch) {
+                try {
+                    checkVersion(lastVersion, c.m_fromVersion);
+
+                    long version = c.m_fromVersion + 1;
+                    if (store(c.m_tempFile, c.m_digest, version, lastVersion > 0)) {
+                        versions[count++] = version;
+                        lastVersion = version;
+                        c.m_result = true;
+                    }
+                }
+                catch (IOException e) {
+                    c.m_failure = e;
+                }
+            }
+
+            if (count > 0) {
+                // Persist and publish all new versions at once...
+                syncDirectory();
+                addToCatalog(Arrays.copyOf(versions, count));
+                // Make sure we do not exceed our max limit; the new versions are published already, so failing to do
+                // so should not fail their commits...
+                try {
+                    purgeOldFiles(m_limit);
+                }
+                catch (IOException e) {
+                    if (m_log != null) {
+                        m_log.log(LogService.LOG_WARNING, "Failed to purge old versions from repository", e);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            for (PendingCommit c : batch) {
+                if (c.m_failure == null) {
+                    c.m_failure = e;
+                }
+            }
+        }
+        finally {
+            long now = System.nanoTime();
+            for (PendingCommit c : batch) {
+                c.m_done = true;
+                m_metrics.completed(now - c.m_queued, c.m_failure != null);
+            }
+        }
+    }
+
+    /**
+     * Writes the given content to a file, compressing it again if needed.
+     * 
+     * @param sync
+     *            <code>true</code> if the file should be synced to disk before returning, <code>false</code> otherwise.
+     */
+    private void writeContent(Content content, File file, boolean sync) throws IOException {
+        try (InputStream in = new FileInputStream(content.m_file); FileOutputStream fos = new FileOutputStream(file)) {
+            OutputStream out = new BufferedOutputStream(fos);
+            if (content.m_gzip) {
+                GZIPOutputStream gzos = new GZIPOutputStream(out);
+                copy(in, gzos);
+                gzos.finish();
+            }
+            else {
+                copy(in, out);
+            }
+            out.flush();
+            if (sync) {
+                fos.getFD().sync();
+            }
+        }
+    }
+
+    /**
+     * Writes the given data to a new temporary file, determining its digest along the way.
+     * 
+     * @param sync
+     *            <code>true</code> if the file should be synced to disk before returning, <code>false</code> otherwise.
+     * @return the temporary file, never <code>null</code>.
+     */
+    private File writeTempFile(InputStream data, MessageDigest digest, boolean sync) throws IOException {
+        File tempFile = File.createTempFile("repository", null, m_tempDir);
+        FileOutputStream fileStream = null;
+
+        try {
+            fileStream = new FileOutputStream(tempFile);
+            OutputStream digestStream = new DigestOutputStream(fileStream, digest);
+
+            byte[] buffer = new byte[8192];
+            int bytes;
+
+            while ((bytes = data.read(buffer)) >= 0) {
+                digestStream.write(buffer, 0, bytes);
+            }
+            if (sync) {
+                fileStream.getFD().sync();
+            }
+        }
+        catch (IOException e) {
+            String deleteMsg = "";
+            if (!tempFile.delete()) {
+                deleteMsg = " and was unable to remove temp file " + tempFile.getAbsolutePath();
+            }
+            if (m_log != null) {
+                m_log.log(LogService.LOG_WARNING, "Error occurred while storing new version in repository" + deleteMsg, e);
+            }
+            throw e;
+        }
+        finally {
+            closeQuietly(fileStream);
+        }
+        return tempFile;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int bytes;
+        while ((bytes = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, bytes);
+        }
+    }
 }
@@ -18,9 +18,14 @@
  */
 package org.apache.ace.repository.servlet;
 
+import static org.apache.ace.http.HttpUtil.matchesEntityTag;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -45,6 +50,9 @@ public abstract class RepositoryServletBase<REPO_TYPE> extends HttpServlet {
     
     private static final int COPY_BUFFER_SIZE = 1024;
     private static final String QUERY = "/query";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
     protected static final String TEXT_MIMETYPE = "text/plain";
     protected static final String BINARY_MIMETYPE = "application/octet-stream";
 
@@ -97,7 +105,7 @@ public abstract class RepositoryServletBase<REPO_TYPE> extends HttpServlet {
             // both repositories have a query method
             if (filter != null) {
                 if ((name == null) && (customer == null)) {
-                    handleQuery(filter, response);
+                    handleQuery(filter, request, response);
                 }
                 else {
                     response.sendError(HttpServletResponse.SC_BAD_REQUEST,
@@ -106,16 +114,16 @@ public abstract class RepositoryServletBase<REPO_TYPE> extends HttpServlet {
             }
             else {
                 if ((name != null) && (customer != null)) {
-                    handleQuery(getRepositoryFilter(customer, name), response);
+                    handleQuery(getRepositoryFilter(customer, name), request, response);
                 }
                 else if (name != null) {
-                    handleQuery("(name=" + name + ")", response);
+                    handleQuery("(name=" + name + ")", request, response);
                 }
                 else if (customer != null) {
-                    handleQuery("(customer=" + customer + ")", response);
+                    handleQuery("(customer=" + customer + ")", request, response);
                 }
                 else {
-                    handleQuery(null, response);
+                    handleQuery(null, request, response);
                 }
             }
         }
@@ -310,14 +318,37 @@ public abstract class RepositoryServletBase<REPO_TYPE> extends HttpServlet {
         }
     }
 
+    /**
+     * Creates a (strong) entity tag for the given query response.
+     */
+    static String getEntityTag(String body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(body.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder sb = new StringBuilder("\"");
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.append('"').toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1...
+            throw new RuntimeException(e);
+        }
+    }
+
     private String getRepositoryFilter(String customer, String name) {
         return "(&(customer=" + customer + ")(name=" + name + ")(master=*))";
     }
 
     /**
-     * Handles a query command and sends back the response.
+     * Handles a query command and sends back the response. As the versions of a repository only change upon commits
+     * (or purges), the version ranges serve as generation of each repository, and the response carries an entity tag
+     * derived from them. If the client already has a response with the same entity tag, a
+     * <code>304 Not Modified</code> is sent back instead.
      */
-    private void handleQuery(String filter, HttpServletResponse response) throws IOException {
+    private void handleQuery(String filter, HttpServletRequest request, HttpServletResponse response) throws IOException {
         List<ServiceReference<REPO_TYPE>> refs;
         try {
             refs = getRepositories(filter);
@@ -345,8 +376,20 @@ public abstract class RepositoryServletBase<REPO_TYPE> extends HttpServlet {
                 }
             }
 
-            response.setContentType(TEXT_MIMETYPE);
-            response.getWriter().print(result.toString());
+            String body = result.toString();
+            String etag = getEntityTag(body);
+
+            response.setHeader(HEADER_ETAG, etag);
+            // clients are allowed to cache the response, but should always revalidate it...
+            response.setHeader(HEADER_CACHE_CONTROL, "no-cache");
+
+            if (matchesEntityTag(request.getHeader(HEADER_IF_NONE_MATCH), etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            }
+            else {
+                response.setContentType(TEXT_MIMETYPE);
+                response.getWriter().print(body);
+            }
         }
         catch (IOException e) {
             response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.repository.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class DeltaCodecTest {
+
+    @Test(expectedExceptions = IOException.class)
+    public void testDecodeCorruptDeltaFail() throws Exception {
+        byte[] source = createContent(new Random(1), 4096);
+        byte[] target = modify(new Random(2), source);
+
+        byte[] delta = encode(source, target, 0);
+        delta[delta.length / 2] ^= 0x55;
+
+        decode(source, delta);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testDecodeWithWrongSourceFail() throws Exception {
+        byte[] source = createContent(new Random(1), 4096);
+        byte[] target = modify(new Random(2), source);
+
+        byte[] delta = encode(source, target, 0);
+
+        decode(modify(new Random(3), source), delta);
+    }
+
+    @Test()
+    public void testEncodeAndDecode() throws Exception {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            byte[] source = createContent(rnd, rnd.nextInt(64 * 1024));
+            byte[] target = modify(rnd, source);
+
+            byte[] delta = encode(source, target, DeltaCodec.FLAG_GZIP);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int flags = DeltaCodec.decode(ByteBuffer.wrap(source), new ByteArrayInputStream(delta), out);
+
+            assertEquals(flags, DeltaCodec.FLAG_GZIP);
+            assertTrue(Arrays.equals(out.toByteArray(), target), "Decoded content differs from original content!");
+        }
+    }
+
+    @Test()
+    public void testEncodeSmallModificationYieldsSmallDelta() throws Exception {
+        byte[] source = createContent(new Random(1), 256 * 1024);
+        byte[] target = source.clone();
+        target[source.length / 2] ^= 0x01;
+
+        byte[] delta = encode(source, target, 0);
+        assertTrue(delta.length < 256, "Delta too large: " + delta.length);
+        assertTrue(Arrays.equals(decode(source, delta), target));
+
+        // encoding against an empty source yields all content...
+        assertTrue(Arrays.equals(decode(new byte[0], encode(new byte[0], target, 0)), target));
+    }
+
+    private byte[] createContent(Random rnd, int length) {
+        byte[] result = new byte[length];
+        rnd.nextBytes(result);
+        return result;
+    }
+
+    private byte[] decode(byte[] source, byte[] delta) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeltaCodec.decode(ByteBuffer.wrap(source), new ByteArrayInputStream(delta), out);
+        return out.toByteArray();
+    }
+
+    private byte[] encode(byte[] source, byte[] target, int flags) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeltaCodec.encode(ByteBuffer.wrap(source), ByteBuffer.wrap(target), flags, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Applies a number of random insertions, deletions and modifications to the given content.
+     */
+    private byte[] modify(Random rnd, byte[] content) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int pos = 0;
+        while (pos < content.length) {
+            int length = Math.min(content.length - pos, 1 + rnd.nextInt(4096));
+            result.write(content, pos, length);
+            pos += length;
+
+            switch (rnd.nextInt(3)) {
+                case 0:
+                    // insertion...
+                    byte[] insert = createContent(rnd, 1 + rnd.nextInt(64));
+                    result.write(insert, 0, insert.length);
+                    break;
+                case 1:
+                    // deletion...
+                    pos += rnd.nextInt(64);
+                    break;
+                default:
+                    // modification...
+                    if (pos < content.length) {
+                        result.write(content[pos++] ^ 0xff);
+                    }
+                    break;
+            }
+        }
+        return result.toByteArray();
+    }
+}
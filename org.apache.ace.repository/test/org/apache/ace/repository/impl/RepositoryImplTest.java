@@ -26,11 +26,22 @@ import static org.testng.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.ace.range.SortedRangeSet;
 import org.testng.annotations.BeforeMethod;
@@ -208,6 +219,107 @@ public class RepositoryImplTest {
         assertNotNull(repo.checkout(4));
     }
 
+    /**
+     * Tests that versions are stored as deltas in between snapshots, and can be reconstructed and purged.
+     */
+    @Test()
+    public void testCommitToSnapshottingRepository() throws Exception {
+        File dataDir = new File(m_baseDir, "data");
+        RepositoryImpl repo = new RepositoryImpl(dataDir, new File(m_baseDir, "tmp"), ".gz", true, 4 /* limit */, 3 /* snapshotInterval */);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("<object id=\"").append(i).append("\"/>\n");
+        }
+        String base = sb.toString();
+
+        for (int version = 1; version <= 5; version++) {
+            assertTrue(repo.commit(new ByteArrayInputStream(gzip(base + version)), version - 1), "Commit should have worked.");
+        }
+        assertFalse(repo.commit(new ByteArrayInputStream(gzip(base + 5)), 5), "Commit should be ignored.");
+
+        // version 1 is purged, version 2 is rebased, version 4 starts a new snapshot...
+        assertEquals(repo.getRange().toRepresentation(), "2-5");
+        assertTrue(new File(dataDir, "2.gz").isFile());
+        assertTrue(new File(dataDir, "3.gz.delta").isFile());
+        assertTrue(new File(dataDir, "4.gz").isFile());
+        assertTrue(new File(dataDir, "5.gz.delta").isFile());
+
+        for (int version = 2; version <= 5; version++) {
+            assertEquals(gunzip(repo.checkout(version)), base + version);
+        }
+
+        repo.updated(true, 1);
+        assertEquals(repo.getRange().toRepresentation(), "5");
+        assertTrue(new File(dataDir, "5.gz").isFile());
+        assertEquals(gunzip(repo.checkout(5)), base + 5);
+        assertEquals(new File(m_baseDir, "tmp").list().length, 0, "Temporary files should be cleaned up!");
+    }
+
+    /**
+     * Tests that commits of unchanged data are ignored when every version is stored in full.
+     */
+    @Test()
+    public void testCommitWithoutChangeIsIgnoredWithoutSnapshotting() throws Exception {
+        assertCommitWithoutChangeIsIgnored(1 /* snapshotInterval */);
+    }
+
+    /**
+     * Tests that commits of unchanged data are ignored when versions are stored as deltas in between snapshots.
+     */
+    @Test()
+    public void testCommitWithoutChangeIsIgnoredWithSnapshotting() throws Exception {
+        assertCommitWithoutChangeIsIgnored(3 /* snapshotInterval */);
+    }
+
+    /**
+     * Tests that of all concurrent commits against the same version, only one succeeds.
+     */
+    @Test()
+    public void testConcurrentCommitsAgainstSameVersion() throws Exception {
+        final RepositoryImpl repo = new RepositoryImpl(new File(m_baseDir, "data"), new File(m_baseDir, "tmp"), true);
+        assertTrue(repo.commit(new ByteArrayInputStream("abc-0".getBytes()), 0), "Commit should have worked.");
+
+        final int count = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final String data = "abc-" + (i + 1);
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        start.await();
+                        try {
+                            return repo.commit(new ByteArrayInputStream(data.getBytes()), 1);
+                        }
+                        catch (IOException e) {
+                            return false;
+                        }
+                    }
+                }));
+            }
+            start.countDown();
+
+            int succeeded = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    succeeded++;
+                }
+            }
+            assertEquals(succeeded, 1, "Only one commit should have succeeded!");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(repo.getRange().toRepresentation(), "1-2");
+
+        CommitMetrics metrics = repo.getCommitMetrics();
+        assertEquals(metrics.getQueueDepth(), 0);
+    }
+
     @Test()
     public void testCustomFileExtensionOk() throws Exception {
         RepositoryImpl repo = new RepositoryImpl(new File(m_baseDir, "data"), new File(m_baseDir, "tmp"), ".gz", true);
@@ -264,6 +376,50 @@ public class RepositoryImplTest {
         repo.put(new ByteArrayInputStream("abc".getBytes()), 0);
     }
 
+    /**
+     * Tests that the (cached) range of versions follows the commits and purges of a repository.
+     */
+    @Test()
+    public void testRangeFollowsChanges() throws Exception {
+        RepositoryImpl repo = new RepositoryImpl(new File(m_baseDir, "data"), new File(m_baseDir, "tmp"), true, 2 /* limit */);
+        assertEquals(repo.getRange().toRepresentation(), "");
+
+        assertTrue(repo.commit(new ByteArrayInputStream("abc-1".getBytes()), 0), "Commit should have worked.");
+        assertEquals(repo.getRange().toRepresentation(), "1");
+        // unchanged repository should yield the same range...
+        assertEquals(repo.getRange().toRepresentation(), "1");
+
+        assertFalse(repo.commit(new ByteArrayInputStream("abc-1".getBytes()), 1), "Commit should be ignored.");
+        assertEquals(repo.getRange().toRepresentation(), "1");
+
+        assertTrue(repo.commit(new ByteArrayInputStream("abc-2".getBytes()), 1), "Commit should have worked.");
+        assertTrue(repo.commit(new ByteArrayInputStream("abc-3".getBytes()), 2), "Commit should have worked.");
+        assertEquals(repo.getRange().toRepresentation(), "2-3");
+
+        repo.updated(true, 1);
+        assertEquals(repo.getRange().toRepresentation(), "3");
+    }
+
+    /**
+     * Tests that a repository that is opened on existing data picks up its versions, and still ignores commits that do
+     * not change anything.
+     */
+    @Test()
+    public void testReopenExistingRepository() throws Exception {
+        RepositoryImpl repo = new RepositoryImpl(new File(m_baseDir, "data"), new File(m_baseDir, "tmp"), true);
+        assertTrue(repo.commit(new ByteArrayInputStream("abc-1".getBytes()), 0), "Commit should have worked.");
+        assertTrue(repo.commit(new ByteArrayInputStream("abc-2".getBytes()), 1), "Commit should have worked.");
+
+        repo = new RepositoryImpl(new File(m_baseDir, "data"), new File(m_baseDir, "tmp"), true);
+        assertEquals(repo.getRange().toRepresentation(), "1-2");
+
+        assertFalse(repo.commit(new ByteArrayInputStream("abc-2".getBytes()), 2), "Commit should be ignored.");
+        assertFalse(repo.put(new ByteArrayInputStream("abc-3".getBytes()), 2), "Put of existing version should be ignored.");
+        assertTrue(repo.commit(new ByteArrayInputStream("abc-3".getBytes()), 2), "Commit should have worked.");
+        assertEquals(repo.getRange().toRepresentation(), "1-3");
+        assertEquals(getContentAsString(repo.checkout(3)), "abc-3");
+    }
+
     @Test(expectedExceptions = { IllegalStateException.class })
     public void testUpdatedConfigurationOk() throws Exception {
         RepositoryImpl repo = new RepositoryImpl(new File(m_baseDir, "data"), new File(m_baseDir, "tmp"), true);
@@ -286,6 +442,61 @@ public class RepositoryImplTest {
         m_baseDir.mkdirs();
     }
 
+    private void assertCommitWithoutChangeIsIgnored(long snapshotInterval) throws Exception {
+        RepositoryImpl repo = new RepositoryImpl(new File(m_baseDir, "data"), new File(m_baseDir, "tmp"), ".gz", true, 10 /* limit */, snapshotInterval);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("<object id=\"").append(i).append("\"/>\n");
+        }
+        String base = sb.toString();
+
+        assertTrue(repo.commit(new ByteArrayInputStream(gzip(base + 1)), 0), "Commit should have worked.");
+        // identical data...
+        assertFalse(repo.commit(new ByteArrayInputStream(gzip(base + 1)), 1), "Commit should be ignored.");
+
+        // the second version is stored as delta in case of snapshotting...
+        assertTrue(repo.commit(new ByteArrayInputStream(gzip(base + 2)), 1), "Commit should have worked.");
+        assertEquals(new File(m_baseDir, "data/2.gz.delta").isFile(), snapshotInterval > 1);
+
+        assertFalse(repo.commit(new ByteArrayInputStream(gzip(base + 2)), 2), "Commit should be ignored.");
+
+        assertEquals(repo.getRange().toRepresentation(), "1-2");
+
+        // same data, compressed differently, is only recognized when the contents are compared to build a delta...
+        boolean stored = repo.commit(new ByteArrayInputStream(gzip(base + 2, Deflater.NO_COMPRESSION)), 2);
+        assertEquals(stored, snapshotInterval == 1);
+        assertEquals(repo.getRange().toRepresentation(), stored ? "1-3" : "1-2");
+    }
+
+    private String gunzip(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(is)) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                baos.write(buffer, 0, read);
+            }
+        }
+        return baos.toString("UTF-8");
+    }
+
+    private byte[] gzip(String content) throws IOException {
+        return gzip(content, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private byte[] gzip(String content, final int level) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(baos) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            out.write(content.getBytes("UTF-8"));
+        }
+        return baos.toByteArray();
+    }
+
     private String getContentAsString(File file) throws IOException {
         return getContentAsString(new FileInputStream(file));
     }
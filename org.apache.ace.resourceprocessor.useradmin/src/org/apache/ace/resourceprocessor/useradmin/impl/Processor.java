@@ -144,8 +144,9 @@ public class Processor implements ResourceProcessor {
     }
 
     public void rollback() {
-        // nothing special to do.
         ensureSession();
+        // forget about the resources validated in this session...
+        m_resourceStore.rollback();
         endSession();
     }
 
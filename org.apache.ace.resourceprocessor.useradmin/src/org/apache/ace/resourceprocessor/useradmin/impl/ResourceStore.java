@@ -111,7 +111,7 @@ abstract class ResourceStore
 
             try {
                 InputStream input = new FileInputStream(resourceFile);
-                validate(input);
+                validate(name, input);
                 input.close();
             }
             catch (Exception e) {
@@ -133,6 +133,22 @@ abstract class ResourceStore
      */
     public abstract void validate(InputStream resource) throws Exception;
 
+    /**
+     * Checks the validity of a named resource. By default, this delegates to {@link #validate(InputStream)}, but
+     * stores can override it to keep the result of their validation around for the subsequent installation of
+     * the resource.
+     *
+     * @param name
+     *            the name of the resource
+     * @param resource
+     *            a stream containing the resource
+     * @throws Exception
+     *             when something is wrong with the resource
+     */
+    public void validate(String name, InputStream resource) throws Exception {
+        validate(resource);
+    }
+
     /**
      * Marks the start of a deployment process.
      */
@@ -20,17 +20,25 @@ package org.apache.ace.resourceprocessor.useradmin.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.ace.resourceprocessor.useradmin.UserAdminConfigurator;
 import org.osgi.framework.BundleContext;
@@ -40,9 +48,6 @@ import org.osgi.service.useradmin.Group;
 import org.osgi.service.useradmin.Role;
 import org.osgi.service.useradmin.User;
 import org.osgi.service.useradmin.UserAdmin;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
 
 public class UserAdminStore extends ResourceStore implements UserAdminConfigurator {
 
@@ -83,50 +88,127 @@ public class UserAdminStore extends ResourceStore implements UserAdminConfigurat
         }
     }
 
+    /**
+     * The result of parsing a single resource: the roles it contains and the digest of its contents.
+     */
+    private static class ParsedResource {
+        private final List<ProcessRole> m_roles;
+        private final byte[] m_digest;
+
+        ParsedResource(List<ProcessRole> roles, byte[] digest) {
+            m_roles = roles;
+            m_digest = digest;
+        }
+
+        public byte[] getDigest() {
+            return m_digest;
+        }
+
+        public List<ProcessRole> getRoles() {
+            return m_roles;
+        }
+    }
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
     private final Object m_installListLock = new Object();
     private final Object m_userAdminLock = new Object();
+    private final XMLInputFactory m_xmlInputFactory;
 
     private volatile UserAdmin m_userAdmin;
     private volatile LogService m_log;
-    private volatile List<String> m_installedUsers;
+    private volatile Set<String> m_installedUsers;
 
     private List<ProcessRole> m_toInstall = new ArrayList<>();
     private List<ProcessRole> m_toRemove = new ArrayList<>();
     private boolean m_clear;
+    /** resources that were parsed during validation, but are not installed yet. */
+    private final Map<String, ParsedResource> m_parsedResources = new HashMap<>();
+    /** digests of the last installed version of each resource. */
+    private final Map<String, byte[]> m_installedDigests = new HashMap<>();
+    /** digests of resources whose roles are to be installed, but are not yet applied to the UserAdmin. */
+    private final Map<String, byte[]> m_pendingDigests = new HashMap<>();
 
     UserAdminStore(BundleContext context) {
         super(context);
+
+        m_xmlInputFactory = XMLInputFactory.newInstance();
+        m_xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
     }
 
     @Override
     public void begin() {
-        m_installedUsers = new ArrayList<>();
+        m_installedUsers = new HashSet<>();
     }
 
+    /**
+     * Ends the current transaction by applying all roles that were installed or uninstalled in it to the UserAdmin
+     * in one go.
+     */
     @Override
     public void end() {
         checkTransactionInProgress();
-        m_installedUsers = null;
+        try {
+            updateUserAdmin();
+        }
+        finally {
+            synchronized (m_installListLock) {
+                m_parsedResources.clear();
+            }
+            m_installedUsers = null;
+        }
     }
 
     @Override
     public void install(String resourceName) throws IOException {
-        begin();
-        installRoles(getDocument(getResource(resourceName)));
-        updateUserAdmin();
-        end();
+        checkTransactionInProgress();
+
+        ParsedResource resource;
+        synchronized (m_installListLock) {
+            resource = m_parsedResources.remove(resourceName);
+        }
+        if (resource == null) {
+            resource = parse(getResource(resourceName));
+        }
+
+        synchronized (m_installListLock) {
+            if (Arrays.equals(resource.getDigest(), m_installedDigests.get(resourceName))) {
+                // nothing changed, but make sure the roles of this resource are not removed in this transaction...
+                for (ProcessRole role : resource.getRoles()) {
+                    m_installedUsers.add(role.getName());
+                }
+                m_log.log(LogService.LOG_DEBUG, "Resource " + resourceName + " did not change since it was last installed.");
+                return;
+            }
+            // only recorded as installed once its roles are actually applied...
+            m_pendingDigests.put(resourceName, resource.getDigest());
+            m_toInstall.addAll(resource.getRoles());
+        }
+    }
+
+    /**
+     * Discards all resources that were validated, but not installed, in the current deployment session.
+     */
+    public void rollback() {
+        synchronized (m_installListLock) {
+            m_parsedResources.clear();
+        }
     }
 
     public void setUsers(InputStream input) throws IOException {
-        setUsers(getDocument(input), true /* clearExistingUsers */);
+        setUsers(parse(input), true /* clearExistingUsers */);
     }
 
     @Override
     public void uninstall(String resourceName) throws IOException {
-        begin();
-        removeRoles(getDocument(getResource(resourceName)));
-        updateUserAdmin();
-        end();
+        checkTransactionInProgress();
+
+        ParsedResource resource = parse(getResource(resourceName));
+        synchronized (m_installListLock) {
+            m_installedDigests.remove(resourceName);
+            m_pendingDigests.remove(resourceName);
+            m_toRemove.addAll(resource.getRoles());
+        }
     }
 
     /**
@@ -139,7 +221,6 @@ public class UserAdminStore extends ResourceStore implements UserAdminConfigurat
             }
             m_userAdmin = admin;
             begin();
-            updateUserAdmin();
             end();
         }
     }
@@ -158,8 +239,19 @@ public class UserAdminStore extends ResourceStore implements UserAdminConfigurat
 
     @Override
     public void validate(InputStream resource) throws Exception {
-        Document doc = getDocument(resource);
-        getRoles(doc);
+        parse(resource);
+    }
+
+    /**
+     * Validates a resource and keeps the parsed roles around, so the resource does not need to be parsed again when
+     * it is installed in the same transaction.
+     */
+    @Override
+    public void validate(String name, InputStream resource) throws Exception {
+        ParsedResource result = parse(resource);
+        synchronized (m_installListLock) {
+            m_parsedResources.put(name, result);
+        }
     }
 
     private void checkTransactionInProgress() {
@@ -168,80 +260,124 @@ public class UserAdminStore extends ResourceStore implements UserAdminConfigurat
         }
     }
 
-    private void clearDictionary(Dictionary<?, ?> dict) {
-        Enumeration<?> i = dict.keys();
-        while (i.hasMoreElements()) {
-            dict.remove(i.nextElement());
+    /**
+     * Returns all roles currently present in the UserAdmin, never <code>null</code>.
+     */
+    private Role[] getAllRoles() {
+        Role[] roles = null;
+        try {
+            roles = m_userAdmin.getRoles(null);
         }
+        catch (InvalidSyntaxException e) {
+            // Will not happen, since we pass in a null filter.
+        }
+        return (roles == null) ? new Role[0] : roles;
     }
 
     /**
-     * Helper method that checks the presence of an object in an array. Returns <code>true</code> if <code>t</code> is
-     * in <code>ts</code>, <code>false</code> otherwise.
+     * Helper that determines, in a single pass over all roles, the names of the groups each role is a basic member
+     * of.
      */
-    private <T> boolean contains(T t, T[] ts) {
-        for (T current : ts) {
-            if (current.equals(t)) {
-                return true;
+    private Map<String, Set<String>> getMemberships() {
+        Map<String, Set<String>> result = new HashMap<>();
+        for (Role role : getAllRoles()) {
+            if (role instanceof Group) {
+                Role[] members = ((Group) role).getMembers();
+                if (members != null) {
+                    for (Role member : members) {
+                        getMemberships(result, member.getName()).add(role.getName());
+                    }
+                }
             }
         }
-        return false;
+        return result;
+    }
+
+    private Set<String> getMemberships(Map<String, Set<String>> memberships, String name) {
+        Set<String> result = memberships.get(name);
+        if (result == null) {
+            result = new HashSet<>();
+            memberships.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * Helper that compares two property or credential values, taking byte arrays into account.
+     */
+    private boolean isEqual(Object value1, Object value2) {
+        if ((value1 instanceof byte[]) && (value2 instanceof byte[])) {
+            return Arrays.equals((byte[]) value1, (byte[]) value2);
+        }
+        return (value1 != null) && value1.equals(value2);
     }
 
     /**
-     * Gets the DOM document contained in a stream.
+     * Parses a resource in a single streaming pass, and computes the digest of its contents along the way.
      */
-    private Document getDocument(InputStream input) throws IOException {
+    private ParsedResource parse(InputStream input) throws IOException {
+        MessageDigest digest;
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder;
-            builder = factory.newDocumentBuilder();
-            return builder.parse(input);
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
         }
-        catch (ParserConfigurationException e) {
-            throw new IOException("Error instantiation XML parser:" + e.getMessage());
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unable to create digest: " + e.getMessage());
+        }
+        DigestInputStream digestInput = new DigestInputStream(input, digest);
+
+        List<ProcessRole> roles = new ArrayList<>();
+        try {
+            XMLStreamReader reader = m_xmlInputFactory.createXMLStreamReader(digestInput);
+            try {
+                // skip the root element...
+                reader.nextTag();
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    roles.add(parseRole(reader));
+                }
+            }
+            finally {
+                reader.close();
+            }
+
+            // make sure trailing content is part of the digest as well...
+            byte[] buf = new byte[1024];
+            while (digestInput.read(buf) >= 0) {
+                // nothing to do
+            }
         }
-        catch (SAXException e) {
+        catch (XMLStreamException e) {
             throw new IOException("Error parsing user data:" + e.getMessage());
         }
+        finally {
+            input.close();
+        }
+        return new ParsedResource(roles, digest.digest());
     }
 
     /**
-     * Helper method that takes a single XML node containing a 'user' or 'group', and return a ProcessRole for it.
+     * Helper method that takes a reader positioned at a 'user' or 'group' element, and returns a ProcessRole for it.
+     * When this method returns, the reader is positioned at the end of the element.
      */
-    private ProcessRole getRole(Node node) {
-        ProcessRole result = new ProcessRole(node.getAttributes().getNamedItem("name").getTextContent(), (node.getNodeName().equals("group") ? Role.GROUP : Role.USER));
-
-        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
-            if (child.getNodeName().equals("properties")) {
-                for (Node property = child.getFirstChild(); property != null; property = property.getNextSibling()) {
-                    if (!property.getNodeName().equals("#text")) {
-                        String type = null;
-                        Node typeNode = property.getAttributes().getNamedItem("type");
-                        if (typeNode != null) {
-                            type = typeNode.getTextContent();
-                        }
-                        result.getProperties().put(property.getNodeName(), "byte[]".equals(type) ? property.getTextContent().getBytes() : property.getTextContent());
-                    }
-                }
-            }
-            else if (child.getNodeName().equals("credentials")) {
-                for (Node credential = child.getFirstChild(); credential != null; credential = credential.getNextSibling()) {
-                    if (!credential.getNodeName().equals("#text")) {
-                        String type = null;
-                        Node typeNode = credential.getAttributes().getNamedItem("type");
-                        if (typeNode != null) {
-                            type = typeNode.getTextContent();
-                        }
-                        result.getCredentials().put(credential.getNodeName(), "byte[]".equals(type) ? credential.getTextContent().getBytes() : credential.getTextContent());
-                    }
+    private ProcessRole parseRole(XMLStreamReader reader) throws XMLStreamException {
+        String name = reader.getAttributeValue(null, "name");
+        if (name == null) {
+            throw new XMLStreamException("Role without a name!", reader.getLocation());
+        }
+        ProcessRole result = new ProcessRole(name, "group".equals(reader.getLocalName()) ? Role.GROUP : Role.USER);
 
-                }
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if ("properties".equals(element)) {
+                parseValues(reader, result.getProperties());
             }
-            else if (child.getNodeName().equals("memberof")) {
-                if (!child.getNodeName().equals("#text")) {
-                    result.getMemberOf().add(child.getTextContent());
-                }
+            else if ("credentials".equals(element)) {
+                parseValues(reader, result.getCredentials());
+            }
+            else if ("memberof".equals(element)) {
+                result.getMemberOf().add(reader.getElementText());
+            }
+            else {
+                skipElement(reader);
             }
         }
 
@@ -249,109 +385,107 @@ public class UserAdminStore extends ResourceStore implements UserAdminConfigurat
     }
 
     /**
-     * Gets all roles that are present in a document.
-     * 
-     * @param doc
-     *            The document to use.
-     * @return A list of ProcessRoles.
+     * Helper method that reads all properties or credentials of a role into the given map.
      */
-    private List<ProcessRole> getRoles(Document doc) {
-        List<ProcessRole> result = new ArrayList<>();
-        for (Node node = doc.getFirstChild().getFirstChild(); node != null; node = node.getNextSibling()) {
-            if (!node.getNodeName().equals("#text")) {
-                result.add(getRole(node));
-            }
+    private void parseValues(XMLStreamReader reader, Map<String, Object> values) throws XMLStreamException {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String key = reader.getLocalName();
+            String type = reader.getAttributeValue(null, "type");
+            String value = reader.getElementText();
+            values.put(key, "byte[]".equals(type) ? value.getBytes() : value);
         }
-        return result;
     }
 
-    /**
-     * Installs the users and groups found in a document.
-     */
-    private void installRoles(Document doc) {
+    private void setUsers(ParsedResource resource, boolean clearExistingUsers) {
         synchronized (m_installListLock) {
-            m_toInstall.addAll(getRoles(doc));
+            m_toInstall.clear();
+            m_toRemove.clear();
+            m_installedDigests.clear();
+            m_pendingDigests.clear();
+            m_toInstall.addAll(resource.getRoles());
+            m_clear = clearExistingUsers;
         }
+        begin();
+        end();
     }
 
     /**
-     * Helper that finds all groups this role is a member of.
+     * Helper that skips the element the reader is currently positioned at, including all its children.
      */
-    private Group[] memberOf(Role r) {
-        List<Group> result = new ArrayList<>();
-        Role[] roles = null;
-        try {
-            roles = m_userAdmin.getRoles(null);
-        }
-        catch (InvalidSyntaxException e) {
-            // Will not happen, since we pass in a null filter.
-        }
-        if (roles == null) {
-            return new Group[0];
-        }
-        for (Role group : roles) {
-            if (group instanceof Group) {
-                Role[] members = ((Group) group).getMembers();
-                if (members != null) {
-                    if (contains(r, members)) {
-                        result.add((Group) group);
-                    }
-                }
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
             }
         }
-
-        return result.toArray(new Group[result.size()]);
     }
 
     /**
-     * Removes the users and groups found in a document.
+     * Brings the contents of a dictionary in line with the given values, only touching the keys that actually
+     * differ.
      */
-    private void removeRoles(Document doc) {
-        synchronized (m_installListLock) {
-            m_toRemove.addAll(getRoles(doc));
+    private void updateDictionary(Dictionary<Object, Object> dict, Map<String, Object> values) {
+        List<Object> obsoleteKeys = new ArrayList<>();
+        Enumeration<Object> keys = dict.keys();
+        while (keys.hasMoreElements()) {
+            Object key = keys.nextElement();
+            if (!values.containsKey(key)) {
+                obsoleteKeys.add(key);
+            }
+        }
+        for (Object key : obsoleteKeys) {
+            dict.remove(key);
+        }
+        for (Entry<String, Object> entry : values.entrySet()) {
+            if (!isEqual(dict.get(entry.getKey()), entry.getValue())) {
+                dict.put(entry.getKey(), entry.getValue());
+            }
         }
-    }
-
-    private void setUsers(Document doc, boolean clearExistingUsers) {
-        m_toInstall.clear();
-        m_toRemove.clear();
-        installRoles(doc);
-        m_clear = clearExistingUsers;
-        begin();
-        updateUserAdmin();
-        end();
     }
 
     /**
-     * Updates a role with new parameter, but reuses the UserAdmin's role object for this (if available).
+     * Updates a role with new parameter, but reuses the UserAdmin's role object for this (if available). Only the
+     * properties, credentials and group memberships that differ are changed.
      */
-    private void updateRole(ProcessRole role) {
+    @SuppressWarnings("unchecked")
+    private void updateRole(ProcessRole role, Map<String, Set<String>> memberships) {
         m_installedUsers.add(role.getName());
 
         Role r = m_userAdmin.getRole(role.getName());
         if (r == null) {
             r = m_userAdmin.createRole(role.getName(), role.getType());
         }
-        clearDictionary(r.getProperties());
-        for (Entry<String, Object> entry : role.getProperties().entrySet()) {
-            r.getProperties().put(entry.getKey(), entry.getValue());
-        }
-        clearDictionary(((User) r).getCredentials());
-        if (role.getType() == Role.USER) {
-            for (Entry<String, Object> entry : role.getCredentials().entrySet()) {
-                ((User) r).getCredentials().put(entry.getKey(), entry.getValue());
+        updateDictionary(r.getProperties(), role.getProperties());
+        Map<String, Object> credentials = (role.getType() == Role.USER) ? role.getCredentials() : Collections.<String, Object> emptyMap();
+        updateDictionary(((User) r).getCredentials(), credentials);
+
+        Set<String> currentGroups = getMemberships(memberships, role.getName());
+        Set<String> wantedGroups = new HashSet<>(role.getMemberOf());
+        for (String groupName : new ArrayList<>(currentGroups)) {
+            if (!wantedGroups.contains(groupName)) {
+                Role g = m_userAdmin.getRole(groupName);
+                if (g instanceof Group) {
+                    ((Group) g).removeMember(r);
+                }
+                currentGroups.remove(groupName);
             }
         }
-        for (Group g : memberOf(r)) {
-            g.removeMember(r);
-        }
-        for (String groupName : role.getMemberOf()) {
-            Group g = (Group) m_userAdmin.getRole(groupName);
-            if (g == null) {
+        for (String groupName : wantedGroups) {
+            if (currentGroups.contains(groupName)) {
+                continue;
+            }
+            Role g = m_userAdmin.getRole(groupName);
+            if (!(g instanceof Group)) {
                 m_log.log(LogService.LOG_WARNING, "Cannot add user " + role.getName() + " to group " + groupName + ", because the group does not exist.");
                 continue;
             }
-            g.addMember(r);
+            ((Group) g).addMember(r);
+            currentGroups.add(groupName);
         }
     }
 
@@ -366,22 +500,20 @@ public class UserAdminStore extends ResourceStore implements UserAdminConfigurat
                 }
 
                 // install or update all roles we have to update
-                while (!m_toInstall.isEmpty()) {
-                    ProcessRole role = m_toInstall.remove(0);
-                    updateRole(role);
+                if (!m_toInstall.isEmpty()) {
+                    Map<String, Set<String>> memberships = getMemberships();
+                    for (ProcessRole role : m_toInstall) {
+                        updateRole(role, memberships);
+                    }
+                    m_toInstall.clear();
                 }
+                m_installedDigests.putAll(m_pendingDigests);
+                m_pendingDigests.clear();
 
                 // remove all roles that have not been updated if this install
                 // is a full install
                 if (m_clear) {
-                    Role[] roles = null;
-                    try {
-                        roles = m_userAdmin.getRoles(null);
-                    }
-                    catch (InvalidSyntaxException e) {
-                        // Will not happen, since we pass in a null filter.
-                    }
-                    for (Role r : roles) {
+                    for (Role r : getAllRoles()) {
                         if (!m_installedUsers.contains(r.getName())) {
                             m_userAdmin.removeRole(r.getName());
                         }
@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.resourceprocessor.useradmin.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ace.test.utils.TestUtils;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.log.LogService;
+import org.osgi.service.useradmin.Authorization;
+import org.osgi.service.useradmin.Group;
+import org.osgi.service.useradmin.Role;
+import org.osgi.service.useradmin.User;
+import org.osgi.service.useradmin.UserAdmin;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class UserAdminStoreTest {
+    private static final String DP_NAME = "dp";
+
+    /**
+     * Dictionary that keeps track of the number of changes made to it.
+     */
+    static class CountingDictionary extends Hashtable<Object, Object> {
+        private static final long serialVersionUID = 1L;
+
+        private int m_changes;
+
+        @Override
+        public synchronized Object put(Object key, Object value) {
+            m_changes++;
+            return super.put(key, value);
+        }
+
+        @Override
+        public synchronized Object remove(Object key) {
+            m_changes++;
+            return super.remove(key);
+        }
+
+        int getChanges() {
+            return m_changes;
+        }
+    }
+
+    /**
+     * Simple in-memory role, which can act as user and as group.
+     */
+    static class TestRole implements Group {
+        private final String m_name;
+        private final int m_type;
+        private final CountingDictionary m_properties = new CountingDictionary();
+        private final CountingDictionary m_credentials = new CountingDictionary();
+        private final List<Role> m_members = new ArrayList<>();
+
+        TestRole(String name, int type) {
+            m_name = name;
+            m_type = type;
+        }
+
+        @Override
+        public boolean addMember(Role role) {
+            return !m_members.contains(role) && m_members.add(role);
+        }
+
+        @Override
+        public boolean addRequiredMember(Role role) {
+            return false;
+        }
+
+        @Override
+        public CountingDictionary getCredentials() {
+            return m_credentials;
+        }
+
+        @Override
+        public Role[] getMembers() {
+            return m_members.isEmpty() ? null : m_members.toArray(new Role[m_members.size()]);
+        }
+
+        @Override
+        public String getName() {
+            return m_name;
+        }
+
+        @Override
+        public CountingDictionary getProperties() {
+            return m_properties;
+        }
+
+        @Override
+        public Role[] getRequiredMembers() {
+            return null;
+        }
+
+        @Override
+        public int getType() {
+            return m_type;
+        }
+
+        @Override
+        public boolean hasCredential(String key, Object value) {
+            return false;
+        }
+
+        @Override
+        public boolean removeMember(Role role) {
+            return m_members.remove(role);
+        }
+
+        int getChanges() {
+            return m_properties.getChanges() + m_credentials.getChanges();
+        }
+    }
+
+    /**
+     * Simple in-memory UserAdmin that keeps track of the roles that are looked up.
+     */
+    static class TestUserAdmin implements UserAdmin {
+        private final Map<String, TestRole> m_roles = new LinkedHashMap<>();
+        private final List<String> m_lookups = new ArrayList<>();
+        private int m_failures;
+
+        @Override
+        public Role createRole(String name, int type) {
+            if (m_failures > 0) {
+                m_failures--;
+                throw new IllegalStateException("Failed to create role " + name);
+            }
+            if (m_roles.containsKey(name)) {
+                return null;
+            }
+            TestRole role = new TestRole(name, type);
+            m_roles.put(name, role);
+            return role;
+        }
+
+        @Override
+        public Authorization getAuthorization(User user) {
+            return null;
+        }
+
+        @Override
+        public TestRole getRole(String name) {
+            m_lookups.add(name);
+            return m_roles.get(name);
+        }
+
+        @Override
+        public Role[] getRoles(String filter) {
+            return m_roles.isEmpty() ? null : m_roles.values().toArray(new Role[m_roles.size()]);
+        }
+
+        @Override
+        public User getUser(String key, String value) {
+            return null;
+        }
+
+        @Override
+        public boolean removeRole(String name) {
+            return m_roles.remove(name) != null;
+        }
+
+        List<String> getLookups() {
+            return m_lookups;
+        }
+
+        void setFailures(int failures) {
+            m_failures = failures;
+        }
+    }
+
+    private File m_dataDir;
+    private TestUserAdmin m_userAdmin;
+    private UserAdminStore m_store;
+    private List<String> m_logMessages;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        m_dataDir = File.createTempFile("useradminstore", null);
+        m_dataDir.delete();
+        m_dataDir.mkdirs();
+
+        m_logMessages = new ArrayList<>();
+
+        m_store = new UserAdminStore(TestUtils.createMockObjectAdapter(BundleContext.class, new Object() {
+            @SuppressWarnings("unused")
+            public File getDataFile(String name) {
+                return new File(m_dataDir, name);
+            }
+        }));
+        TestUtils.configureObject(m_store, LogService.class, TestUtils.createMockObjectAdapter(LogService.class, new Object() {
+            @SuppressWarnings("unused")
+            public void log(int level, String message) {
+                m_logMessages.add(message);
+            }
+        }));
+
+        m_userAdmin = new TestUserAdmin();
+        m_store.userAdminAdded(m_userAdmin);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        delete(m_dataDir);
+    }
+
+    /**
+     * Tests that users, groups, their properties, credentials and memberships are parsed and installed.
+     */
+    @Test
+    public void testInstallParsesRoles() throws Exception {
+        install("users.xml", "<roles>"
+            + "<group name=\"admins\"><properties><type>adminGroup</type></properties></group>"
+            + "<user name=\"alice\"><properties><email>alice@example.com</email></properties>"
+            + "<credentials><password>secret</password><key type=\"byte[]\">abc</key></credentials>"
+            + "<memberof>admins</memberof><unknown><nested/></unknown></user>"
+            + "</roles>");
+
+        TestRole group = m_userAdmin.getRole("admins");
+        assertNotNull(group, "Group not installed?!");
+        assertEquals(group.getType(), Role.GROUP);
+        assertEquals(group.getProperties().get("type"), "adminGroup");
+
+        TestRole user = m_userAdmin.getRole("alice");
+        assertNotNull(user, "User not installed?!");
+        assertEquals(user.getType(), Role.USER);
+        assertEquals(user.getProperties().get("email"), "alice@example.com");
+        assertEquals(user.getCredentials().get("password"), "secret");
+        assertTrue(Arrays.equals((byte[]) user.getCredentials().get("key"), "abc".getBytes()));
+        assertEquals(Arrays.asList(group.getMembers()), Arrays.<Role> asList(user));
+    }
+
+    /**
+     * Tests that a resource that did not change since it was last installed is not applied again.
+     */
+    @Test
+    public void testInstallUnchangedResourceIsSkipped() throws Exception {
+        String users = "<roles><user name=\"alice\"><properties><email>alice@example.com</email></properties></user></roles>";
+        install("users.xml", users);
+        m_userAdmin.getLookups().clear();
+
+        install("users.xml", users);
+
+        assertTrue(m_userAdmin.getLookups().isEmpty(), "Unchanged resource should not be applied again!");
+        assertNotNull(m_userAdmin.getRole("alice"), "User of unchanged resource should not be removed!");
+    }
+
+    /**
+     * Tests that only the roles that actually changed are touched when a changed resource is installed.
+     */
+    @Test
+    public void testInstallChangedResourceOnlyUpdatesChangedRoles() throws Exception {
+        install("users.xml", "<roles>"
+            + "<user name=\"alice\"><properties><email>alice@example.com</email></properties></user>"
+            + "<user name=\"bob\"><properties><email>bob@example.com</email></properties></user>"
+            + "</roles>");
+
+        TestRole alice = m_userAdmin.getRole("alice");
+        TestRole bob = m_userAdmin.getRole("bob");
+        int aliceChanges = alice.getChanges();
+        int bobChanges = bob.getChanges();
+
+        install("users.xml", "<roles>"
+            + "<user name=\"alice\"><properties><email>alice@example.com</email></properties></user>"
+            + "<user name=\"bob\"><properties><email>bob@example.org</email></properties></user>"
+            + "</roles>");
+
+        assertEquals(alice.getChanges(), aliceChanges, "Unchanged role should not be touched!");
+        assertEquals(bob.getChanges(), bobChanges + 1, "Only the changed property should be updated!");
+        assertEquals(bob.getProperties().get("email"), "bob@example.org");
+        assertEquals(m_userAdmin.getRole("alice"), alice, "Unchanged role should not be recreated!");
+    }
+
+    /**
+     * Tests that a resource whose roles could not be applied is not considered to be installed.
+     */
+    @Test
+    public void testInstallIsRetriedAfterFailedApply() throws Exception {
+        String users = "<roles><user name=\"alice\"/></roles>";
+        m_userAdmin.setFailures(1);
+        try {
+            install("users.xml", users);
+            fail("Applying the roles should have failed!");
+        }
+        catch (IllegalStateException e) {
+            // Ok; expected...
+        }
+        assertNull(m_userAdmin.getRole("alice"));
+
+        install("users.xml", users);
+
+        assertNotNull(m_userAdmin.getRole("alice"), "Failed resource should be installed again!");
+        for (String message : m_logMessages) {
+            assertFalse(message.contains("did not change"), "Failed resource should not be considered unchanged!");
+        }
+    }
+
+    /**
+     * Tests that resources validated in a deployment session that is rolled back are not installed later on.
+     */
+    @Test
+    public void testRollbackDiscardsValidatedResources() throws Exception {
+        m_store.addResource(DP_NAME, "users.xml", new ByteArrayInputStream("<roles><user name=\"alice\"/></roles>".getBytes()));
+        m_store.validate("users.xml", new ByteArrayInputStream("<roles><user name=\"bob\"/></roles>".getBytes()));
+        m_store.rollback();
+
+        m_store.begin();
+        m_store.install("users.xml");
+        m_store.end();
+
+        assertNotNull(m_userAdmin.getRole("alice"), "Stored resource should be installed!");
+        assertNull(m_userAdmin.getRole("bob"), "Resource of rolled back session should not be installed!");
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private void install(String name, String contents) throws IOException, Exception {
+        m_store.addResource(DP_NAME, name, new ByteArrayInputStream(contents.getBytes()));
+        m_store.begin();
+        m_store.install(name);
+        m_store.end();
+    }
+}
@@ -19,24 +19,32 @@
 package org.apache.ace.useradmin.repository;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.io.StringWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.ace.repository.Repository;
 import org.apache.ace.useradmin.repository.xstream.GroupDTO;
@@ -57,20 +65,41 @@ import org.osgi.service.useradmin.UserAdminListener;
 import com.thoughtworks.xstream.XStream;
 
 /**
- * Felix UserAdmin RoleRepositoryStore implementation that's backed by an ACE Repository
+ * Felix UserAdmin RoleRepositoryStore implementation that's backed by an ACE Repository.
+ * <p>
+ * All roles are kept in an immutable snapshot that is replaced as a whole upon each change, so readers never have to
+ * wait for a change or a reload of the repository. Upon reload, only the roles that are changed in the repository are
+ * recreated, all other roles are kept as-is.
  */
 public class UserAdminRepository implements RoleRepositoryStore, UserAdminListener, RepoCurrentChecker {
-    private final ConcurrentMap<String, Role> m_roleMap;
+    /**
+     * Immutable snapshot of all roles.
+     */
+    private static final class RoleSnapshot {
+        static final RoleSnapshot EMPTY = new RoleSnapshot(Collections.<String, Role> emptyMap(), Collections.<String, RoleDTO> emptyMap());
+
+        final Map<String, Role> m_roles;
+        /** the representation of the roles as last read from or written to the repository. */
+        final Map<String, RoleDTO> m_dtos;
+
+        RoleSnapshot(Map<String, Role> roles, Map<String, RoleDTO> dtos) {
+            m_roles = Collections.unmodifiableMap(roles);
+            m_dtos = Collections.unmodifiableMap(dtos);
+        }
+    }
+
     private final AtomicLong m_version;
-    private final ReadWriteLock m_rw;
+    /** serializes all changes to the roles, readers never need to obtain it. */
+    private final ReentrantLock m_lock;
 
+    private volatile RoleSnapshot m_snapshot;
     private volatile Repository m_repository;
     private volatile LogService m_log;
 
     public UserAdminRepository() {
-        m_roleMap = new ConcurrentHashMap<>();
         m_version = new AtomicLong(-1L);
-        m_rw = new ReentrantReadWriteLock(true /* fair */);
+        m_lock = new ReentrantLock(true /* fair */);
+        m_snapshot = RoleSnapshot.EMPTY;
     }
 
     UserAdminRepository(Repository repo, LogService log) {
@@ -83,14 +112,8 @@ public class UserAdminRepository implements RoleRepositoryStore, UserAdminListen
     public Role addRole(String name, int type) throws Exception {
         ensureRoleMapIsCurrent();
 
-        m_rw.readLock().lock();
-        try {
-            if (m_roleMap.containsKey(name)) {
-                return null;
-            }
-        }
-        finally {
-            m_rw.readLock().unlock();
+        if (m_snapshot.m_roles.containsKey(name)) {
+            return null;
         }
 
         Role role;
@@ -105,16 +128,20 @@ public class UserAdminRepository implements RoleRepositoryStore, UserAdminListen
                 throw new IllegalArgumentException("Invalid group type " + type);
         }
 
-        m_rw.writeLock().lock();
+        m_lock.lock();
         try {
-            m_roleMap.put(name, role);
+            Map<String, Role> roles = new HashMap<>(m_snapshot.m_roles);
+            if (roles.containsKey(name)) {
+                return null;
+            }
+            roles.put(name, role);
             // Make sure the repository is correctly synchronized...
             m_log.log(LogService.LOG_DEBUG, "Writing role map due to adding of " + ((type == Role.USER) ? "user" : "group") + " role: " + name);
 
-            writeRoleMap();
+            writeRoleMap(roles);
         }
         finally {
-            m_rw.writeLock().unlock();
+            m_lock.unlock();
         }
 
         return role;
@@ -125,13 +152,7 @@ public class UserAdminRepository implements RoleRepositoryStore, UserAdminListen
         // NOTE: do not use local variable for `version.get()` as it appears that javac otherwise replaces it with a
         // constant...
         if ((version.get() > 0) && currentVersion != version.get()) {
-            m_rw.writeLock().lock();
-            try {
-                m_roleMap.clear();
-            }
-            finally {
-                m_rw.writeLock().unlock();
-            }
+            m_snapshot = RoleSnapshot.EMPTY;
 
             throw new IllegalStateException(context + " out of sync. Please refresh first!");
         }
@@ -145,13 +166,7 @@ public class UserAdminRepository implements RoleRepositoryStore, UserAdminListen
 
         ensureRoleMapIsCurrent();
 
-        m_rw.readLock().lock();
-        try {
-            return m_roleMap.get(name);
-        }
-        finally {
-            m_rw.readLock().unlock();
-        }
+        return m_snapshot.m_roles.get(name);
     }
 
     @Override
@@ -163,17 +178,8 @@ public class UserAdminRepository implements RoleRepositoryStore, UserAdminListen
 
         ensureRoleMapIsCurrent();
 
-        List<Role> allRoles;
-        m_rw.readLock().lock();
-        try {
-            allRoles = new ArrayList<>(m_roleMap.values());
-        }
-        finally {
-            m_rw.readLock().unlock();
-        }
-
         List<Role> matchingRoles = new ArrayList<>();
-        for (Role role : allRoles) {
+        for (Role role : m_snapshot.m_roles.values()) {
             if (filter == null || filter.match(role.getProperties())) {
                 matchingRoles.add(role);
             }
@@ -184,25 +190,26 @@ public class UserAdminRepository implements RoleRepositoryStore, UserAdminListen
 
     @Override
     public Role removeRole(String name) throws Exception {
-        m_rw.writeLock().lock();
+        m_lock.lock();
         try {
-            Role role = m_roleMap.remove(name);
+            Map<String, Role> roles = new HashMap<>(m_snapshot.m_roles);
+            Role role = roles.remove(name);
             if (role != null) {
                 // Make sure the repository is correctly synchronized...
                 m_log.log(LogService.LOG_DEBUG, "Writing role map due to removal of " + ((role.getType() == Role.USER) ? "user" : "group") + " role: " + role.getName());
 
-                writeRoleMap();
+                writeRoleMap(roles);
             }
             return role;
         }
         finally {
-            m_rw.writeLock().unlock();
+            m_lock.unlock();
         }
     }
 
     @Override
     public void roleChanged(UserAdminEvent event) {
-        m_rw.writeLock().lock();
+        m_lock.lock();
         try {
             // Make sure the repository is correctly synchronized...
             Role role = event.getRole();
@@ -211,55 +218,55 @@ public class UserAdminRepository implements RoleRepositoryStore, UserAdminListen
             writeRoleMap();
         }
         finally {
-            m_rw.writeLock().unlock();
+            m_lock.unlock();
         }
     }
 
     final void readRoleMap(long version) throws Exception {
         XStream instance = XStreamFactory.getInstance();
 
-        Map<String, Role> newRoles = new HashMap<>();
+        Map<String, RoleDTO> newDtos = new LinkedHashMap<>();
 
         try (Reader r = new InputStreamReader(m_repository.checkout(version));
             ObjectInputStream objectInputStream = instance.createObjectInputStream(r)) {
 
             RoleDTO roleDto;
-            List<RoleDTO> rolesWithMemberships = new ArrayList<>();
-
             try {
                 while ((roleDto = (RoleDTO) objectInputStream.readObject()) != null) {
-                    User role;
-                    if (roleDto.type == Role.USER) {
-                        role = RoleFactory.createUser(roleDto.name);
-                    }
-                    else if (roleDto.type == Role.GROUP) {
-                        role = RoleFactory.createGroup(roleDto.name);
-                    }
-                    else {
+                    if (roleDto.type != Role.USER && roleDto.type != Role.GROUP) {
                         throw new IllegalStateException("");
                     }
-                    if (roleDto.properties != null) {
-                        for (Entry<Object, Object> entry : roleDto.properties.entrySet()) {
-                            role.getProperties().put(entry.getKey(), entry.getValue());
-                        }
-                    }
-                    if (roleDto.credentials != null) {
-                        for (Entry<Object, Object> entry : roleDto.credentials.entrySet()) {
-                            role.getCredentials().put(entry.getKey(), entry.getValue());
-                        }
-                    }
-                    if (roleDto.memberOf != null && !roleDto.memberOf.isEmpty()) {
-                        rolesWithMemberships.add(roleDto);
-                    }
-
-                    newRoles.put(role.getName(), role);
+                    newDtos.put(roleDto.name, roleDto);
                 }
             }
             catch (EOFException e) {
                 // Ignore, this is the way XStream let's us know we're done reading
             }
+        }
 
-            for (RoleDTO role : rolesWithMemberships) {
+        m_lock.lock();
+        try {
+            RoleSnapshot snapshot = m_snapshot;
+            Set<String> changedRoles = getChangedRoles(snapshot, newDtos);
+
+            // Keep all roles that did not change, and recreate all others...
+            Map<String, Role> newRoles = new HashMap<>();
+            Map<String, Role> createdRoles = new HashMap<>();
+            for (RoleDTO roleDto : newDtos.values()) {
+                if (changedRoles.contains(roleDto.name)) {
+                    createdRoles.put(roleDto.name, createRole(roleDto));
+                }
+                else {
+                    newRoles.put(roleDto.name, unwrapRole(snapshot.m_roles.get(roleDto.name)));
+                }
+            }
+            newRoles.putAll(createdRoles);
+
+            // Only the recreated groups need their members to be added...
+            for (RoleDTO role : newDtos.values()) {
+                if (role.memberOf == null) {
+                    continue;
+                }
                 Role memberRole = newRoles.get(role.name);
                 for (String memberOf : role.memberOf) {
                     Role groupRole = newRoles.get(memberOf);
@@ -271,61 +278,34 @@ public class UserAdminRepository implements RoleRepositoryStore, UserAdminListen
                         throw new IllegalStateException("Target is not a group");
                     }
 
-                    ((Group) groupRole).addMember(memberRole);
+                    if (createdRoles.containsKey(memberOf)) {
+                        ((Group) groupRole).addMember(memberRole);
+                    }
                 }
             }
-        }
 
-        m_rw.writeLock().lock();
-        try {
             // "Commit" everything...
-            m_roleMap.clear();
+            Map<String, Role> roles = new HashMap<>();
             for (Map.Entry<String, Role> entry : newRoles.entrySet()) {
-                m_roleMap.put(entry.getKey(), wrapRole(entry.getValue()));
+                String name = entry.getKey();
+                roles.put(name, createdRoles.containsKey(name) ? wrapRole(entry.getValue()) : snapshot.m_roles.get(name));
             }
 
+            m_snapshot = new RoleSnapshot(roles, newDtos);
             m_version.set(version);
         }
         finally {
-            m_rw.writeLock().unlock();
+            m_lock.unlock();
         }
     }
 
     final void writeRoleMap() {
-        StringWriter writer = new StringWriter();
-
-        List<Role> roles = new ArrayList<>(m_roleMap.values());
-
-        XStream instance = XStreamFactory.getInstance();
-        try (ObjectOutputStream stream = instance.createObjectOutputStream(writer, "roles")) {
-            for (Role role : roles) {
-                List<String> memberOf = memberOf(roles, role);
-                if (role.getType() == Role.USER) {
-                    stream.writeObject(new UserDTO((User) role, memberOf));
-                }
-                else if (role.getType() == Role.GROUP) {
-                    GroupDTO obj = new GroupDTO((Group) role, memberOf);
-                    stream.writeObject(obj);
-                }
-                else {
-                    throw new IllegalStateException("Unsupported role type");
-                }
-            }
-        }
-        catch (IOException e) {
-            m_log.log(LogService.LOG_ERROR, "Failed to write role changes to the main role repository", e);
-            return;
-        }
-
-        try (InputStream inputStream = new ByteArrayInputStream(writer.toString().getBytes())) {
-            long fromVersion = m_version.longValue();
-
-            if (m_repository.commit(inputStream, fromVersion)) {
-                m_version.set(getMostRecentVersion());
-            }
+        m_lock.lock();
+        try {
+            writeRoleMap(m_snapshot.m_roles);
         }
-        catch (Exception e) {
-            m_log.log(LogService.LOG_ERROR, "Failed to commit role changes to the main role repository", e);
+        finally {
+            m_lock.unlock();
         }
     }
 
@@ -348,42 +328,121 @@ public class UserAdminRepository implements RoleRepositoryStore, UserAdminListen
         }
     }
 
-    private boolean contains(Role needle, Role[] haystack) {
-        for (Role role : haystack) {
-            if (role.getType() == needle.getType() && role.getName().equals(needle.getName())) {
-                return true;
+    private User createRole(RoleDTO roleDto) {
+        User role;
+        if (roleDto.type == Role.USER) {
+            role = RoleFactory.createUser(roleDto.name);
+        }
+        else {
+            role = RoleFactory.createGroup(roleDto.name);
+        }
+        if (roleDto.properties != null) {
+            for (Entry<Object, Object> entry : roleDto.properties.entrySet()) {
+                role.getProperties().put(entry.getKey(), entry.getValue());
             }
         }
-        return false;
+        if (roleDto.credentials != null) {
+            for (Entry<Object, Object> entry : roleDto.credentials.entrySet()) {
+                role.getCredentials().put(entry.getKey(), entry.getValue());
+            }
+        }
+        return role;
     }
 
     private boolean ensureRoleMapIsCurrent() throws Exception {
-        long actualVersion;
-        long localVersion;
+        long actualVersion = getMostRecentVersion();
+        long localVersion = m_version.longValue();
 
-        boolean isCurrent;
-        m_rw.readLock().lock();
+        boolean isCurrent = !m_snapshot.m_roles.isEmpty() && localVersion == actualVersion;
+        if (isCurrent) {
+            return true;
+        }
+
+        if (m_snapshot.m_roles.isEmpty()) {
+            m_lock.lock();
+        }
+        else if (!m_lock.tryLock()) {
+            // Another thread is busy changing or reloading the roles, keep using the current ones in the meantime...
+            return false;
+        }
         try {
+            // Check again, as another thread could have reloaded the roles in the meantime...
             actualVersion = getMostRecentVersion();
             localVersion = m_version.longValue();
 
-            isCurrent = !m_roleMap.isEmpty() && localVersion == actualVersion;
+            if (m_snapshot.m_roles.isEmpty() || localVersion != actualVersion) {
+                m_log.log(LogService.LOG_DEBUG, "Reading role map as we're no longer current (" + localVersion + " <=> " + actualVersion + " )...");
+
+                readRoleMap(actualVersion);
+            }
         }
         finally {
-            m_rw.readLock().unlock();
+            m_lock.unlock();
         }
 
-        if (!isCurrent) {
-            m_log.log(LogService.LOG_DEBUG, "Reading role map as we're no longer current (" + localVersion + " <=> " + actualVersion + " )...");
+        return false;
+    }
+
+    /**
+     * Determines which roles need to be recreated: all roles that are new or changed, as well as all groups that any
+     * of those roles (or removed roles) are, or used to be, a member of.
+     */
+    private Set<String> getChangedRoles(RoleSnapshot snapshot, Map<String, RoleDTO> newDtos) {
+        Set<String> result = new HashSet<>();
+        for (RoleDTO newDto : newDtos.values()) {
+            RoleDTO oldDto = snapshot.m_dtos.get(newDto.name);
+            if (oldDto == null || !snapshot.m_roles.containsKey(newDto.name) || !isSameRole(oldDto, newDto)) {
+                result.add(newDto.name);
+            }
+        }
+        for (String name : snapshot.m_dtos.keySet()) {
+            if (!newDtos.containsKey(name)) {
+                result.add(name);
+            }
+        }
 
-            readRoleMap(actualVersion);
+        Deque<String> pending = new ArrayDeque<>(result);
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            for (RoleDTO dto : Arrays.asList(newDtos.get(name), snapshot.m_dtos.get(name))) {
+                if (dto == null || dto.memberOf == null) {
+                    continue;
+                }
+                for (String group : dto.memberOf) {
+                    if (result.add(group)) {
+                        pending.push(group);
+                    }
+                }
+            }
         }
+        return result;
+    }
 
-        return isCurrent;
+    /**
+     * @return a map with, for each role name, the names of the groups the role is a member of.
+     */
+    private Map<String, List<String>> getMemberships(Collection<Role> roles) {
+        Map<String, List<String>> result = new HashMap<>();
+        for (Role role : roles) {
+            if (role instanceof Group) {
+                Role[] members = ((Group) role).getMembers();
+                if (members == null) {
+                    continue;
+                }
+                for (Role member : members) {
+                    List<String> memberOf = result.get(member.getName());
+                    if (memberOf == null) {
+                        memberOf = new ArrayList<>();
+                        result.put(member.getName(), memberOf);
+                    }
+                    memberOf.add(role.getName());
+                }
+            }
+        }
+        return result;
     }
 
     private long getMostRecentVersion() {
-        m_rw.readLock().lock();
         try {
             return m_repository.getRange().getHigh();
         }
@@ -391,24 +450,100 @@ public class UserAdminRepository implements RoleRepositoryStore, UserAdminListen
             m_log.log(LogService.LOG_WARNING, "Unable to query repository for most recent version!", exception);
             return -1L;
         }
-        finally {
-            m_rw.readLock().unlock();
+    }
+
+    private boolean isSameProperties(Properties p1, Properties p2) {
+        int size1 = (p1 == null) ? 0 : p1.size();
+        int size2 = (p2 == null) ? 0 : p2.size();
+        if (size1 != size2) {
+            return false;
+        }
+        if (size1 == 0) {
+            return true;
         }
+        for (Entry<Object, Object> entry : p1.entrySet()) {
+            Object value = p2.get(entry.getKey());
+            if (entry.getValue() instanceof byte[] && value instanceof byte[]) {
+                if (!Arrays.equals((byte[]) entry.getValue(), (byte[]) value)) {
+                    return false;
+                }
+            }
+            else if (!entry.getValue().equals(value)) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private List<String> memberOf(List<Role> roles, Role role) {
-        List<String> memberOf = new ArrayList<>();
-        for (Role r : roles) {
-            if (r instanceof Group) {
-                Group group = (Group) r;
-                Role[] members = group.getMembers();
-                if (members != null) {
-                    if (contains(role, members)) {
-                        memberOf.add(group.getName());
-                    }
+    private boolean isSameRole(RoleDTO role1, RoleDTO role2) {
+        List<String> memberOf1 = (role1.memberOf == null) ? Collections.<String> emptyList() : role1.memberOf;
+        List<String> memberOf2 = (role2.memberOf == null) ? Collections.<String> emptyList() : role2.memberOf;
+
+        return role1.type == role2.type
+            && role1.name.equals(role2.name)
+            && isSameProperties(role1.properties, role2.properties)
+            && isSameProperties(role1.credentials, role2.credentials)
+            && new HashSet<>(memberOf1).equals(new HashSet<>(memberOf2));
+    }
+
+    private Role unwrapRole(Role role) {
+        return (role instanceof RepositoryUser) ? ((RepositoryUser) role).m_delegate : role;
+    }
+
+    /**
+     * Writes the given roles to the repository, and makes them the current roles. Should only be called while holding
+     * the lock.
+     */
+    private void writeRoleMap(Map<String, Role> roles) {
+        // Write the roles in a stable order, this keeps the differences between two versions as small as possible...
+        Map<String, Role> sortedRoles = new TreeMap<>(roles);
+        Map<String, List<String>> memberships = getMemberships(sortedRoles.values());
+        Map<String, RoleDTO> dtos = new HashMap<>();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        XStream instance = XStreamFactory.getInstance();
+        try (ObjectOutputStream stream = instance.createObjectOutputStream(new OutputStreamWriter(output), "roles")) {
+            for (Role role : sortedRoles.values()) {
+                List<String> memberOf = memberships.get(role.getName());
+                if (memberOf == null) {
+                    memberOf = new ArrayList<>();
+                }
+
+                RoleDTO dto;
+                if (role.getType() == Role.USER) {
+                    dto = new UserDTO((User) role, memberOf);
                 }
+                else if (role.getType() == Role.GROUP) {
+                    dto = new GroupDTO((Group) role, memberOf);
+                }
+                else {
+                    throw new IllegalStateException("Unsupported role type");
+                }
+                stream.writeObject(dto);
+                dtos.put(role.getName(), dto);
+            }
+        }
+        catch (IOException e) {
+            m_log.log(LogService.LOG_ERROR, "Failed to write role changes to the main role repository", e);
+            // We no longer know how our roles relate to those in the repository...
+            m_snapshot = new RoleSnapshot(roles, Collections.<String, RoleDTO> emptyMap());
+            return;
+        }
+
+        try (InputStream inputStream = new ByteArrayInputStream(output.toByteArray())) {
+            long fromVersion = m_version.longValue();
+
+            boolean committed = m_repository.commit(inputStream, fromVersion);
+            // Publish the new roles before the new version, so readers never consider the old roles to be current...
+            m_snapshot = new RoleSnapshot(roles, dtos);
+            if (committed) {
+                m_version.set(getMostRecentVersion());
             }
         }
-        return memberOf;
+        catch (Exception e) {
+            m_log.log(LogService.LOG_ERROR, "Failed to commit role changes to the main role repository", e);
+            m_snapshot = new RoleSnapshot(roles, Collections.<String, RoleDTO> emptyMap());
+        }
     }
 }
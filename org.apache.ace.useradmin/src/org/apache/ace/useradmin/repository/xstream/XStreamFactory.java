@@ -21,12 +21,18 @@ package org.apache.ace.useradmin.repository.xstream;
 import com.thoughtworks.xstream.XStream;
 
 public class XStreamFactory {
+    // XStream instances are thread-safe once configured, and expensive to create...
+    private static final XStream INSTANCE = createInstance();
 
     private XStreamFactory() {
         // Not used
     }
     
     public static XStream getInstance() {
+        return INSTANCE;
+    }
+
+    private static XStream createInstance() {
         XStream xStream = new XStream();
         xStream.alias("group", GroupDTO.class);
         xStream.alias("user", UserDTO.class);
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.useradmin.repository;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ace.range.SortedRangeSet;
+import org.apache.ace.repository.Repository;
+import org.osgi.service.log.LogService;
+import org.osgi.service.useradmin.Group;
+import org.osgi.service.useradmin.Role;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class UserAdminRepositoryTest {
+    /**
+     * Simple in-memory repository.
+     */
+    private static class MemoryRepository implements Repository {
+        private final List<byte[]> m_versions = new ArrayList<>();
+
+        @Override
+        public synchronized InputStream checkout(long version) throws IOException, IllegalArgumentException {
+            return new ByteArrayInputStream(m_versions.get((int) version - 1));
+        }
+
+        @Override
+        public synchronized boolean commit(InputStream data, long fromVersion) throws IOException, IllegalArgumentException {
+            if (fromVersion != m_versions.size()) {
+                throw new IOException("Repository already changed!");
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = data.read(buffer)) >= 0) {
+                baos.write(buffer, 0, read);
+            }
+            m_versions.add(baos.toByteArray());
+            return true;
+        }
+
+        @Override
+        public synchronized SortedRangeSet getRange() throws IOException {
+            return new SortedRangeSet(m_versions.isEmpty() ? "" : "1-" + m_versions.size());
+        }
+
+        synchronized String getLatest() {
+            return new String(m_versions.get(m_versions.size() - 1));
+        }
+
+        synchronized void commit(String data) throws IOException {
+            commit(new ByteArrayInputStream(data.getBytes()), m_versions.size());
+        }
+    }
+
+    private static final String GROUP = "<group name=\"g\"><properties><type>userGroup</type></properties></group>";
+    private static final String USER1 = "<user name=\"u1\"><properties><test>%s</test></properties><memberof>g</memberof></user>";
+    private static final String USER2 = "<user name=\"u2\"><properties><test>%s</test></properties></user>";
+
+    private MemoryRepository m_repository;
+    private UserAdminRepository m_store;
+
+    @Test
+    public void testAddRoleIsWrittenToRepository() throws Exception {
+        m_repository.commit(roles("a", "b"));
+
+        assertEquals(m_store.addRole("u3", Role.USER).getName(), "u3");
+        assertEquals(m_store.getRoles(null).length, 4);
+
+        String contents = m_repository.getLatest();
+        assertTrue(contents.contains("<user name=\"u3\">"), contents);
+        assertTrue(contents.indexOf("name=\"u1\"") < contents.indexOf("name=\"u3\""), "Roles should be written in order: " + contents);
+
+        // Our own changes should not cause the roles to be recreated...
+        Role user1 = m_store.getRoleByName("u1");
+        m_store.addRole("u4", Role.USER);
+        assertSame(m_store.getRoleByName("u1"), user1);
+    }
+
+    @Test
+    public void testReloadKeepsUnchangedRoles() throws Exception {
+        m_repository.commit(roles("a", "b"));
+
+        Role user1 = m_store.getRoleByName("u1");
+        Role user2 = m_store.getRoleByName("u2");
+        Role group = m_store.getRoleByName("g");
+        assertEquals(user2.getProperties().get("test"), "b");
+
+        m_repository.commit(roles("a", "changed"));
+
+        assertSame(m_store.getRoleByName("u1"), user1);
+        assertSame(m_store.getRoleByName("g"), group);
+        Role newUser2 = m_store.getRoleByName("u2");
+        assertNotSame(newUser2, user2);
+        assertEquals(newUser2.getProperties().get("test"), "changed");
+    }
+
+    @Test
+    public void testReloadRecreatesGroupsOfChangedMembers() throws Exception {
+        m_repository.commit(roles("a", "b"));
+
+        Role user1 = m_store.getRoleByName("u1");
+        Role user2 = m_store.getRoleByName("u2");
+        Role group = m_store.getRoleByName("g");
+
+        m_repository.commit(roles("changed", "b"));
+
+        assertSame(m_store.getRoleByName("u2"), user2);
+        Role newUser1 = m_store.getRoleByName("u1");
+        assertNotSame(newUser1, user1);
+        assertEquals(newUser1.getProperties().get("test"), "changed");
+
+        Group newGroup = (Group) m_store.getRoleByName("g");
+        assertNotSame(newGroup, group);
+        Role[] members = newGroup.getMembers();
+        assertEquals(members.length, 1);
+        assertEquals(members[0].getProperties().get("test"), "changed");
+    }
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        m_repository = new MemoryRepository();
+        m_store = new UserAdminRepository(m_repository, mock(LogService.class));
+    }
+
+    private String roles(String user1, String user2) {
+        return "<roles>" + GROUP + String.format(USER1, user1) + String.format(USER2, user2) + "</roles>";
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.deployment.verifier;
+
+import java.util.Map;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Verifies whether the most recent deployment versions of targets resolve, using the {@link VerifierService}.
+ * Manifests of deployed bundles are cached by their URL and size, so they are only downloaded once, even across
+ * restarts.
+ * <p>
+ * Targets, distributions and deployment versions are looked up in the client repositories of the given session, for
+ * example the session of a web UI client or the ID of a workspace.
+ * </p>
+ */
+@ProviderType
+public interface TargetVerifier {
+
+    /**
+     * Verifies the most recent deployment version of a single target.
+     * 
+     * @param sessionID
+     *            the ID of the session whose repositories should be used, cannot be <code>null</code>;
+     * @param targetId
+     *            the ID of the target to verify, cannot be <code>null</code>;
+     * @param frameworkManifest
+     *            the manifest headers of the framework of the target, or <code>null</code> to use the manifest that is
+     *            configured for the target.
+     * @return the verification report, or <code>null</code> if there is no deployment version for the given target.
+     * @throws IllegalArgumentException
+     *             in case no session with the given ID exists.
+     */
+    VerificationReport verifyTarget(String sessionID, String targetId, Map<String, String> frameworkManifest);
+
+    /**
+     * Verifies the most recent deployment versions of all targets that are associated with the given distribution.
+     * Targets are verified in parallel, and targets with the same framework manifest and the same set of artifacts are
+     * verified only once.
+     * 
+     * @param sessionID
+     *            the ID of the session whose repositories should be used, cannot be <code>null</code>;
+     * @param distributionName
+     *            the name of the distribution whose targets should be verified, cannot be <code>null</code>.
+     * @return the verification reports, keyed by target ID, never <code>null</code>. Targets without a deployment
+     *         version are omitted.
+     * @throws IllegalArgumentException
+     *             in case no session with the given ID, or no distribution with the given name exists.
+     */
+    Map<String, VerificationReport> verifyDistribution(String sessionID, String distributionName);
+}
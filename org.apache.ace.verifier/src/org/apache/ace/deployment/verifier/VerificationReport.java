@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.deployment.verifier;
+
+import java.util.Set;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Provides the outcome of verifying a deployment version with the {@link TargetVerifier}.
+ */
+@ProviderType
+public interface VerificationReport {
+
+    /**
+     * @return the resource processor PIDs that are provided by the customizers in the deployment, never
+     *         <code>null</code>.
+     */
+    Set<String> getCustomizers();
+
+    /**
+     * @return a HTML fragment describing the wires and problems found during the verification, never
+     *         <code>null</code>.
+     */
+    String getDetails();
+
+    /**
+     * @return the resource processor PIDs that are required by the resources in the deployment, never
+     *         <code>null</code>.
+     */
+    Set<String> getProcessors();
+
+    /**
+     * @return <code>true</code> if all required resource processors are provided by a customizer, <code>false</code>
+     *         otherwise.
+     */
+    boolean isCustomizersMatching();
+
+    /**
+     * @return <code>true</code> if all bundles in the deployment resolve, <code>false</code> otherwise.
+     */
+    boolean isResolved();
+}
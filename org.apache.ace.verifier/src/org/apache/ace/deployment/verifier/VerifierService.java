@@ -53,6 +53,17 @@ public interface VerifierService {
 	public interface VerifyEnvironment {
 		public BundleRevision addBundle(long id, Map<String, String> manifest) throws BundleException;
 		public boolean verifyResolve(Set<BundleRevision> mandatory, Set<BundleRevision> optional, Set<BundleRevision> ondemandFragments);
+
+		/**
+		 * Creates a new environment that sees all bundles of this environment, and to which more bundles can be added.
+		 * The bundles of this environment are parsed and indexed only once, and are shared by all of its child
+		 * environments. Hence, once a child environment is created, no more bundles can be added to this environment.
+		 * Bundle IDs should be unique across this environment and its children.
+		 * 
+		 * @param reporter the reporter for the child environment, can be <code>null</code>.
+		 * @return a new child environment, never <code>null</code>.
+		 */
+		public VerifyEnvironment createChildEnvironment(VerifyReporter reporter);
 	}
 	
 	public VerifyEnvironment createEnvironment(Map<String, String> config, VerifyReporter reporter);
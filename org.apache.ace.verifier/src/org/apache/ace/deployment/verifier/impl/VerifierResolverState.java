@@ -44,6 +44,11 @@ import org.osgi.framework.wiring.BundleRevision;
 
 /**
  * Provides a custom {@link ResolverState} implementation to hold all state during resolving.
+ * <p>
+ * A state can be layered on top of a base state, in which case the revisions and capabilities of the base state are
+ * visible as well. The base state is shared by all states layered on top of it, so it should no longer be modified
+ * once it is used as base. As a consequence, its capabilities can be matched without locking.
+ * </p>
  */
 public class VerifierResolverState implements Resolver.ResolverState {
 
@@ -57,6 +62,8 @@ public class VerifierResolverState implements Resolver.ResolverState {
 	private final String m_fwkExecEnvStr;
 	// Parsed framework environments
 	private final Set<String> m_fwkExecEnvSet;
+	// The (read-only) state we're layered upon
+	private final VerifierResolverState m_base;
 
 	/**
 	 * Creates a new {@link VerifierResolverState} instance.
@@ -64,6 +71,17 @@ public class VerifierResolverState implements Resolver.ResolverState {
 	 * @param fwkExecEnvStr the framework execution environment, can be <code>null</code>.
 	 */
 	public VerifierResolverState(String fwkExecEnvStr) {
+		this(fwkExecEnvStr, null);
+	}
+
+	/**
+	 * Creates a new {@link VerifierResolverState} instance.
+	 * 
+	 * @param fwkExecEnvStr the framework execution environment, can be <code>null</code>;
+	 * @param base the state to layer this state upon, can be <code>null</code>.
+	 */
+	public VerifierResolverState(String fwkExecEnvStr, VerifierResolverState base) {
+		m_base = base;
 		m_revisions = new HashSet<>();
 		m_fragments = new HashSet<>();
 		m_capSets = new HashMap<>();
@@ -85,7 +103,7 @@ public class VerifierResolverState implements Resolver.ResolverState {
 	}
 
 	synchronized Set<BundleRevision> getUnresolvedRevisions() {
-		Set<BundleRevision> unresolved = new HashSet<>();
+		Set<BundleRevision> unresolved = (m_base == null) ? new HashSet<BundleRevision>() : m_base.getUnresolvedRevisions();
 		for (BundleRevision revision : m_revisions) {
 			if (revision.getWiring() == null) {
 				unresolved.add(revision);
@@ -149,7 +167,9 @@ public class VerifierResolverState implements Resolver.ResolverState {
 	}
 
 	synchronized Set<BundleRevision> getFragments() {
-		return new HashSet<>(m_fragments);
+		Set<BundleRevision> fragments = (m_base == null) ? new HashSet<BundleRevision>() : m_base.getFragments();
+		fragments.addAll(m_fragments);
+		return fragments;
 	}
 
 	/**
@@ -163,10 +183,55 @@ public class VerifierResolverState implements Resolver.ResolverState {
     /**
      * {@inheritDoc}
      */
-	public synchronized SortedSet<BundleCapability> getCandidates(BundleRequirement req, boolean obeyMandatory) {
-//		BundleRevision reqRevision = req.getRevision();
+	public SortedSet<BundleCapability> getCandidates(BundleRequirement req, boolean obeyMandatory) {
 		SortedSet<BundleCapability> result = new TreeSet<>(new CandidateComparator());
 
+		// The base states are no longer modified, so they can be matched without locking...
+		for (VerifierResolverState base = m_base; base != null; base = base.m_base) {
+			base.addCandidates(req, obeyMandatory, result);
+		}
+		synchronized (this) {
+			addCandidates(req, obeyMandatory, result);
+		}
+
+		// If we have resolver hooks, then we may need to filter our results
+		// based on a whitelist and/or fine-grained candidate filtering.
+		/*TODO: karl - is this correct?
+		 * if (!result.isEmpty() && !m_hooks.isEmpty()) {
+		 
+			// It we have a whitelist, then first filter out candidates
+			// from disallowed revisions.
+			if (m_whitelist != null) {
+				for (Iterator<BundleCapability> it = result.iterator(); it
+						.hasNext();) {
+					if (!m_whitelist.contains(it.next().getRevision())) {
+						it.remove();
+					}
+				}
+			}
+
+			// Now give the hooks a chance to do fine-grained filtering.
+			ShrinkableCollection<BundleCapability> shrinkable = new ShrinkableCollection<BundleCapability>(
+					result);
+			for (ResolverHook hook : m_hooks) {
+				try {
+					Felix.m_secureAction.invokeResolverHookMatches(hook, req,
+							shrinkable);
+				} catch (Throwable th) {
+					m_logger.log(Logger.LOG_WARNING,
+							"Resolver hook exception.", th);
+				}
+			}
+		}*/
+
+		return result;
+	}
+
+	/**
+	 * Adds all capabilities of this state that match the given requirement to the given result.
+	 */
+	private void addCandidates(BundleRequirement req, boolean obeyMandatory, SortedSet<BundleCapability> result) {
+//		BundleRevision reqRevision = req.getRevision();
 		CapabilitySet capSet = m_capSets.get(req.getNamespace());
 		if (capSet != null) {
 			// Get the requirement's filter; if this is our own impl we
@@ -244,38 +309,6 @@ public class VerifierResolverState implements Resolver.ResolverState {
 				result.add(cap);
 			}
 		}
-
-		// If we have resolver hooks, then we may need to filter our results
-		// based on a whitelist and/or fine-grained candidate filtering.
-		/*TODO: karl - is this correct?
-		 * if (!result.isEmpty() && !m_hooks.isEmpty()) {
-		 
-			// It we have a whitelist, then first filter out candidates
-			// from disallowed revisions.
-			if (m_whitelist != null) {
-				for (Iterator<BundleCapability> it = result.iterator(); it
-						.hasNext();) {
-					if (!m_whitelist.contains(it.next().getRevision())) {
-						it.remove();
-					}
-				}
-			}
-
-			// Now give the hooks a chance to do fine-grained filtering.
-			ShrinkableCollection<BundleCapability> shrinkable = new ShrinkableCollection<BundleCapability>(
-					result);
-			for (ResolverHook hook : m_hooks) {
-				try {
-					Felix.m_secureAction.invokeResolverHookMatches(hook, req,
-							shrinkable);
-				} catch (Throwable th) {
-					m_logger.log(Logger.LOG_WARNING,
-							"Resolver hook exception.", th);
-				}
-			}
-		}*/
-
-		return result;
 	}
 
     /**
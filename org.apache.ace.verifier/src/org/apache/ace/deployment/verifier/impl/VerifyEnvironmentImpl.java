@@ -261,6 +261,9 @@ public class VerifyEnvironmentImpl implements VerifierService.VerifyEnvironment
     private final VerifyReporter m_reporter;
     private final Map<String, String> m_config;
     private final ConcurrentMap<Long, VerifierBundleRevision> m_bundles;
+    private final VerifyEnvironmentImpl m_parent;
+    // Set once this environment is shared with child environments, after which no bundles can be added
+    private VerifierResolverState m_sharedState;
 
     /**
      * Creates a new {@link VerifyEnvironmentImpl} instance.
@@ -269,7 +272,18 @@ public class VerifyEnvironmentImpl implements VerifierService.VerifyEnvironment
      * @param reporter the {@link VerifyReporter} to use, can be <code>null</code> in which case a dummy reporter will be used.
      */
     public VerifyEnvironmentImpl(Map<String, String> config, VerifyReporter reporter) {
+        this(config, reporter, null);
+    }
 
+    /**
+     * Creates a new {@link VerifyEnvironmentImpl} instance.
+     * 
+     * @param config the configuration to use, cannot be <code>null</code>;
+     * @param reporter the {@link VerifyReporter} to use, can be <code>null</code> in which case a dummy reporter will be used;
+     * @param parent the environment whose bundles are shared with this environment, can be <code>null</code>.
+     */
+    private VerifyEnvironmentImpl(Map<String, String> config, VerifyReporter reporter, VerifyEnvironmentImpl parent) {
+        m_parent = parent;
         m_config = config;
         m_reporter = (reporter == null) ? new DummyReporter() : reporter;
         m_bundles = new ConcurrentHashMap<>();
@@ -285,8 +299,13 @@ public class VerifyEnvironmentImpl implements VerifierService.VerifyEnvironment
     public BundleRevision addBundle(final long id, final Map<String, String> manifest) throws BundleException {
         VerifierBundleRevision rev = new VerifierBundleRevision(m_log, new DummyBundle(id, manifest), m_config, manifest);
 
-        if (m_bundles.putIfAbsent(id, rev) != null) {
-            throw new BundleException("Bundle already exists for id: " + id);
+        synchronized (this) {
+            if (m_sharedState != null) {
+                throw new IllegalStateException("Cannot add bundles to an environment that is shared with other environments!");
+            }
+            if (containsBundle(id) || (m_bundles.putIfAbsent(id, rev) != null)) {
+                throw new BundleException("Bundle already exists for id: " + id);
+            }
         }
 
         return rev;
@@ -295,12 +314,24 @@ public class VerifyEnvironmentImpl implements VerifierService.VerifyEnvironment
     /**
      * {@inheritDoc}
      */
-    public boolean verifyResolve(Set<BundleRevision> mandatory, Set<BundleRevision> optional, Set<BundleRevision> ondemandFragments) {
+    public VerifyEnvironment createChildEnvironment(VerifyReporter reporter) {
+        // Make sure our bundles are indexed before anybody starts using them...
+        getSharedState();
 
-        VerifierResolverState state = new VerifierResolverState(getFrameworkExecutionEnvironment());
+        return new VerifyEnvironmentImpl(m_config, reporter, this);
+    }
 
-        for (VerifierBundleRevision rev : m_bundles.values()) {
-            state.addRevision(rev);
+    /**
+     * {@inheritDoc}
+     */
+    public boolean verifyResolve(Set<BundleRevision> mandatory, Set<BundleRevision> optional, Set<BundleRevision> ondemandFragments) {
+
+        VerifierResolverState state;
+        synchronized (this) {
+            state = m_sharedState;
+        }
+        if (state == null) {
+            state = createResolverState();
         }
 
         Resolver resolver = new ResolverImpl(m_log);
@@ -326,6 +357,42 @@ public class VerifyEnvironmentImpl implements VerifierService.VerifyEnvironment
         return true;
     }
 
+    /**
+     * @param id the bundle ID to test.
+     * @return <code>true</code> if the given bundle ID is used by this environment or one of its parents, <code>false</code> otherwise.
+     */
+    private boolean containsBundle(long id) {
+        return m_bundles.containsKey(id) || ((m_parent != null) && m_parent.containsBundle(id));
+    }
+
+    /**
+     * Creates a new resolver state with all our bundles, layered on top of the shared state of our parent.
+     * 
+     * @return a new resolver state, never <code>null</code>.
+     */
+    private VerifierResolverState createResolverState() {
+        VerifierResolverState base = (m_parent == null) ? null : m_parent.getSharedState();
+
+        VerifierResolverState state = new VerifierResolverState(getFrameworkExecutionEnvironment(), base);
+        for (VerifierBundleRevision rev : m_bundles.values()) {
+            state.addRevision(rev);
+        }
+        return state;
+    }
+
+    /**
+     * Returns the resolver state that is shared with all child environments. Once created, no more bundles can be added
+     * to this environment, which allows the state to be used without locking.
+     * 
+     * @return the shared resolver state, never <code>null</code>.
+     */
+    private synchronized VerifierResolverState getSharedState() {
+        if (m_sharedState == null) {
+            m_sharedState = createResolverState();
+        }
+        return m_sharedState;
+    }
+
     /**
      * @return the framework execution environment, can be <code>null</code>.
      */
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.deployment.verifier.target;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the main attributes of the manifests of artifacts, keyed by the URL and size of the artifact. An artifact
+ * that is replaced under the same URL is very likely to change in size as well, so a manifest only has to be read
+ * once. The cache can be persisted to a file, so it
+ * survives restarts. This class is thread-safe.
+ */
+final class ManifestCache {
+    /** Identifies the format of the cache file, bump when changing the format. */
+    private static final int FORMAT_VERSION = 1;
+
+    private final File m_file;
+    private final ConcurrentMap<String, Map<String, String>> m_manifests;
+    private volatile boolean m_modified;
+
+    /**
+     * Creates a new {@link ManifestCache} instance.
+     * 
+     * @param file
+     *            the file to persist the cache in, can be <code>null</code> in which case the cache is not persisted.
+     */
+    public ManifestCache(File file) {
+        m_file = file;
+        m_manifests = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the cached manifest for the artifact with the given URL and size.
+     * 
+     * @param url
+     *            the URL of the artifact, cannot be <code>null</code>;
+     * @param size
+     *            the size of the artifact, in bytes.
+     * @return the cached manifest headers, or <code>null</code> if there is no cached manifest.
+     */
+    public Map<String, String> get(String url, long size) {
+        if (size <= 0) {
+            // The size is not known, so we cannot tell whether the artifact was replaced...
+            return null;
+        }
+        return m_manifests.get(getKey(url, size));
+    }
+
+    /**
+     * Caches the manifest for the artifact with the given URL and size.
+     * 
+     * @param url
+     *            the URL of the artifact, cannot be <code>null</code>;
+     * @param size
+     *            the size of the artifact, in bytes;
+     * @param manifest
+     *            the manifest headers to cache, cannot be <code>null</code>.
+     */
+    public void put(String url, long size, Map<String, String> manifest) {
+        if (size > 0) {
+            m_manifests.put(getKey(url, size), Collections.unmodifiableMap(new HashMap<>(manifest)));
+            m_modified = true;
+        }
+    }
+
+    /**
+     * @return the number of cached manifests.
+     */
+    public int size() {
+        return m_manifests.size();
+    }
+
+    /**
+     * Loads the cached manifests from the cache file, if it exists.
+     * 
+     * @throws IOException
+     *             in case the cache file could not be read.
+     */
+    public void load() throws IOException {
+        if (m_file == null || !m_file.isFile()) {
+            return;
+        }
+
+        Map<String, Map<String, String>> manifests = new HashMap<>();
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(m_file)))) {
+            if (dis.readInt() != FORMAT_VERSION) {
+                // Cache is written in another format, simply start over...
+                return;
+            }
+            int count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(dis);
+                int headerCount = dis.readInt();
+
+                Map<String, String> manifest = new HashMap<>();
+                for (int j = 0; j < headerCount; j++) {
+                    manifest.put(readString(dis), readString(dis));
+                }
+                manifests.put(key, Collections.unmodifiableMap(manifest));
+            }
+        }
+        m_manifests.putAll(manifests);
+    }
+
+    /**
+     * Writes the cached manifests to the cache file, if anything changed since the last time it was written.
+     * 
+     * @throws IOException
+     *             in case the cache file could not be written.
+     */
+    public void store() throws IOException {
+        if (m_file == null || !m_modified) {
+            return;
+        }
+        m_modified = false;
+
+        Map<String, Map<String, String>> manifests = new HashMap<>(m_manifests);
+
+        File tempFile = new File(m_file.getPath() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeInt(manifests.size());
+            for (Map.Entry<String, Map<String, String>> entry : manifests.entrySet()) {
+                writeString(dos, entry.getKey());
+
+                Map<String, String> manifest = entry.getValue();
+                dos.writeInt(manifest.size());
+                for (Map.Entry<String, String> header : manifest.entrySet()) {
+                    writeString(dos, header.getKey());
+                    writeString(dos, header.getValue());
+                }
+            }
+        }
+        catch (IOException e) {
+            m_modified = true;
+            throw e;
+        }
+        // Replace the old cache in one go, so we never end up with a partially written cache...
+        Files.move(tempFile.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String getKey(String url, long size) {
+        return size + "@" + url;
+    }
+
+    private static String readString(DataInputStream dis) throws IOException {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a string prefixed by its length. Unlike {@link DataOutputStream#writeUTF(String)}, this also works for
+     * headers larger than 64KB, such as the exports of large library bundles.
+     */
+    private static void writeString(DataOutputStream dos, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+}
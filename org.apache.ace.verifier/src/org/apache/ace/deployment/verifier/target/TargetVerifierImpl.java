@@ -0,0 +1,746 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.deployment.verifier.target;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+
+import org.apache.ace.client.repository.RepositoryObject;
+import org.apache.ace.client.repository.SessionFactory;
+import org.apache.ace.client.repository.object.DeploymentArtifact;
+import org.apache.ace.client.repository.object.DeploymentVersionObject;
+import org.apache.ace.client.repository.object.DistributionObject;
+import org.apache.ace.client.repository.object.TargetObject;
+import org.apache.ace.client.repository.repository.DeploymentVersionRepository;
+import org.apache.ace.client.repository.repository.DistributionRepository;
+import org.apache.ace.client.repository.repository.TargetRepository;
+import org.apache.ace.connectionfactory.ConnectionFactory;
+import org.apache.ace.deployment.verifier.TargetVerifier;
+import org.apache.ace.deployment.verifier.VerificationReport;
+import org.apache.ace.deployment.verifier.VerifierService;
+import org.apache.ace.deployment.verifier.VerifierService.VerifyEnvironment;
+import org.apache.ace.deployment.verifier.VerifierService.VerifyReporter;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogService;
+
+/**
+ * Provides a {@link TargetVerifier} that caches the manifests of all verified bundles and verifies identical
+ * deployments only once. Also provides shell commands to verify targets from the console.
+ */
+public class TargetVerifierImpl implements TargetVerifier {
+    /** The name of the file, in the bundle data area, to persist the manifest cache in. */
+    private static final String CACHE_FILE = "manifests.cache";
+    private static final int MAX_VERIFY_THREADS = 4;
+
+    /**
+     * Holds everything that determines the outcome of a verification.
+     */
+    private static final class Deployment {
+        final Map<String, String> m_frameworkManifest;
+        final DeploymentArtifact[] m_artifacts;
+
+        Deployment(Map<String, String> frameworkManifest, DeploymentArtifact[] artifacts) {
+            m_frameworkManifest = frameworkManifest;
+            m_artifacts = artifacts;
+        }
+
+        /**
+         * @return the URLs of all bundles in this deployment, never <code>null</code>.
+         */
+        Set<String> getBundleUrls() {
+            Set<String> urls = new HashSet<>();
+            for (DeploymentArtifact artifact : m_artifacts) {
+                if (isBundle(artifact)) {
+                    urls.add(artifact.getUrl());
+                }
+            }
+            return urls;
+        }
+
+        /**
+         * @return a key that is equal for all deployments that have the same framework manifest.
+         */
+        String getFrameworkKey() {
+            return new TreeMap<>(m_frameworkManifest).toString();
+        }
+
+        /**
+         * @return a key that is equal for all deployments that have the same framework manifest and artifacts.
+         */
+        String getKey() {
+            StringBuilder sb = new StringBuilder(getFrameworkKey());
+            TreeSet<String> urls = new TreeSet<>();
+            for (DeploymentArtifact artifact : m_artifacts) {
+                urls.add(artifact.getUrl());
+            }
+            sb.append(urls);
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Holds a verify environment with the framework and the bundles that several deployments have in common. These
+     * bundles are parsed and indexed only once, and shared by the verifications of all these deployments.
+     */
+    private static final class BaseEnvironment {
+        final VerifyEnvironment m_env;
+        final Set<String> m_bundleUrls = new HashSet<>();
+        final List<BundleRevision> m_revisions = new ArrayList<>();
+        final List<Map<String, String>> m_manifests = new ArrayList<>();
+
+        BaseEnvironment(VerifyEnvironment env) {
+            m_env = env;
+        }
+    }
+
+    /**
+     * Provides the client repositories of a single session for the duration of a verification.
+     */
+    private final class Session implements AutoCloseable {
+        final DeploymentVersionRepository m_deploymentVersionRepo;
+        final DistributionRepository m_distributionRepo;
+        final TargetRepository m_targetRepo;
+        private final String m_sessionID;
+        private final List<ServiceReference<?>> m_refs = new ArrayList<>();
+
+        Session(String sessionID) {
+            m_sessionID = sessionID;
+            try {
+                m_deploymentVersionRepo = getService(DeploymentVersionRepository.class);
+                m_distributionRepo = getService(DistributionRepository.class);
+                m_targetRepo = getService(TargetRepository.class);
+            }
+            catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            for (ServiceReference<?> ref : m_refs) {
+                m_context.ungetService(ref);
+            }
+            m_refs.clear();
+        }
+
+        DistributionObject getDistribution(String name) {
+            for (DistributionObject distribution : m_distributionRepo.get()) {
+                if (name.equals(distribution.getName())) {
+                    return distribution;
+                }
+            }
+            return null;
+        }
+
+        TargetObject getTarget(String targetId) {
+            for (TargetObject target : m_targetRepo.get()) {
+                if (targetId.equals(target.getID())) {
+                    return target;
+                }
+            }
+            return null;
+        }
+
+        private <T> T getService(Class<T> type) {
+            Collection<ServiceReference<T>> refs;
+            try {
+                refs = m_context.getServiceReferences(type, "(" + SessionFactory.SERVICE_SID + "=" + m_sessionID + ")");
+            }
+            catch (InvalidSyntaxException e) {
+                throw new IllegalArgumentException("Invalid session ID: " + m_sessionID, e);
+            }
+            for (ServiceReference<T> ref : refs) {
+                T service = m_context.getService(ref);
+                if (service != null) {
+                    m_refs.add(ref);
+                    return service;
+                }
+            }
+            throw new IllegalArgumentException("No such session: " + m_sessionID);
+        }
+    }
+
+    // Injected by Dependency Manager
+    private volatile BundleContext m_context;
+    private volatile VerifierService m_verifier;
+    private volatile ConnectionFactory m_connectionFactory;
+    private volatile LogService m_log;
+
+    private volatile ManifestCache m_cache;
+
+    /**
+     * Returns the framework manifest for a given repository object.
+     * <p>
+     * In case the given repository object does not provide a manifest, this method will return a hard-coded manifest.
+     * </p>
+     *
+     * @param object
+     *            the repository object to get the manifest for, can be <code>null</code>.
+     * @return a manifest, never <code>null</code>.
+     */
+    private static String getManifest(RepositoryObject object) {
+        String manifest = (object == null) ? null : object.getAttribute("manifest");
+        if (manifest == null) {
+            manifest = defineStaticManifest();
+        }
+        return manifest;
+    }
+
+    /**
+     * Parses the given manifest text into its headers.
+     * 
+     * @param manifestText
+     *            the manifest text to parse, cannot be <code>null</code>.
+     * @return the manifest headers, never <code>null</code>.
+     */
+    private static Map<String, String> getManifestEntries(String manifestText) {
+        StringTokenizer tok = new StringTokenizer(manifestText, ":\n");
+
+        Map<String, String> manMap = new HashMap<>();
+        while (tok.hasMoreTokens()) {
+            manMap.put(tok.nextToken(), tok.nextToken());
+        }
+        return manMap;
+    }
+
+    /**
+     * Returns a "static"/hardcoded manifest.
+     *
+     * @return a manifest, never <code>null</code>.
+     */
+    private static String defineStaticManifest() {
+        // @formatter:off
+        return Constants.BUNDLE_MANIFESTVERSION + ": 2\n" +
+               Constants.BUNDLE_SYMBOLICNAME + ": org.apache.felix.framework\n" +
+               Constants.EXPORT_PACKAGE + ": " + VerifierService.SYSTEM_PACKAGES + "," + VerifierService.JRE_1_6_PACKAGES + "," +
+               "org.osgi.service.cm; version=1.2," +
+               "org.osgi.service.metatype; version=1.1.1," +
+               "org.osgi.service.cm; version=1.3.0," +
+               "org.osgi.service.deploymentadmin.spi; version=1.0.1," +
+               "org.osgi.service.deploymentadmin; version=1.1.0\n";
+        // @formatter:on
+    }
+
+    /**
+     * Converts a given {@link Attributes} into a map.
+     *
+     * @param attributes
+     *            the attributes to convert, cannot be <code>null</code>.
+     * @return a manifest map, never <code>null</code>.
+     */
+    private static Map<String, String> getManifestEntries(final Manifest manifest) {
+        Attributes attributes = manifest.getMainAttributes();
+
+        Map<String, String> entries = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : attributes.entrySet()) {
+            entries.put(entry.getKey().toString(), entry.getValue().toString());
+        }
+        return entries;
+    }
+
+    /**
+     * Shell command: verifies all targets associated with the given distribution.
+     * 
+     * @param sessionID
+     *            the ID of the session, or workspace, to use;
+     * @param distributionName
+     *            the name of the distribution to verify.
+     */
+    public void distribution(String sessionID, String distributionName) {
+        Map<String, VerificationReport> reports = verifyDistribution(sessionID, distributionName);
+        if (reports.isEmpty()) {
+            System.out.println("No deployment versions available to verify.");
+            return;
+        }
+
+        int failed = 0;
+        for (Map.Entry<String, VerificationReport> entry : reports.entrySet()) {
+            VerificationReport report = entry.getValue();
+            if (!report.isResolved() || !report.isCustomizersMatching()) {
+                failed++;
+            }
+            System.out.printf("%s: %s%n", entry.getKey(), getSummary(report));
+        }
+
+        Map<VerificationReport, Boolean> unique = new IdentityHashMap<>();
+        for (VerificationReport report : reports.values()) {
+            unique.put(report, Boolean.TRUE);
+        }
+        System.out.printf("Verified %d targets (%d distinct deployments), %d failed.%n", reports.size(), unique.size(), failed);
+    }
+
+    /**
+     * Shell command: verifies a single target.
+     * 
+     * @param sessionID
+     *            the ID of the session, or workspace, to use;
+     * @param targetId
+     *            the ID of the target to verify.
+     */
+    public void target(String sessionID, String targetId) {
+        VerificationReport report = verifyTarget(sessionID, targetId, null);
+        if (report == null) {
+            System.out.println("No deployment version available to verify.");
+        }
+        else {
+            System.out.printf("%s: %s%n", targetId, getSummary(report));
+        }
+    }
+
+    /**
+     * Called by Dependency Manager upon starting of this component.
+     */
+    public void start() {
+        File file = m_context.getDataFile(CACHE_FILE);
+
+        m_cache = new ManifestCache(file);
+        try {
+            m_cache.load();
+        }
+        catch (IOException e) {
+            m_log.log(LogService.LOG_WARNING, "Failed to load manifest cache, starting with an empty cache!", e);
+        }
+    }
+
+    /**
+     * Called by Dependency Manager upon stopping of this component.
+     */
+    public void stop() {
+        storeCache();
+    }
+
+    @Override
+    public Map<String, VerificationReport> verifyDistribution(String sessionID, String distributionName) {
+        // Group all targets with identical deployments, so we verify each of them only once...
+        Map<String, Deployment> deployments = new LinkedHashMap<>();
+        Map<String, List<String>> targetsPerDeployment = new HashMap<>();
+        try (Session session = new Session(sessionID)) {
+            DistributionObject distribution = session.getDistribution(distributionName);
+            if (distribution == null) {
+                throw new IllegalArgumentException("No such distribution: " + distributionName);
+            }
+
+            for (TargetObject target : distribution.getTargets()) {
+                DeploymentVersionObject version = session.m_deploymentVersionRepo.getMostRecentDeploymentVersion(target.getID());
+                if (version == null) {
+                    continue;
+                }
+
+                Deployment deployment = new Deployment(getManifestEntries(getManifest(target)), version.getDeploymentArtifacts());
+                String key = deployment.getKey();
+                if (!deployments.containsKey(key)) {
+                    deployments.put(key, deployment);
+                    targetsPerDeployment.put(key, new ArrayList<String>());
+                }
+                targetsPerDeployment.get(key).add(target.getID());
+            }
+        }
+
+        if (deployments.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        // Deployments for the same framework share a base environment with the bundles they have in common...
+        Map<String, List<Deployment>> deploymentsPerFramework = new HashMap<>();
+        for (Deployment deployment : deployments.values()) {
+            String key = deployment.getFrameworkKey();
+            if (!deploymentsPerFramework.containsKey(key)) {
+                deploymentsPerFramework.put(key, new ArrayList<Deployment>());
+            }
+            deploymentsPerFramework.get(key).add(deployment);
+        }
+        Map<String, BaseEnvironment> baseEnvironments = new HashMap<>();
+        for (Map.Entry<String, List<Deployment>> entry : deploymentsPerFramework.entrySet()) {
+            baseEnvironments.put(entry.getKey(), createBaseEnvironment(entry.getValue()));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(deployments.size(), MAX_VERIFY_THREADS));
+        try {
+            Map<String, Future<VerificationResult>> futures = new LinkedHashMap<>();
+            for (Map.Entry<String, Deployment> entry : deployments.entrySet()) {
+                final Deployment deployment = entry.getValue();
+                final BaseEnvironment base = baseEnvironments.get(deployment.getFrameworkKey());
+
+                futures.put(entry.getKey(), executor.submit(new Callable<VerificationResult>() {
+                    @Override
+                    public VerificationResult call() throws Exception {
+                        if (base == null) {
+                            return verify(deployment.m_frameworkManifest, deployment.m_artifacts);
+                        }
+                        return verify(base, deployment.m_artifacts);
+                    }
+                }));
+            }
+
+            Map<String, VerificationReport> result = new TreeMap<>();
+            for (Map.Entry<String, Future<VerificationResult>> entry : futures.entrySet()) {
+                VerificationResult report = getVerificationResult(entry.getValue());
+                for (String targetId : targetsPerDeployment.get(entry.getKey())) {
+                    result.put(targetId, report);
+                }
+            }
+            return result;
+        }
+        finally {
+            executor.shutdownNow();
+
+            storeCache();
+        }
+    }
+
+    @Override
+    public VerificationReport verifyTarget(String sessionID, String targetId, Map<String, String> frameworkManifest) {
+        DeploymentArtifact[] artifacts;
+        try (Session session = new Session(sessionID)) {
+            DeploymentVersionObject version = session.m_deploymentVersionRepo.getMostRecentDeploymentVersion(targetId);
+            if (version == null) {
+                return null;
+            }
+            artifacts = version.getDeploymentArtifacts();
+
+            if (frameworkManifest == null) {
+                frameworkManifest = getManifestEntries(getManifest(session.getTarget(targetId)));
+            }
+        }
+
+        try {
+            return verify(frameworkManifest, artifacts);
+        }
+        finally {
+            storeCache();
+        }
+    }
+
+    /**
+     * Factory method to create a suitable {@link VerifyEnvironment} instance.
+     *
+     * @param manifest
+     *            the manifest to use;
+     * @param verifyResult
+     *            the verification result to use, can be <code>null</code> if nothing should be reported.
+     * @return a new {@link VerifyEnvironment} instance, never <code>null</code>.
+     */
+    @SuppressWarnings("deprecation")
+    private VerifyEnvironment createVerifyEnvironment(Map<String, String> manifest, VerificationResult verifyResult) {
+        String ee = manifest.get(Constants.FRAMEWORK_EXECUTIONENVIRONMENT);
+        if (ee == null) {
+            ee = VerifierService.EE_1_6;
+        }
+
+        Map<String, String> envMap = Collections.singletonMap(Constants.FRAMEWORK_EXECUTIONENVIRONMENT, ee);
+
+        return m_verifier.createEnvironment(envMap, (verifyResult == null) ? null : createVerifyReporter(verifyResult));
+    }
+
+    /**
+     * Factory method to create a {@link VerifyReporter} that reports to the given verification result.
+     *
+     * @param verifyResult
+     *            the verification result to use, cannot be <code>null</code>.
+     * @return a new {@link VerifyReporter} instance, never <code>null</code>.
+     */
+    private VerifyReporter createVerifyReporter(final VerificationResult verifyResult) {
+        return new VerifyReporter() {
+            public void reportException(Exception ex) {
+                ex.printStackTrace(verifyResult.m_out);
+            }
+
+            public void reportLog(LogEntry logEntry) {
+                verifyResult.m_out.printf("Log (%l): [%s] %s", logEntry.getTime(), logEntry.getLevel(), logEntry.getMessage());
+
+                Throwable ex = logEntry.getException();
+                if (ex != null) {
+                    ex.printStackTrace(verifyResult.m_out);
+                }
+            }
+
+            public void reportWire(BundleRevision importer, BundleRequirement requirement, BundleRevision exporter,
+                BundleCapability capability) {
+                verifyResult.m_out.println("<tt>WIRE: " + requirement + " -> " + capability + "</tt><br/>");
+            }
+        };
+    }
+
+    /**
+     * Creates a base environment with the framework and all bundles that the given deployments have in common.
+     *
+     * @param deployments
+     *            the deployments to create a base environment for, all with the same framework manifest, cannot be
+     *            <code>null</code> or empty.
+     * @return a new base environment, or <code>null</code> if the framework itself could not be added.
+     */
+    private BaseEnvironment createBaseEnvironment(List<Deployment> deployments) {
+        Deployment first = deployments.get(0);
+
+        Set<String> commonUrls = first.getBundleUrls();
+        for (Deployment deployment : deployments) {
+            commonUrls.retainAll(deployment.getBundleUrls());
+        }
+
+        BaseEnvironment base = new BaseEnvironment(createVerifyEnvironment(first.m_frameworkManifest, null));
+        try {
+            base.m_revisions.add(base.m_env.addBundle(0, first.m_frameworkManifest));
+        }
+        catch (BundleException e) {
+            // Let each verification report this problem on its own...
+            return null;
+        }
+
+        for (DeploymentArtifact artifact : first.m_artifacts) {
+            String url = artifact.getUrl();
+            if (!isBundle(artifact) || !commonUrls.contains(url) || base.m_bundleUrls.contains(url)) {
+                continue;
+            }
+            try {
+                Map<String, String> manifest = getManifest(artifact);
+
+                base.m_revisions.add(base.m_env.addBundle(base.m_revisions.size(), manifest));
+                base.m_manifests.add(manifest);
+                base.m_bundleUrls.add(url);
+            }
+            catch (Exception e) {
+                // Leave this bundle to the individual verifications, so they can report the problem...
+            }
+        }
+        return base;
+    }
+
+    /**
+     * @param url
+     *            the remote URL to connect to, cannot be <code>null</code>.
+     * @return an {@link InputStream} to the remote URL, never <code>null</code>.
+     * @throws IOException
+     *             in case of I/O problems opening the remote connection.
+     */
+    private InputStream getBundleContents(String url) throws IOException {
+        URLConnection conn = m_connectionFactory.createConnection(new URL(url));
+        return conn.getInputStream();
+    }
+
+    /**
+     * Returns the manifest of the given bundle, either from our cache or by reading it from the bundle itself.
+     * 
+     * @param bundle
+     *            the bundle to get the manifest for, cannot be <code>null</code>.
+     * @return the manifest headers, never <code>null</code>.
+     * @throws IOException
+     *             in case the manifest could not be read from the bundle.
+     */
+    private Map<String, String> getManifest(DeploymentArtifact bundle) throws IOException {
+        String url = bundle.getUrl();
+        long size = bundle.getSize();
+
+        Map<String, String> manifest = m_cache.get(url, size);
+        if (manifest == null) {
+            try (JarInputStream jis = new JarInputStream(getBundleContents(url), false /* verify */)) {
+                Manifest mf = jis.getManifest();
+                if (mf == null) {
+                    throw new IOException("No manifest found in " + url);
+                }
+                manifest = getManifestEntries(mf);
+            }
+            m_cache.put(url, size, manifest);
+        }
+        return manifest;
+    }
+
+    private String getSummary(VerificationReport report) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(report.isResolved() ? "resolves" : "does NOT resolve");
+        if (!report.isCustomizersMatching()) {
+            sb.append(", not all bundle customizers match (provided = ").append(report.getCustomizers());
+            sb.append(", required = ").append(report.getProcessors()).append(")");
+        }
+        return sb.toString();
+    }
+
+    private VerificationResult getVerificationResult(Future<VerificationResult> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while verifying targets!", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Failed to verify targets!", cause);
+        }
+    }
+
+    /**
+     * Processes all artifacts.
+     *
+     * @param artifacts
+     *            the artifacts to process.
+     * @param baseUrls
+     *            the URLs of the bundles that are already present in the environment;
+     * @param env
+     *            the environment to use;
+     * @param verifyResult
+     *            the verification result, cannot be <code>null</code>.
+     */
+    private void processArtifacts(DeploymentArtifact[] artifacts, Set<String> baseUrls, VerifyEnvironment env, VerificationResult verifyResult) {
+        String dir;
+        for (DeploymentArtifact artifact : artifacts) {
+            if (isBundle(artifact)) {
+                if (!baseUrls.contains(artifact.getUrl())) {
+                    processBundle(artifact, env, verifyResult);
+                }
+            }
+            else if ((dir = artifact.getDirective("Resource-Processor")) != null) {
+                verifyResult.addProcessor(dir);
+            }
+        }
+    }
+
+    /**
+     * Processes a single bundle.
+     *
+     * @param bundle
+     *            the bundle to process;
+     * @param env
+     *            the environment to use;
+     * @param verifyResult
+     *            the verification result, cannot be <code>null</code>.
+     */
+    private void processBundle(DeploymentArtifact bundle, VerifyEnvironment env, VerificationResult verifyResult) {
+        try {
+            Map<String, String> manifest = getManifest(bundle);
+
+            verifyResult.addBundle(env, manifest);
+
+            processCustomizer(manifest, verifyResult);
+        }
+        catch (Exception ex) {
+            ex.printStackTrace(verifyResult.m_out);
+        }
+    }
+
+    /**
+     * Registers the resource processors provided by the given bundle, in case it is a customizer.
+     *
+     * @param manifest
+     *            the manifest of the bundle;
+     * @param verifyResult
+     *            the verification result, cannot be <code>null</code>.
+     */
+    private void processCustomizer(Map<String, String> manifest, VerificationResult verifyResult) {
+        if (manifest.get("DeploymentPackage-Customizer") != null) {
+            String typeString = manifest.get("Deployment-ProvidesResourceProcessor");
+            if (typeString != null) {
+                String[] types = typeString.split(",");
+                for (String type : types) {
+                    verifyResult.addCustomizer(type);
+                }
+            }
+        }
+    }
+
+    private static boolean isBundle(DeploymentArtifact artifact) {
+        return artifact.getDirective(Constants.BUNDLE_SYMBOLICNAME) != null;
+    }
+
+    private void storeCache() {
+        try {
+            m_cache.store();
+        }
+        catch (IOException e) {
+            m_log.log(LogService.LOG_WARNING, "Failed to store manifest cache!", e);
+        }
+    }
+
+    /**
+     * Performs the actual verification of a deployment.
+     */
+    private VerificationResult verify(Map<String, String> frameworkManifest, DeploymentArtifact[] artifacts) {
+        VerificationResult result = new VerificationResult();
+
+        VerifyEnvironment env = createVerifyEnvironment(frameworkManifest, result);
+        try {
+            // Add the main entry...
+            result.addBundle(env, frameworkManifest);
+        }
+        catch (BundleException e) {
+            e.printStackTrace(result.m_out);
+            return result;
+        }
+
+        processArtifacts(artifacts, Collections.<String> emptySet(), env, result);
+
+        result.setResolved(env.verifyResolve(result.getBundles(), null, null));
+
+        return result;
+    }
+
+    /**
+     * Performs the actual verification of a deployment on top of a base environment.
+     */
+    private VerificationResult verify(BaseEnvironment base, DeploymentArtifact[] artifacts) {
+        VerificationResult result = new VerificationResult();
+
+        VerifyEnvironment env = base.m_env.createChildEnvironment(createVerifyReporter(result));
+        result.addBundles(base.m_revisions);
+        for (Map<String, String> manifest : base.m_manifests) {
+            processCustomizer(manifest, result);
+        }
+
+        processArtifacts(artifacts, base.m_bundleUrls, env, result);
+
+        result.setResolved(env.verifyResolve(result.getBundles(), null, null));
+
+        return result;
+    }
+}
@@ -17,14 +17,16 @@
  * under the License.
  */
 
-package org.apache.ace.deployment.verifier.ui;
+package org.apache.ace.deployment.verifier.target;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.ace.deployment.verifier.VerificationReport;
 import org.apache.ace.deployment.verifier.VerifierService.VerifyEnvironment;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.wiring.BundleRevision;
@@ -32,11 +34,12 @@ import org.osgi.framework.wiring.BundleRevision;
 /**
  * Provides the results of a verification.
  */
-final class VerificationResult {
+final class VerificationResult implements VerificationReport {
     private final Set<String> m_customizers = new HashSet<>();
     private final Set<String> m_processors = new HashSet<>();
     private final Set<BundleRevision> m_bundles = new HashSet<>();
     private final ByteArrayOutputStream m_output = new ByteArrayOutputStream();
+    private volatile boolean m_resolved;
     
     final PrintStream m_out = new PrintStream(m_output);
 
@@ -44,6 +47,10 @@ final class VerificationResult {
         m_bundles.add(env.addBundle(m_bundles.size(), manifest));
     }
 
+    public void addBundles(Collection<BundleRevision> bundles) {
+        m_bundles.addAll(bundles);
+    }
+
     public void addCustomizer(String customizer) {
         m_customizers.add(customizer.trim());
     }
@@ -56,6 +63,11 @@ final class VerificationResult {
         return m_customizers.containsAll(m_processors);
     }
 
+    @Override
+    public boolean isCustomizersMatching() {
+        return allCustomizerMatch();
+    }
+
     /**
      * @return the bundles
      */
@@ -70,6 +82,11 @@ final class VerificationResult {
         return m_customizers;
     }
     
+    @Override
+    public String getDetails() {
+        return m_output.toString();
+    }
+
     /**
      * @return the processors
      */
@@ -81,6 +98,15 @@ final class VerificationResult {
         return !m_customizers.isEmpty() || !m_processors.isEmpty();
     }
     
+    @Override
+    public boolean isResolved() {
+        return m_resolved;
+    }
+
+    public void setResolved(boolean resolved) {
+        m_resolved = resolved;
+    }
+
     @Override
     public String toString() {
         return m_output.toString();
@@ -19,35 +19,18 @@
 package org.apache.ace.deployment.verifier.ui;
 
 import java.io.ByteArrayOutputStream;
-import java.io.Closeable;
-import java.io.IOException;
-import java.io.InputStream;
 import java.io.PrintStream;
-import java.net.URL;
-import java.net.URLConnection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.jar.Attributes;
-import java.util.jar.JarInputStream;
-import java.util.jar.Manifest;
 
 import org.apache.ace.client.repository.RepositoryObject;
-import org.apache.ace.client.repository.object.DeploymentArtifact;
-import org.apache.ace.client.repository.object.DeploymentVersionObject;
-import org.apache.ace.client.repository.repository.DeploymentVersionRepository;
 import org.apache.ace.client.repository.stateful.StatefulTargetObject;
-import org.apache.ace.connectionfactory.ConnectionFactory;
+import org.apache.ace.deployment.verifier.TargetVerifier;
+import org.apache.ace.deployment.verifier.VerificationReport;
 import org.apache.ace.deployment.verifier.VerifierService;
-import org.apache.ace.deployment.verifier.VerifierService.VerifyEnvironment;
-import org.apache.ace.deployment.verifier.VerifierService.VerifyReporter;
 import org.apache.ace.webui.UIExtensionFactory;
 import org.osgi.framework.Constants;
-import org.osgi.framework.wiring.BundleCapability;
-import org.osgi.framework.wiring.BundleRequirement;
-import org.osgi.framework.wiring.BundleRevision;
-import org.osgi.service.log.LogEntry;
 
 import com.vaadin.data.Property;
 import com.vaadin.data.Property.ValueChangeEvent;
@@ -66,15 +49,17 @@ public class ACEVerifierExtension implements UIExtensionFactory {
      *
      */
     final class ManifestArea extends VerticalLayout implements Property.ValueChangeListener, Button.ClickListener {
+        private final String m_sessionID;
         private final String m_id;
         private final TextArea m_editor;
         private final Label m_plainText;
         private final StatefulTargetObject m_object;
         private final PopupView m_popup;
 
-        public ManifestArea(String id, String initialText, StatefulTargetObject object) {
+        public ManifestArea(String sessionID, String id, String initialText, StatefulTargetObject object) {
             setWidth("100%");
 
+            m_sessionID = sessionID;
             m_id = id;
             m_object = object;
 
@@ -116,7 +101,7 @@ public class ACEVerifierExtension implements UIExtensionFactory {
             String output;
             try {
                 String manifest = m_editor.getValue().toString();
-                output = verify(m_id, manifest);
+                output = verify(m_sessionID, m_id, manifest);
             }
             catch (Exception e) {
                 ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -140,9 +125,7 @@ public class ACEVerifierExtension implements UIExtensionFactory {
     }
 
     // Injected by Dependency Manager
-    private volatile VerifierService m_verifier;
-    private volatile DeploymentVersionRepository m_repo;
-    private volatile ConnectionFactory m_connectionFactory;
+    private volatile TargetVerifier m_verifier;
 
     /**
      * {@inheritDoc}
@@ -152,7 +135,7 @@ public class ACEVerifierExtension implements UIExtensionFactory {
 
         Component content = new Label("This target is not yet registered, so it can not verify anything.");
         if (target.isRegistered()) {
-            content = new ManifestArea(target.getID(), getManifest(target), target);
+            content = new ManifestArea(getSessionIDFromContext(context), target.getID(), getManifest(target), target);
         }
 
         VerticalLayout result = new VerticalLayout();
@@ -166,25 +149,17 @@ public class ACEVerifierExtension implements UIExtensionFactory {
     /**
      * Performs the actual verification.
      */
-    final String verify(String targetId, String manifestText) throws Exception {
-        DeploymentVersionObject version = m_repo.getMostRecentDeploymentVersion(targetId);
-        if (version == null) {
-            return "No deployment version available to verify.";
-        }
-
-        VerificationResult result = new VerificationResult();
+    final String verify(String sessionID, String targetId, String manifestText) throws Exception {
         Map<String, String> manifestMap = getManifestEntries(manifestText);
 
-        VerifyEnvironment env = createVerifyEnvironment(manifestMap, result);
-
-        // Add the main entry...
-        result.addBundle(env, manifestMap);
-
-        processArtifacts(version.getDeploymentArtifacts(), env, result);
+        VerificationReport result = m_verifier.verifyTarget(sessionID, targetId, manifestMap);
+        if (result == null) {
+            return "No deployment version available to verify.";
+        }
 
         StringBuilder sb = new StringBuilder();
-        if (result.hasCustomizers()) {
-            if (!result.allCustomizerMatch()) {
+        if (!result.getCustomizers().isEmpty() || !result.getProcessors().isEmpty()) {
+            if (!result.isCustomizersMatching()) {
                 sb.append("<p><b>Not all bundle customizers match!</b><br/>");
                 sb.append("Provided = ").append(result.getCustomizers().toString()).append("<br/>");
                 sb.append("Required = ").append(result.getProcessors().toString()).append(".</p>");
@@ -194,8 +169,7 @@ public class ACEVerifierExtension implements UIExtensionFactory {
             }
         }
 
-        boolean resolves = env.verifyResolve(result.getBundles(), null, null);
-        if (resolves) {
+        if (result.isResolved()) {
             sb.append("<p>Deployment package resolves.<br/>");
         }
         else {
@@ -203,68 +177,11 @@ public class ACEVerifierExtension implements UIExtensionFactory {
         }
 
         sb.append("Details:<br/>");
-        sb.append(result.toString()).append("</p>");
+        sb.append(result.getDetails()).append("</p>");
 
         return sb.toString();
     }
 
-    /**
-     * Quietly closes a given {@link Closeable}.
-     *
-     * @param closeable
-     *            the closeable to close, can be <code>null</code>.
-     */
-    private void closeQuietly(Closeable closeable) {
-        if (closeable != null) {
-            try {
-                closeable.close();
-            }
-            catch (IOException ex) {
-                // Ignore quietly...
-            }
-        }
-    }
-
-    /**
-     * Factory method to create a suitable {@link VerifyEnvironment} instance.
-     *
-     * @param manifest
-     *            the manifest to use;
-     * @param verifyResult
-     *            the verification result to use.
-     * @return a new {@link VerifyEnvironment} instance, never <code>null</code>.
-     */
-    @SuppressWarnings("deprecation")
-    private VerifyEnvironment createVerifyEnvironment(Map<String, String> manifest, final VerificationResult verifyResult) {
-        String ee = manifest.get(Constants.FRAMEWORK_EXECUTIONENVIRONMENT);
-        if (ee == null) {
-            ee = VerifierService.EE_1_6;
-        }
-
-        Map<String, String> envMap = Collections.singletonMap(Constants.FRAMEWORK_EXECUTIONENVIRONMENT, ee);
-
-        VerifyEnvironment env = m_verifier.createEnvironment(envMap, new VerifyReporter() {
-            public void reportException(Exception ex) {
-                ex.printStackTrace(verifyResult.m_out);
-            }
-
-            public void reportLog(LogEntry logEntry) {
-                verifyResult.m_out.printf("Log (%l): [%s] %s", logEntry.getTime(), logEntry.getLevel(), logEntry.getMessage());
-
-                Throwable ex = logEntry.getException();
-                if (ex != null) {
-                    ex.printStackTrace(verifyResult.m_out);
-                }
-            }
-
-            public void reportWire(BundleRevision importer, BundleRequirement requirement, BundleRevision exporter,
-                BundleCapability capability) {
-                verifyResult.m_out.println("<tt>WIRE: " + requirement + " -> " + capability + "</tt><br/>");
-            }
-        });
-        return env;
-    }
-
     /**
      * Returns a "static"/hardcoded manifest.
      *
@@ -301,23 +218,6 @@ public class ACEVerifierExtension implements UIExtensionFactory {
         return manifest;
     }
 
-    /**
-     * Converts a given {@link Attributes} into a map.
-     *
-     * @param attributes
-     *            the attributes to convert, cannot be <code>null</code>.
-     * @return a manifest map, never <code>null</code>.
-     */
-    private Map<String, String> getManifestEntries(final Manifest manifest) {
-        Attributes attributes = manifest.getMainAttributes();
-
-        Map<String, String> entries = new HashMap<>();
-        for (Map.Entry<Object, Object> entry : attributes.entrySet()) {
-            entries.put(entry.getKey().toString(), entry.getValue().toString());
-        }
-        return entries;
-    }
-
     /**
      * @param manifestText
      * @return
@@ -332,82 +232,11 @@ public class ACEVerifierExtension implements UIExtensionFactory {
         return manMap;
     }
 
-    private StatefulTargetObject getRepositoryObjectFromContext(Map<String, Object> context) {
-        return (StatefulTargetObject) context.get("object");
-    }
-
-    /**
-     * Processes all artifacts.
-     *
-     * @param artifacts
-     *            the artifacts to process.
-     * @param env
-     *            the environment to use;
-     * @param verifyResult
-     *            the verification result, cannot be <code>null</code>.
-     */
-    private void processArtifacts(DeploymentArtifact[] artifacts, VerifyEnvironment env, VerificationResult verifyResult) {
-        String dir;
-        for (DeploymentArtifact artifact : artifacts) {
-            if (artifact.getDirective(Constants.BUNDLE_SYMBOLICNAME) != null) {
-                processBundle(artifact, env, verifyResult);
-            }
-            else if ((dir = artifact.getDirective("Resource-Processor")) != null) {
-                verifyResult.addProcessor(dir);
-            }
-        }
-    }
-
-    /**
-     * Processes a single bundle.
-     *
-     * @param bundle
-     *            the bundle to process;
-     * @param env
-     *            the environment to use;
-     * @param verifyResult
-     *            the verification result, cannot be <code>null</code>.
-     */
-    private void processBundle(DeploymentArtifact bundle, VerifyEnvironment env, VerificationResult verifyResult) {
-        InputStream is = null;
-        JarInputStream jis = null;
-
-        try {
-            is = getBundleContents(bundle.getUrl());
-            jis = new JarInputStream(is, false /* verify */);
-
-            Map<String, String> manifest = getManifestEntries(jis.getManifest());
-
-            verifyResult.addBundle(env, manifest);
-
-            if (manifest.get("DeploymentPackage-Customizer") != null) {
-                String typeString = manifest.get("Deployment-ProvidesResourceProcessor");
-                if (typeString != null) {
-                    String[] types = typeString.split(",");
-                    for (String type : types) {
-                        verifyResult.addCustomizer(type);
-                    }
-                }
-            }
-        }
-        catch (Exception ex) {
-            ex.printStackTrace(verifyResult.m_out);
-        }
-        finally {
-            closeQuietly(is);
-            closeQuietly(jis);
-        }
+    private String getSessionIDFromContext(Map<String, Object> context) {
+        return (String) context.get("sessionID");
     }
 
-    /**
-     * @param url
-     *            the remote URL to connect to, cannot be <code>null</code>.
-     * @return an {@link InputStream} to the remote URL, never <code>null</code>.
-     * @throws IOException
-     *             in case of I/O problems opening the remote connection.
-     */
-    private InputStream getBundleContents(String url) throws IOException {
-        URLConnection conn = m_connectionFactory.createConnection(new URL(url));
-        return conn.getInputStream();
+    private StatefulTargetObject getRepositoryObjectFromContext(Map<String, Object> context) {
+        return (StatefulTargetObject) context.get("object");
     }
 }
@@ -20,9 +20,7 @@ package org.apache.ace.deployment.verifier.ui;
 
 import java.util.Properties;
 
-import org.apache.ace.client.repository.repository.DeploymentVersionRepository;
-import org.apache.ace.connectionfactory.ConnectionFactory;
-import org.apache.ace.deployment.verifier.VerifierService;
+import org.apache.ace.deployment.verifier.TargetVerifier;
 import org.apache.ace.webui.UIExtensionFactory;
 import org.apache.felix.dm.DependencyActivatorBase;
 import org.apache.felix.dm.DependencyManager;
@@ -40,13 +38,7 @@ public class Activator extends DependencyActivatorBase {
                     }
                 }).setImplementation(ACEVerifierExtension.class)
                 .add(createServiceDependency()
-                		.setService(VerifierService.class)
-                		.setRequired(true))
-                .add(createServiceDependency()
-                        .setService(ConnectionFactory.class)
-                        .setRequired(true))
-                .add(createServiceDependency()
-                        .setService(DeploymentVersionRepository.class)
+                        .setService(TargetVerifier.class)
                         .setRequired(true)
                         ));
 	}
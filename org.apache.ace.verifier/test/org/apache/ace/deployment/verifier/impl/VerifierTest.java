@@ -144,4 +144,78 @@ public class VerifierTest {
         }));
         AssertJUnit.assertFalse("Resolving unresolvable", env.verifyResolve(bundles, null, null));
     }
+
+    @Test()
+    public void testResolveChildEnvironment() throws BundleException {
+        VerifierService verifier = new VerifierServiceImpl();
+        VerifyEnvironment base = verifier.createEnvironment(new HashMap<String, String>() {
+            {
+                put(Constants.FRAMEWORK_EXECUTIONENVIRONMENT, VerifierService.EE_1_6);
+            }
+        }, null);
+        Set<BundleRevision> baseBundles = new HashSet<>();
+        baseBundles.add(base.addBundle(0, new HashMap<String, String>() {
+            {
+                put(Constants.BUNDLE_MANIFESTVERSION, "2");
+                put(Constants.BUNDLE_SYMBOLICNAME, FelixConstants.SYSTEM_BUNDLE_SYMBOLICNAME);
+                put(Constants.EXPORT_PACKAGE, VerifierService.SYSTEM_PACKAGES + "," + VerifierService.JRE_1_6_PACKAGES);
+            }
+        }));
+        baseBundles.add(base.addBundle(1, new HashMap<String, String>() {
+            {
+                put(Constants.BUNDLE_MANIFESTVERSION, "2");
+                put(Constants.BUNDLE_SYMBOLICNAME, "org.test.foo2");
+                put(Constants.EXPORT_PACKAGE, "org.foo");
+            }
+        }));
+
+        // both children share the bundles of the base environment...
+        VerifyEnvironment resolvable = base.createChildEnvironment(null);
+        Set<BundleRevision> bundles = new HashSet<>(baseBundles);
+        bundles.add(resolvable.addBundle(2, new HashMap<String, String>() {
+            {
+                put(Constants.BUNDLE_MANIFESTVERSION, "2");
+                put(Constants.BUNDLE_SYMBOLICNAME, "org.test.foo");
+                put(Constants.IMPORT_PACKAGE, "org.foo, org.osgi.framework");
+            }
+        }));
+        AssertJUnit.assertTrue("Unable to resolve resolvable state.", resolvable.verifyResolve(bundles, null, null));
+
+        VerifyEnvironment unresolvable = base.createChildEnvironment(null);
+        bundles = new HashSet<>(baseBundles);
+        bundles.add(unresolvable.addBundle(2, new HashMap<String, String>() {
+            {
+                put(Constants.BUNDLE_MANIFESTVERSION, "2");
+                put(Constants.BUNDLE_SYMBOLICNAME, "org.test.bar");
+                put(Constants.IMPORT_PACKAGE, "org.bar, org.osgi.framework");
+            }
+        }));
+        AssertJUnit.assertFalse("Resolved unresolvable state.", unresolvable.verifyResolve(bundles, null, null));
+
+        try {
+            unresolvable.addBundle(1, new HashMap<String, String>() {
+                {
+                    put(Constants.BUNDLE_MANIFESTVERSION, "2");
+                    put(Constants.BUNDLE_SYMBOLICNAME, "org.test.qux");
+                }
+            });
+            AssertJUnit.fail("Bundle ID of the base environment should not be reused!");
+        }
+        catch (BundleException e) {
+            // expected
+        }
+
+        try {
+            base.addBundle(3, new HashMap<String, String>() {
+                {
+                    put(Constants.BUNDLE_MANIFESTVERSION, "2");
+                    put(Constants.BUNDLE_SYMBOLICNAME, "org.test.qux");
+                }
+            });
+            AssertJUnit.fail("Base environment should no longer accept bundles!");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
 }
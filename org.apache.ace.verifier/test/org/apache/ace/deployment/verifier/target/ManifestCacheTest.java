@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ace.deployment.verifier.target;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ManifestCacheTest {
+    private static final String URL = "http://localhost/obr/bundle-1.0.0.jar";
+
+    private File m_file;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        m_file = File.createTempFile("manifests", ".cache");
+        m_file.delete();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        m_file.delete();
+    }
+
+    @Test
+    public void testCachedManifestIsKeyedByUrlAndSize() throws Exception {
+        ManifestCache cache = new ManifestCache(m_file);
+        cache.put(URL, 1024L, createManifest("org.foo"));
+
+        assertEquals(cache.get(URL, 1024L).get("Bundle-SymbolicName"), "org.foo");
+        // a different size means the artifact was replaced...
+        assertNull(cache.get(URL, 2048L));
+        // without a size, we cannot tell whether the artifact was replaced...
+        cache.put(URL, -1L, createManifest("org.bar"));
+        assertNull(cache.get(URL, -1L));
+        assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void testCacheSurvivesRestart() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 70000; i++) {
+            sb.append("org.foo.pkg").append(i).append(";version=1.0,");
+        }
+        Map<String, String> manifest = createManifest("org.foo");
+        manifest.put("Export-Package", sb.toString());
+
+        ManifestCache cache = new ManifestCache(m_file);
+        cache.put(URL, 1024L, manifest);
+        cache.store();
+        assertTrue(m_file.isFile());
+
+        ManifestCache restored = new ManifestCache(m_file);
+        restored.load();
+        assertEquals(restored.get(URL, 1024L), manifest);
+    }
+
+    @Test
+    public void testIgnoresCacheInUnknownFormat() throws Exception {
+        try (FileOutputStream fos = new FileOutputStream(m_file)) {
+            fos.write(new byte[] { 0, 0, 0, 42 });
+        }
+
+        ManifestCache cache = new ManifestCache(m_file);
+        cache.load();
+        assertEquals(cache.size(), 0);
+    }
+
+    private Map<String, String> createManifest(String bsn) {
+        Map<String, String> manifest = new HashMap<>();
+        manifest.put("Bundle-ManifestVersion", "2");
+        manifest.put("Bundle-SymbolicName", bsn);
+        return manifest;
+    }
+}
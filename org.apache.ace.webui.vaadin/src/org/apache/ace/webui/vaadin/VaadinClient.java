@@ -760,7 +760,7 @@ public class VaadinClient extends com.vaadin.Application implements AssociationM
     }
 
     private DistributionsPanel createDistributionsPanel() {
-        return new DistributionsPanel(m_associations, this) {
+        return new DistributionsPanel(m_associations, this, m_cacheRate, m_pageLength) {
             @Override
             protected EditWindow createEditor(final NamedObject object, final List<UIExtensionFactory> extensions) {
                 return new EditWindow("Edit Distribution", object, extensions) {
@@ -797,7 +797,7 @@ public class VaadinClient extends com.vaadin.Application implements AssociationM
     }
 
     private FeaturesPanel createFeaturesPanel() {
-        return new FeaturesPanel(m_associations, this) {
+        return new FeaturesPanel(m_associations, this, m_cacheRate, m_pageLength) {
             @Override
             protected EditWindow createEditor(final NamedObject object, final List<UIExtensionFactory> extensions) {
                 return new EditWindow("Edit Feature", object, extensions) {
@@ -878,7 +878,7 @@ public class VaadinClient extends com.vaadin.Application implements AssociationM
     }
 
     private TargetsPanel createTargetsPanel() {
-        return new TargetsPanel(m_associations, this) {
+        return new TargetsPanel(m_associations, this, m_cacheRate, m_pageLength) {
             @Override
             protected EditWindow createEditor(final NamedObject object, final List<UIExtensionFactory> extensions) {
                 return new EditWindow("Edit Target", object, extensions) {
@@ -907,6 +907,7 @@ public class VaadinClient extends com.vaadin.Application implements AssociationM
                         if (object instanceof NamedTargetObject) {
                             context.put("object", m_statefulTargetRepository.get(object.getDefinition()));
                         }
+                        context.put("sessionID", m_sessionID);
                         return context;
                     }
                 };
@@ -1229,10 +1230,10 @@ public class VaadinClient extends com.vaadin.Application implements AssociationM
 
         addListener(m_statusLine, StatefulTargetObject.TOPIC_ALL, RepositoryObject.PUBLIC_TOPIC_ROOT.concat(RepositoryObject.TOPIC_ALL_SUFFIX));
         addListener(m_mainToolbar, StatefulTargetObject.TOPIC_ALL, RepositoryAdmin.TOPIC_STATUSCHANGED, RepositoryAdmin.TOPIC_LOGIN, RepositoryAdmin.TOPIC_REFRESH);
-        addListener(m_artifactsPanel, ArtifactObject.TOPIC_ALL, RepositoryAdmin.TOPIC_STATUSCHANGED, RepositoryAdmin.TOPIC_LOGIN, RepositoryAdmin.TOPIC_REFRESH);
-        addListener(m_featuresPanel, FeatureObject.TOPIC_ALL, RepositoryAdmin.TOPIC_STATUSCHANGED, RepositoryAdmin.TOPIC_LOGIN, RepositoryAdmin.TOPIC_REFRESH);
-        addListener(m_distributionsPanel, DistributionObject.TOPIC_ALL, RepositoryAdmin.TOPIC_STATUSCHANGED, RepositoryAdmin.TOPIC_LOGIN, RepositoryAdmin.TOPIC_REFRESH);
-        addListener(m_targetsPanel, StatefulTargetObject.TOPIC_ALL, TargetObject.TOPIC_ALL, RepositoryAdmin.TOPIC_STATUSCHANGED, RepositoryAdmin.TOPIC_LOGIN, RepositoryAdmin.TOPIC_REFRESH);
+        addListener(m_artifactsPanel, ArtifactObject.TOPIC_ALL, Artifact2FeatureAssociation.TOPIC_ALL, RepositoryAdmin.TOPIC_STATUSCHANGED, RepositoryAdmin.TOPIC_LOGIN, RepositoryAdmin.TOPIC_REFRESH);
+        addListener(m_featuresPanel, FeatureObject.TOPIC_ALL, Artifact2FeatureAssociation.TOPIC_ALL, Feature2DistributionAssociation.TOPIC_ALL, RepositoryAdmin.TOPIC_STATUSCHANGED, RepositoryAdmin.TOPIC_LOGIN, RepositoryAdmin.TOPIC_REFRESH);
+        addListener(m_distributionsPanel, DistributionObject.TOPIC_ALL, Feature2DistributionAssociation.TOPIC_ALL, Distribution2TargetAssociation.TOPIC_ALL, RepositoryAdmin.TOPIC_STATUSCHANGED, RepositoryAdmin.TOPIC_LOGIN, RepositoryAdmin.TOPIC_REFRESH);
+        addListener(m_targetsPanel, StatefulTargetObject.TOPIC_ALL, TargetObject.TOPIC_ALL, Distribution2TargetAssociation.TOPIC_ALL, RepositoryAdmin.TOPIC_STATUSCHANGED, RepositoryAdmin.TOPIC_LOGIN, RepositoryAdmin.TOPIC_REFRESH);
 
         m_mainWindow.addComponent(m_grid);
         // Ensure the focus is properly defined (for the shortcut keys to work)...
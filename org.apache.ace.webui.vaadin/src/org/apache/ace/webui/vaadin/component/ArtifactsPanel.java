@@ -37,8 +37,6 @@ import com.vaadin.data.Item;
  * Provides an object panel for displaying artifacts.
  */
 public abstract class ArtifactsPanel extends BaseObjectPanel<ArtifactObject, ArtifactRepository, RepositoryObject, FeatureObject> {
-    private final double m_cacheRate;
-    private final int m_pageLength;
 
     /**
      * Creates a new {@link ArtifactsPanel} instance.
@@ -46,25 +44,14 @@ public abstract class ArtifactsPanel extends BaseObjectPanel<ArtifactObject, Art
      * @param associations
      *            the assocation-holder object;
      * @param associationMgr
-     *            the helper for creating/removing associations.
+     *            the helper for creating/removing associations;
+     * @param cacheRate
+     *            the cache rate of the table;
+     * @param pageLength
+     *            the page length of the table.
      */
     public ArtifactsPanel(AssociationHelper associations, AssociationManager associationMgr, double cacheRate, int pageLength) {
-        super(associations, associationMgr, "Artifact", UIExtensionFactory.EXTENSION_POINT_VALUE_ARTIFACT, true, ArtifactObject.class);
-
-        m_cacheRate = cacheRate;
-        m_pageLength = pageLength;
-
-        setCacheRate(m_cacheRate);
-        setPageLength(m_pageLength);
-    }
-
-    @Override
-    public void populate() {
-        super.populate();
-        // For some reason, we need to explicitly set these two properties as Vaadin seems to loose their values
-        // somewhere...
-        setCacheRate(m_cacheRate);
-        setPageLength(m_pageLength);
+        super(associations, associationMgr, "Artifact", UIExtensionFactory.EXTENSION_POINT_VALUE_ARTIFACT, true, ArtifactObject.class, cacheRate, pageLength);
     }
 
     @Override
@@ -22,8 +22,10 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.ace.client.repository.Association;
@@ -198,6 +200,10 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
 
     private final List<UIExtensionFactoryHolder> m_extensionFactories;
     private final String m_extensionPoint;
+    private final double m_cacheRate;
+    private final int m_pageLength;
+    /** Caches, per associated entity type, the definitions of the entities associated to each of our entities. */
+    private final Map<Class<?>, Map<String, Set<String>>> m_associationIndex;
 
     protected BaseObjectPanel<LEFT_ASSOC_REPO_OBJ, ?, ?, ?> m_leftTable;
     protected BaseObjectPanel<RIGHT_ASSOC_REPO_OBJ, ?, ?, ?> m_rightTable;
@@ -215,9 +221,13 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
      *            the extension point to listen for;
      * @param hasEdit
      *            <code>true</code> if double clicking an row in this table should show an editor, <code>false</code> to
-     *            disallow editing.
+     *            disallow editing;
+     * @param cacheRate
+     *            the number of pages, relative to the page length, that are sent to the client in advance;
+     * @param pageLength
+     *            the number of rows that are sent to the client at once.
      */
-    public BaseObjectPanel(AssociationHelper associations, AssociationManager associationRemover, String name, String extensionPoint, boolean hasEdit, Class<REPO_OBJ> entityType) {
+    public BaseObjectPanel(AssociationHelper associations, AssociationManager associationRemover, String name, String extensionPoint, boolean hasEdit, Class<REPO_OBJ> entityType, double cacheRate, int pageLength) {
         super(name + "s");
 
         m_associations = associations;
@@ -225,6 +235,9 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
         m_extensionFactories = new ArrayList<>();
         m_extensionPoint = extensionPoint;
         m_entityType = entityType;
+        m_cacheRate = cacheRate;
+        m_pageLength = pageLength;
+        m_associationIndex = new HashMap<>();
 
         setSizeFull();
         setAnimationsEnabled(false);
@@ -234,6 +247,9 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
         setImmediate(true);
         setDragMode(TableDragMode.MULTIROW);
         setColumnCollapsingAllowed(true);
+        // Only the visible page (and some pages around it) are sent to the client...
+        setCacheRate(m_cacheRate);
+        setPageLength(m_pageLength);
 
         defineTableColumns();
 
@@ -336,15 +352,49 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
         final String topic = event.getTopic();
 
         synchronized (getApplication()) {
+            if (!RepositoryAdmin.TOPIC_STATUSCHANGED.equals(topic)) {
+                // entities or their associations might have changed...
+                invalidateAssociationIndices();
+            }
+
             if (isSupportedEntity(entity)) {
                 handleEvent(topic, entity, event);
             }
+            else if (topic.endsWith(RepositoryObject.TOPIC_BATCH_SUFFIX)) {
+                String topicRoot = topic.substring(0, topic.length() - RepositoryObject.TOPIC_BATCH_SUFFIX.length());
+
+                handleBatchEvent(topicRoot + RepositoryObject.TOPIC_REMOVED_SUFFIX, RepositoryObject.EVENT_REMOVED_ENTITIES, event);
+                handleBatchEvent(topicRoot + RepositoryObject.TOPIC_ADDED_SUFFIX, RepositoryObject.EVENT_ADDED_ENTITIES, event);
+                handleBatchEvent(topicRoot + RepositoryObject.TOPIC_CHANGED_SUFFIX, RepositoryObject.EVENT_CHANGED_ENTITIES, event);
+            }
             else if (RepositoryAdmin.TOPIC_LOGIN.equals(topic)) {
                 populate();
             }
         }
     }
 
+    /**
+     * Handles the entities of a batch event as if they were posted in individual events.
+     * 
+     * @param topic
+     *            the topic of the individual events;
+     * @param key
+     *            the key of the event property holding the entities;
+     * @param event
+     *            the batch event.
+     */
+    @SuppressWarnings("unchecked")
+    private void handleBatchEvent(String topic, String key, org.osgi.service.event.Event event) {
+        Collection<RepositoryObject> entities = (Collection<RepositoryObject>) event.getProperty(key);
+        if (entities != null) {
+            for (RepositoryObject entity : entities) {
+                if (isSupportedEntity(entity)) {
+                    handleEvent(topic, entity, event);
+                }
+            }
+        }
+    }
+
     /**
      * Called by the dependency manager upon initialization of this component.
      * 
@@ -362,15 +412,22 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
     }
 
     /**
-     * Removes all current items and (re)populates this table.
+     * (Re)populates this table by bringing its items in line with the current repository objects. Existing items are
+     * updated in place, so the selection and scroll position of this table are retained.
      */
     public void populate() {
-        removeAllItems();
-        for (REPO_OBJ object : getAllRepositoryObjects()) {
-            addToTable(object);
-        }
+        m_associationIndex.clear();
+
+        Set<Object> staleItemIds = new HashSet<Object>(getItemIds());
+        populateItems(staleItemIds);
+        removeStaleItems(staleItemIds);
+
         // Ensure the table is properly sorted...
         sort();
+        // For some reason, we need to explicitly set these two properties as Vaadin seems to loose their values
+        // somewhere...
+        setCacheRate(m_cacheRate);
+        setPageLength(m_pageLength);
     }
 
     /**
@@ -413,6 +470,8 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
     final void createLeftSideAssociation(Object leftObjectId, Object rightObjectId) {
         Association<LEFT_ASSOC_REPO_OBJ, REPO_OBJ> association = doCreateLeftSideAssociation(String.valueOf(leftObjectId), String.valueOf(rightObjectId));
         if (association != null) {
+            invalidateAssociationIndices();
+
             m_leftTable.recalculateRelations(Direction.RIGHT);
 
             // Request the focus again...
@@ -431,6 +490,8 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
     final void createRightSideAssociation(Object leftObjectId, Object rightObjectId) {
         Association<REPO_OBJ, RIGHT_ASSOC_REPO_OBJ> association = doCreateRightSideAssociation(String.valueOf(leftObjectId), String.valueOf(rightObjectId));
         if (association != null) {
+            invalidateAssociationIndices();
+
             m_rightTable.recalculateRelations(Direction.LEFT);
 
             // Request the focus again...
@@ -461,6 +522,7 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
      */
     final void removeLeftSideAssociation(LEFT_ASSOC_REPO_OBJ leftObject, REPO_OBJ rightObject) {
         if (doRemoveLeftSideAssociation(leftObject, rightObject)) {
+            invalidateAssociationIndices();
             m_associations.clear();
 
             m_leftTable.recalculateRelations(Direction.RIGHT);
@@ -480,6 +542,7 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
      */
     final void removeRightSideAssocation(REPO_OBJ leftObject, RIGHT_ASSOC_REPO_OBJ rightObject) {
         if (doRemoveRightSideAssociation(leftObject, rightObject)) {
+            invalidateAssociationIndices();
             m_associations.clear();
 
             m_rightTable.recalculateRelations(Direction.LEFT);
@@ -544,13 +607,9 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
      *            the collection with related item-IDs, will be filled by this method.
      */
     protected final void collectRelations(Direction direction, Collection<String> associated, Collection<String> related) {
-        Set<?> value = (Set<?>) getValue();
-        List<REPO_OBJ> selection = new ArrayList<>();
-        for (Object itemID : value) {
-            REPO_OBJ obj = getFromId(itemID);
-            if (obj != null) {
-                selection.add(obj);
-            }
+        Set<String> selection = new HashSet<>();
+        for (Object itemID : (Set<?>) getValue()) {
+            selection.add(String.valueOf(itemID));
         }
 
         collectRelations(direction, selection, new HashSet<Class<?>>(), associated, related);
@@ -926,6 +985,25 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
         setItemIcon(parentId, createIconResource("resource_workingstate_unchanged"));
     }
 
+    /**
+     * Adds or updates the items for all current repository objects. The item-IDs of all items that are added or
+     * updated are removed from the given set.
+     * 
+     * @param staleItemIds
+     *            the item-IDs of all items that are present in this table, cannot be <code>null</code>.
+     */
+    protected void populateItems(Set<Object> staleItemIds) {
+        for (REPO_OBJ object : getAllRepositoryObjects()) {
+            if (containsId(object.getDefinition())) {
+                update(object);
+            }
+            else {
+                addToTable(object);
+            }
+            retainItem(object.getDefinition(), staleItemIds);
+        }
+    }
+
     protected final void refreshAllRowCaches(Direction direction) {
         if (direction.isGoLeft()) {
             BaseObjectPanel<?, ?, ?, ?> ptr = this;
@@ -963,6 +1041,23 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
         focus();
     }
 
+    /**
+     * Marks the given item, and its parent, as still being in use.
+     * 
+     * @param itemId
+     *            the ID of the item to retain, cannot be <code>null</code>;
+     * @param staleItemIds
+     *            the item-IDs of all items that are not (yet) known to be in use, cannot be <code>null</code>.
+     */
+    protected final void retainItem(String itemId, Set<Object> staleItemIds) {
+        staleItemIds.remove(itemId);
+
+        Object parentId = getParent(itemId);
+        if (parentId != null) {
+            staleItemIds.remove(parentId);
+        }
+    }
+
     protected final void setItemIcon(REPO_OBJ object) {
         if (object != null) {
             Resource icon = getWorkingStateIcon(object);
@@ -1005,29 +1100,25 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
         setItemIcon(getFromId(itemId));
     }
 
-    private void collectRelations(Direction direction, List<REPO_OBJ> selection, Set<Class<?>> seenTypes, Collection<String> associated, Collection<String> related) {
+    private void collectRelations(Direction direction, Set<String> selection, Set<Class<?>> seenTypes, Collection<String> associated, Collection<String> related) {
         // We've already visited this entity...
         seenTypes.add(m_entityType);
 
         if (direction.isGoLeft() && m_leftTable != null && !seenTypes.contains(m_leftTable.m_entityType)) {
             seenTypes.add(m_leftTable.m_entityType);
 
-            for (REPO_OBJ obj : selection) {
-                List<LEFT_ASSOC_REPO_OBJ> left = obj.getAssociations(m_leftTable.m_entityType);
-                extractDefinitions(associated, left);
-                // the associated items of our left-side table are the ones related to us...
-                m_leftTable.collectRelations(direction, left, seenTypes, related, related);
-            }
+            Set<String> left = getAssociatedDefinitions(m_leftTable.m_entityType, selection);
+            associated.addAll(left);
+            // the associated items of our left-side table are the ones related to us...
+            m_leftTable.collectRelations(direction, left, seenTypes, related, related);
         }
         if (direction.isGoRight() && m_rightTable != null && !seenTypes.contains(m_rightTable.m_entityType)) {
             seenTypes.add(m_rightTable.m_entityType);
 
-            for (REPO_OBJ obj : selection) {
-                List<RIGHT_ASSOC_REPO_OBJ> right = obj.getAssociations(m_rightTable.m_entityType);
-                extractDefinitions(associated, right);
-                // the associated items of our right-side table are the ones related to us...
-                m_rightTable.collectRelations(direction, right, seenTypes, related, related);
-            }
+            Set<String> right = getAssociatedDefinitions(m_rightTable.m_entityType, selection);
+            associated.addAll(right);
+            // the associated items of our right-side table are the ones related to us...
+            m_rightTable.collectRelations(direction, right, seenTypes, related, related);
         }
     }
 
@@ -1040,6 +1131,86 @@ abstract class BaseObjectPanel<REPO_OBJ extends RepositoryObject, REPO extends O
         }
     }
 
+    /**
+     * Returns the definitions of all entities of the given type that are associated to the entities with the given
+     * definitions. The associations of all our entities are indexed on first use, so subsequent selections do not
+     * need to walk the associations of each selected entity again.
+     * 
+     * @param type
+     *            the type of the associated entities;
+     * @param definitions
+     *            the definitions of our entities to get the associated entities for.
+     * @return the definitions of the associated entities, never <code>null</code>.
+     */
+    private Set<String> getAssociatedDefinitions(Class<? extends RepositoryObject> type, Set<String> definitions) {
+        Map<String, Set<String>> index = m_associationIndex.get(type);
+        if (index == null) {
+            index = new HashMap<>();
+            for (REPO_OBJ object : getAllRepositoryObjects()) {
+                List<? extends RepositoryObject> others = object.getAssociations(type);
+                if (!others.isEmpty()) {
+                    Set<String> defs = new HashSet<>();
+                    extractDefinitions(defs, others);
+                    index.put(object.getDefinition(), defs);
+                }
+            }
+            m_associationIndex.put(type, index);
+        }
+
+        Set<String> result = new HashSet<>();
+        for (String definition : definitions) {
+            Set<String> defs = index.get(definition);
+            if (defs != null) {
+                result.addAll(defs);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Invalidates the association indices of this panel and all panels it is (indirectly) associated with.
+     */
+    private void invalidateAssociationIndices() {
+        BaseObjectPanel<?, ?, ?, ?> ptr = this;
+        while (ptr != null) {
+            ptr.m_associationIndex.clear();
+            ptr = ptr.m_leftTable;
+        }
+        ptr = m_rightTable;
+        while (ptr != null) {
+            ptr.m_associationIndex.clear();
+            ptr = ptr.m_rightTable;
+        }
+    }
+
+    /**
+     * Removes all items that are no longer backed by a repository object. Child items are removed before their
+     * parents, so parents that are still in use are retained.
+     * 
+     * @param staleItemIds
+     *            the item-IDs of the items to remove, cannot be <code>null</code>.
+     */
+    private void removeStaleItems(Set<Object> staleItemIds) {
+        List<Object> parentIds = new ArrayList<>();
+        for (Object itemId : staleItemIds) {
+            if (hasChildren(itemId)) {
+                parentIds.add(itemId);
+            }
+            else {
+                Object parentId = getParent(itemId);
+                removeItem(itemId);
+                if ((parentId != null) && !hasChildren(parentId)) {
+                    removeItem(parentId);
+                }
+            }
+        }
+        for (Object parentId : parentIds) {
+            if (containsId(parentId) && !hasChildren(parentId)) {
+                removeItem(parentId);
+            }
+        }
+    }
+
     /**
      * @return a list of current extension factories, properly ordered, never <code>null</code>.
      */
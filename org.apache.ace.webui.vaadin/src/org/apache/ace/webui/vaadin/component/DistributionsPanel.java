@@ -44,10 +44,14 @@ public abstract class DistributionsPanel extends BaseObjectPanel<DistributionObj
      * @param associations
      *            the assocation-holder object;
      * @param associationRemover
-     *            the helper for removing associations.
+     *            the helper for removing associations;
+     * @param cacheRate
+     *            the cache rate of the table;
+     * @param pageLength
+     *            the page length of the table.
      */
-    public DistributionsPanel(AssociationHelper associations, AssociationManager associationRemover) {
-        super(associations, associationRemover, "Distribution", UIExtensionFactory.EXTENSION_POINT_VALUE_DISTRIBUTION, true, DistributionObject.class);
+    public DistributionsPanel(AssociationHelper associations, AssociationManager associationRemover, double cacheRate, int pageLength) {
+        super(associations, associationRemover, "Distribution", UIExtensionFactory.EXTENSION_POINT_VALUE_DISTRIBUTION, true, DistributionObject.class, cacheRate, pageLength);
     }
 
     @Override
@@ -44,10 +44,14 @@ public abstract class FeaturesPanel extends BaseObjectPanel<FeatureObject, Featu
      * @param associations
      *            the assocation-holder object;
      * @param associationRemover
-     *            the helper for removing associations.
+     *            the helper for removing associations;
+     * @param cacheRate
+     *            the cache rate of the table;
+     * @param pageLength
+     *            the page length of the table.
      */
-    public FeaturesPanel(AssociationHelper associations, AssociationManager associationRemover) {
-        super(associations, associationRemover, "Feature", UIExtensionFactory.EXTENSION_POINT_VALUE_FEATURE, true, FeatureObject.class);
+    public FeaturesPanel(AssociationHelper associations, AssociationManager associationRemover, double cacheRate, int pageLength) {
+        super(associations, associationRemover, "Feature", UIExtensionFactory.EXTENSION_POINT_VALUE_FEATURE, true, FeatureObject.class, cacheRate, pageLength);
     }
 
     @Override
@@ -93,6 +93,9 @@ public class StatusLine extends Label implements EventHandler {
         else if (topic.endsWith("/CHANGED")) {
             return "changed";
         }
+        else if (topic.endsWith("/BATCH")) {
+            return "changed in batch";
+        }
         else if (topic.endsWith("/STATUS_CHANGED")) {
             // for stateful target objects only...
             return "status updated";
@@ -20,6 +20,7 @@ package org.apache.ace.webui.vaadin.component;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.ace.client.repository.RepositoryAdmin;
 import org.apache.ace.client.repository.RepositoryObject;
@@ -56,10 +57,14 @@ public abstract class TargetsPanel extends BaseObjectPanel<TargetObject, TargetR
      * @param associations
      *            the assocation-holder object;
      * @param associationRemover
-     *            the helper for removing associations.
+     *            the helper for removing associations;
+     * @param cacheRate
+     *            the cache rate of the table;
+     * @param pageLength
+     *            the page length of the table.
      */
-    public TargetsPanel(AssociationHelper associations, AssociationManager associationRemover) {
-        super(associations, associationRemover, "Target", UIExtensionFactory.EXTENSION_POINT_VALUE_TARGET, true, TargetObject.class);
+    public TargetsPanel(AssociationHelper associations, AssociationManager associationRemover, double cacheRate, int pageLength) {
+        super(associations, associationRemover, "Target", UIExtensionFactory.EXTENSION_POINT_VALUE_TARGET, true, TargetObject.class, cacheRate, pageLength);
     }
 
     /**
@@ -107,24 +112,6 @@ public abstract class TargetsPanel extends BaseObjectPanel<TargetObject, TargetR
         return needsRegistration(getStatefulTargetFromId(itemID));
     }
 
-    /**
-     * Called to populate this table, which is overridden in order to show unregistered targets (if needed).
-     */
-    public void populate() {
-        removeAllItems();
-        // All unregistered items aren't yet present in our TargetRepo, so we must add them explicitly...
-        for (StatefulTargetObject object : getStatefulTargetRepository().get()) {
-            if (!object.isRegistered()) {
-                addToTable(object);
-            }
-        }
-        for (TargetObject object : getRepository().get()) {
-            addToTable(object);
-        }
-        // Ensure the table is properly sorted...
-        sort();
-    }
-
     /**
      * Registers all selected targets in a single go.
      * 
@@ -248,6 +235,26 @@ public abstract class TargetsPanel extends BaseObjectPanel<TargetObject, TargetR
         return (entity instanceof StatefulTargetObject) || (entity instanceof TargetObject);
     }
 
+    /**
+     * Overridden in order to show unregistered targets (if needed).
+     */
+    @Override
+    protected void populateItems(Set<Object> staleItemIds) {
+        // All unregistered items aren't yet present in our TargetRepo, so we must add them explicitly...
+        for (StatefulTargetObject object : getStatefulTargetRepository().get()) {
+            if (!object.isRegistered()) {
+                if (containsId(object.getDefinition())) {
+                    update(object);
+                }
+                else {
+                    addToTable(object);
+                }
+                retainItem(object.getDefinition(), staleItemIds);
+            }
+        }
+        super.populateItems(staleItemIds);
+    }
+
     protected void populateItem(TargetObject target, Item item) {
         StatefulTargetObject sto = asStatefulTargetObject(target);
 